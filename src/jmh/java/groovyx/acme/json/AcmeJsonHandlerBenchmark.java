@@ -0,0 +1,71 @@
+package groovyx.acme.json;
+
+import groovy.lang.Closure;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * build and filter handlers over the medium document.
+ * the cost of the handler is the difference with {@code AcmeJsonParserBenchmark.acmeNull}.
+ * filters have `paths` paths where only one matches values of the document.
+ * profile benchmarks show the overhead of AcmeJsonProfileHandler over build with each and 1/16 events timed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class AcmeJsonHandlerBenchmark {
+    @Param({"1", "10", "100"})
+    public int paths;
+
+    private String json;
+
+    @Setup
+    public void setup(){
+        json = BenchmarkDocuments.get("medium");
+    }
+
+    @Benchmark
+    public Object build() throws AcmeJsonException {
+        return new AcmeJsonParser(new AcmeJsonBuildHandler()).parseText(json);
+    }
+
+    @Benchmark
+    public Object filter() throws AcmeJsonException {
+        AcmeJsonFilterHandler filter = new AcmeJsonFilterHandler().setDelegate(new AcmeJsonBuildHandler());
+        for(int i=1;i<paths;i++){
+            filter.addValueFilter("$[*].missing"+i, IDENTITY);
+        }
+        filter.addValueFilter("$[*].geo.lat", IDENTITY);
+        return new AcmeJsonParser(filter).parseText(json);
+    }
+
+    @Benchmark
+    public Object profile() throws AcmeJsonException {
+        return new AcmeJsonParser(new AcmeJsonProfileHandler(new AcmeJsonBuildHandler())).parseText(json);
+    }
+
+    @Benchmark
+    public Object profileSampled() throws AcmeJsonException {
+        return new AcmeJsonParser(new AcmeJsonProfileHandler(new AcmeJsonBuildHandler()).setTimingSample(16)).parseText(json);
+    }
+
+    private static final Closure<Object> IDENTITY = new Closure<Object>(null){
+        public Object doCall(Object path, Object value){
+            return value;
+        }
+    };
+}
@@ -0,0 +1,56 @@
+package groovyx.acme.json;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * parsing of json text with null and build handlers compared to gson and JsonSlurper
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class AcmeJsonParserBenchmark {
+    @Param({"small", "medium", "huge", "strings", "numbers", "nested"})
+    public String doc;
+
+    private String json;
+
+    @Setup
+    public void setup(){
+        json = BenchmarkDocuments.get(doc);
+    }
+
+    @Benchmark
+    public Object acmeNull() throws AcmeJsonException {
+        return new AcmeJsonParser(new AcmeJsonNullHandler()).parseText(json);
+    }
+
+    @Benchmark
+    public Object acmeBuild() throws AcmeJsonException {
+        return new AcmeJsonParser().parseText(json);
+    }
+
+    @Benchmark
+    public Object gson() throws AcmeJsonException {
+        return new TestGsonParser().parseText(json);
+    }
+
+    @Benchmark
+    public Object slurper() throws AcmeJsonException {
+        return new TestGroovyParser().parseText(json);
+    }
+}
@@ -0,0 +1,68 @@
+package groovyx.acme.json;
+
+import com.google.gson.Gson;
+import groovy.json.JsonOutput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * writing of built maps and lists with AcmeJsonWriter and AcmeJsonOutput compared to gson and groovy JsonOutput
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class AcmeJsonWriterBenchmark {
+    @Param({"small", "medium", "huge", "strings", "numbers", "nested"})
+    public String doc;
+
+    private Object data;
+    private final Gson gson = new Gson();
+
+    @Setup
+    public void setup() throws AcmeJsonException {
+        data = new AcmeJsonParser().parseText(BenchmarkDocuments.get(doc));
+    }
+
+    @Benchmark
+    public Object writer() throws IOException {
+        StringWriter w = new StringWriter();
+        new AcmeJsonWriter(w, false).printValue(data);
+        return w;
+    }
+
+    @Benchmark
+    public Object toJson(){
+        return AcmeJsonOutput.toJson(data);
+    }
+
+    @Benchmark
+    public Object toJsonBytes(){
+        return AcmeJsonOutput.toJsonBytes(data);
+    }
+
+    @Benchmark
+    public Object gson(){
+        return gson.toJson(data);
+    }
+
+    @Benchmark
+    public Object groovy(){
+        return JsonOutput.toJson(data);
+    }
+}
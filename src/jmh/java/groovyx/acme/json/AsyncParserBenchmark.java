@@ -0,0 +1,101 @@
+package groovyx.acme.json;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * parse of 10k small files (wide corpus records about 1K each) keeping all results in memory:
+ * sequential parse(File) with new parser per file,
+ * hand-rolled fixed pool with new parser per file, and AcmeJsonAsyncParser.parseAll with the default executor
+ * (virtual threads on java 21+) and with a fixed pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class AsyncParserBenchmark {
+    @Param({"10000"})
+    public int files;
+
+    private File dir;
+    private List<Path> paths;
+    private ExecutorService pool;
+    private AcmeJsonAsyncParser asyncDefault;
+    private AcmeJsonAsyncParser asyncPool;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("acmejson-bench").toFile();
+        paths = new ArrayList<>(files);
+        for(int i=0;i<files;i++){
+            Path p = new File(dir, i+".json").toPath();
+            Files.write(p, TestJsonCorpus.generate("wide", TestJsonCorpus.SEED+i, 512).getBytes(Charset.forName("UTF-8")));
+            paths.add(p);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        pool = Executors.newFixedThreadPool(threads);
+        asyncDefault = new AcmeJsonAsyncParser();
+        asyncPool = new AcmeJsonAsyncParser().setExecutor(pool, threads);
+    }
+
+    @TearDown
+    public void tearDown(){
+        asyncDefault.close();
+        pool.shutdown();
+        File[] list = dir.listFiles();
+        if(list!=null)for(File f: list)f.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public Object sequential() throws AcmeJsonException {
+        List<Object> results = new ArrayList<>(paths.size());
+        for(Path p: paths)results.add(new AcmeJsonParser().parse(p.toFile()));
+        return results;
+    }
+
+    @Benchmark
+    public Object handRolledPool() throws Exception {
+        List<Future<Object>> futures = new ArrayList<>(paths.size());
+        for(final Path p: paths){
+            futures.add(pool.submit(() -> new AcmeJsonParser().parse(p.toFile())));
+        }
+        List<Object> results = new ArrayList<>(paths.size());
+        for(Future<Object> f: futures)results.add(f.get());
+        return results;
+    }
+
+    @Benchmark
+    public Object parseAllDefault() throws Exception {
+        return asyncDefault.parseAll(paths).get();
+    }
+
+    @Benchmark
+    public Object parseAllPool() throws Exception {
+        return asyncPool.parseAll(paths).get();
+    }
+}
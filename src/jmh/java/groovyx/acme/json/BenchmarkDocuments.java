@@ -0,0 +1,79 @@
+package groovyx.acme.json;
+
+import java.util.Random;
+
+/**
+ * deterministic json documents for benchmarks
+ */
+class BenchmarkDocuments {
+    static final String[] NAMES = {"small", "medium", "huge", "strings", "numbers", "nested"};
+
+    static final String RECORD = "{\"id\":12345,\"name\":\"record name \\u0420\\u0435\\u043a\\u043e\\u0440\\u0434\",\"status\":\"active\","
+            + "\"text\":\"line1\\nline2\\t\\\"quoted\\\"\",\"score\":12.5,\"tags\":[\"a\",\"b\",\"c\"],\"geo\":{\"lat\":1.5,\"lon\":-2.25}}";
+
+    /**
+     * returns document by name
+     * @param name one of {@link #NAMES}
+     * @return json text
+     */
+    static String get(String name){
+        switch (name){
+            case "small":   return RECORD;
+            case "medium":  return records(1000);
+            case "huge":    return records(20000);
+            case "strings": return strings(5000);
+            case "numbers": return numbers(50000);
+            case "nested":  return nested(500);
+            default: throw new IllegalArgumentException("unknown document: "+name);
+        }
+    }
+
+    static String records(int count){
+        StringBuilder sb = new StringBuilder(count*(RECORD.length()+1)+2);
+        sb.append('[');
+        for(int i=0;i<count;i++){
+            if(i>0)sb.append(',');
+            sb.append(RECORD);
+        }
+        return sb.append(']').toString();
+    }
+
+    /** array of long strings with escapes and non-ascii chars */
+    static String strings(int count){
+        Random r = new Random(count);
+        String[] parts = {"plain text ", "\\n", "\\t", "\\\"", "\\\\", "\\u00e9", "\u0416", "\u6f22\u5b57", "\ud83d\ude00", "long ascii run of plain text without escapes "};
+        StringBuilder sb = new StringBuilder().append('[');
+        for(int i=0;i<count;i++){
+            if(i>0)sb.append(',');
+            sb.append('"');
+            for(int j=r.nextInt(20)+5;j>0;j--)sb.append(parts[r.nextInt(parts.length)]);
+            sb.append('"');
+        }
+        return sb.append(']').toString();
+    }
+
+    /** array of integers, decimals, and numbers with exponent */
+    static String numbers(int count){
+        Random r = new Random(count);
+        StringBuilder sb = new StringBuilder().append('[');
+        for(int i=0;i<count;i++){
+            if(i>0)sb.append(',');
+            switch (i%4){
+                case 0: sb.append(r.nextInt()); break;
+                case 1: sb.append(r.nextLong()); break;
+                case 2: sb.append(r.nextInt(100000)).append('.').append(r.nextInt(1000)); break;
+                default: sb.append(r.nextDouble()*1e10);
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    /** alternating objects and arrays nested `depth` times */
+    static String nested(int depth){
+        StringBuilder sb = new StringBuilder();
+        for(int i=0;i<depth;i++)sb.append(i%2==0 ? "{\"k\":1,\"v\":" : "[true,");
+        sb.append("null");
+        for(int i=depth-1;i>=0;i--)sb.append(i%2==0 ? '}' : ']');
+        return sb.toString();
+    }
+}
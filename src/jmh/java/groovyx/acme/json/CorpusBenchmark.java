@@ -0,0 +1,85 @@
+package groovyx.acme.json;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * parser and writer over the generated corpus, used by the regression check.
+ * documents are generated by {@code TestJsonCorpus.generate(shape, TestJsonCorpus.SEED, size)},
+ * ndjson documents are parsed line by line and written with AcmeJsonLinesWriter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class CorpusBenchmark {
+    @Param({"wide", "deep", "numeric", "unicode", "ndjson"})
+    public String shape;
+
+    @Param({"64K", "1M"})
+    public String size;
+
+    private String json;
+    private String[] lines;
+    private Object data;
+
+    @Setup
+    public void setup() throws AcmeJsonException {
+        json = TestJsonCorpus.generate(shape, TestJsonCorpus.SEED, TestJsonCorpus.parseSize(size));
+        if(shape.equals("ndjson")){
+            lines = json.split("\n");
+            List<Object> records = new ArrayList<>(lines.length);
+            for(String line: lines)records.add(new AcmeJsonParser().parseText(line));
+            data = records;
+        }else{
+            data = new AcmeJsonParser().parseText(json);
+        }
+    }
+
+    @Benchmark
+    public Object parseNull() throws AcmeJsonException {
+        if(lines!=null){
+            AcmeJsonNullHandler h = new AcmeJsonNullHandler();
+            for(String line: lines)new AcmeJsonParser(h).parseText(line);
+            return h;
+        }
+        return new AcmeJsonParser(new AcmeJsonNullHandler()).parseText(json);
+    }
+
+    @Benchmark
+    public Object parseBuild() throws AcmeJsonException {
+        if(lines!=null){
+            Object last = null;
+            for(String line: lines)last = new AcmeJsonParser().parseText(line);
+            return last;
+        }
+        return new AcmeJsonParser().parseText(json);
+    }
+
+    @Benchmark
+    public Object write() throws IOException {
+        if(lines!=null){
+            ByteArrayOutputStream out = new ByteArrayOutputStream(json.length());
+            new AcmeJsonLinesWriter(out).writeAll((List<?>)data).close();
+            return out;
+        }
+        return AcmeJsonOutput.toJsonBytes(data);
+    }
+}
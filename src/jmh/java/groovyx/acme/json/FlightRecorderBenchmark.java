@@ -0,0 +1,81 @@
+package groovyx.acme.json;
+
+import groovy.lang.Closure;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * parse, filter, and write of the 64K wide corpus document without recording and with a running
+ * flight recording that has the acmejson events enabled. {@link FlightRecorderCheck} compares both modes.
+ * the recording is started through reflection because the benchmarks are compiled for java 8.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class FlightRecorderBenchmark {
+    private static final Closure<Object> IDENTITY = new Closure<Object>(null) {
+        public Object doCall(Object value, Object path) {
+            return value;
+        }
+    };
+
+    @Param({"off", "on"})
+    public String recording;
+
+    private String json;
+    private Object data;
+    private Object rec;
+
+    @Setup
+    public void setup() throws Exception {
+        json = TestJsonCorpus.generate("wide", TestJsonCorpus.SEED, 64*1024);
+        data = new AcmeJsonParser().parseText(json);
+        if(recording.equals("on")){
+            Class<?> c = Class.forName("jdk.jfr.Recording");
+            rec = c.newInstance();
+            for(String e: new String[]{"Parse", "Filter", "Write"}){
+                c.getMethod("enable", String.class).invoke(rec, "groovyx.acme.json."+e);
+            }
+            c.getMethod("start").invoke(rec);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if(rec!=null)rec.getClass().getMethod("close").invoke(rec);
+    }
+
+    @Benchmark
+    public Object parse() throws AcmeJsonException {
+        return new AcmeJsonParser(new AcmeJsonNullHandler()).parseText(json);
+    }
+
+    @Benchmark
+    public Object filter() throws AcmeJsonException {
+        AcmeJsonFilterHandler h = new AcmeJsonFilterHandler();
+        h.addValueFilter("$[*].field1", IDENTITY);
+        h.addValueFilter("$[*].field6", IDENTITY);
+        h.setDelegate(new AcmeJsonNullHandler());
+        return new AcmeJsonParser(h).parseText(json);
+    }
+
+    @Benchmark
+    public Object write() {
+        return AcmeJsonOutput.toJsonBytes(data);
+    }
+}
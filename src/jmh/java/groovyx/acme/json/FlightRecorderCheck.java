@@ -0,0 +1,48 @@
+package groovyx.acme.json;
+
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * compares results of {@link FlightRecorderBenchmark} with recording on and off
+ * and fails when a running recording slows any benchmark by more than the threshold.
+ * usage: {@code java groovyx.acme.json.FlightRecorderCheck <results.json> [threshold percent, default 5]}
+ */
+public class FlightRecorderCheck {
+
+    public static void main(String[] args) throws Exception {
+        if(args.length<1){
+            System.err.println("usage: FlightRecorderCheck <results.json> [threshold percent]");
+            System.exit(2);
+        }
+        double threshold = args.length>1 ? Double.parseDouble(args[1])/100 : 0.05;
+        Map<String,Double> off = new TreeMap<>();
+        Map<String,Double> on = new TreeMap<>();
+        for(Map.Entry<String,Map> e: RegressionCheck.load(new File(args[0])).entrySet()){
+            String key = e.getKey();
+            double score = ((Number)((Map)e.getValue().get("primaryMetric")).get("score")).doubleValue();
+            if(key.endsWith(" recording=off"))off.put(key.substring(0, key.length()-14), score);
+            else if(key.endsWith(" recording=on"))on.put(key.substring(0, key.length()-13), score);
+        }
+        if(off.isEmpty()){
+            System.err.println("no FlightRecorderBenchmark results in "+args[0]);
+            System.exit(2);
+        }
+        int slow = 0;
+        System.out.println(String.format("%-50s %12s %12s %8s", "benchmark", "off", "on", "diff"));
+        for(Map.Entry<String,Double> e: off.entrySet()){
+            Double score = on.get(e.getKey());
+            if(score==null)continue;
+            double diff = score/e.getValue()-1;
+            if(diff < -threshold)slow++;
+            System.out.println(String.format("%-50s %12.2f %12.2f %+7.1f%%%s", e.getKey(), e.getValue(), score, diff*100,
+                    diff < -threshold ? "  SLOW" : ""));
+        }
+        if(slow>0){
+            System.err.println(slow+" benchmark(s) slower than "+(threshold*100)+"% with flight recording");
+            System.exit(1);
+        }
+        System.out.println("flight recording overhead is below "+(threshold*100)+"%");
+    }
+}
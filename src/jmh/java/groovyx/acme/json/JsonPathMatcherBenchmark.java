@@ -0,0 +1,52 @@
+package groovyx.acme.json;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * matching of one path against the json path of a value at depth 5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonPathMatcherBenchmark {
+    @Param({"$.store.book[*].author.name", "$.store.book[3].author.name", "$..name", "$.store.book[*].title", "$[*]"})
+    public String path;
+
+    private JsonPathMatcher matcher;
+    private final JsonPathStack jpath = new JsonPathStack();
+
+    @Setup
+    public void setup(){
+        matcher = new JsonPathMatcher(path);
+        jpath.push(0, "store", true);
+        jpath.push(0, "book", true);
+        jpath.push(3, null, false);
+        jpath.push(1, "author", true);
+        jpath.push(0, "name", true);
+    }
+
+    @Benchmark
+    public boolean matches(){
+        return matcher.matches(jpath);
+    }
+
+    @Benchmark
+    public boolean mayMatch(){
+        return matcher.mayMatch(jpath);
+    }
+}
@@ -0,0 +1,128 @@
+package groovyx.acme.json;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * compares jmh json results with the baseline results and fails when throughput or allocation regresses.
+ * for corpus benchmarks the report shows MB/s and allocated bytes per byte of the document,
+ * for others operations per second and bytes per operation.
+ * the throughput regresses when it drops by more than the threshold below the baseline,
+ * the allocation regresses when it grows by more than the threshold and by more than 16 bytes per operation.
+ * when the baseline does not exist yet, the results are stored as the baseline and the check passes.
+ * usage: {@code java groovyx.acme.json.RegressionCheck <results.json> <baseline.json> [threshold percent, default 10]}
+ */
+public class RegressionCheck {
+    private static final double ALLOC_SLACK = 16; //bytes per operation, noise of gc profiler
+
+    public static void main(String[] args) throws Exception {
+        if(args.length<2){
+            System.err.println("usage: RegressionCheck <results.json> <baseline.json> [threshold percent]");
+            System.exit(2);
+        }
+        File results = new File(args[0]);
+        File baseline = new File(args[1]);
+        double threshold = args.length>2 ? Double.parseDouble(args[2])/100 : 0.1;
+        if(!baseline.exists()){
+            File dir = baseline.getAbsoluteFile().getParentFile();
+            if(dir!=null)dir.mkdirs();
+            Files.copy(results.toPath(), baseline.toPath());
+            System.out.println("baseline "+baseline+" did not exist: the results are stored as the baseline, commit it to compare the next builds");
+            return;
+        }
+        int regressions = check(load(results), load(baseline), threshold);
+        if(regressions>0){
+            System.err.println(regressions+" regression(s) above "+(threshold*100)+"% against "+baseline);
+            System.exit(1);
+        }
+        System.out.println("no regressions above "+(threshold*100)+"% against "+baseline);
+    }
+
+    /**
+     * prints comparison of results and returns number of regressions
+     * @param current results by benchmark key
+     * @param baseline baseline results by benchmark key
+     * @param threshold allowed relative change: 0.1 is 10%
+     * @return number of regressions
+     */
+    static int check(Map<String,Map> current, Map<String,Map> baseline, double threshold){
+        int regressions = 0;
+        System.out.println(String.format("%-60s %12s %12s %8s %12s %12s %8s", "benchmark", "base", "current", "diff", "base alloc", "alloc", "diff"));
+        for(Map.Entry<String,Map> e: current.entrySet()){
+            Map cur = e.getValue();
+            Map base = baseline.get(e.getKey());
+            double bytes = documentBytes(cur);
+            double div = bytes>0 ? bytes : 1;
+            double scoreMul = bytes>0 ? bytes/1000000 : 1; //MB per second
+            double score = score(cur)*scoreMul;
+            double alloc = alloc(cur);
+            if(base==null){
+                System.out.println(String.format("%-60s %12s %12.2f %8s %12s %12s", e.getKey(), "-", score, "new", "-", perByte(alloc, div)));
+                continue;
+            }
+            double baseScore = score(base)*scoreMul;
+            double baseAlloc = alloc(base);
+            double scoreDiff = baseScore>0 ? score/baseScore-1 : 0;
+            double allocDiff = baseAlloc>0 ? alloc/baseAlloc-1 : 0;
+            boolean slower = scoreDiff < -threshold;
+            boolean fatter = alloc>=0 && baseAlloc>=0 && alloc-baseAlloc>ALLOC_SLACK && alloc>baseAlloc*(1+threshold);
+            if(slower || fatter)regressions++;
+            System.out.println(String.format("%-60s %12.2f %12.2f %+7.1f%% %12s %12s %+7.1f%%%s", e.getKey(), baseScore, score, scoreDiff*100,
+                    perByte(baseAlloc, div), perByte(alloc, div), allocDiff*100, slower||fatter ? "  REGRESSION" : ""));
+        }
+        for(String key: baseline.keySet()){
+            if(!current.containsKey(key))System.out.println(String.format("%-60s missing in results", key));
+        }
+        return regressions;
+    }
+
+    /** loads jmh results as map of benchmark key (name with params) to result */
+    @SuppressWarnings("unchecked")
+    static Map<String,Map> load(File f) throws AcmeJsonException {
+        Map<String,Map> m = new LinkedHashMap<>();
+        for(Object o: (List)new AcmeJsonParser().parse(f, "UTF-8")){
+            Map r = (Map)o;
+            StringBuilder key = new StringBuilder(String.valueOf(r.get("benchmark")).replace("groovyx.acme.json.", ""));
+            Map<String,Object> params = (Map<String,Object>)r.get("params");
+            if(params!=null){
+                for(Map.Entry<String,Object> p: params.entrySet())key.append(' ').append(p.getKey()).append('=').append(p.getValue());
+            }
+            m.put(key.toString(), r);
+        }
+        return m;
+    }
+
+    private static String perByte(double alloc, double div){
+        return alloc<0 ? "-" : String.format("%.3f", alloc/div);
+    }
+
+    private static double score(Map r){
+        return ((Number)((Map)r.get("primaryMetric")).get("score")).doubleValue();
+    }
+
+    /** normalized allocation rate in bytes per operation or -1 if gc profiler was not enabled */
+    private static double alloc(Map r){
+        Map secondary = (Map)r.get("secondaryMetrics");
+        if(secondary!=null){
+            for(Object e: secondary.entrySet()){
+                Map.Entry m = (Map.Entry)e;
+                if(m.getKey().toString().endsWith("gc.alloc.rate.norm")){
+                    return ((Number)((Map)m.getValue()).get("score")).doubleValue();
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** size in bytes of the corpus document for benchmarks with shape and size params, otherwise 0 */
+    private static double documentBytes(Map r){
+        Map params = (Map)r.get("params");
+        if(params==null || params.get("shape")==null || params.get("size")==null)return 0;
+        String doc = TestJsonCorpus.generate(params.get("shape").toString(), TestJsonCorpus.SEED, TestJsonCorpus.parseSize(params.get("size").toString()));
+        return doc.getBytes(Charset.forName("UTF-8")).length;
+    }
+}
@@ -0,0 +1,68 @@
+package groovyx.acme.json;
+
+import groovy.lang.Closure;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * build, redacted write, and count of the medium document: three parses against one parse with AcmeJsonTeeHandler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class TeeHandlerBenchmark {
+    private static final Closure<Object> REDACT = new Closure<Object>(null) {
+        public Object doCall(Object value, Object path) {
+            return "***";
+        }
+    };
+
+    private String json;
+
+    @Setup
+    public void setup(){
+        json = BenchmarkDocuments.get("medium");
+    }
+
+    @Benchmark
+    public Object threeParses() throws AcmeJsonException {
+        Object dom = new AcmeJsonParser(new AcmeJsonBuildHandler()).parseText(json);
+        StringWriter w = new StringWriter(json.length());
+        new AcmeJsonParser(redacted(w)).parseText(json);
+        Object stats = new AcmeJsonParser(stats()).parseText(json);
+        return new Object[]{dom, w, stats};
+    }
+
+    @Benchmark
+    public Object tee() throws AcmeJsonException {
+        AcmeJsonTeeHandler tee = new AcmeJsonTeeHandler();
+        tee.addBranch("dom", new AcmeJsonBuildHandler());
+        tee.addBranch("redacted", redacted(new StringWriter(json.length())));
+        tee.addBranch("stats", stats());
+        return new AcmeJsonParser(tee).parseText(json);
+    }
+
+    private static AcmeJsonHandler redacted(StringWriter w){
+        return new AcmeJsonFilterHandler().addValueFilter("$[*].name", REDACT).setDelegate(new AcmeJsonWriteHandler(w));
+    }
+
+    private static AcmeJsonHandler stats(){
+        AcmeJsonAggregateHandler h = new AcmeJsonAggregateHandler();
+        h.addAggregate("count", "$[*]");
+        return h;
+    }
+}
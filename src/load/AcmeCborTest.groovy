@@ -0,0 +1,63 @@
+/***/
+//@Grab(group= "org.codehaus.groovy",   module= "groovy-all"   	        , version= "2.4.12")
+
+import groovyx.acme.json.*;
+
+/**
+ * compares size and throughput of json text and CBOR for the AcmeJsonLoadTest document and for array of records:
+ * parsing with null and build handlers, and writing of built data.
+ * usage: groovy -cp ./build/classes/java/main ./src/load/AcmeCborTest.groovy [count]
+ */
+@groovy.transform.CompileStatic
+public class AcmeCborTest {
+	static String record = '{"id":12345,"name":"record name \\u0420\\u0435\\u043a\\u043e\\u0440\\u0434","status":"active","text":"line1\\nline2\\t\\"quoted\\"","score":12.5,"tags":["a","b","c"],"geo":{"lat":1.5,"lon":-2.25}}'
+
+	public static void main(String[] arg){
+		int count = arg.length>0 ? arg[0] as int : 200;
+		//same document as in AcmeJsonLoadTest
+		String loadTest = "{\"x\":\"y\\n\\tz\",\"o\":"+(" \t"*220000)+"{\"aaa\":1,\"b\":[21,{\"22\":2}"+(",23,24,255,266,9991,9992,9993,9994"*100)+"],\"c\":3,\"d\":\"y\\n\\tz\"}}";
+		test("load-test", loadTest, count*10);
+		test("records", '['+([record]*10000).join(',')+']', count);
+	}
+
+	static void test(String name, String json, int count){
+		byte[] text = json.getBytes("UTF-8");
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		new AcmeJsonParser(new AcmeCborWriteHandler(b)).parseText(json);
+		byte[] cbor = b.toByteArray();
+		Object data = new AcmeJsonParser().parseText(json);
+		println("$name: json ${text.length} bytes, cbor ${cbor.length} bytes");
+		for(int round=0;round<2;round++){
+			boolean verbose = round>0; //first round is a warm-up
+			run("json-null", count, text.length, verbose){
+				new AcmeJsonParser(new AcmeJsonNullHandler()).parse(new ByteArrayInputStream(text))
+			}
+			run("cbor-null", count, text.length, verbose){
+				new AcmeCborParser(new AcmeJsonNullHandler()).parse(cbor)
+			}
+			run("json-build", count, text.length, verbose){
+				new AcmeJsonParser().parse(new ByteArrayInputStream(text))
+			}
+			run("cbor-build", count, text.length, verbose){
+				new AcmeCborParser().parse(cbor)
+			}
+			run("json-write", count, text.length, verbose){
+				AcmeJsonOutput.writeJson(data, new ByteArrayOutputStream(text.length), false)
+			}
+			run("cbor-write", count, text.length, verbose){
+				new AcmeCborWriteHandler(new ByteArrayOutputStream(cbor.length)).write(data)
+			}
+		}
+	}
+
+	/** prints documents per second and json-equivalent MB per second */
+	static void run(String name, int count, int size, boolean verbose, Closure c){
+		System.gc();
+		long t = System.nanoTime();
+		for(int i=0;i<count;i++) {
+			c.call();
+		}
+		t = System.nanoTime()-t;
+		if(verbose)println("  ${name.padRight(12)} t = ${(long)(t/1000000)} ms \tpersec = ${(long)(count*1e9/t)} \tjson MB/sec = ${(long)(1000.0*count*size/t)}");
+	}
+}
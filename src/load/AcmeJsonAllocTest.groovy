@@ -0,0 +1,60 @@
+/***/
+//@Grab(group= "org.codehaus.groovy",   module= "groovy-all"   	        , version= "2.4.12")
+
+import groovyx.acme.json.*;
+import java.lang.management.ManagementFactory;
+
+/**
+ * measures time and allocated bytes per write of a small object with AcmeJsonOutput methods
+ * that reuse thread serialization context and with a new writer per call.
+ * usage: groovy -cp ./build/classes/java/main ./src/load/AcmeJsonAllocTest.groovy [count]
+ */
+@groovy.transform.CompileStatic
+public class AcmeJsonAllocTest {
+	static Map data = [id:12345, name:"record name", active:true, tags:["a","b"], geo:[lat:1, lon:-2]];
+
+	/** counts bytes only */
+	static class NullOutputStream extends OutputStream {
+		long count = 0;
+		void write(int b){ count++ }
+		void write(byte[] b, int off, int len){ count+=len }
+	}
+
+	public static void main(String[] arg){
+		int count = arg.length>0 ? arg[0] as int : 2000000;
+		NullOutputStream out = new NullOutputStream();
+		for(int round=0;round<2;round++){
+			boolean verbose = round>0; //first round is a warm-up
+			run("new-writer", count, verbose){
+				StringWriter w = new StringWriter();
+				new AcmeJsonWriter(w, false).value(data);
+				w.toString().length()
+			}
+			run("toJson", count, verbose){
+				AcmeJsonOutput.toJson(data).length()
+			}
+			run("toJsonBytes", count, verbose){
+				AcmeJsonOutput.toJsonBytes(data).length
+			}
+			run("writeTo", count, verbose){
+				AcmeJsonOutput.writeTo(data, out);
+				1
+			}
+		}
+	}
+
+	static void run(String name, int count, boolean verbose, Closure<Integer> c){
+		com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long tid = Thread.currentThread().getId();
+		System.gc();
+		long sum = 0;
+		long a = mx.getThreadAllocatedBytes(tid);
+		long t = System.nanoTime();
+		for(int i=0;i<count;i++) {
+			sum += c.call();
+		}
+		t = System.nanoTime()-t;
+		a = mx.getThreadAllocatedBytes(tid)-a;
+		if(verbose)println("${name.padRight(12)} ns/op = ${(long)(t/count)} \tbytes/op = ${(long)(a/count)} \t(check $sum)");
+	}
+}
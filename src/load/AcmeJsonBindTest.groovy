@@ -0,0 +1,89 @@
+/***/
+//@Grab(group= "org.codehaus.groovy",   module= "groovy-all"   	        , version= "2.4.12")
+//@Grab(group='com.google.code.gson', module='gson', version='2.8.5')
+
+import groovyx.acme.json.*;
+import com.google.gson.Gson;
+
+/**
+ * compares binding of json into typed objects:
+ * AcmeJsonBindHandler, parsing into maps and then converting, and Gson.fromJson.
+ * usage: groovy -cp ./build/classes/java/main:gson.jar ./src/load/AcmeJsonBindTest.groovy [count]
+ */
+@groovy.transform.CompileStatic
+public class AcmeJsonBindTest {
+	static String json = buildJson(200);
+
+	public static void main(String[] arg){
+		int count = arg.length>0 ? arg[0] as int : 20000;
+		def t = new AcmeJsonBindTest();
+		for(int round=0;round<2;round++){
+			//first round is a warm-up
+			t.run("bind", count, round>0){
+				(Order)new AcmeJsonParser(new AcmeJsonBindHandler(Order)).parseText(json)
+			}
+			t.run("map+convert", count, round>0){
+				toOrder((Map)new AcmeJsonParser().parseText(json))
+			}
+			Gson gson = new Gson();
+			t.run("gson", count, round>0){
+				gson.fromJson(json, Order)
+			}
+		}
+	}
+
+	void run(String name, int count, boolean verbose, Closure<Order> c){
+		System.gc();
+		long t = System.nanoTime();
+		int sum = 0;
+		for(int i=0;i<count;i++) {
+			sum += c.call().items.size();
+		}
+		t = System.nanoTime()-t;
+		if(verbose)println("${name.padRight(12)} t = ${(long)(t/1000000)} ms \tpersec = ${(long)(count*1e9/t)} \t(check $sum)");
+	}
+
+	static Order toOrder(Map m){
+		Order o = new Order();
+		o.id = (Long)m.id;
+		o.customer = (String)m.customer;
+		o.status = Status.valueOf((String)m.status);
+		o.items = new ArrayList<Item>();
+		for(Object i: (List)m.items){
+			Map im = (Map)i;
+			Item item = new Item();
+			item.sku = (String)im.sku;
+			item.qty = ((Number)im.qty).intValue();
+			item.price = ((Number)im.price).doubleValue();
+			item.tags = new ArrayList<String>((List<String>)im.tags);
+			o.items.add(item);
+		}
+		return o;
+	}
+
+	static String buildJson(int items){
+		StringBuilder sb = new StringBuilder('{"id":123456,"customer":"John \\"Jr\\" Doe","status":"SHIPPED","items":[');
+		for(int i=0;i<items;i++){
+			if(i>0)sb.append(',');
+			sb.append('{"sku":"SKU-').append(i).append('","qty":').append(i%7+1).append(',"price":').append(i*1.25+0.5)
+				.append(',"tags":["t').append(i%3).append('","x"],"ignored":{"a":[1,2,3]}}');
+		}
+		return sb.append(']}').toString();
+	}
+
+	static enum Status { NEW, SHIPPED }
+
+	static class Order {
+		long id
+		String customer
+		Status status
+		List<Item> items
+	}
+
+	static class Item {
+		String sku
+		int qty
+		double price
+		List<String> tags
+	}
+}
@@ -0,0 +1,66 @@
+/***/
+//@Grab(group= "org.codehaus.groovy",   module= "groovy-all"   	        , version= "2.4.12")
+
+import groovyx.acme.json.*;
+
+/**
+ * compares processing of the same document many times: parsing json text each time against
+ * replaying events recorded once by AcmeJsonEventRecorder. null, build, and filter handlers,
+ * and replay with skipped subtrees.
+ * usage: groovy -cp ./build/classes/java/main ./src/load/AcmeJsonEventLogTest.groovy [count]
+ */
+@groovy.transform.CompileStatic
+public class AcmeJsonEventLogTest {
+	static String record = '{"id":12345,"name":"record name \\u0420\\u0435\\u043a\\u043e\\u0440\\u0434","status":"active","text":"line1\\nline2\\t\\"quoted\\"","score":12.5,"tags":["a","b","c"],"geo":{"lat":1.5,"lon":-2.25}}'
+
+	public static void main(String[] arg){
+		int count = arg.length>0 ? arg[0] as int : 100;
+		String json = '['+([record]*10000).join(',')+']';
+		File text = File.createTempFile("events", ".json");
+		File events = File.createTempFile("events", ".bin");
+		text.deleteOnExit();
+		events.deleteOnExit();
+		text.setText(json, "UTF-8");
+		long t = System.nanoTime();
+		new AcmeJsonParser(new AcmeJsonEventRecorder(events)).parse(text);
+		println("json ${text.length()} bytes, events ${events.length()} bytes, recorded in ${(long)((System.nanoTime()-t)/1000000)} ms");
+		for(int round=0;round<2;round++){
+			boolean verbose = round>0; //first round is a warm-up
+			run("json-null", count, verbose){
+				new AcmeJsonParser(new AcmeJsonNullHandler()).parse(text)
+			}
+			run("replay-null", count, verbose){
+				new AcmeJsonEventReplayer(new AcmeJsonNullHandler()).parse(events)
+			}
+			run("json-build", count, verbose){
+				new AcmeJsonParser().parse(text)
+			}
+			run("replay-build", count, verbose){
+				new AcmeJsonEventReplayer().parse(events)
+			}
+			run("json-filter", count, verbose){
+				new AcmeJsonParser(filter()).parse(text)
+			}
+			run("replay-filter", count, verbose){
+				new AcmeJsonEventReplayer(filter()).parse(events)
+			}
+			run("replay-skip", count, verbose){
+				new AcmeJsonEventReplayer().setSkipPaths('$[*].geo', '$[*].tags').parse(events)
+			}
+		}
+	}
+
+	static AcmeJsonHandler filter(){
+		return new AcmeJsonFilterHandler().addValueFilter('$[*].geo'){ null }.setDelegate(new AcmeJsonBuildHandler());
+	}
+
+	static void run(String name, int count, boolean verbose, Closure c){
+		System.gc();
+		long t = System.nanoTime();
+		for(int i=0;i<count;i++) {
+			c.call();
+		}
+		t = System.nanoTime()-t;
+		if(verbose)println("  ${name.padRight(14)} t = ${(long)(t/1000000)} ms \tpersec = ${(long)(count*1e9/t)}");
+	}
+}
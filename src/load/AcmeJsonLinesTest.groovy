@@ -0,0 +1,61 @@
+/***/
+//@Grab(group= "org.codehaus.groovy",   module= "groovy-all"   	        , version= "2.4.12")
+
+import groovyx.acme.json.*;
+
+/**
+ * compares writing of json lines with new AcmeJsonWriter per record and with AcmeJsonLinesWriter flush policies.
+ * usage: groovy -cp ./build/classes/java/main ./src/load/AcmeJsonLinesTest.groovy [count]
+ */
+@groovy.transform.CompileStatic
+public class AcmeJsonLinesTest {
+	static Map record = [id:12345, name:"record name", status:"active", score:12.5, tags:["a","b","c"]];
+
+	/** counts bytes and flushes, flush costs like a small system call */
+	static class NullOutputStream extends OutputStream {
+		long count = 0;
+		long flushes = 0;
+		void write(int b){ count++ }
+		void write(byte[] b, int off, int len){ count+=len }
+		void flush(){ flushes++; Thread.yield() }
+	}
+
+	public static void main(String[] arg){
+		int count = arg.length>0 ? arg[0] as int : 1000000;
+		for(int round=0;round<2;round++){
+			boolean verbose = round>0; //first round is a warm-up
+			run("writer/rec", count, verbose){NullOutputStream out->
+				Writer w = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+				for(int i=0;i<count;i++){
+					new AcmeJsonWriter(w, false).value(record);
+					w.write('\n');
+				}
+				w.flush();
+			}
+			run("lines", count, verbose){NullOutputStream out->
+				new AcmeJsonLinesWriter(out).writeAll(Collections.nCopies(count, record)).flush();
+			}
+			run("lines/1000", count, verbose){NullOutputStream out->
+				new AcmeJsonLinesWriter(out).setFlushEveryRecords(1000).writeAll(Collections.nCopies(count, record)).flush();
+			}
+			run("lines/64K", count, verbose){NullOutputStream out->
+				new AcmeJsonLinesWriter(out).setFlushEveryBytes(65536).writeAll(Collections.nCopies(count, record)).flush();
+			}
+			run("lines/10ms", count, verbose){NullOutputStream out->
+				new AcmeJsonLinesWriter(out).setMaxLatency(10).writeAll(Collections.nCopies(count, record)).flush();
+			}
+			run("lines/1", count, verbose){NullOutputStream out->
+				new AcmeJsonLinesWriter(out).setFlushEveryRecords(1).writeAll(Collections.nCopies(count, record)).flush();
+			}
+		}
+	}
+
+	static void run(String name, int count, boolean verbose, Closure c){
+		NullOutputStream out = new NullOutputStream();
+		System.gc();
+		long t = System.nanoTime();
+		c.call(out);
+		t = System.nanoTime()-t;
+		if(verbose)println("${name.padRight(12)} t = ${(long)(t/1000000)} ms \trecords/sec = ${(long)(count*1e9/t)} \tflushes = ${out.flushes}");
+	}
+}
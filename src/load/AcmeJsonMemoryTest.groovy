@@ -0,0 +1,120 @@
+/***/
+//@Grab(group= "org.codehaus.groovy",   module= "groovy-all"   	        , version= "2.4.12")
+
+import groovyx.acme.json.*;
+import java.lang.management.ManagementFactory;
+
+/**
+ * measures heap footprint of parsed documents kept in memory.
+ * usage: groovy -cp ./build/classes/java/main ./src/load/AcmeJsonMemoryTest.groovy [mode] [layout]
+ * where mode is one of: default, compact, shapes, tape, tape-direct, primitives, intern, compact-intern
+ * and layout is one of: docs (many small documents), array (one array with 1M records), numbers (sensor arrays of longs and decimals)
+ */
+@groovy.transform.CompileStatic
+public class AcmeJsonMemoryTest {
+	static String json = '{"id":12345,"name":"record name","status":"active","country":"US","score":12.5,"tags":["a","b","c"],"geo":{"lat":1.5,"lon":-2.25},"items":[{"sku":"x1","qty":1},{"sku":"x2","qty":2}]}'
+	static int count = 100000;
+	static int records = 1000000;
+
+	public static void main(String[] arg){
+		String mode = arg.length>0 ? arg[0] : "default";
+		String layout = arg.length>1 ? arg[1] : "docs";
+		if(layout=="array") new AcmeJsonMemoryTest().runArray(mode);
+		else if(layout=="numbers") new AcmeJsonMemoryTest().runNumbers(mode);
+		else new AcmeJsonMemoryTest().run(mode);
+	}
+
+	static AcmeJsonParser parser(String mode){
+		switch(mode){
+			case "intern":         return new AcmeJsonParser(new AcmeJsonBuildHandler()).setAdaptiveIntern(true);
+			case "compact-intern": return new AcmeJsonParser(new AcmeJsonBuildHandler().setCompact(true)).setAdaptiveIntern(true);
+			default: return new AcmeJsonParser(handler(mode));
+		}
+	}
+
+	static AcmeJsonHandler handler(String mode){
+		switch(mode){
+			case "default": return new AcmeJsonBuildHandler();
+			case "compact": return new AcmeJsonBuildHandler().setCompact(true);
+			case "shapes":  return new AcmeJsonBuildHandler().setShapes(true);
+			case "tape":    return new AcmeJsonTapeHandler();
+			case "tape-direct": return new AcmeJsonTapeHandler().setDirect(true);
+			case "primitives": return new AcmeJsonBuildHandler().setPrimitiveArrays(true);
+			default: throw new IllegalArgumentException("unknown mode: "+mode);
+		}
+	}
+
+	static long usedHeap(){
+		for(int i=0;i<5;i++){
+			System.gc();
+			Thread.sleep(100);
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	void run(String mode){
+		Object[] keep = new Object[count];
+		long before = usedHeap();
+		long t = System.currentTimeMillis();
+		for(int i=0;i<count;i++){
+			keep[i] = parser(mode).parseText(json);
+		}
+		t = System.currentTimeMillis()-t;
+		long after = usedHeap();
+		long perDoc = (long)((after-before)/count);
+		println("mode=$mode docs=$count build=${t}ms heap/doc=${perDoc} bytes source/doc=${json.length()*2} bytes (x${String.format('%.2f',perDoc/(json.length()*2.0))})");
+		assert keep[count-1]!=null;
+	}
+
+	void runArray(String mode){
+		StringBuilder sb = new StringBuilder(records*json.length()+2);
+		sb.append('[');
+		for(int i=0;i<records;i++){
+			if(i>0)sb.append(',');
+			sb.append(json);
+		}
+		sb.append(']');
+		String src = sb.toString();
+		sb = null;
+		long before = usedHeap();
+		long t = System.currentTimeMillis();
+		Object keep = parser(mode).parseText(src);
+		t = System.currentTimeMillis()-t;
+		long after = usedHeap();
+		println("mode=$mode records=$records build=${t}ms heap=${(after-before)>>20}MB heap/record=${(long)((after-before)/records)} bytes");
+		assert keep!=null;
+	}
+
+	void runNumbers(String mode){
+		int n = 100;
+		int size = 20000;
+		StringBuilder sb = new StringBuilder('[');
+		Random rnd = new Random(1);
+		for(int i=0;i<n;i++){
+			if(i>0)sb.append(',');
+			sb.append('{"ts":[');
+			for(int k=0;k<size;k++){
+				if(k>0)sb.append(',');
+				sb.append(1500000000000L+k*1000L+rnd.nextInt(1000));
+			}
+			sb.append('],"values":[');
+			for(int k=0;k<size;k++){
+				if(k>0)sb.append(',');
+				sb.append(rnd.nextInt(100000)/100.0);
+			}
+			sb.append(']}');
+		}
+		sb.append(']');
+		String src = sb.toString();
+		sb = null;
+		long before = usedHeap();
+		long t = System.currentTimeMillis();
+		Object keep = parser(mode).parseText(src);
+		t = System.currentTimeMillis()-t;
+		long after = usedHeap();
+		long numbers = 2L*n*size;
+		println("mode=$mode numbers=$numbers build=${t}ms heap=${(after-before)>>20}MB heap/number=${String.format('%.1f',(after-before)/(double)numbers)} bytes");
+		assert keep!=null;
+	}
+}
+/***/
@@ -0,0 +1,80 @@
+/***/
+//@Grab(group= "org.codehaus.groovy",   module= "groovy-all"   	        , version= "2.4.12")
+//@Grab(group='com.google.code.gson', module='gson', version='2.8.5')
+
+import groovyx.acme.json.*;
+import com.google.gson.Gson;
+
+/**
+ * compares writing of typed objects as json:
+ * derived serializers of AcmeJsonWriter, converting into maps and then writing, and Gson.toJson.
+ * usage: groovy -cp ./build/classes/java/main:gson.jar ./src/load/AcmeJsonSerializeTest.groovy [count]
+ */
+@groovy.transform.CompileStatic
+public class AcmeJsonSerializeTest {
+	static Order order = buildOrder(200);
+	static AcmeJsonSerializers serializers = new AcmeJsonSerializers().setDerive(true);
+
+	public static void main(String[] arg){
+		int count = arg.length>0 ? arg[0] as int : 20000;
+		def t = new AcmeJsonSerializeTest();
+		for(int round=0;round<3;round++){
+			//first round is a warm-up
+			t.run("serializer", count, round>0){ Writer w->
+				new AcmeJsonWriter(w, false).setSerializers(serializers).value(order)
+			}
+			t.run("map+write", count, round>0){ Writer w->
+				new AcmeJsonWriter(w, false).value(toMap(order))
+			}
+			Gson gson = new Gson();
+			t.run("gson", count, round>0){ Writer w->
+				gson.toJson(order, w)
+			}
+		}
+	}
+
+	void run(String name, int count, boolean verbose, Closure c){
+		System.gc();
+		long t = System.nanoTime();
+		long sum = 0;
+		for(int i=0;i<count;i++) {
+			StringWriter w = new StringWriter(16384);
+			c.call(w);
+			sum += w.getBuffer().length();
+		}
+		t = System.nanoTime()-t;
+		if(verbose)println("${name.padRight(12)} t = ${(long)(t/1000000)} ms \tpersec = ${(long)(count*1e9/t)} \t(check $sum)");
+	}
+
+	static Map toMap(Order o){
+		List items = new ArrayList(o.items.size());
+		for(Item i: o.items){
+			items.add([sku:i.sku, qty:i.qty, price:i.price, tags:i.tags]);
+		}
+		return [id:o.id, customer:o.customer, status:o.status.name(), items:items];
+	}
+
+	static Order buildOrder(int items){
+		Order o = new Order(id:123456L, customer:'John "Jr" Doe', status:Status.SHIPPED, items:new ArrayList<Item>());
+		for(int i=0;i<items;i++){
+			o.items.add(new Item(sku:"SKU-"+i, qty:i%7+1, price:i*1.25+0.5, tags:['t'+(i%3), 'x']));
+		}
+		return o;
+	}
+
+	static enum Status { NEW, SHIPPED }
+
+	static class Order {
+		long id
+		String customer
+		Status status
+		List<Item> items
+	}
+
+	static class Item {
+		String sku
+		int qty
+		double price
+		List<String> tags
+	}
+}
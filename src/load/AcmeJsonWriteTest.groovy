@@ -0,0 +1,60 @@
+/***/
+//@Grab(group= "org.codehaus.groovy",   module= "groovy-all"   	        , version= "2.4.12")
+
+import groovyx.acme.json.*;
+
+/**
+ * compares throughput of writing json to OutputStream through OutputStreamWriter and through AcmeJsonUtf8WriteHandler
+ * in sequential and parallel modes.
+ * usage: groovy -cp ./build/classes/java/main ./src/load/AcmeJsonWriteTest.groovy [count]
+ */
+@groovy.transform.CompileStatic
+public class AcmeJsonWriteTest {
+	static String record = '{"id":12345,"name":"record name \\u0420\\u0435\\u043a\\u043e\\u0440\\u0434","status":"active","text":"line1\\nline2\\t\\"quoted\\"","score":12.5,"tags":["a","b","c"],"geo":{"lat":1.5,"lon":-2.25}}'
+
+	/** counts bytes only */
+	static class NullOutputStream extends OutputStream {
+		long count = 0;
+		void write(int b){ count++ }
+		void write(byte[] b, int off, int len){ count+=len }
+	}
+
+	public static void main(String[] arg){
+		int count = arg.length>0 ? arg[0] as int : 200;
+		Object data = new AcmeJsonParser().parseText('['+([record]*10000).join(',')+']');
+		for(int round=0;round<2;round++){
+			boolean verbose = round>0; //first round is a warm-up
+			run("writer", count, verbose){OutputStream out->
+				Writer w = new OutputStreamWriter(out, "UTF-8");
+				AcmeJsonOutput.writeJson(data, w);
+			}
+			run("buffered", count, verbose){OutputStream out->
+				Writer w = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), 8192);
+				AcmeJsonOutput.writeJson(data, w);
+			}
+			run("utf8", count, verbose){OutputStream out->
+				AcmeJsonOutput.writeJson(data, out, false);
+			}
+			run("utf8-par", count, verbose){OutputStream out->
+				new AcmeJsonWriter(out, false).setParallel(1000).value(data).getWriter();
+			}
+			run("utf8-ascii", count, verbose){OutputStream out->
+				AcmeJsonUtf8WriteHandler h = new AcmeJsonUtf8WriteHandler(out, false);
+				h.setAsciiOnly(true);
+				new AcmeJsonWriter(h).value(data).getWriter();
+			}
+		}
+	}
+
+	static void run(String name, int count, boolean verbose, Closure c){
+		NullOutputStream out = new NullOutputStream();
+		System.gc();
+		long t = System.nanoTime();
+		for(int i=0;i<count;i++) {
+			c.call(out);
+		}
+		t = System.nanoTime()-t;
+		if(verbose)println("${name.padRight(12)} t = ${(long)(t/1000000)} ms \tMB/sec = ${(long)(out.count*1000.0/t)}");
+	}
+}
+/***/
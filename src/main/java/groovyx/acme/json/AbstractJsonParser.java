@@ -6,6 +6,8 @@ import org.codehaus.groovy.runtime.ResourceGroovyMethods;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
 import java.net.URL;
@@ -36,15 +38,69 @@ public abstract class AbstractJsonParser {
     }
 
     public Object parse(Reader reader) throws AcmeJsonException {
+        return parse(reader, "Reader");
+    }
+
+    /**
+     * parses reader and records flight recorder event with the source type
+     */
+    private Object parse(Reader reader, String source) throws AcmeJsonException {
         if(handler==null)handler=new AcmeJsonBuildHandler();
         if(reader==null)throw new NullPointerException("reader == null");
+        Object event = AcmeJsonFlightRecorder.beginParse();
+        boolean failed = true;
+        try {
+            Object root = doParse(reader);
+            failed = false;
+            return root;
+        }catch(IOException e){
+            throw new AcmeJsonException( e.toString() , e );
+        }finally{
+            if(event!=null)AcmeJsonFlightRecorder.commitParse(event, source, getParseMetrics(), failed);
+        }
+    }
+
+    /**
+     * parses the stream. text parsers read it as utf-8, binary parsers read bytes directly. the stream is not closed.
+     * @param in the source
+     * @return the object returned by handler after parsing
+     * @throws AcmeJsonException if there was a parsing or IO error
+     */
+    public Object parse(InputStream in) throws AcmeJsonException {
+        if(handler==null)handler=new AcmeJsonBuildHandler();
+        if(in==null)throw new NullPointerException("in == null");
+        Object event = AcmeJsonFlightRecorder.beginParse();
+        boolean failed = true;
         try {
-            return doParse(reader);
+            Object root = doParse(in);
+            failed = false;
+            return root;
         }catch(IOException e){
             throw new AcmeJsonException( e.toString() , e );
+        }finally{
+            if(event!=null)AcmeJsonFlightRecorder.commitParse(event, "InputStream", getParseMetrics(), failed);
         }
     }
 
+    /**
+     * returns metrics of the last parse if parser counts them
+     * @return the metrics or null
+     */
+    protected AcmeJsonParserMetrics.Snapshot getParseMetrics() {
+        return null;
+    }
+
+    /**
+     * perform parsing from the stream in descendants. by default reads the stream as utf-8 text with doParse(Reader).
+     * @param in the source
+     * @return the object returned by handler after parsing
+     * @throws AcmeJsonException if there was a parsing error
+     * @throws IOException if IO error occurred
+     */
+    protected Object doParse(InputStream in) throws AcmeJsonException, IOException {
+        return doParse(new InputStreamReader(in, "UTF-8"));
+    }
+
     /**
      * perform json parsing from reader in descendants
      * @param reader that will be used as a json source
@@ -59,7 +115,7 @@ public abstract class AbstractJsonParser {
         if (text == null || text.length() == 0) {
             throw new IllegalArgumentException("The JSON input text should neither be null nor empty.");
         }
-        return parse(new StringReader(text));
+        return parse(new StringReader(text), "String");
     }
 
     public Object parse(File file) throws AcmeJsonException {
@@ -72,7 +128,7 @@ public abstract class AbstractJsonParser {
         try {
             if (charset == null || charset.length() == 0) charset = "UTF-8";
             reader = ResourceGroovyMethods.newReader(file, charset);
-            return parse(reader);
+            return parse(reader, "File");
         } catch(IOException e) {
             throw new AcmeJsonException("Failed to read file `"+file+"`: "+e.getMessage(), e);
         } finally {
@@ -106,7 +162,7 @@ public abstract class AbstractJsonParser {
         try {
             if (charset == null || charset.length() == 0) charset = "UTF-8";
             reader = ResourceGroovyMethods.newReader(url, params, charset);
-            return parse(reader);
+            return parse(reader, "URL");
         } catch(IOException e) {
             throw new AcmeJsonException("Failed to open URL `"+url+"`: "+e.getMessage(), e);
         } finally {
@@ -122,12 +178,45 @@ public abstract class AbstractJsonParser {
      * @return self with initialized handler
      */
     public AbstractJsonParser withFilter(Closure builder){
-        AcmeJsonFilterHandler handler = new AcmeJsonFilterHandler();
+        this.setHandler(AcmeJsonFilterHandler.fromClosure(builder));
+        return this;
+    }
+
+    /**
+     * init handler to be AcmeJsonTeeHandler that passes events of one parse to many branches with their own filters.
+     * the result of parsing is a map of branch name to its result.
+     * @param builder the closure to define branches. see AcmeJsonTeeHandler.Builder for details.
+     * @return self with initialized handler
+     */
+    public AbstractJsonParser withTee(Closure<?> builder){
+        AcmeJsonTeeHandler handler = new AcmeJsonTeeHandler();
+        Object helper = handler.builder();
+        builder.rehydrate(helper, builder.getOwner(), helper).call(helper);
+        this.setHandler(handler);
+        return this;
+    }
+
+    /**
+     * wraps the current handler (AcmeJsonBuildHandler if not set) with AcmeJsonProfileHandler
+     * that reports time spent in the handler by json path at the end of parsing.
+     * @param onReport closure called with AcmeJsonProfileHandler.Report after each parse
+     * @return self with wrapped handler
+     */
+    public AbstractJsonParser withProfile(Closure<?> onReport){
+        if(handler==null)handler=new AcmeJsonBuildHandler();
+        this.handler = new AcmeJsonProfileHandler(handler).setOnReport(onReport);
+        return this;
+    }
+
+    /**
+     * init handler to be AcmeJsonAggregateHandler that computes statistics of values at json paths without building json in memory.
+     * @param builder the closure to define aggregates. see AcmeJsonAggregateHandler.Builder for details.
+     * @return self with initialized handler
+     */
+    public AbstractJsonParser withAggregate(Closure<?> builder){
+        AcmeJsonAggregateHandler handler = new AcmeJsonAggregateHandler();
         Object helper = handler.builder();
-        //init handler through helper
         builder.rehydrate(helper, builder.getOwner(), helper).call(helper);
-        //default delegate is null
-        if(handler.getDelegate()==null)handler.setDelegate(new AcmeJsonNullHandler());
         this.setHandler(handler);
         return this;
     }
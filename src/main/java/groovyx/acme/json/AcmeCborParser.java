@@ -0,0 +1,416 @@
+package groovyx.acme.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * parser of CBOR (RFC 8949) binary data that fires the same events as AcmeJsonParser,
+ * so any AcmeJsonHandler (build, filter, write, bind) could be used with CBOR source,
+ * and CBOR to json conversion is one streaming pass with AcmeJsonWriteHandler.
+ * mapping of CBOR items to json values:
+ * integers - Long or BigDecimal if they do not fit, floats - Double, decimal fractions (tag 4) - BigDecimal,
+ * bignums (tags 2 and 3) - Long or BigDecimal, byte strings - base64url strings, undefined - null,
+ * byte string map keys - base64url strings, other non-string map keys - their string representation. other tags are ignored.
+ * the input must contain exactly one data item nested not deeper than maxDepth.
+ * <pre>{@code
+ *  def data = new AcmeCborParser().parse( bytes )
+ *  new AcmeCborParser(new AcmeJsonWriteHandler(writer)).parse( inputStream )
+ * }</pre>
+ */
+public class AcmeCborParser extends AbstractJsonParser {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int BREAK = 0xFF;
+    private static final BigInteger TWO_64 = BigInteger.ONE.shiftLeft(64);
+
+    private InputStream in;
+    private final byte[] buf = new byte[8192];
+    private int pos = 0;
+    private int limit = 0;
+    private long offset = 0; //stream offset of the buffer start
+    private final JsonPathStack path = new JsonPathStack();
+    private int depth = 0;
+    private int maxDepth = 1000;
+
+    public AcmeCborParser() {}
+
+    public AcmeCborParser(AcmeJsonHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * sets max nesting of arrays, maps and tags. deeper input fails with AcmeJsonException instead of stack overflow.
+     * @param maxDepth max depth, 1000 by default
+     * @return self
+     */
+    public AcmeCborParser setMaxDepth(int maxDepth) {
+        if(maxDepth<1)throw new IllegalArgumentException("maxDepth must be positive: "+maxDepth);
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * parses CBOR data item
+     * @param data the CBOR bytes
+     * @return the object returned by handler after parsing
+     * @throws AcmeJsonException if there was a parsing error
+     */
+    public Object parse(byte[] data) throws AcmeJsonException {
+        return parse(new ByteArrayInputStream(data));
+    }
+
+    @Override
+    public Object parse(File file) throws AcmeJsonException {
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            return parse(in);
+        } catch(IOException e) {
+            throw new AcmeJsonException("Failed to read file `"+file+"`: "+e.getMessage(), e);
+        } finally {
+            if (in != null) {
+                try { in.close(); } catch(IOException e) {}
+            }
+        }
+    }
+
+    @Override
+    public Object parse(File file, String charset) throws AcmeJsonException {
+        return parse(file);
+    }
+
+    @Override
+    protected Object doParse(Reader reader) throws AcmeJsonException {
+        throw new AcmeJsonException("CBOR parser requires binary source: use parse(InputStream), parse(byte[]), or parse(File)");
+    }
+
+    @Override
+    protected Object doParse(InputStream in) throws AcmeJsonException, IOException {
+        this.in = in;
+        this.pos = 0;
+        this.limit = 0;
+        this.offset = 0;
+        this.path.size = 0;
+        this.depth = 0;
+        readValue();
+        if(pos<limit || fill())throw error("Unexpected data after the end of CBOR item");
+        return handler.getRoot();
+    }
+
+    //---------------- events ----------------
+
+    /** reads one data item and fires events for it at the current path */
+    private void readValue() throws IOException {
+        if(++depth>maxDepth)throw error("Too deep nesting: "+depth);
+        int ib = readByte();
+        int info = ib & 0x1F;
+        switch (ib>>>5){
+            case 0:
+                handler.onValue(path, unsigned(readArg(info)));
+                break;
+            case 1:
+                handler.onValue(path, negative(readArg(info)));
+                break;
+            case 2:
+                handler.onValue(path, base64(readBytes(info)));
+                break;
+            case 3:
+                handler.onValue(path, readText(info));
+                break;
+            case 4:
+                readArray(info);
+                break;
+            case 5:
+                readMap(info);
+                break;
+            case 6:
+                long tag = readArg(info);
+                if(tag==2 || tag==3 || tag==4) handler.onValue(path, readTagged(tag));
+                else readValue(); //the value of unknown tag is used as is
+                break;
+            default:
+                handler.onValue(path, readSimple(info));
+        }
+        depth--;
+    }
+
+    private void readArray(int info) throws IOException {
+        handler.onArrayStart(path);
+        if(info==31){
+            for(int i=0; peekByte()!=BREAK; i++){
+                path.push(i, null, false);
+                readValue();
+                path.pop();
+            }
+            pos++;
+        }else{
+            long n = readLength(info);
+            for(int i=0; i<n; i++){
+                path.push(i, null, false);
+                readValue();
+                path.pop();
+            }
+        }
+        handler.onArrayEnd(path);
+    }
+
+    private void readMap(int info) throws IOException {
+        handler.onObjectStart(path);
+        if(info==31){
+            for(int i=0; peekByte()!=BREAK; i++){
+                path.push(i, readKey(), true);
+                readValue();
+                path.pop();
+            }
+            pos++;
+        }else{
+            long n = readLength(info);
+            for(int i=0; i<n; i++){
+                path.push(i, readKey(), true);
+                readValue();
+                path.pop();
+            }
+        }
+        handler.onObjectEnd(path);
+    }
+
+    private String readKey() throws IOException {
+        int ib = peekByte();
+        if(ib>>>5==3){
+            pos++;
+            return readText(ib & 0x1F);
+        }
+        if(ib>>>5==2){
+            pos++;
+            return base64(readBytes(ib & 0x1F));
+        }
+        return String.valueOf(readPlain());
+    }
+
+    private static String base64(byte[] b){
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(b);
+    }
+
+    //---------------- plain values ----------------
+
+    /** reads data item as java value without events. used for keys and tag content */
+    private Object readPlain() throws IOException {
+        if(++depth>maxDepth)throw error("Too deep nesting: "+depth);
+        Object v = readPlainItem();
+        depth--;
+        return v;
+    }
+
+    private Object readPlainItem() throws IOException {
+        int ib = readByte();
+        int info = ib & 0x1F;
+        switch (ib>>>5){
+            case 0: return unsigned(readArg(info));
+            case 1: return negative(readArg(info));
+            case 2: return readBytes(info);
+            case 3: return readText(info);
+            case 4: {
+                List<Object> list = new ArrayList<>();
+                if(info==31){
+                    while(peekByte()!=BREAK)list.add(readPlain());
+                    pos++;
+                }else{
+                    for(long i=readLength(info); i>0; i--)list.add(readPlain());
+                }
+                return list;
+            }
+            case 5: {
+                Map<String,Object> map = new LinkedHashMap<>();
+                if(info==31){
+                    while(peekByte()!=BREAK)map.put(readKey(), readPlain());
+                    pos++;
+                }else{
+                    for(long i=readLength(info); i>0; i--)map.put(readKey(), readPlain());
+                }
+                return map;
+            }
+            case 6: {
+                long tag = readArg(info);
+                if(tag==2 || tag==3 || tag==4) return readTagged(tag);
+                return readPlain();
+            }
+            default:
+                return readSimple(info);
+        }
+    }
+
+    /** reads content of bignum (2, 3) or decimal fraction (4) tags */
+    private Object readTagged(long tag) throws IOException {
+        Object v = readPlain();
+        if(tag==4){
+            if(v instanceof List && ((List)v).size()==2){
+                Object exp = ((List)v).get(0);
+                Object mantissa = ((List)v).get(1);
+                if(exp instanceof Long){
+                    BigInteger m = mantissa instanceof Long ? BigInteger.valueOf((Long)mantissa) : mantissa instanceof BigDecimal ? ((BigDecimal)mantissa).toBigIntegerExact() : null;
+                    long scale = -(Long)exp;
+                    if(m!=null && scale>=Integer.MIN_VALUE && scale<=Integer.MAX_VALUE) return new BigDecimal(m, (int)scale);
+                }
+            }
+            throw error("Wrong decimal fraction: "+v);
+        }
+        if(!(v instanceof byte[]))throw error("Bignum content must be byte string but got: "+v);
+        BigInteger n = new BigInteger(1, (byte[])v);
+        if(tag==3)n = n.not(); //-1 - n
+        return n.bitLength()<64 ? (Object)n.longValue() : new BigDecimal(n);
+    }
+
+    private Object readSimple(int info) throws IOException {
+        switch (info){
+            case 20: return Boolean.FALSE;
+            case 21: return Boolean.TRUE;
+            case 22:
+            case 23: return null;
+            case 24: return (long)readByte();
+            case 25: return halfToDouble((readByte()<<8) | readByte());
+            case 26: return (double)Float.intBitsToFloat((int)readUInt(4));
+            case 27: return Double.longBitsToDouble(readUInt(8));
+            case 31: throw error("Unexpected break");
+            default:
+                if(info<20)return (long)info;
+                throw error("Wrong simple value: "+info);
+        }
+    }
+
+    private static double halfToDouble(int h){
+        int exp = (h>>>10) & 0x1F;
+        int mant = h & 0x3FF;
+        double v;
+        if(exp==0) v = Math.scalb((double)mant, -24);
+        else if(exp==31) v = mant==0 ? Double.POSITIVE_INFINITY : Double.NaN;
+        else v = Math.scalb((double)(mant + 1024), exp-25);
+        return (h & 0x8000)!=0 ? -v : v;
+    }
+
+    private static Object unsigned(long v){
+        return v>=0 ? (Object)v : new BigDecimal(BigInteger.valueOf(v).add(TWO_64));
+    }
+
+    private static Object negative(long v){
+        return v>=0 ? (Object)(-1-v) : new BigDecimal(BigInteger.valueOf(v).add(TWO_64).not());
+    }
+
+    //---------------- bytes ----------------
+
+    private long readArg(int info) throws IOException {
+        if(info<24)return info;
+        switch (info){
+            case 24: return readByte();
+            case 25: return readUInt(2);
+            case 26: return readUInt(4);
+            case 27: return readUInt(8);
+            default: throw error("Wrong additional info: "+info);
+        }
+    }
+
+    private long readLength(int info) throws IOException {
+        long n = readArg(info);
+        if(n<0 || n>Integer.MAX_VALUE)throw error("Too large length: "+Long.toUnsignedString(n));
+        return n;
+    }
+
+    private long readUInt(int bytes) throws IOException {
+        long v = 0;
+        for(int i=0;i<bytes;i++)v = (v<<8) | readByte();
+        return v;
+    }
+
+    private byte[] readBytes(int info) throws IOException {
+        if(info==31){
+            java.io.ByteArrayOutputStream b = new java.io.ByteArrayOutputStream();
+            while(peekByte()!=BREAK){
+                byte[] chunk = readFully(readChunkLength(2));
+                b.write(chunk, 0, chunk.length);
+            }
+            pos++;
+            return b.toByteArray();
+        }
+        return readFully((int)readLength(info));
+    }
+
+    private String readText(int info) throws IOException {
+        if(info==31){
+            StringBuilder sb = new StringBuilder();
+            while(peekByte()!=BREAK){
+                sb.append(new String(readFully(readChunkLength(3)), UTF8));
+            }
+            pos++;
+            return sb.toString();
+        }
+        int len = (int)readLength(info);
+        if(limit-pos>=len){
+            String s = new String(buf, pos, len, UTF8);
+            pos += len;
+            return s;
+        }
+        return new String(readFully(len), UTF8);
+    }
+
+    /** reads header of a chunk of indefinite length string: definite length string of the same major type (rfc 8949 3.2.3) */
+    private int readChunkLength(int major) throws IOException {
+        int ib = readByte();
+        if(ib>>>5!=major || (ib & 0x1F)==31)throw error(major==2 ? "Wrong chunk of byte string" : "Wrong chunk of text string");
+        return (int)readLength(ib & 0x1F);
+    }
+
+    /** reads len bytes. the length comes from input, so the array grows with the data read and not allocated at once */
+    private byte[] readFully(int len) throws IOException {
+        byte[] b = new byte[Math.min(len, 64*1024)];
+        int off = 0;
+        while(off<len){
+            if(pos==limit && !fill())throw eof();
+            if(off==b.length)b = Arrays.copyOf(b, (int)Math.min(len, b.length*2L));
+            int n = Math.min(Math.min(len-off, limit-pos), b.length-off);
+            System.arraycopy(buf, pos, b, off, n);
+            pos += n;
+            off += n;
+        }
+        return b;
+    }
+
+    private int readByte() throws IOException {
+        if(pos==limit && !fill())throw eof();
+        return buf[pos++] & 0xFF;
+    }
+
+    private int peekByte() throws IOException {
+        if(pos==limit && !fill())throw eof();
+        return buf[pos] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        offset += limit;
+        pos = 0;
+        limit = 0;
+        int n = in.read(buf, 0, buf.length);
+        if(n<=0)return false;
+        limit = n;
+        return true;
+    }
+
+    private EOFException eof(){
+        return new EOFException("End of CBOR input at byte "+(offset+pos)+" path "+path);
+    }
+
+    private AcmeJsonException error(String message){
+        return new AcmeJsonException(message+" at byte "+(offset+pos)+" path "+path);
+    }
+}
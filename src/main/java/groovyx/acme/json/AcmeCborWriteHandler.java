@@ -0,0 +1,260 @@
+package groovyx.acme.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * json handler that writes json events as CBOR (RFC 8949) to output stream.
+ * objects and arrays from events are written with indefinite length, values of the events (including Map and List
+ * substituted by filters) are written with definite length.
+ * integers are written in the shortest form, BigDecimal as decimal fraction (tag 4), Double as float32 if it's exact, otherwise as float64.
+ * the buffered bytes are written to the stream at the end of the root value, or by {@link #flush()}.
+ * <pre>{@code
+ *  //json to cbor in one streaming pass
+ *  new AcmeJsonParser(new AcmeCborWriteHandler(out)).parse(reader)
+ * }</pre>
+ */
+public class AcmeCborWriteHandler implements AcmeJsonHandler {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final BigInteger MINUS_ONE = BigInteger.valueOf(-1);
+
+    private final OutputStream out;
+    private final byte[] buf = new byte[8192];
+    private int pos = 0;
+
+    /**
+     * @param out where to write CBOR bytes
+     */
+    public AcmeCborWriteHandler(OutputStream out){
+        this.out = out;
+    }
+
+    @Override
+    public void onObjectStart(AbstractJsonPath jpath) throws IOException {
+        writeKey(jpath);
+        writeByte(0xBF);
+    }
+
+    @Override
+    public void onObjectEnd(AbstractJsonPath jpath) throws IOException {
+        writeByte(0xFF);
+        if(jpath.size()==0)flush();
+    }
+
+    @Override
+    public void onArrayStart(AbstractJsonPath jpath) throws IOException {
+        writeKey(jpath);
+        writeByte(0x9F);
+    }
+
+    @Override
+    public void onArrayEnd(AbstractJsonPath jpath) throws IOException {
+        writeByte(0xFF);
+        if(jpath.size()==0)flush();
+    }
+
+    @Override
+    public void onValue(AbstractJsonPath jpath, Object value) throws IOException {
+        writeKey(jpath);
+        writeValue(value);
+        if(jpath.size()==0)flush();
+    }
+
+    @Override
+    public OutputStream getRoot() {
+        return out;
+    }
+
+    /**
+     * writes the value as root CBOR data item and flushes the stream
+     * @param value Map, List, array, or plain value
+     * @throws IOException if io error occurred
+     */
+    public void write(Object value) throws IOException {
+        writeValue(value);
+        flush();
+    }
+
+    /**
+     * writes buffered bytes and flushes the stream
+     * @throws IOException if io error occurred
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    private void writeKey(AbstractJsonPath jpath) throws IOException {
+        if(jpath.size()>0 && jpath.peek().isKey())writeText(jpath.peek().getKey());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(Object o) throws IOException {
+        if(o==null){
+            writeByte(0xF6);
+        }else if(o instanceof String){
+            writeText((String)o);
+        }else if(o instanceof Long || o instanceof Integer || o instanceof Short || o instanceof Byte){
+            writeLong(((Number)o).longValue());
+        }else if(o instanceof Boolean){
+            writeByte((Boolean)o ? 0xF5 : 0xF4);
+        }else if(o instanceof Double || o instanceof Float){
+            writeDouble(((Number)o).doubleValue());
+        }else if(o instanceof BigDecimal){
+            BigDecimal d = (BigDecimal)o;
+            if(d.scale()==0){
+                writeBigInteger(d.unscaledValue());
+            }else{
+                writeByte(0xC4);
+                writeByte(0x82);
+                writeLong(-(long)d.scale());
+                writeBigInteger(d.unscaledValue());
+            }
+        }else if(o instanceof BigInteger){
+            writeBigInteger((BigInteger)o);
+        }else if(o instanceof CharSequence){
+            writeText(o.toString());
+        }else if(o instanceof byte[]){
+            byte[] b = (byte[])o;
+            writeHeader(2, b.length);
+            writeBytes(b);
+        }else if(o instanceof Map){
+            Map<Object,Object> m = (Map<Object,Object>)o;
+            writeHeader(5, m.size());
+            for(Map.Entry<Object,Object> e: m.entrySet()){
+                writeText(String.valueOf(e.getKey()));
+                writeValue(e.getValue());
+            }
+        }else if(o instanceof Collection){
+            Collection<Object> c = (Collection<Object>)o;
+            writeHeader(4, c.size());
+            for(Object i: c)writeValue(i);
+        }else if(o instanceof Iterable || o instanceof Iterator){
+            Iterator<Object> i = o instanceof Iterator ? (Iterator<Object>)o : ((Iterable<Object>)o).iterator();
+            writeByte(0x9F);
+            while(i.hasNext())writeValue(i.next());
+            writeByte(0xFF);
+        }else if(o.getClass().isArray()){
+            int n = Array.getLength(o);
+            writeHeader(4, n);
+            for(int i=0;i<n;i++)writeValue(Array.get(o, i));
+        }else if(o instanceof Number){
+            writeDouble(((Number)o).doubleValue());
+        }else{
+            writeText(o.toString());
+        }
+    }
+
+    private void writeLong(long v) throws IOException {
+        if(v>=0) writeHeader(0, v);
+        else writeHeader(1, -1-v);
+    }
+
+    private void writeBigInteger(BigInteger v) throws IOException {
+        if(v.bitLength()<64){
+            writeLong(v.longValue());
+            return;
+        }
+        boolean negative = v.signum()<0;
+        BigInteger n = negative ? MINUS_ONE.subtract(v) : v;
+        if(n.bitLength()<=64){
+            writeHeader(negative ? 1 : 0, n.longValue()); //unsigned 64 bit
+            return;
+        }
+        byte[] b = n.toByteArray();
+        int off = b[0]==0 ? 1 : 0; //sign byte
+        writeByte(negative ? 0xC3 : 0xC2);
+        writeHeader(2, b.length-off);
+        for(int i=off;i<b.length;i++)writeByte(b[i]);
+    }
+
+    private void writeDouble(double d) throws IOException {
+        float f = (float)d;
+        if(f==d || Double.isNaN(d)){
+            writeByte(0xFA);
+            writeUInt(Float.floatToIntBits(f), 4);
+        }else{
+            writeByte(0xFB);
+            writeUInt(Double.doubleToLongBits(d), 8);
+        }
+    }
+
+    private void writeText(String s) throws IOException {
+        int n = s.length();
+        boolean ascii = true;
+        for(int i=0;i<n;i++){
+            if(s.charAt(i)>=0x80){
+                ascii = false;
+                break;
+            }
+        }
+        if(!ascii){
+            byte[] b = s.getBytes(UTF8);
+            writeHeader(3, b.length);
+            writeBytes(b);
+            return;
+        }
+        writeHeader(3, n);
+        for(int i=0;i<n;){
+            if(pos==buf.length)flushBuffer();
+            int end = Math.min(n, i+buf.length-pos);
+            for(;i<end;i++)buf[pos++] = (byte)s.charAt(i);
+        }
+    }
+
+    /** writes major type with the argument in the shortest form. the argument is unsigned */
+    private void writeHeader(int major, long n) throws IOException {
+        int m = major<<5;
+        if(n>=0 && n<24){
+            writeByte(m | (int)n);
+        }else if(n>=0 && n<=0xFF){
+            writeByte(m | 24);
+            writeByte((int)n);
+        }else if(n>=0 && n<=0xFFFF){
+            writeByte(m | 25);
+            writeUInt(n, 2);
+        }else if(n>=0 && n<=0xFFFFFFFFL){
+            writeByte(m | 26);
+            writeUInt(n, 4);
+        }else{
+            writeByte(m | 27);
+            writeUInt(n, 8);
+        }
+    }
+
+    private void writeUInt(long v, int bytes) throws IOException {
+        if(pos+bytes>buf.length)flushBuffer();
+        for(int i=(bytes-1)*8;i>=0;i-=8)buf[pos++] = (byte)(v>>>i);
+    }
+
+    private void writeByte(int b) throws IOException {
+        if(pos==buf.length)flushBuffer();
+        buf[pos++] = (byte)b;
+    }
+
+    private void writeBytes(byte[] b) throws IOException {
+        if(b.length>buf.length-pos){
+            flushBuffer();
+            if(b.length>buf.length){
+                out.write(b);
+                return;
+            }
+        }
+        System.arraycopy(b, 0, buf, pos, b.length);
+        pos += b.length;
+    }
+
+    private void flushBuffer() throws IOException {
+        if(pos>0){
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+}
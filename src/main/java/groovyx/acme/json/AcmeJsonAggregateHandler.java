@@ -0,0 +1,597 @@
+package groovyx.acme.json;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * json handler that computes statistics (count, sum, min, max, approximate distinct and quantiles) of values at json paths
+ * in one streaming pass without building json in memory.
+ * the root returned after parsing is a map of aggregate name to result. grouped aggregates return map of group key to result.
+ * <pre>{@code
+ *  def stats = new AcmeJsonParser().withAggregate{
+ *      sum('$.orders[*].amount').by('region').named('amountByRegion')
+ *      count('$.orders[*]')
+ *      quantiles('$.orders[*].amount', 0.5, 0.99)
+ *  }.parseText(json)
+ *  assert stats.amountByRegion.EU == 123
+ * }</pre>
+ */
+public class AcmeJsonAggregateHandler implements AcmeJsonHandler {
+    static final int COUNT     = 0;
+    static final int SUM       = 1;
+    static final int MIN       = 2;
+    static final int MAX       = 3;
+    static final int DISTINCT  = 4;
+    static final int QUANTILES = 5;
+    private static final String[] NAMES = {"count", "sum", "min", "max", "distinct", "quantiles"};
+
+    /** group key used when number of groups exceeds maxGroups */
+    public static final String OTHER_GROUP = "<other>";
+
+    protected ArrayList<Aggregate> aggregates = new ArrayList<>();
+    protected int maxGroups = 10000;
+
+    public AcmeJsonAggregateHandler(){}
+
+    /**
+     * adds aggregate of the values matching json path
+     * @param function one of: count, sum, min, max, distinct, quantiles
+     * @param path json path see: JsonPathMatcher
+     * @return the new aggregate to be configured
+     */
+    public Aggregate addAggregate(String function, String path){
+        int f = Arrays.asList(NAMES).indexOf(function);
+        if(f<0)throw new IllegalArgumentException("Unsupported aggregate function `"+function+"`. Expected one of: "+Arrays.toString(NAMES));
+        Aggregate a = new Aggregate(f, path);
+        aggregates.add(a);
+        return a;
+    }
+
+    /**
+     * sets maximal number of groups per aggregate. values of the groups over this limit are collected into OTHER_GROUP.
+     * @param maxGroups maximal number of groups
+     * @return self
+     */
+    public AcmeJsonAggregateHandler setMaxGroups(int maxGroups){
+        this.maxGroups = maxGroups;
+        return this;
+    }
+
+    @Override
+    public void onObjectStart(AbstractJsonPath jpath) throws IOException {
+        for(int i=0;i<aggregates.size();i++){
+            aggregates.get(i).onContainerStart(jpath, true);
+        }
+    }
+
+    @Override
+    public void onObjectEnd(AbstractJsonPath jpath) throws IOException {
+        for(int i=0;i<aggregates.size();i++){
+            aggregates.get(i).onObjectEnd(jpath);
+        }
+    }
+
+    @Override
+    public void onArrayStart(AbstractJsonPath jpath) throws IOException {
+        for(int i=0;i<aggregates.size();i++){
+            aggregates.get(i).onContainerStart(jpath, false);
+        }
+    }
+
+    @Override
+    public void onArrayEnd(AbstractJsonPath jpath) throws IOException {
+    }
+
+    @Override
+    public void onValue(AbstractJsonPath jpath, Object value) throws IOException {
+        for(int i=0;i<aggregates.size();i++){
+            aggregates.get(i).onValue(jpath, value);
+        }
+    }
+
+    /**
+     * returns map of aggregate name to its result
+     * @return results of all aggregates
+     */
+    @Override
+    public Map<String,Object> getRoot() {
+        LinkedHashMap<String,Object> result = new LinkedHashMap<>();
+        for(Aggregate a: aggregates){
+            result.put(a.getName(), a.getResult());
+        }
+        return result;
+    }
+
+    public Builder builder(){
+        return new Builder();
+    }
+
+    /**
+     * one aggregate function over values matching json path with optional grouping by sibling key
+     */
+    public final class Aggregate{
+        final int function;
+        final String path;
+        final JsonPathMatcher matcher;
+        String name;
+        String groupBy = null;
+        double[] quantiles = {0.5, 0.9, 0.99};
+        int compression = 100;
+
+        Accumulator total = null;
+        LinkedHashMap<String,Accumulator> groups = null;
+        //group-by state per depth of the measured values: key found in current object and values waiting for the key
+        private String[] depthKey = new String[8];
+        private boolean[] depthKeySet = new boolean[8];
+        private Object[][] pending = new Object[8][];
+        private int[] pendingSize = new int[8];
+
+        Aggregate(int function, String path){
+            this.function = function;
+            this.path = path;
+            this.matcher = new JsonPathMatcher(path);
+            this.name = NAMES[function]+"("+path+")";
+        }
+
+        /**
+         * sets the name of aggregate in result map. default name is `function(path)`
+         * @param name the name of aggregate in result
+         * @return self
+         */
+        public Aggregate named(String name){
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * groups values by the sibling key of the measured value. the key could be located before or after the value in json object.
+         * @param key the key in the same json object as measured value. its value (toString) is used as a group key
+         * @return self
+         */
+        public Aggregate by(String key){
+            this.groupBy = key;
+            this.groups = new LinkedHashMap<>();
+            return this;
+        }
+
+        /**
+         * sets quantiles to compute for `quantiles` function
+         * @param q quantiles in range 0..1
+         * @return self
+         */
+        public Aggregate at(double ... q){
+            this.quantiles = q;
+            return this;
+        }
+
+        public String getName(){
+            return name;
+        }
+
+        /**
+         * returns aggregated result: the value or map of group key to value if grouping is defined
+         * @return result
+         */
+        public Object getResult(){
+            if(groups==null) return total==null ? emptyResult() : total.result(this);
+            LinkedHashMap<String,Object> result = new LinkedHashMap<>();
+            for(Map.Entry<String,Accumulator> e: groups.entrySet()){
+                result.put(e.getKey(), e.getValue().result(this));
+            }
+            return result;
+        }
+
+        private Object emptyResult(){
+            if(function==COUNT || function==DISTINCT) return 0L;
+            if(function==QUANTILES) return new LinkedHashMap<Double,Double>();
+            return null;
+        }
+
+        private Accumulator newAccumulator(){
+            switch (function){
+                case DISTINCT:  return new HyperLogLog();
+                case QUANTILES: return new QuantileDigest(compression);
+                default:        return new Accumulator();
+            }
+        }
+
+        private void add(Object value){
+            if(total==null)total=newAccumulator();
+            total.add(value);
+        }
+
+        private void add(String group, Object value){
+            Accumulator a = groups.get(group);
+            if(a==null){
+                if(groups.size()>=maxGroups){
+                    group = OTHER_GROUP;
+                    a = groups.get(group);
+                }
+                if(a==null){
+                    a = newAccumulator();
+                    groups.put(group, a);
+                }
+            }
+            a.add(value);
+        }
+
+        private void ensureDepth(int d){
+            if(d>=depthKey.length){
+                int newLength = Math.max(d+1, depthKey.length*2);
+                depthKey = Arrays.copyOf(depthKey, newLength);
+                depthKeySet = Arrays.copyOf(depthKeySet, newLength);
+                pending = Arrays.copyOf(pending, newLength);
+                pendingSize = Arrays.copyOf(pendingSize, newLength);
+            }
+        }
+
+        void onContainerStart(AbstractJsonPath jpath, boolean isObject){
+            if(function==COUNT && matcher.matches(jpath)){
+                measure(jpath, null);
+            }
+            if(groupBy!=null && isObject){
+                //members of the new object will be located at the depth size+1
+                int d = jpath.size()+1;
+                ensureDepth(d);
+                depthKey[d] = null;
+                depthKeySet[d] = false;
+                pendingSize[d] = 0;
+            }
+        }
+
+        void onObjectEnd(AbstractJsonPath jpath){
+            if(groupBy==null)return;
+            int d = jpath.size()+1;
+            if(d<pendingSize.length && pendingSize[d]>0){
+                //the group key was not found before the values. flush them with the found key or with null group
+                Object[] p = pending[d];
+                String key = depthKey[d];
+                for(int i=0;i<pendingSize[d];i++){
+                    add(key, p[i]);
+                    p[i] = null;
+                }
+                pendingSize[d] = 0;
+            }
+        }
+
+        void onValue(AbstractJsonPath jpath, Object value){
+            if(groupBy!=null){
+                int d = jpath.size();
+                if(d>0 && jpath.peek().isKey() && groupBy.equals(jpath.peek().getKey())){
+                    ensureDepth(d);
+                    depthKey[d] = value==null ? null : value.toString();
+                    depthKeySet[d] = true;
+                }
+            }
+            if(matcher.matches(jpath)){
+                measure(jpath, value);
+            }
+        }
+
+        private void measure(AbstractJsonPath jpath, Object value){
+            if(groupBy==null){
+                add(value);
+                return;
+            }
+            int d = jpath.size();
+            ensureDepth(d);
+            if(d==0 || !jpath.peek().isKey()){
+                //value is not a member of an object
+                add(null, value);
+            }else if(depthKeySet[d]){
+                add(depthKey[d], value);
+            }else{
+                Object[] p = pending[d];
+                if(p==null) p = pending[d] = new Object[4];
+                else if(pendingSize[d]==p.length) p = pending[d] = Arrays.copyOf(p, p.length*2);
+                p[pendingSize[d]++] = value;
+            }
+        }
+    }
+
+    /**
+     * count/sum/min/max accumulator with primitive fields. sum, min, and max are exact while values are long.
+     */
+    static class Accumulator{
+        long count = 0;
+        long longSum = 0;
+        double doubleSum = 0;
+        boolean exact = true; //all numbers are long and sum did not overflow
+        long longMin = Long.MAX_VALUE;
+        long longMax = Long.MIN_VALUE;
+        double doubleMin = Double.POSITIVE_INFINITY;
+        double doubleMax = Double.NEGATIVE_INFINITY;
+        long numbers = 0;
+
+        void add(Object value){
+            count++;
+            if(value instanceof Number){
+                numbers++;
+                if(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte){
+                    long v = ((Number) value).longValue();
+                    if(exact){
+                        long r = longSum + v;
+                        //overflow if both arguments have the opposite sign of the result
+                        if(((longSum ^ r) & (v ^ r)) < 0) exact = false;
+                        else longSum = r;
+                    }
+                    doubleSum += v;
+                    if(v<longMin)longMin=v;
+                    if(v>longMax)longMax=v;
+                    if(v<doubleMin)doubleMin=v;
+                    if(v>doubleMax)doubleMax=v;
+                }else{
+                    double v = ((Number) value).doubleValue();
+                    exact = false;
+                    doubleSum += v;
+                    if(v<doubleMin)doubleMin=v;
+                    if(v>doubleMax)doubleMax=v;
+                }
+            }
+        }
+
+        Object result(Aggregate a){
+            switch (a.function){
+                case COUNT: return count;
+                case SUM:
+                    if(numbers==0) return 0L;
+                    if(exact) return longSum;
+                    return BigDecimal.valueOf(doubleSum);
+                case MIN:
+                    if(numbers==0) return null;
+                    if(longMin!=Long.MAX_VALUE && longMin==doubleMin) return longMin;
+                    return BigDecimal.valueOf(doubleMin);
+                case MAX:
+                    if(numbers==0) return null;
+                    if(longMax!=Long.MIN_VALUE && longMax==doubleMax) return longMax;
+                    return BigDecimal.valueOf(doubleMax);
+                default:
+                    throw new IllegalStateException("unexpected function "+a.function);
+            }
+        }
+    }
+
+    /**
+     * approximate count of distinct values (HyperLogLog with 4096 registers, about 1.6% standard error)
+     */
+    static class HyperLogLog extends Accumulator{
+        private static final int P = 12;
+        private static final int M = 1 << P;
+        private final byte[] registers = new byte[M];
+
+        @Override
+        void add(Object value){
+            long h = hash(value);
+            int idx = (int)(h >>> (64 - P));
+            //rank of the first set bit in the remaining bits
+            int rank = Long.numberOfLeadingZeros((h << P) | (1L << (P - 1))) + 1;
+            if(rank>registers[idx]) registers[idx] = (byte) rank;
+        }
+
+        @Override
+        Object result(Aggregate a){
+            double sum = 0;
+            int zeros = 0;
+            for(int i=0;i<M;i++){
+                sum += 1.0 / (1L << registers[i]);
+                if(registers[i]==0)zeros++;
+            }
+            double alpha = 0.7213 / (1 + 1.079 / M);
+            double estimate = alpha * M * M / sum;
+            if(estimate <= 2.5 * M && zeros > 0){
+                //small range correction: linear counting
+                estimate = M * Math.log((double) M / zeros);
+            }
+            return Math.round(estimate);
+        }
+
+        static long hash(Object value){
+            if(value==null) return mix(0x9E3779B97F4A7C15L);
+            String s = value instanceof BigDecimal ? ((BigDecimal) value).stripTrailingZeros().toPlainString() : value.toString();
+            //64-bit FNV-1a over chars followed by finalization mix
+            long h = 0xcbf29ce484222325L;
+            for(int i=0;i<s.length();i++){
+                h ^= s.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            return mix(h);
+        }
+
+        private static long mix(long h){
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+
+    /**
+     * approximate quantiles with bounded memory (merging t-digest)
+     */
+    static class QuantileDigest extends Accumulator{
+        private final int compression;
+        private double[] means;
+        private double[] weights;
+        private int size = 0;
+        private final double[] buffer;
+        private int buffered = 0;
+        private double totalWeight = 0;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        QuantileDigest(int compression){
+            this.compression = compression;
+            this.means = new double[2*compression];
+            this.weights = new double[2*compression];
+            this.buffer = new double[8*compression];
+        }
+
+        @Override
+        void add(Object value){
+            if(!(value instanceof Number))return;
+            double v = ((Number) value).doubleValue();
+            if(Double.isNaN(v))return;
+            if(buffered==buffer.length)merge();
+            buffer[buffered++] = v;
+            if(v<min)min=v;
+            if(v>max)max=v;
+        }
+
+        private void merge(){
+            if(buffered==0)return;
+            Arrays.sort(buffer, 0, buffered);
+            double[] nm = new double[size+buffered];
+            double[] nw = new double[size+buffered];
+            //merge sorted centroids with sorted buffer
+            int i=0, j=0, n=0;
+            while(i<size || j<buffered){
+                if(j>=buffered || (i<size && means[i]<=buffer[j])){
+                    nm[n]=means[i]; nw[n]=weights[i]; i++;
+                }else{
+                    nm[n]=buffer[j]; nw[n]=1; j++;
+                }
+                n++;
+            }
+            totalWeight += buffered;
+            buffered = 0;
+            //compress neighbours while centroid weight is under the limit defined by the quantile position
+            int out = 0;
+            double soFar = 0;
+            double curMean = nm[0];
+            double curWeight = nw[0];
+            for(int k=1;k<n;k++){
+                double proposed = curWeight + nw[k];
+                double q = (soFar + proposed / 2) / totalWeight;
+                double limit = 4 * totalWeight * q * (1 - q) / compression;
+                if(proposed <= Math.max(1, limit)){
+                    curMean += (nm[k] - curMean) * nw[k] / proposed;
+                    curWeight = proposed;
+                }else{
+                    out = emit(out, curMean, curWeight);
+                    soFar += curWeight;
+                    curMean = nm[k];
+                    curWeight = nw[k];
+                }
+            }
+            out = emit(out, curMean, curWeight);
+            size = out;
+        }
+
+        private int emit(int idx, double mean, double weight){
+            if(idx==means.length){
+                means = Arrays.copyOf(means, idx*2);
+                weights = Arrays.copyOf(weights, idx*2);
+            }
+            means[idx] = mean;
+            weights[idx] = weight;
+            return idx+1;
+        }
+
+        double quantile(double q){
+            merge();
+            if(size==0)return Double.NaN;
+            if(size==1)return means[0];
+            double target = q * totalWeight;
+            double cumulative = 0;
+            for(int i=0;i<size;i++){
+                double center = cumulative + weights[i] / 2;
+                if(target < center){
+                    if(i==0){
+                        return min + (means[0] - min) * target / center;
+                    }
+                    double prevCenter = cumulative - weights[i-1] / 2;
+                    return means[i-1] + (means[i] - means[i-1]) * (target - prevCenter) / (center - prevCenter);
+                }
+                cumulative += weights[i];
+            }
+            double lastCenter = totalWeight - weights[size-1] / 2;
+            if(target <= lastCenter || totalWeight == lastCenter) return means[size-1];
+            return means[size-1] + (max - means[size-1]) * (target - lastCenter) / (totalWeight - lastCenter);
+        }
+
+        @Override
+        Object result(Aggregate a){
+            LinkedHashMap<Double,Double> result = new LinkedHashMap<>();
+            for(double q: a.quantiles){
+                result.put(q, quantile(q));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * helper class to support aggregates definition in closure
+     */
+    public final class Builder{
+        /**
+         * count of values, objects, and arrays matching path
+         * @param path json path see: JsonPathMatcher
+         * @return aggregate that could be grouped with `by(key)` or renamed with `named(name)`
+         */
+        public Aggregate count(String path){
+            return addAggregate("count", path);
+        }
+
+        /**
+         * sum of numbers matching path
+         * @param path json path see: JsonPathMatcher
+         * @return aggregate that could be grouped with `by(key)` or renamed with `named(name)`
+         */
+        public Aggregate sum(String path){
+            return addAggregate("sum", path);
+        }
+
+        /**
+         * minimal number matching path
+         * @param path json path see: JsonPathMatcher
+         * @return aggregate that could be grouped with `by(key)` or renamed with `named(name)`
+         */
+        public Aggregate min(String path){
+            return addAggregate("min", path);
+        }
+
+        /**
+         * maximal number matching path
+         * @param path json path see: JsonPathMatcher
+         * @return aggregate that could be grouped with `by(key)` or renamed with `named(name)`
+         */
+        public Aggregate max(String path){
+            return addAggregate("max", path);
+        }
+
+        /**
+         * approximate count of distinct values matching path
+         * @param path json path see: JsonPathMatcher
+         * @return aggregate that could be grouped with `by(key)` or renamed with `named(name)`
+         */
+        public Aggregate distinct(String path){
+            return addAggregate("distinct", path);
+        }
+
+        /**
+         * approximate quantiles of numbers matching path. result is a map of quantile to value.
+         * @param path json path see: JsonPathMatcher
+         * @param q quantiles to compute in range 0..1. default: 0.5, 0.9, 0.99
+         * @return aggregate that could be grouped with `by(key)` or renamed with `named(name)`
+         */
+        public Aggregate quantiles(String path, double ... q){
+            Aggregate a = addAggregate("quantiles", path);
+            if(q.length>0) a.at(q);
+            return a;
+        }
+
+        /**
+         * sets maximal number of groups per aggregate
+         * @param max maximal number of groups
+         */
+        public void maxGroups(int max){
+            setMaxGroups(max);
+        }
+    }
+}
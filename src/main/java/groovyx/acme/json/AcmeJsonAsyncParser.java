@@ -0,0 +1,301 @@
+package groovyx.acme.json;
+
+import java.io.CharArrayReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * parses many independent documents concurrently and returns CompletableFuture of each result.
+ * at most maxConcurrency parses run at the same time, the others wait in the queue without holding a thread.
+ * parsers are reused between tasks with {@link AcmeJsonParser#reset(AcmeJsonHandler)}, so each task gets a configured parser
+ * with warm buffers. files up to 1MB are read at once into reused byte and char buffers, larger files are streamed.
+ * <br>by default the tasks run on virtual threads on java 21+ with max 256 parses at a time,
+ * on older java in a daemon pool with a thread per processor. close the parser to stop the default executor.
+ * <pre>{@code
+ *  def parser = new AcmeJsonAsyncParser().setParserFactory{ new AcmeJsonParser().setLenient(true) }
+ *  parser.parseAll(paths).thenAccept{ Map<Path,Object> results-> ... }
+ *  parser.parseAsync(file){ new AcmeJsonAggregateHandler() }.get()
+ *  parser.close()
+ * }</pre>
+ */
+public class AcmeJsonAsyncParser implements Closeable {
+    private static final int MAX_READ = 1024*1024; //max file size to read at once into the reused buffers
+
+    protected volatile Executor executor = null;
+    protected int maxConcurrency = 0;
+    protected Callable<? extends AcmeJsonParser> parserFactory = null;
+    private ExecutorService ownExecutor = null; //default executor to stop in close
+
+    private final ConcurrentLinkedQueue<Task> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Slot> slots = new ConcurrentLinkedQueue<>();
+
+    public AcmeJsonAsyncParser(){}
+
+    /**
+     * sets executor of the parse tasks
+     * @param executor where to run parse tasks, for example virtual thread per task executor
+     * @param maxConcurrency max number of parses running at the same time
+     * @return self
+     */
+    public AcmeJsonAsyncParser setExecutor(Executor executor, int maxConcurrency){
+        if(maxConcurrency<1)throw new IllegalArgumentException("maxConcurrency must be positive: "+maxConcurrency);
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    /**
+     * sets factory of parsers to configure them: lenient mode, interning, metrics. by default `new AcmeJsonParser()`.
+     * the parsers are reused, handlers are set for each parse.
+     * @param parserFactory the factory, could be a groovy closure
+     * @return self
+     */
+    public AcmeJsonAsyncParser setParserFactory(Callable<? extends AcmeJsonParser> parserFactory){
+        this.parserFactory = parserFactory;
+        return this;
+    }
+
+    /**
+     * parses utf-8 file asynchronously
+     * @param file the file to parse
+     * @param handlerFactory creates handler for the parse, could be a groovy closure. null to build objects in memory.
+     * @return future of the object returned by handler
+     */
+    public CompletableFuture<Object> parseAsync(File file, Callable<? extends AcmeJsonHandler> handlerFactory){
+        return parseAsync(file.toPath(), handlerFactory);
+    }
+
+    /**
+     * parses utf-8 file asynchronously
+     * @param path the file to parse
+     * @param handlerFactory creates handler for the parse, could be a groovy closure. null to build objects in memory.
+     * @return future of the object returned by handler
+     */
+    public CompletableFuture<Object> parseAsync(Path path, Callable<? extends AcmeJsonHandler> handlerFactory){
+        return submit(new Task(path, null, handlerFactory));
+    }
+
+    /**
+     * parses utf-8 stream asynchronously. the stream is not closed.
+     * @param in the stream to parse
+     * @param handlerFactory creates handler for the parse, could be a groovy closure. null to build objects in memory.
+     * @return future of the object returned by handler
+     */
+    public CompletableFuture<Object> parseAsync(InputStream in, Callable<? extends AcmeJsonHandler> handlerFactory){
+        if(in==null)throw new NullPointerException("in == null");
+        return submit(new Task(null, in, handlerFactory));
+    }
+
+    public CompletableFuture<Object> parseAsync(File file){
+        return parseAsync(file, null);
+    }
+
+    public CompletableFuture<Object> parseAsync(Path path){
+        return parseAsync(path, null);
+    }
+
+    public CompletableFuture<Object> parseAsync(InputStream in){
+        return parseAsync(in, null);
+    }
+
+    /**
+     * parses all files into memory
+     * @param paths the files to parse
+     * @return future of map of path to parsed object in the order of paths. fails if any of the files failed.
+     */
+    public CompletableFuture<Map<Path,Object>> parseAll(Collection<Path> paths){
+        return parseAll(paths, null);
+    }
+
+    /**
+     * parses all files with handlers from factory
+     * @param paths the files to parse
+     * @param handlerFactory creates handler for each file, could be a groovy closure. null to build objects in memory.
+     * @return future of map of path to the object returned by handler in the order of paths. fails if any of the files failed.
+     */
+    public CompletableFuture<Map<Path,Object>> parseAll(Collection<Path> paths, Callable<? extends AcmeJsonHandler> handlerFactory){
+        final List<Path> keys = new ArrayList<>(paths);
+        final List<CompletableFuture<Object>> futures = new ArrayList<>(keys.size());
+        for(Path p: keys)futures.add(parseAsync(p, handlerFactory));
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(new Function<Void, Map<Path,Object>>() {
+            @Override
+            public Map<Path,Object> apply(Void v) {
+                Map<Path,Object> result = new LinkedHashMap<>();
+                for(int i=0;i<keys.size();i++)result.put(keys.get(i), futures.get(i).join());
+                return result;
+            }
+        });
+    }
+
+    /**
+     * stops the default executor. does nothing if executor was set with setExecutor.
+     */
+    @Override
+    public synchronized void close(){
+        if(ownExecutor!=null)ownExecutor.shutdown();
+    }
+
+    private CompletableFuture<Object> submit(Task task){
+        if(executor==null)init();
+        queue.add(task);
+        drain();
+        return task.future;
+    }
+
+    /** starts workers while there are queued tasks and free places */
+    private void drain(){
+        while(!queue.isEmpty()){
+            int r = running.get();
+            if(r>=maxConcurrency)return;
+            if(!running.compareAndSet(r, r+1))continue;
+            try {
+                executor.execute(worker);
+            }catch(RejectedExecutionException e){
+                running.decrementAndGet();
+                Task t = queue.poll();
+                if(t!=null)t.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * runs queued tasks one after another with one parser until the queue is empty.
+     * so the executor is called once per free place and not for each task.
+     */
+    private final Runnable worker = new Runnable() {
+        @Override
+        public void run() {
+            Slot slot = null;
+            try {
+                Task t;
+                while((t = queue.poll())!=null){
+                    if(t.future.isDone())continue; //cancelled
+                    try {
+                        if(slot==null)slot = acquire();
+                        t.future.complete(slot.parse(t));
+                    }catch(Throwable e){
+                        t.future.completeExceptionally(e);
+                    }
+                }
+            }finally{
+                if(slot!=null)slots.add(slot);
+                running.decrementAndGet();
+                drain();
+            }
+        }
+    };
+
+    /** creates the default executor */
+    private synchronized void init(){
+        if(executor!=null)return;
+        ExecutorService e;
+        try {
+            e = (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            maxConcurrency = 256;
+        }catch(Exception noVirtualThreads){
+            final AtomicInteger n = new AtomicInteger();
+            maxConcurrency = Runtime.getRuntime().availableProcessors();
+            e = Executors.newFixedThreadPool(maxConcurrency, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "acme-json-parser-"+n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        ownExecutor = e;
+        executor = e;
+    }
+
+    private Slot acquire() throws Exception {
+        Slot s = slots.poll();
+        if(s==null)s = new Slot(parserFactory==null ? new AcmeJsonParser() : parserFactory.call());
+        return s;
+    }
+
+    /** parse task waiting in the queue */
+    private static final class Task {
+        final Path path;
+        final InputStream in;
+        final Callable<? extends AcmeJsonHandler> handlerFactory;
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        Task(Path path, InputStream in, Callable<? extends AcmeJsonHandler> handlerFactory){
+            this.path = path;
+            this.in = in;
+            this.handlerFactory = handlerFactory;
+        }
+    }
+
+    /** reused parser with buffers to read small files */
+    private static final class Slot {
+        final AcmeJsonParser parser;
+        final CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(8192);
+        CharBuffer chars = CharBuffer.allocate(8192);
+
+        Slot(AcmeJsonParser parser){
+            this.parser = parser;
+        }
+
+        Object parse(Task t) throws Exception {
+            parser.reset(t.handlerFactory==null ? null : t.handlerFactory.call());
+            if(t.in!=null)return parser.parse(t.in);
+            try(FileChannel ch = FileChannel.open(t.path, StandardOpenOption.READ)){
+                long size = ch.size();
+                if(size<=MAX_READ && read(ch, (int)size))return parser.parse(new CharArrayReader(chars.array(), 0, chars.position()));
+                return parser.parse(Channels.newInputStream(ch.position(0)));
+            }catch(IOException e){
+                throw new AcmeJsonException("Failed to read file `"+t.path+"`: "+e.getMessage(), e);
+            }catch(AcmeJsonException e){
+                throw new AcmeJsonException("Failed to parse file `"+t.path+"`: "+e.getMessage(), e);
+            }
+        }
+
+        /** reads and decodes the file into chars, returns false if the file is larger than expected size */
+        private boolean read(FileChannel ch, int size) throws IOException {
+            if(bytes.capacity()<size+1)bytes = ByteBuffer.allocate(Math.max(size+1, bytes.capacity()*2));
+            bytes.clear().limit(size+1);
+            while(bytes.hasRemaining() && ch.read(bytes)>=0);
+            if(!bytes.hasRemaining())return false; //the file grows
+            bytes.flip();
+            if(chars.capacity()<bytes.remaining())chars = CharBuffer.allocate(Math.max(bytes.remaining(), chars.capacity()*2));
+            chars.clear();
+            decoder.reset();
+            CoderResult r = decoder.decode(bytes, chars, true);
+            if(r.isError())r.throwException();
+            decoder.flush(chars);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package groovyx.acme.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousByteChannel;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * json writer that encodes json into a ring of reusable byte buffers and drains them to AsynchronousByteChannel
+ * or AsynchronousFileChannel in background, so the producing thread does not wait for every write.
+ * when the bytes not yet written reach the high-water mark, methods that write json ({@code value}, {@code object}, etc)
+ * block until the channel drains the buffers. virtual threads are unmounted while blocked.
+ * to avoid blocking check {@link #isReady()} or wait for {@link #ready()} future before writing the next portion of json.
+ * <pre>{@code
+ *  def w = new AcmeJsonAsyncWriter(AsynchronousFileChannel.open(path, WRITE, CREATE), 0, false)
+ *  w.value(data)
+ *  w.close() //waits for all bytes written and closes the channel
+ * }</pre>
+ */
+public class AcmeJsonAsyncWriter extends AcmeJsonWriter implements Closeable {
+    private final Sink sink;
+
+    /**
+     * creates writer with 64K buffers and 1M high-water mark
+     * @param channel where to write json bytes
+     * @param prettyPrint true if the json must be formatted
+     */
+    public AcmeJsonAsyncWriter(AsynchronousByteChannel channel, boolean prettyPrint){
+        this(channel, prettyPrint, 64*1024, 1024*1024);
+    }
+
+    /**
+     * @param channel where to write json bytes
+     * @param prettyPrint true if the json must be formatted
+     * @param bufferSize size of each buffer in the ring
+     * @param highWaterMark max number of bytes not yet written to channel before writing json blocks
+     */
+    public AcmeJsonAsyncWriter(AsynchronousByteChannel channel, boolean prettyPrint, int bufferSize, long highWaterMark){
+        this(new Sink(channel, bufferSize, highWaterMark), prettyPrint);
+    }
+
+    /**
+     * creates writer with 64K buffers and 1M high-water mark that writes to file starting at the position
+     * @param file where to write json bytes
+     * @param position file position to start writing at
+     * @param prettyPrint true if the json must be formatted
+     */
+    public AcmeJsonAsyncWriter(AsynchronousFileChannel file, long position, boolean prettyPrint){
+        this(new FileChannelAdapter(file, position), prettyPrint);
+    }
+
+    private AcmeJsonAsyncWriter(Sink sink, boolean prettyPrint){
+        super(new AcmeJsonUtf8WriteHandler(sink, prettyPrint));
+        this.sink = sink;
+    }
+
+    /**
+     * returns number of bytes passed to the ring but not yet written to the channel
+     * @return pending bytes
+     */
+    public long getPendingBytes(){
+        return sink.getPending();
+    }
+
+    /**
+     * true if the pending bytes are below the high-water mark, so writing of json not larger than one buffer will not block
+     * @return true if writer is ready to accept json
+     */
+    public boolean isReady(){
+        return sink.isReady();
+    }
+
+    /**
+     * returns future that completes when the pending bytes are below the high-water mark.
+     * completes exceptionally if the channel write failed.
+     * @return readiness future
+     */
+    public CompletableFuture<Void> ready(){
+        return sink.ready();
+    }
+
+    /**
+     * passes all encoded bytes to the channel without waiting
+     * @return future that completes when all the bytes written so far are written to the channel
+     * @throws IOException if previous channel write failed
+     */
+    public CompletableFuture<Void> flushAsync() throws IOException {
+        writer.getRoot().flush();
+        return sink.drained();
+    }
+
+    /**
+     * writes all pending bytes, waits for completion, and closes the channel
+     * @throws IOException if io error occurred
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushAsync().get();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for pending writes");
+        }catch(ExecutionException e){
+            throw Sink.toIOException(e.getCause());
+        }finally{
+            sink.channel.close();
+        }
+    }
+
+    /**
+     * output stream that collects bytes into ring of buffers and writes filled buffers to the channel one by one
+     */
+    static final class Sink extends OutputStream {
+        final AsynchronousByteChannel channel;
+        private final int bufferSize;
+        private final long highWaterMark;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition drainedCondition = lock.newCondition();
+        private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+        private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+        private final List<CompletableFuture<Void>> readyWaiters = new ArrayList<>();
+        private final List<CompletableFuture<Void>> drainWaiters = new ArrayList<>();
+        private final CompletionHandler<Integer,ByteBuffer> onWrite = new CompletionHandler<Integer,ByteBuffer>() {
+            @Override
+            public void completed(Integer result, ByteBuffer buf) {
+                written(buf);
+            }
+
+            @Override
+            public void failed(Throwable exc, ByteBuffer buf) {
+                Sink.this.failed(exc);
+            }
+        };
+        private ByteBuffer current = null;
+        private long pending = 0;         //bytes in queue and in the buffer being written
+        private boolean writing = false;  //channel write in progress
+        private Throwable error = null;
+
+        Sink(AsynchronousByteChannel channel, int bufferSize, long highWaterMark){
+            this.channel = channel;
+            this.bufferSize = Math.max(bufferSize, 1024);
+            this.highWaterMark = Math.max(highWaterMark, this.bufferSize);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if(current==null || !current.hasRemaining())next();
+            current.put((byte)b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while(len>0){
+                if(current==null || !current.hasRemaining())next();
+                int n = Math.min(len, current.remaining());
+                current.put(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        /**
+         * waits while pending bytes are above high-water mark, then submits current buffer and takes free one.
+         * so the pending bytes could exceed the mark by one buffer, and writes block only after isReady() returned false.
+         */
+        private void next() throws IOException {
+            lock.lock();
+            try {
+                while(pending>=highWaterMark && error==null){
+                    try {
+                        drainedCondition.await();
+                    }catch(InterruptedException e){
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("interrupted while waiting for channel to drain");
+                    }
+                }
+                submit();
+                ByteBuffer b = free.poll();
+                current = b!=null ? b : ByteBuffer.allocateDirect(bufferSize);
+            }finally{
+                lock.unlock();
+            }
+        }
+
+        /** moves current buffer into the write queue. must be called under lock */
+        private void submit() throws IOException {
+            checkError();
+            if(current==null)return;
+            if(current.position()==0){
+                free.add(current);
+            }else{
+                current.flip();
+                pending += current.remaining();
+                queue.add(current);
+                if(!writing)writeNext();
+            }
+            current = null;
+        }
+
+        /** starts write of the next queued buffer. must be called under lock */
+        private void writeNext(){
+            ByteBuffer b = queue.peek();
+            if(b==null)return;
+            writing = true;
+            try {
+                channel.write(b, b, onWrite);
+            }catch(RuntimeException e){
+                failed(e);
+            }
+        }
+
+        private void written(ByteBuffer b){
+            List<CompletableFuture<Void>> complete = null;
+            lock.lock();
+            try {
+                if(b.hasRemaining()){
+                    //partial write: continue with the same buffer
+                    channel.write(b, b, onWrite);
+                    return;
+                }
+                pending -= b.limit();
+                queue.poll();
+                b.clear();
+                free.add(b);
+                writing = false;
+                writeNext();
+                drainedCondition.signalAll();
+                if(pending<highWaterMark && !readyWaiters.isEmpty()){
+                    complete = new ArrayList<>(readyWaiters);
+                    readyWaiters.clear();
+                }
+                if(pending==0 && !drainWaiters.isEmpty()){
+                    if(complete==null)complete = new ArrayList<>();
+                    complete.addAll(drainWaiters);
+                    drainWaiters.clear();
+                }
+            }catch(RuntimeException e){
+                failed(e);
+            }finally{
+                lock.unlock();
+            }
+            //complete futures outside of the lock: dependent actions could write json
+            if(complete!=null){
+                for(CompletableFuture<Void> f: complete)f.complete(null);
+            }
+        }
+
+        private void failed(Throwable e){
+            List<CompletableFuture<Void>> waiters = new ArrayList<>();
+            lock.lock();
+            try {
+                if(error==null)error = e;
+                writing = false;
+                drainedCondition.signalAll();
+                waiters.addAll(readyWaiters);
+                waiters.addAll(drainWaiters);
+                readyWaiters.clear();
+                drainWaiters.clear();
+            }finally{
+                lock.unlock();
+            }
+            for(CompletableFuture<Void> f: waiters)f.completeExceptionally(e);
+        }
+
+        private void checkError() throws IOException {
+            if(error!=null)throw toIOException(error);
+        }
+
+        static IOException toIOException(Throwable e){
+            if(e instanceof IOException)return new IOException(e.getMessage(), e);
+            return new IOException("async write failed: "+e, e);
+        }
+
+        long getPending(){
+            lock.lock();
+            try {
+                return pending;
+            }finally{
+                lock.unlock();
+            }
+        }
+
+        boolean isReady(){
+            lock.lock();
+            try {
+                return pending<highWaterMark && error==null;
+            }finally{
+                lock.unlock();
+            }
+        }
+
+        CompletableFuture<Void> ready(){
+            CompletableFuture<Void> f = new CompletableFuture<>();
+            lock.lock();
+            try {
+                if(error!=null)f.completeExceptionally(error);
+                else if(pending<highWaterMark)f.complete(null);
+                else readyWaiters.add(f);
+            }finally{
+                lock.unlock();
+            }
+            return f;
+        }
+
+        CompletableFuture<Void> drained() throws IOException {
+            CompletableFuture<Void> f = new CompletableFuture<>();
+            lock.lock();
+            try {
+                submit();
+                if(pending==0)f.complete(null);
+                else drainWaiters.add(f);
+            }finally{
+                lock.unlock();
+            }
+            return f;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            lock.lock();
+            try {
+                submit();
+            }finally{
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * writes to AsynchronousFileChannel sequentially starting from the position
+     */
+    static final class FileChannelAdapter implements AsynchronousByteChannel {
+        private final AsynchronousFileChannel file;
+        private long position;
+
+        FileChannelAdapter(AsynchronousFileChannel file, long position){
+            this.file = file;
+            this.position = position;
+        }
+
+        @Override
+        public <A> void write(ByteBuffer src, A attachment, final CompletionHandler<Integer, ? super A> handler) {
+            file.write(src, position, attachment, new CompletionHandler<Integer, A>() {
+                @Override
+                public void completed(Integer result, A a) {
+                    position += result;
+                    handler.completed(result, a);
+                }
+
+                @Override
+                public void failed(Throwable exc, A a) {
+                    handler.failed(exc, a);
+                }
+            });
+        }
+
+        @Override
+        public Future<Integer> write(ByteBuffer src) {
+            final CompletableFuture<Integer> f = new CompletableFuture<>();
+            write(src, null, new CompletionHandler<Integer, Object>() {
+                @Override
+                public void completed(Integer result, Object a) {
+                    f.complete(result);
+                }
+
+                @Override
+                public void failed(Throwable exc, Object a) {
+                    f.completeExceptionally(exc);
+                }
+            });
+            return f;
+        }
+
+        @Override
+        public <A> void read(ByteBuffer dst, A attachment, CompletionHandler<Integer, ? super A> handler) {
+            throw new UnsupportedOperationException("write only channel");
+        }
+
+        @Override
+        public Future<Integer> read(ByteBuffer dst) {
+            throw new UnsupportedOperationException("write only channel");
+        }
+
+        @Override
+        public boolean isOpen() {
+            return file.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+}
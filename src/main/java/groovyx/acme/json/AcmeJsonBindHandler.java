@@ -0,0 +1,761 @@
+package groovyx.acme.json;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * json handler that binds parsing events directly into objects of the target type without intermediate maps.
+ * supported targets: beans with setters or fields, classes with constructor parameters (records or classes compiled with `-parameters`),
+ * List/Set/Collection/Map and arrays with generic element types, enums, strings, numbers and booleans.
+ * unknown keys are skipped. binding plans are cached per type and shared between handlers.
+ * <pre>{@code
+ *  Person p = new AcmeJsonParser(new AcmeJsonBindHandler(Person)).parseText('{"name":"Joe","tags":["a","b"]}')
+ * }</pre>
+ */
+public class AcmeJsonBindHandler implements AcmeJsonHandler {
+    /** plans of classes, released together with the class */
+    private static final ClassValue<Plan> CLASS_PLANS = new ClassValue<Plan>() {
+        @Override
+        protected Plan computeValue(Class<?> type) {
+            return createPlan(type);
+        }
+    };
+    private static final int MAX_GENERIC_PLANS = 256;
+    /** plans of parameterized and generic array types, the least recently used are dropped */
+    private static final LinkedHashMap<Type,Plan> GENERIC_PLANS = new LinkedHashMap<Type,Plan>(64, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Type,Plan> eldest) {
+            return size()>MAX_GENERIC_PLANS;
+        }
+    };
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final Plan rootPlan;
+    private Plan[] plans = new Plan[32];
+    private Object[] states = new Object[32];
+    private int depth = 0;
+    private int skip = 0; //depth of the skipped subtree for unknown keys
+    private Object root = null;
+
+    /**
+     * @param type the class of the root json element
+     */
+    public AcmeJsonBindHandler(Class<?> type){
+        this((Type)type);
+    }
+
+    /**
+     * @param type the type of the root json element. could be ParameterizedType like {@code List<Person>}
+     */
+    public AcmeJsonBindHandler(Type type){
+        this.rootPlan = plan(type);
+    }
+
+    @Override
+    public void onObjectStart(AbstractJsonPath jpath) {
+        start(jpath, false);
+    }
+
+    @Override
+    public void onObjectEnd(AbstractJsonPath jpath) {
+        end(jpath);
+    }
+
+    @Override
+    public void onArrayStart(AbstractJsonPath jpath) {
+        start(jpath, true);
+    }
+
+    @Override
+    public void onArrayEnd(AbstractJsonPath jpath) {
+        end(jpath);
+    }
+
+    @Override
+    public void onValue(AbstractJsonPath jpath, Object value) {
+        if(skip>0)return;
+        try {
+            if(depth==0) root = rootPlan.convert(value);
+            else plans[depth-1].value(states[depth-1], jpath.peek(), value);
+        }catch(AcmeJsonException e){
+            throw e;
+        }catch(Throwable t){
+            throw error(jpath, t);
+        }
+    }
+
+    @Override
+    public Object getRoot() {
+        return root;
+    }
+
+    private void start(AbstractJsonPath jpath, boolean array){
+        if(skip>0){
+            skip++;
+            return;
+        }
+        Plan p = depth==0 ? rootPlan : plans[depth-1].child(jpath.peek());
+        if(p==null){
+            skip = 1;
+            return;
+        }
+        if(depth==plans.length){
+            plans = Arrays.copyOf(plans, depth*2);
+            states = Arrays.copyOf(states, depth*2);
+        }
+        try {
+            states[depth] = p.start(array);
+        }catch(AcmeJsonException e){
+            throw e;
+        }catch(Throwable t){
+            throw error(jpath, t);
+        }
+        plans[depth] = p;
+        depth++;
+    }
+
+    private void end(AbstractJsonPath jpath){
+        if(skip>0){
+            skip--;
+            return;
+        }
+        depth--;
+        try {
+            Object v = plans[depth].end(states[depth]);
+            plans[depth] = null;
+            states[depth] = null;
+            if(depth==0) root = v;
+            else plans[depth-1].child(states[depth-1], jpath.peek(), v);
+        }catch(AcmeJsonException e){
+            throw e;
+        }catch(Throwable t){
+            throw error(jpath, t);
+        }
+    }
+
+    private static AcmeJsonException error(AbstractJsonPath jpath, Throwable t){
+        return new AcmeJsonException("Failed to bind value at `"+jpath+"`: "+t, t);
+    }
+
+    //---------------- binding plans ----------------
+
+    /** returns cached binding plan for the type */
+    static Plan plan(Type type){
+        if(type instanceof Class)return CLASS_PLANS.get((Class<?>)type);
+        Plan p;
+        synchronized (GENERIC_PLANS){
+            p = GENERIC_PLANS.get(type);
+        }
+        if(p==null){
+            p = createPlan(type);
+            synchronized (GENERIC_PLANS){
+                Plan old = GENERIC_PLANS.get(type);
+                if(old!=null)p = old;
+                else GENERIC_PLANS.put(type, p);
+            }
+        }
+        return p;
+    }
+
+    private static Plan createPlan(Type type){
+        Class<?> c = rawClass(type);
+        if(c==Object.class)return new GenericPlan();
+        if(c.isArray()){
+            Type e = type instanceof GenericArrayType ? ((GenericArrayType)type).getGenericComponentType() : c.getComponentType();
+            return new ArrayPlan(c.getComponentType(), e);
+        }
+        if(Map.class.isAssignableFrom(c))return new MapPlan(c, typeArg(type, 0), typeArg(type, 1));
+        if(Collection.class.isAssignableFrom(c) || c==Iterable.class)return new CollectionPlan(c, typeArg(type, 0));
+        int kind = kind(c);
+        if(kind!=K_ANY || c.isInterface() || Modifier.isAbstract(c.getModifiers()) || c.getName().startsWith("java."))return new ScalarPlan(c, kind);
+        return new BeanPlan(c);
+    }
+
+    static Class<?> rawClass(Type t){
+        if(t instanceof Class)return (Class<?>)t;
+        if(t instanceof ParameterizedType)return rawClass(((ParameterizedType)t).getRawType());
+        if(t instanceof GenericArrayType)return Array.newInstance(rawClass(((GenericArrayType)t).getGenericComponentType()), 0).getClass();
+        if(t instanceof WildcardType)return rawClass(((WildcardType)t).getUpperBounds()[0]);
+        if(t instanceof TypeVariable){
+            Type[] b = ((TypeVariable)t).getBounds();
+            return b.length==0 ? Object.class : rawClass(b[0]);
+        }
+        return Object.class;
+    }
+
+    private static Type typeArg(Type t, int i){
+        if(t instanceof ParameterizedType){
+            Type[] a = ((ParameterizedType)t).getActualTypeArguments();
+            if(i<a.length)return a[i];
+        }
+        return Object.class;
+    }
+
+    //value conversion kinds
+    static final int K_ANY     = 0;
+    static final int K_STRING  = 1;
+    static final int K_INT     = 2;
+    static final int K_LONG    = 3;
+    static final int K_DOUBLE  = 4;
+    static final int K_FLOAT   = 5;
+    static final int K_SHORT   = 6;
+    static final int K_BYTE    = 7;
+    static final int K_BOOLEAN = 8;
+    static final int K_CHAR    = 9;
+    static final int K_DECIMAL = 10;
+    static final int K_BIGINT  = 11;
+    static final int K_NUMBER  = 12;
+    static final int K_ENUM    = 13;
+
+    static int kind(Class<?> c){
+        if(c==String.class || c==CharSequence.class)return K_STRING;
+        if(c==int.class || c==Integer.class)return K_INT;
+        if(c==long.class || c==Long.class)return K_LONG;
+        if(c==double.class || c==Double.class)return K_DOUBLE;
+        if(c==float.class || c==Float.class)return K_FLOAT;
+        if(c==short.class || c==Short.class)return K_SHORT;
+        if(c==byte.class || c==Byte.class)return K_BYTE;
+        if(c==boolean.class || c==Boolean.class)return K_BOOLEAN;
+        if(c==char.class || c==Character.class)return K_CHAR;
+        if(c==BigDecimal.class)return K_DECIMAL;
+        if(c==BigInteger.class)return K_BIGINT;
+        if(c==Number.class)return K_NUMBER;
+        if(c.isEnum())return K_ENUM;
+        return K_ANY;
+    }
+
+    /** converts plain json value to the kind of the target type */
+    static Object convert(Object v, int kind, Class<?> type){
+        if(v==null || kind==K_ANY)return v;
+        switch (kind){
+            case K_STRING:
+                if(v instanceof String)return v;
+                return v.toString();
+            case K_INT:
+                if(v instanceof Integer)return v;
+                if(v instanceof Long){
+                    long l = (Long)v;
+                    if((int)l==l)return (int)l;
+                }
+                return number(v, type).intValueExact();
+            case K_LONG:
+                if(v instanceof Long)return v;
+                return number(v, type).longValueExact();
+            case K_DOUBLE:
+                if(v instanceof Double)return v;
+                return number(v, type).doubleValue();
+            case K_FLOAT:
+                return number(v, type).floatValue();
+            case K_SHORT:
+                return number(v, type).shortValueExact();
+            case K_BYTE:
+                return number(v, type).byteValueExact();
+            case K_DECIMAL:
+                return number(v, type);
+            case K_BIGINT:
+                return number(v, type).toBigIntegerExact();
+            case K_NUMBER:
+                if(v instanceof Number)return v;
+                return number(v, type);
+            case K_BOOLEAN:
+                if(v instanceof Boolean)return v;
+                if("true".equals(v))return Boolean.TRUE;
+                if("false".equals(v))return Boolean.FALSE;
+                break;
+            case K_CHAR:
+                if(v instanceof String && ((String)v).length()==1)return ((String)v).charAt(0);
+                break;
+            case K_ENUM:
+                if(v instanceof String){
+                    Object e = EnumPlan.get(type).get(v);
+                    if(e!=null)return e;
+                }
+                break;
+        }
+        throw new AcmeJsonException("Cannot convert `"+v+"` to "+type.getName());
+    }
+
+    private static BigDecimal number(Object v, Class<?> type){
+        if(v instanceof BigDecimal)return (BigDecimal)v;
+        if(v instanceof Long || v instanceof Integer || v instanceof Short || v instanceof Byte)return BigDecimal.valueOf(((Number)v).longValue());
+        if(v instanceof BigInteger)return new BigDecimal((BigInteger)v);
+        try {
+            if(v instanceof Number)return new BigDecimal(v.toString());
+            if(v instanceof String)return new BigDecimal((String)v);
+        }catch(NumberFormatException e){}
+        throw new AcmeJsonException("Cannot convert `"+v+"` to "+type.getName());
+    }
+
+    /**
+     * binding plan of one type: how to create container, where to put children and how to build the result
+     */
+    static abstract class Plan {
+        /** creates the state to collect json object or array members */
+        Object start(boolean array) throws Throwable {
+            throw new AcmeJsonException("Cannot bind json "+(array?"array":"object")+" to "+describe());
+        }
+        /** returns plan for nested container or null to skip it */
+        Plan child(AbstractJsonPath.Element e){
+            return null;
+        }
+        /** sets plain json value */
+        void value(Object state, AbstractJsonPath.Element e, Object value) throws Throwable {}
+        /** sets finished nested container */
+        void child(Object state, AbstractJsonPath.Element e, Object value) throws Throwable {}
+        /** returns the result from the state */
+        Object end(Object state) throws Throwable {
+            return state;
+        }
+        /** converts plain json value to the type of this plan */
+        Object convert(Object value){
+            return value;
+        }
+        abstract String describe();
+    }
+
+    /** plan for the typed member: property, constructor parameter, collection element or map value */
+    static final class Slot {
+        final Type type;
+        final Class<?> cls;
+        final int kind;
+        private Plan plan = null;
+
+        Slot(Type type){
+            this.type = type;
+            this.cls = rawClass(type);
+            this.kind = kind(cls);
+        }
+
+        Plan plan(){
+            Plan p = plan;
+            if(p==null)p = plan = AcmeJsonBindHandler.plan(type);
+            return p;
+        }
+
+        Object convert(Object v){
+            return AcmeJsonBindHandler.convert(v, kind, cls);
+        }
+    }
+
+    /** plain values: strings, numbers, enums, ... */
+    static final class ScalarPlan extends Plan {
+        final Class<?> cls;
+        final int kind;
+
+        ScalarPlan(Class<?> cls, int kind){
+            this.cls = cls;
+            this.kind = kind;
+        }
+
+        @Override
+        Object convert(Object value) {
+            if(kind==K_ANY && value!=null && !cls.isInstance(value))throw new AcmeJsonException("Cannot convert `"+value+"` to "+cls.getName());
+            return AcmeJsonBindHandler.convert(value, kind, cls);
+        }
+
+        @Override
+        String describe() {
+            return cls.getName();
+        }
+    }
+
+    /** untyped values: maps, lists and plain values like AcmeJsonBuildHandler builds */
+    static final class GenericPlan extends Plan {
+        @Override
+        Object start(boolean array) {
+            return array ? new ArrayList<Object>() : new LinkedHashMap<String,Object>();
+        }
+
+        @Override
+        Plan child(AbstractJsonPath.Element e) {
+            return this;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void value(Object state, AbstractJsonPath.Element e, Object value) {
+            if(state instanceof List) ((List<Object>)state).add(value);
+            else ((Map<String,Object>)state).put(e.getKey(), value);
+        }
+
+        @Override
+        void child(Object state, AbstractJsonPath.Element e, Object value) {
+            value(state, e, value);
+        }
+
+        @Override
+        String describe() {
+            return "java.lang.Object";
+        }
+    }
+
+    /** creates instances of collection and map types. interfaces mapped to default implementations */
+    private static MethodHandle factory(Class<?> c, Class<?> def){
+        if(c.isInterface() || Modifier.isAbstract(c.getModifiers())){
+            if(!c.isAssignableFrom(def))throw new AcmeJsonException("Cannot instantiate "+c.getName());
+            c = def;
+        }
+        try {
+            return LOOKUP.findConstructor(c, MethodType.methodType(void.class)).asType(MethodType.methodType(Object.class));
+        }catch(ReflectiveOperationException e){
+            throw new AcmeJsonException("Cannot instantiate "+c.getName()+": "+e, e);
+        }
+    }
+
+    static final class CollectionPlan extends Plan {
+        final Class<?> cls;
+        final MethodHandle ctor;
+        final Slot item;
+
+        CollectionPlan(Class<?> cls, Type item){
+            this.cls = cls;
+            Class<?> def = SortedSet.class.isAssignableFrom(cls) ? TreeSet.class : Set.class.isAssignableFrom(cls) ? LinkedHashSet.class : ArrayList.class;
+            this.ctor = factory(cls, def);
+            this.item = new Slot(item);
+        }
+
+        @Override
+        Object start(boolean array) throws Throwable {
+            if(!array)super.start(false);
+            return (Object)ctor.invokeExact();
+        }
+
+        @Override
+        Plan child(AbstractJsonPath.Element e) {
+            return item.plan();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void value(Object state, AbstractJsonPath.Element e, Object value) {
+            ((Collection<Object>)state).add(item.convert(value));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void child(Object state, AbstractJsonPath.Element e, Object value) {
+            ((Collection<Object>)state).add(value);
+        }
+
+        @Override
+        String describe() {
+            return cls.getName();
+        }
+    }
+
+    static final class ArrayPlan extends Plan {
+        final Class<?> component;
+        final Slot item;
+
+        ArrayPlan(Class<?> component, Type item){
+            this.component = component;
+            this.item = new Slot(item);
+        }
+
+        @Override
+        Object start(boolean array) throws Throwable {
+            if(!array)super.start(false);
+            return new ArrayList<Object>();
+        }
+
+        @Override
+        Plan child(AbstractJsonPath.Element e) {
+            return item.plan();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void value(Object state, AbstractJsonPath.Element e, Object value) {
+            Object v = item.convert(value);
+            if(v==null && component.isPrimitive())throw new AcmeJsonException("Cannot set null into "+component.getName()+" array");
+            ((List<Object>)state).add(v);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void child(Object state, AbstractJsonPath.Element e, Object value) {
+            ((List<Object>)state).add(value);
+        }
+
+        @Override
+        Object end(Object state) {
+            List<?> list = (List<?>)state;
+            int n = list.size();
+            if(!component.isPrimitive())return list.toArray((Object[])Array.newInstance(component, n));
+            Object a = Array.newInstance(component, n);
+            for(int i=0;i<n;i++)Array.set(a, i, list.get(i));
+            return a;
+        }
+
+        @Override
+        String describe() {
+            return component.getName()+"[]";
+        }
+    }
+
+    static final class MapPlan extends Plan {
+        final Class<?> cls;
+        final MethodHandle ctor;
+        final Slot key;
+        final Slot value;
+
+        MapPlan(Class<?> cls, Type key, Type value){
+            this.cls = cls;
+            this.ctor = factory(cls, SortedMap.class.isAssignableFrom(cls) ? TreeMap.class : LinkedHashMap.class);
+            this.key = new Slot(key);
+            this.value = new Slot(value);
+        }
+
+        @Override
+        Object start(boolean array) throws Throwable {
+            if(array)super.start(true);
+            return (Object)ctor.invokeExact();
+        }
+
+        @Override
+        Plan child(AbstractJsonPath.Element e) {
+            return value.plan();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void value(Object state, AbstractJsonPath.Element e, Object value) {
+            ((Map<Object,Object>)state).put(key.convert(e.getKey()), this.value.convert(value));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void child(Object state, AbstractJsonPath.Element e, Object value) {
+            ((Map<Object,Object>)state).put(key.convert(e.getKey()), value);
+        }
+
+        @Override
+        String describe() {
+            return cls.getName();
+        }
+    }
+
+    /** enum constants by name */
+    static final class EnumPlan {
+        private static final ClassValue<Map<String,Object>> CONSTANTS = new ClassValue<Map<String,Object>>() {
+            @Override
+            protected Map<String,Object> computeValue(Class<?> type) {
+                Map<String,Object> m = new HashMap<>();
+                for(Object e: type.getEnumConstants())m.put(((Enum)e).name(), e);
+                return m;
+            }
+        };
+
+        static Map<String,Object> get(Class<?> type){
+            return CONSTANTS.get(type);
+        }
+    }
+
+    /**
+     * binding of a class: no-arg constructor with setters and fields,
+     * or constructor with named parameters (records, classes compiled with `-parameters`).
+     */
+    static final class BeanPlan extends Plan {
+        final Class<?> cls;
+        final MethodHandle ctor;    //()Object or (Object[])Object for constructor with parameters
+        final Object[] defaults;    //default constructor arguments. null if no-arg constructor used
+        final Map<String,Property> properties = new HashMap<>();
+
+        BeanPlan(Class<?> cls){
+            this.cls = cls;
+            try {
+                Constructor<?> noArgs = null;
+                Constructor<?> withArgs = null;
+                String[] names = AcmeJsonSerializers.recordComponents(cls);
+                for(Constructor<?> c: cls.getDeclaredConstructors()){
+                    if(c.isSynthetic())continue;
+                    if(c.getParameterCount()==0){
+                        noArgs = c;
+                    }else if(names!=null){
+                        if(c.getParameterCount()==names.length && sameTypes(c, cls))withArgs = c;
+                    }else if(namesPresent(c) && (withArgs==null || c.getParameterCount()>withArgs.getParameterCount())){
+                        withArgs = c;
+                    }
+                }
+                if(noArgs!=null && names==null){
+                    ctor = LOOKUP.unreflectConstructor(accessible(noArgs)).asType(MethodType.methodType(Object.class));
+                    defaults = null;
+                    initSetters();
+                }else if(withArgs!=null){
+                    int n = withArgs.getParameterCount();
+                    ctor = LOOKUP.unreflectConstructor(accessible(withArgs)).asFixedArity().asSpreader(Object[].class, n).asType(MethodType.methodType(Object.class, Object[].class));
+                    defaults = new Object[n];
+                    Parameter[] params = withArgs.getParameters();
+                    Type[] types = withArgs.getGenericParameterTypes();
+                    if(types.length!=n)types = withArgs.getParameterTypes(); //inner classes could have less generic types
+                    for(int i=0;i<n;i++){
+                        String name = names!=null ? names[i] : params[i].getName();
+                        properties.put(name, new Property(types[i], null, i));
+                        defaults[i] = primitiveDefault(params[i].getType());
+                    }
+                }else{
+                    throw new AcmeJsonException("Cannot bind "+cls.getName()+": no-arg constructor or constructor with parameter names required");
+                }
+            }catch(IllegalAccessException e){
+                throw new AcmeJsonException("Cannot bind "+cls.getName()+": "+e, e);
+            }
+        }
+
+        private void initSetters() throws IllegalAccessException {
+            for(Method m: cls.getMethods()){
+                String name = m.getName();
+                if(m.getParameterCount()!=1 || name.length()<4 || !name.startsWith("set") || Modifier.isStatic(m.getModifiers()) || m.isBridge())continue;
+                Class<?> t = m.getParameterTypes()[0];
+                if(t.getName().equals("groovy.lang.MetaClass"))continue;
+                String key = decapitalize(name.substring(3));
+                if(properties.containsKey(key))continue;
+                MethodHandle h = LOOKUP.unreflect(m).asFixedArity().asType(MethodType.methodType(void.class, Object.class, Object.class));
+                properties.put(key, new Property(m.getGenericParameterTypes()[0], h, -1));
+            }
+            for(Class<?> c=cls; c!=null && c!=Object.class; c=c.getSuperclass()){
+                for(Field f: c.getDeclaredFields()){
+                    int mod = f.getModifiers();
+                    String name = f.getName();
+                    if(Modifier.isStatic(mod) || Modifier.isFinal(mod) || Modifier.isTransient(mod) || f.isSynthetic() || name.indexOf('$')>=0)continue;
+                    if(properties.containsKey(name) || f.getType().getName().equals("groovy.lang.MetaClass"))continue;
+                    try {
+                        MethodHandle h = LOOKUP.unreflectSetter(accessible(f)).asType(MethodType.methodType(void.class, Object.class, Object.class));
+                        properties.put(name, new Property(f.getGenericType(), h, -1));
+                    }catch(RuntimeException e){
+                        //field is not accessible (modules)
+                    }
+                }
+            }
+        }
+
+        @Override
+        Object start(boolean array) throws Throwable {
+            if(array)super.start(true);
+            if(defaults==null)return (Object)ctor.invokeExact();
+            return defaults.clone();
+        }
+
+        @Override
+        Plan child(AbstractJsonPath.Element e) {
+            Property p = properties.get(e.getKey());
+            return p==null ? null : p.plan();
+        }
+
+        @Override
+        void value(Object state, AbstractJsonPath.Element e, Object value) throws Throwable {
+            Property p = properties.get(e.getKey());
+            if(p!=null)p.set(state, p.convert(value));
+        }
+
+        @Override
+        void child(Object state, AbstractJsonPath.Element e, Object value) throws Throwable {
+            Property p = properties.get(e.getKey());
+            if(p!=null)p.set(state, value);
+        }
+
+        @Override
+        Object end(Object state) throws Throwable {
+            if(defaults==null)return state;
+            return (Object)ctor.invokeExact((Object[])state);
+        }
+
+        @Override
+        String describe() {
+            return cls.getName();
+        }
+
+        private static <T extends java.lang.reflect.AccessibleObject> T accessible(T o){
+            if(!(o instanceof java.lang.reflect.Member) || !Modifier.isPublic(((java.lang.reflect.Member)o).getModifiers()) || !Modifier.isPublic(((java.lang.reflect.Member)o).getDeclaringClass().getModifiers())){
+                o.setAccessible(true);
+            }
+            return o;
+        }
+
+        private static boolean namesPresent(Constructor<?> c){
+            for(Parameter p: c.getParameters()){
+                if(!p.isNamePresent())return false;
+            }
+            return true;
+        }
+
+        /** true if constructor parameters match record components */
+        private static boolean sameTypes(Constructor<?> c, Class<?> cls){
+            try {
+                Object[] rc = (Object[])Class.class.getMethod("getRecordComponents").invoke(cls);
+                Class<?>[] pt = c.getParameterTypes();
+                for(int i=0;i<rc.length;i++){
+                    if(rc[i].getClass().getMethod("getType").invoke(rc[i])!=pt[i])return false;
+                }
+                return true;
+            }catch(ReflectiveOperationException e){
+                return false;
+            }
+        }
+
+        private static Object primitiveDefault(Class<?> t){
+            if(!t.isPrimitive())return null;
+            return Array.get(Array.newInstance(t, 1), 0);
+        }
+
+        private static String decapitalize(String s){
+            if(s.length()>1 && Character.isUpperCase(s.charAt(0)) && Character.isUpperCase(s.charAt(1)))return s;
+            return Character.toLowerCase(s.charAt(0))+s.substring(1);
+        }
+    }
+
+    /** setter, field or constructor parameter */
+    static final class Property {
+        final Slot slot;
+        final MethodHandle setter; //(Object,Object)void or null for constructor parameter
+        final int arg;             //constructor parameter index
+        final boolean primitive;
+
+        Property(Type type, MethodHandle setter, int arg){
+            this.slot = new Slot(type);
+            this.setter = setter;
+            this.arg = arg;
+            this.primitive = slot.cls.isPrimitive();
+        }
+
+        Plan plan(){
+            return slot.plan();
+        }
+
+        Object convert(Object v){
+            return slot.convert(v);
+        }
+
+        void set(Object state, Object value) throws Throwable {
+            if(value==null && primitive)return; //keep default value
+            if(setter==null) ((Object[])state)[arg] = value;
+            else setter.invokeExact(state, value);
+        }
+    }
+}
@@ -1,75 +1,305 @@
 package groovyx.acme.json;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
-import java.util.Stack;
+import java.util.List;
+import java.util.Map;
 
 /**
  * default json handler that builds a sequence of LinkedHashMap/ArrayList objects that represent the json data.
+ * in compact mode it builds AcmeJsonCompactMap objects and right-sized ArrayList objects to reduce memory footprint.
+ * in shapes mode objects with the same sequence of keys share the keys through AcmeJsonShape and built as read-only AcmeJsonShapeMap.
+ * in primitive arrays mode arrays of numbers are built as AcmeJsonLongList or AcmeJsonDoubleList backed by primitive arrays.
  */
 public class AcmeJsonBuildHandler implements AcmeJsonHandler {
-    Stack<Object> objectStack;
+    Object[] objectStack = new Object[32]; //containers being built
+    int depth = 0;
     Object current;
+    boolean compact = false;
+    AcmeJsonShape shapes = null;   //root of the shape tree in shapes mode
+    ShapeFrame[] frames = new ShapeFrame[0]; //reusable objects state in shapes mode by depth
+    boolean primitives = false;
+    NumberFrame[] numberFrames = new NumberFrame[0]; //reusable arrays state in primitive arrays mode by depth
 
     public AcmeJsonBuildHandler(){
         current=null;
-        objectStack = new Stack<>();
+    }
+
+    /**
+     * sets compact mode: objects are built as array-backed AcmeJsonCompactMap and arrays are trimmed to their size.
+     * @param compact true to reduce memory used by built objects
+     * @return self
+     */
+    public AcmeJsonBuildHandler setCompact(boolean compact){
+        this.compact = compact;
+        return this;
+    }
+
+    /**
+     * sets shapes mode: objects with the same sequence of keys share one AcmeJsonShape and keep only array of values.
+     * built objects are read-only maps. objects with too many keys or over the shape tree limit are built as regular maps.
+     * @param shapes true to use new shape tree for each parsing, false to build regular maps
+     * @return self
+     */
+    public AcmeJsonBuildHandler setShapes(boolean shapes){
+        this.shapes = shapes ? new AcmeJsonShape() : null;
+        return this;
+    }
+
+    /**
+     * sets shapes mode with the shape tree that could be shared between handlers (for example to cache parsed documents)
+     * @param root the root of shape tree: {@code new AcmeJsonShape()}
+     * @return self
+     */
+    public AcmeJsonBuildHandler setShapes(AcmeJsonShape root){
+        this.shapes = root;
+        return this;
+    }
+
+    /**
+     * sets primitive arrays mode: json arrays that contain only integer numbers are built as AcmeJsonLongList backed by long[],
+     * arrays of numbers with fractions are built as AcmeJsonDoubleList backed by double[] if all values could be represented as double exactly
+     * (up to 15 significant digits, integers up to 2^53). the scale of each number is kept, so the array is written back as it was parsed.
+     * other arrays are built as ArrayList.
+     * @param primitives true to store numeric arrays in primitive arrays
+     * @return self
+     */
+    public AcmeJsonBuildHandler setPrimitiveArrays(boolean primitives){
+        this.primitives = primitives;
+        return this;
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public void onObjectStart(AbstractJsonPath jpath) {
-        LinkedHashMap<String,Object> map = new LinkedHashMap<>();
-        objectStack.push(map);
-        if(current!=null) {
-            if(jpath.peek().isKey()) ((LinkedHashMap) current).put(jpath.peek().getKey(), map);
-            else ((ArrayList)current).add(map);
+        if(shapes!=null){
+            if(depth>=frames.length){
+                frames = Arrays.copyOf(frames, depth+8);
+            }
+            ShapeFrame f = frames[depth];
+            if(f==null) f = frames[depth] = new ShapeFrame();
+            f.shape = shapes;
+            push(f);
+        }else {
+            push(compact ? new AcmeJsonCompactMap() : new LinkedHashMap<String, Object>());
         }
-        current = map;
     }
 
     @Override
     public void onObjectEnd(AbstractJsonPath jpath) {
-        objectStack.pop();
-        if(!objectStack.empty())current = objectStack.peek();
+        Object map = pop();
+        if(map instanceof ShapeFrame) map = ((ShapeFrame)map).build();
+        if(compact && map instanceof AcmeJsonCompactMap) ((AcmeJsonCompactMap)map).trimToSize();
+        attach(jpath, map);
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public void onArrayStart(AbstractJsonPath jpath) {
-        ArrayList<Object> arr = new ArrayList<>();
-        objectStack.push(arr);
-        if(current!=null) {
-            if(jpath.peek().isKey()) ((LinkedHashMap) current).put(jpath.peek().getKey(), arr);
-            else ((ArrayList)current).add(arr);
+        if(primitives){
+            if(depth>=numberFrames.length){
+                numberFrames = Arrays.copyOf(numberFrames, depth+8);
+            }
+            NumberFrame f = numberFrames[depth];
+            if(f==null) f = numberFrames[depth] = new NumberFrame();
+            push(f);
+        }else {
+            push(new ArrayList<Object>());
         }
-        current = arr;
     }
 
     @Override
     public void onArrayEnd(AbstractJsonPath jpath) {
-        objectStack.pop();
-        if(!objectStack.empty())current = objectStack.peek();
+        Object arr = pop();
+        if(arr instanceof NumberFrame) arr = ((NumberFrame)arr).build();
+        if(compact && arr instanceof ArrayList) ((ArrayList)arr).trimToSize();
+        attach(jpath, arr);
     }
 
-
     @Override
-    @SuppressWarnings("unchecked")
     public void onValue(AbstractJsonPath jpath, Object value) {
-        if(jpath.peek().isKey()) ((LinkedHashMap) current).put(jpath.peek().getKey(), value);
-        else ((ArrayList)current).add(value);
+        if(depth==0) current = value;
+        else add(jpath, value);
     }
 
-
     @Override
     public Object getRoot(){
         return current;
     }
 
-
     public boolean isDone(){
-        if(objectStack.empty() && current!=null) return true;
+        if(depth==0 && current!=null) return true;
         else return false;
     }
 
+    private void push(Object container){
+        if(depth==objectStack.length) objectStack = Arrays.copyOf(objectStack, depth*2);
+        objectStack[depth++] = container;
+        current = container;
+    }
+
+    private Object pop(){
+        Object container = objectStack[--depth];
+        objectStack[depth] = null;
+        current = depth>0 ? objectStack[depth-1] : null;
+        return container;
+    }
+
+    /** adds just built container to its parent, or sets it as a root */
+    private void attach(AbstractJsonPath jpath, Object container){
+        if(depth==0) current = container;
+        else add(jpath, container);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void add(AbstractJsonPath jpath, Object value){
+        AbstractJsonPath.Element e = jpath.peek();
+        if(e.isKey()){
+            if(current instanceof ShapeFrame) ((ShapeFrame) current).put(e.getKey(), value);
+            else ((Map<String,Object>) current).put(e.getKey(), value);
+        }
+        else if(current instanceof NumberFrame) ((NumberFrame) current).add(value);
+        else ((List<Object>) current).add(value);
+    }
+
+    /**
+     * state of the object being built in shapes mode
+     */
+    final class ShapeFrame{
+        AcmeJsonShape shape;
+        Object[] values = new Object[8];
+        Map<String,Object> map = null; //used instead of shape when shape limits reached
+
+        void put(String key, Object value){
+            if(map!=null){
+                map.put(key, value);
+                return;
+            }
+            int i = shape.indexOf(key);
+            if(i>=0){
+                values[i] = value; //duplicate key
+                return;
+            }
+            AcmeJsonShape next = shape.next(key);
+            int n = shape.size();
+            if(next==null){
+                map = compact ? new AcmeJsonCompactMap(n+4) : new LinkedHashMap<String,Object>();
+                for(int k=0;k<n;k++){
+                    map.put(shape.getKey(k), values[k]);
+                    values[k] = null;
+                }
+                map.put(key, value);
+                return;
+            }
+            if(n==values.length) values = Arrays.copyOf(values, n*2);
+            values[n] = value;
+            shape = next;
+        }
+
+        Object build(){
+            Object result;
+            if(map!=null){
+                result = map;
+                map = null;
+            }else{
+                int n = shape.size();
+                result = new AcmeJsonShapeMap(shape, Arrays.copyOf(values, n));
+                Arrays.fill(values, 0, n, null);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * state of the array being built in primitive arrays mode.
+     * integers are collected into reusable long[] buffer. the first fraction widens the buffer to double[],
+     * and the scale of each value is kept to write it back as it was parsed. values are boxed again only
+     * when the array contains non-number or number that does not fit into double exactly.
+     */
+    final class NumberFrame{
+        private static final long MAX_EXACT_LONG = 1L<<53; //max integer that could be stored in double exactly
+        long[] longs = new long[16];
+        double[] doubles = null;  //used after the first fraction
+        byte[] scales = null;     //scales of doubles, AcmeJsonDoubleList.INTEGER for integers
+        int size = 0;
+        boolean fractions = false; //values are stored in doubles
+        List<Object> list = null; //used when non-number value found
+
+        void add(Object value){
+            if(list!=null){
+                list.add(value);
+                return;
+            }
+            if(value instanceof Long){
+                long l = (Long)value;
+                if(!fractions){
+                    if(size==longs.length) longs = Arrays.copyOf(longs, size*2);
+                    longs[size++] = l;
+                    return;
+                }
+                if(l<=MAX_EXACT_LONG && l>=-MAX_EXACT_LONG){
+                    addDouble(l, AcmeJsonDoubleList.INTEGER);
+                    return;
+                }
+            }else if(value instanceof BigDecimal){
+                BigDecimal d = (BigDecimal)value;
+                int scale = d.scale();
+                int exp = d.precision() - scale; //number of digits before the decimal point
+                if(d.precision()<=15 && exp>-290 && exp<300 && scale>AcmeJsonDoubleList.INTEGER && scale<AcmeJsonDoubleList.PLAIN && (fractions || widen())){
+                    addDouble(d.doubleValue(), (byte)scale);
+                    return;
+                }
+            }
+            //non-number or number that does not fit into primitive array
+            list = new ArrayList<Object>(Math.max(size*2, 10));
+            for(int i=0;i<size;i++){
+                list.add(fractions ? AcmeJsonDoubleList.box(doubles[i], scales[i]) : (Object)longs[i]);
+            }
+            size = 0;
+            list.add(value);
+        }
+
+        /** moves collected integers to doubles, returns false if some of them could not be stored in double exactly */
+        private boolean widen(){
+            for(int i=0;i<size;i++){
+                if(longs[i]>MAX_EXACT_LONG || longs[i]<-MAX_EXACT_LONG)return false;
+            }
+            if(doubles==null || doubles.length<longs.length){
+                doubles = new double[longs.length];
+                scales = new byte[longs.length];
+            }
+            for(int i=0;i<size;i++){
+                doubles[i] = longs[i];
+                scales[i] = AcmeJsonDoubleList.INTEGER;
+            }
+            fractions = true;
+            return true;
+        }
+
+        private void addDouble(double v, byte scale){
+            if(size==doubles.length){
+                doubles = Arrays.copyOf(doubles, size*2);
+                scales = Arrays.copyOf(scales, size*2);
+            }
+            doubles[size] = v;
+            scales[size++] = scale;
+        }
+
+        Object build(){
+            Object result;
+            if(list!=null){
+                result = list;
+                list = null;
+            }else if(size==0){
+                result = new ArrayList<Object>();
+            }else if(fractions){
+                result = new AcmeJsonDoubleList(Arrays.copyOf(doubles, size), Arrays.copyOf(scales, size));
+            }else{
+                result = new AcmeJsonLongList(Arrays.copyOf(longs, size));
+            }
+            size = 0;
+            fractions = false;
+            return result;
+        }
+    }
 }
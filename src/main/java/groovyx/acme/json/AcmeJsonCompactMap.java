@@ -0,0 +1,264 @@
+package groovyx.acme.json;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * memory efficient map that keeps insertion order like LinkedHashMap.
+ * keys and values are stored in parallel arrays. small maps are scanned linearly,
+ * maps with more than 8 keys use additional open addressing index.
+ */
+public class AcmeJsonCompactMap extends AbstractMap<String,Object> {
+    private static final int LINEAR_MAX = 8;
+    private static final String[] EMPTY_KEYS = new String[0];
+    private static final Object[] EMPTY_VALUES = new Object[0];
+
+    private String[] keys;
+    private Object[] values;
+    private int size = 0;
+    private int[] table = null; //index+1 of the entry for each hash slot, 0 - empty slot. null for small maps
+    private int modCount = 0;
+
+    public AcmeJsonCompactMap(){
+        this(4);
+    }
+
+    /**
+     * @param capacity initial number of keys
+     */
+    public AcmeJsonCompactMap(int capacity){
+        keys   = capacity==0 ? EMPTY_KEYS : new String[capacity];
+        values = capacity==0 ? EMPTY_VALUES : new Object[capacity];
+    }
+
+    /**
+     * copies all entries of the map
+     * @param m source map
+     */
+    public AcmeJsonCompactMap(Map<String,?> m){
+        this(m.size());
+        for(Map.Entry<String,?> e: m.entrySet()){
+            put(e.getKey(), e.getValue());
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key)>=0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int i = indexOf(key);
+        return i<0 ? null : values[i];
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        int i = indexOf(key);
+        if(i>=0){
+            Object old = values[i];
+            values[i] = value;
+            return old;
+        }
+        if(size==keys.length){
+            int newLength = size<4 ? 4 : size + (size>>1);
+            keys = Arrays.copyOf(keys, newLength);
+            values = Arrays.copyOf(values, newLength);
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        modCount++;
+        if(table!=null){
+            if(size*2>table.length) rehash();
+            else insert(size-1);
+        }else if(size>LINEAR_MAX){
+            rehash();
+        }
+        return null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int i = indexOf(key);
+        if(i<0)return null;
+        Object old = values[i];
+        removeAt(i);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        table = null;
+        modCount++;
+    }
+
+    /**
+     * reduces the capacity of the map to its size
+     */
+    public void trimToSize(){
+        if(keys.length!=size){
+            keys = size==0 ? EMPTY_KEYS : Arrays.copyOf(keys, size);
+            values = size==0 ? EMPTY_VALUES : Arrays.copyOf(values, size);
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<String,Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String,Object>>() {
+            @Override
+            public Iterator<Map.Entry<String,Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private void removeAt(int i){
+        int tail = size-i-1;
+        if(tail>0){
+            System.arraycopy(keys, i+1, keys, i, tail);
+            System.arraycopy(values, i+1, values, i, tail);
+        }
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        modCount++;
+        if(table!=null){
+            if(size>LINEAR_MAX) rehash();
+            else table = null;
+        }
+    }
+
+    private int indexOf(Object key){
+        if(table==null){
+            String[] keys = this.keys;
+            if(key==null){
+                for(int i=0;i<size;i++)if(keys[i]==null)return i;
+            }else{
+                for(int i=0;i<size;i++)if(key.equals(keys[i]))return i;
+            }
+            return -1;
+        }
+        int mask = table.length-1;
+        int h = hash(key) & mask;
+        int e;
+        while( (e=table[h])!=0 ){
+            String k = keys[e-1];
+            if(key==null ? k==null : key.equals(k))return e-1;
+            h = (h+1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash(){
+        int n = Integer.highestOneBit(Math.max(size,LINEAR_MAX)*2-1)<<1;
+        table = new int[n];
+        for(int i=0;i<size;i++)insert(i);
+    }
+
+    private void insert(int i){
+        int mask = table.length-1;
+        int h = hash(keys[i]) & mask;
+        while(table[h]!=0)h = (h+1) & mask;
+        table[h] = i+1;
+    }
+
+    private static int hash(Object key){
+        if(key==null)return 0;
+        int h = key.hashCode();
+        return h ^ (h>>>16);
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String,Object>> {
+        int next = 0;
+        int last = -1;
+        int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return next<size;
+        }
+
+        @Override
+        public Map.Entry<String,Object> next() {
+            if(expectedModCount!=modCount)throw new ConcurrentModificationException();
+            if(next>=size)throw new NoSuchElementException();
+            last = next++;
+            return new Entry(last);
+        }
+
+        @Override
+        public void remove() {
+            if(last<0)throw new IllegalStateException();
+            if(expectedModCount!=modCount)throw new ConcurrentModificationException();
+            removeAt(last);
+            next = last;
+            last = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    private final class Entry implements Map.Entry<String,Object> {
+        final int index;
+
+        Entry(int index){
+            this.index = index;
+        }
+
+        @Override
+        public String getKey() {
+            return keys[index];
+        }
+
+        @Override
+        public Object getValue() {
+            return values[index];
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            Object old = values[index];
+            values[index] = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Map.Entry))return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object k = getKey(), v = getValue();
+            return (k==null ? e.getKey()==null : k.equals(e.getKey())) && (v==null ? e.getValue()==null : v.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object k = getKey(), v = getValue();
+            return (k==null ? 0 : k.hashCode()) ^ (v==null ? 0 : v.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey()+"="+getValue();
+        }
+    }
+}
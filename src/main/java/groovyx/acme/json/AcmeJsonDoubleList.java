@@ -0,0 +1,104 @@
+package groovyx.acme.json;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * fixed-size list of numbers backed by double[] array. elements are returned as Double.
+ * built by AcmeJsonBuildHandler in primitive arrays mode for json arrays of numbers with fractions
+ * when all of them could be represented as double without loss of precision.
+ * the built list keeps the scale of each parsed number in byte[], so it's written as it was parsed: `1.50` stays `1.50`.
+ */
+public class AcmeJsonDoubleList extends AbstractList<Number> implements RandomAccess {
+    /** scale of value that was integer */
+    static final byte INTEGER = Byte.MIN_VALUE;
+    /** scale of value without known scale, written as double */
+    static final byte PLAIN = Byte.MAX_VALUE;
+    private static final MathContext DOUBLE_DIGITS = new MathContext(15);
+
+    final double[] values;
+    final byte[] scales; //null if all values are plain
+
+    /**
+     * @param values the values of the list. array is not copied.
+     */
+    public AcmeJsonDoubleList(double[] values){
+        this(values, null);
+    }
+
+    AcmeJsonDoubleList(double[] values, byte[] scales){
+        this.values = values;
+        this.scales = scales;
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Number get(int i) {
+        return values[i];
+    }
+
+    /**
+     * returns element without boxing
+     * @param i index of the element
+     * @return the value
+     */
+    public double getDouble(int i){
+        return values[i];
+    }
+
+    /**
+     * sets element. the value is converted to double.
+     */
+    @Override
+    public Number set(int i, Number value) {
+        if(value==null)throw new IllegalArgumentException("null value is not supported");
+        double old = values[i];
+        values[i] = value.doubleValue();
+        if(scales!=null){
+            if(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) scales[i] = INTEGER;
+            else scales[i] = PLAIN;
+        }
+        return old;
+    }
+
+    /**
+     * returns copy of the values
+     * @return array of values
+     */
+    public double[] toDoubleArray(){
+        return values.clone();
+    }
+
+    /**
+     * returns the value as it was parsed: Long for integer, BigDecimal with the original scale for fraction
+     * @param v the value converted to double from decimal with up to 15 significant digits
+     * @param scale the scale of decimal, INTEGER or PLAIN
+     * @return boxed value
+     */
+    static Object box(double v, byte scale){
+        if(scale==INTEGER)return (long)v;
+        if(scale==PLAIN)return v;
+        //up to 15 digits are restored exactly from the nearest double
+        return new BigDecimal(v).round(DOUBLE_DIGITS).setScale(scale);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 1;
+        for(double v: values)h = 31*h + Double.hashCode(v);
+        return h;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(o instanceof AcmeJsonDoubleList)return Arrays.equals(values, ((AcmeJsonDoubleList)o).values);
+        return super.equals(o);
+    }
+}
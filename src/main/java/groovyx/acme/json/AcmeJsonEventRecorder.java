@@ -0,0 +1,297 @@
+package groovyx.acme.json;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * json handler that records parser events into compact binary file, so the same document could be processed many times
+ * with AcmeJsonEventReplayer without tokenizing json text again.
+ * the file keeps object keys in a table at the end of the file and refers to them by number,
+ * numbers are stored as typed binary values, strings with varint lengths, and each object and array keeps its length,
+ * so the replayer could skip it without reading.
+ * the file is completed and closed when the root value ends.
+ * <pre>{@code
+ *  new AcmeJsonParser(new AcmeJsonEventRecorder(new File('data.events'))).parse(new File('data.json'))
+ *  def stats = new AcmeJsonEventReplayer().withAggregate{ ... }.parse(new File('data.events'))
+ * }</pre>
+ */
+public class AcmeJsonEventRecorder implements AcmeJsonHandler, Closeable {
+    static final int MAGIC = 0x414A4556; //AJEV
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 4 + 1 + 8; //magic, version, offset of keys table
+
+    static final int T_OBJECT     = 1;  //length of content (8 bytes), members till T_END
+    static final int T_ARRAY      = 2;  //length of content (8 bytes), items till T_END
+    static final int T_END        = 3;
+    static final int T_NULL       = 4;
+    static final int T_TRUE       = 5;
+    static final int T_FALSE      = 6;
+    static final int T_LONG       = 7;  //zigzag varint
+    static final int T_DOUBLE     = 8;  //8 bytes
+    static final int T_DECIMAL    = 9;  //zigzag varint scale, zigzag varint unscaled value
+    static final int T_BIGDECIMAL = 10; //zigzag varint scale, varint length, bytes of unscaled value
+    static final int T_STRING     = 11; //varint length, utf-8 bytes
+    //members of objects have varint key number after the type
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final FileChannel channel;
+    private final boolean closeChannel;
+    private final ByteBuffer buf = ByteBuffer.allocate(64*1024);
+    private final long headerStart; //file position of the header
+    private long bufStart;          //file position of the buffer start
+    private final ByteBuffer patch = ByteBuffer.allocate(8);
+    private long[] starts = new long[32]; //positions of length fields of open containers
+    private int depth = 0;
+    private final Map<String,Integer> keyIds = new HashMap<>();
+    private final List<String> keys = new ArrayList<>();
+    private boolean closed = false;
+
+    /**
+     * @param file where to record events. the file is overwritten.
+     * @throws IOException if io error occurred
+     */
+    public AcmeJsonEventRecorder(File file) throws IOException {
+        this(file, FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), true);
+    }
+
+    /**
+     * records events starting at the current position of the channel with positional writes. the channel is not closed.
+     * @param channel where to record events
+     * @throws IOException if io error occurred
+     */
+    public AcmeJsonEventRecorder(FileChannel channel) throws IOException {
+        this(null, channel, false);
+    }
+
+    private AcmeJsonEventRecorder(File file, FileChannel channel, boolean closeChannel) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.closeChannel = closeChannel;
+        this.headerStart = channel.position();
+        this.bufStart = headerStart;
+        buf.putInt(MAGIC);
+        buf.put((byte)VERSION);
+        buf.putLong(0); //keys table offset, set on close
+    }
+
+    @Override
+    public void onObjectStart(AbstractJsonPath jpath) throws IOException {
+        start(T_OBJECT, jpath);
+    }
+
+    @Override
+    public void onObjectEnd(AbstractJsonPath jpath) throws IOException {
+        end();
+        if(jpath.size()==0)close();
+    }
+
+    @Override
+    public void onArrayStart(AbstractJsonPath jpath) throws IOException {
+        start(T_ARRAY, jpath);
+    }
+
+    @Override
+    public void onArrayEnd(AbstractJsonPath jpath) throws IOException {
+        end();
+        if(jpath.size()==0)close();
+    }
+
+    @Override
+    public void onValue(AbstractJsonPath jpath, Object value) throws IOException {
+        writeValue(value, jpath.size()>0 && jpath.peek().isKey() ? jpath.peek().getKey() : null);
+        if(jpath.size()==0)close();
+    }
+
+    /**
+     * returns the file with events or null if recorder was created for the channel
+     * @return the file
+     */
+    @Override
+    public File getRoot() {
+        return file;
+    }
+
+    /**
+     * writes keys table and completes the file. called automatically at the end of the root value.
+     * @throws IOException if io error occurred
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed)return;
+        closed = true;
+        long keysOffset = position();
+        writeVarint(keys.size());
+        for(String k: keys)writeString(k);
+        flushBuffer();
+        patch.clear();
+        patch.putLong(keysOffset - headerStart);
+        patch.flip();
+        while(patch.hasRemaining())channel.write(patch, headerStart + 5 + patch.position());
+        if(closeChannel)channel.close();
+    }
+
+    private void start(int type, AbstractJsonPath jpath) throws IOException {
+        startContainer(type, jpath.size()>0 && jpath.peek().isKey() ? jpath.peek().getKey() : null);
+    }
+
+    private void startContainer(int type, String key) throws IOException {
+        writeType(type, key);
+        if(depth==starts.length)starts = Arrays.copyOf(starts, depth*2);
+        starts[depth++] = position();
+        ensure(8);
+        buf.putLong(0);
+    }
+
+    private void end() throws IOException {
+        ensure(1);
+        buf.put((byte)T_END);
+        long lengthPos = starts[--depth];
+        long length = position() - lengthPos - 8;
+        if(lengthPos>=bufStart){
+            buf.putLong((int)(lengthPos-bufStart), length);
+        }else{
+            patch.clear();
+            patch.putLong(length);
+            patch.flip();
+            while(patch.hasRemaining())channel.write(patch, lengthPos + patch.position());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(Object o, String key) throws IOException {
+        if(o==null){
+            writeType(T_NULL, key);
+        }else if(o instanceof String){
+            writeType(T_STRING, key);
+            writeString((String)o);
+        }else if(o instanceof Long || o instanceof Integer || o instanceof Short || o instanceof Byte){
+            writeType(T_LONG, key);
+            writeVarint(zigzag(((Number)o).longValue()));
+        }else if(o instanceof Boolean){
+            writeType((Boolean)o ? T_TRUE : T_FALSE, key);
+        }else if(o instanceof Double || o instanceof Float){
+            writeType(T_DOUBLE, key);
+            ensure(8);
+            buf.putDouble(((Number)o).doubleValue());
+        }else if(o instanceof BigDecimal || o instanceof BigInteger){
+            BigDecimal d = o instanceof BigDecimal ? (BigDecimal)o : new BigDecimal((BigInteger)o);
+            BigInteger u = d.unscaledValue();
+            if(u.bitLength()<64){
+                writeType(T_DECIMAL, key);
+                writeVarint(zigzag(d.scale()));
+                writeVarint(zigzag(u.longValue()));
+            }else{
+                writeType(T_BIGDECIMAL, key);
+                writeVarint(zigzag(d.scale()));
+                byte[] b = u.toByteArray();
+                writeVarint(b.length);
+                writeBytes(b, b.length);
+            }
+        }else if(o instanceof Map){
+            startContainer(T_OBJECT, key);
+            for(Map.Entry<Object,Object> e: ((Map<Object,Object>)o).entrySet()){
+                writeValue(e.getValue(), String.valueOf(e.getKey()));
+            }
+            end();
+        }else if(o instanceof Iterable || o instanceof Iterator || o instanceof Object[]){
+            Iterator<Object> i = o instanceof Iterable ? ((Iterable<Object>)o).iterator()
+                    : o instanceof Iterator ? (Iterator<Object>)o : Arrays.asList((Object[])o).iterator();
+            startContainer(T_ARRAY, key);
+            while(i.hasNext())writeValue(i.next(), null);
+            end();
+        }else if(o instanceof Number){
+            writeType(T_DOUBLE, key);
+            ensure(8);
+            buf.putDouble(((Number)o).doubleValue());
+        }else{
+            writeType(T_STRING, key);
+            writeString(o.toString());
+        }
+    }
+
+    /** writes the type and the key number for members of objects */
+    private void writeType(int type, String key) throws IOException {
+        if(closed)throw new IllegalStateException("recorder is closed");
+        ensure(1);
+        buf.put((byte)type);
+        if(key!=null){
+            Integer id = keyIds.get(key);
+            if(id==null){
+                id = keys.size();
+                keyIds.put(key, id);
+                keys.add(key);
+            }
+            writeVarint(id);
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        int n = s.length();
+        boolean ascii = true;
+        for(int i=0;i<n && ascii;i++)ascii = s.charAt(i)<0x80;
+        if(ascii){
+            writeVarint(n);
+            ensure(Math.min(n, buf.capacity()));
+            for(int i=0;i<n;i++){
+                if(!buf.hasRemaining())flushBuffer();
+                buf.put((byte)s.charAt(i));
+            }
+        }else{
+            byte[] b = s.getBytes(UTF8);
+            writeVarint(b.length);
+            writeBytes(b, b.length);
+        }
+    }
+
+    private void writeBytes(byte[] b, int len) throws IOException {
+        for(int off=0;off<len;){
+            if(!buf.hasRemaining())flushBuffer();
+            int n = Math.min(len-off, buf.remaining());
+            buf.put(b, off, n);
+            off += n;
+        }
+    }
+
+    private void writeVarint(long v) throws IOException {
+        ensure(10);
+        while((v & ~0x7FL)!=0){
+            buf.put((byte)((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buf.put((byte)v);
+    }
+
+    static long zigzag(long v){
+        return (v<<1) ^ (v>>63);
+    }
+
+    private long position(){
+        return bufStart + buf.position();
+    }
+
+    private void ensure(int n) throws IOException {
+        if(buf.remaining()<n)flushBuffer();
+    }
+
+    private void flushBuffer() throws IOException {
+        buf.flip();
+        while(buf.hasRemaining())channel.write(buf, bufStart + buf.position());
+        bufStart += buf.limit();
+        buf.clear();
+    }
+}
@@ -0,0 +1,287 @@
+package groovyx.acme.json;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import static groovyx.acme.json.AcmeJsonEventRecorder.*;
+
+/**
+ * parser that replays events recorded by AcmeJsonEventRecorder to any handler: build, filter, aggregate, write, etc.
+ * values are replayed as Long, Double, BigDecimal, String, Boolean, or null.
+ * objects and arrays at skip paths are jumped over using their stored lengths and are not visible to the handler.
+ * <pre>{@code
+ *  def data = new AcmeJsonEventReplayer().setSkipPaths('$..attachments').parse(new File('data.events'))
+ * }</pre>
+ */
+public class AcmeJsonEventReplayer extends AbstractJsonParser {
+    private FileChannel channel;
+    private final byte[] buf = new byte[64*1024];
+    private final ByteBuffer bb = ByteBuffer.wrap(buf);
+    private int pos = 0;
+    private int limit = 0;
+    private long base = 0; //file position of the buffer start
+    private String[] keys;
+    private final JsonPathStack path = new JsonPathStack();
+    private final JsonPathStack source = new JsonPathStack(); //path with recorded indices to match skip paths
+    private JsonPathMatcher[] skip = null;
+
+    public AcmeJsonEventReplayer() {}
+
+    public AcmeJsonEventReplayer(AcmeJsonHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * sets paths of values that are not replayed
+     * @param paths json paths like {@code $.items[*].attachments}
+     * @return self
+     */
+    public AcmeJsonEventReplayer setSkipPaths(String... paths){
+        skip = new JsonPathMatcher[paths.length];
+        for(int i=0;i<paths.length;i++)skip[i] = new JsonPathMatcher(paths[i]);
+        return this;
+    }
+
+    @Override
+    public Object parse(File file) throws AcmeJsonException {
+        if(handler==null)handler=new AcmeJsonBuildHandler();
+        FileChannel ch = null;
+        try {
+            ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            return replay(ch, 0);
+        }catch(IOException e){
+            throw new AcmeJsonException("Failed to read file `"+file+"`: "+e.getMessage(), e);
+        }finally{
+            if(ch!=null){
+                try { ch.close(); } catch(IOException e) {}
+            }
+        }
+    }
+
+    @Override
+    public Object parse(File file, String charset) throws AcmeJsonException {
+        return parse(file);
+    }
+
+    /**
+     * replays events recorded in the channel starting at the position. the channel is not closed.
+     * @param channel the source
+     * @param position where recorded events start
+     * @return the object returned by handler after replay
+     * @throws AcmeJsonException if the data is broken or io error occurred
+     */
+    public Object parse(FileChannel channel, long position) throws AcmeJsonException {
+        if(handler==null)handler=new AcmeJsonBuildHandler();
+        try {
+            return replay(channel, position);
+        }catch(IOException e){
+            throw new AcmeJsonException(e.toString(), e);
+        }
+    }
+
+    @Override
+    protected Object doParse(Reader reader) throws AcmeJsonException {
+        throw new AcmeJsonException("Event replayer requires file source: use parse(File) or parse(FileChannel, position)");
+    }
+
+    @Override
+    protected Object doParse(InputStream in) throws AcmeJsonException {
+        throw new AcmeJsonException("Event replayer requires file source: use parse(File) or parse(FileChannel, position)");
+    }
+
+    private Object replay(FileChannel channel, long start) throws IOException {
+        this.channel = channel;
+        this.path.size = 0;
+        this.source.size = 0;
+        seek(start);
+        if(readInt()!=MAGIC)throw error("Not an events file");
+        int version = readByte();
+        if(version!=VERSION)throw error("Unsupported events file version "+version);
+        long keysOffset = readLong();
+        if(keysOffset==0)throw error("Events file is not complete");
+        //keys table
+        seek(start+keysOffset);
+        keys = new String[(int)readVarint()];
+        for(int i=0;i<keys.length;i++)keys[i] = readString();
+        seek(start+HEADER_SIZE);
+        replayItem(readByte());
+        return handler.getRoot();
+    }
+
+    /** replays item of the type at current path. returns false if item was skipped */
+    private boolean replayItem(int type) throws IOException {
+        switch (type){
+            case T_OBJECT: {
+                long length = readLong();
+                if(skipped()){
+                    seek(base+pos+length);
+                    return false;
+                }
+                handler.onObjectStart(path);
+                int i = 0;
+                for(int t=readByte(), n=0; t!=T_END; t=readByte(), n++){
+                    String key = keys[(int)readVarint()];
+                    path.push(i, key, true);
+                    if(skip!=null)source.push(n, key, true);
+                    if(replayItem(t))i++;
+                    path.pop();
+                    if(skip!=null)source.pop();
+                }
+                handler.onObjectEnd(path);
+                return true;
+            }
+            case T_ARRAY: {
+                long length = readLong();
+                if(skipped()){
+                    seek(base+pos+length);
+                    return false;
+                }
+                handler.onArrayStart(path);
+                int i = 0;
+                for(int t=readByte(), n=0; t!=T_END; t=readByte(), n++){
+                    path.push(i, null, false);
+                    if(skip!=null)source.push(n, null, false);
+                    if(replayItem(t))i++;
+                    path.pop();
+                    if(skip!=null)source.pop();
+                }
+                handler.onArrayEnd(path);
+                return true;
+            }
+            default: {
+                Object v = readValue(type);
+                if(skipped())return false;
+                handler.onValue(path, v);
+                return true;
+            }
+        }
+    }
+
+    private boolean skipped(){
+        if(skip==null || source.size==0)return false;
+        for(JsonPathMatcher m: skip){
+            if(m.matches(source))return true;
+        }
+        return false;
+    }
+
+    private Object readValue(int type) throws IOException {
+        switch (type){
+            case T_NULL:     return null;
+            case T_TRUE:     return Boolean.TRUE;
+            case T_FALSE:    return Boolean.FALSE;
+            case T_LONG:     return unzigzag(readVarint());
+            case T_DOUBLE:   return Double.longBitsToDouble(readLong());
+            case T_STRING:   return readString();
+            case T_DECIMAL: {
+                int scale = (int)unzigzag(readVarint());
+                return BigDecimal.valueOf(unzigzag(readVarint()), scale);
+            }
+            case T_BIGDECIMAL: {
+                int scale = (int)unzigzag(readVarint());
+                byte[] b = new byte[(int)readVarint()];
+                readFully(b, b.length);
+                return new BigDecimal(new BigInteger(b), scale);
+            }
+            default: throw error("Wrong event type "+type);
+        }
+    }
+
+    private static long unzigzag(long v){
+        return (v>>>1) ^ -(v & 1);
+    }
+
+    //---------------- bytes ----------------
+
+    private String readString() throws IOException {
+        int len = (int)readVarint();
+        if(limit-pos>=len){
+            String s = new String(buf, pos, len, UTF8);
+            pos += len;
+            return s;
+        }
+        byte[] b = new byte[len];
+        readFully(b, len);
+        return new String(b, UTF8);
+    }
+
+    private long readVarint() throws IOException {
+        long v = 0;
+        for(int shift=0; shift<64; shift+=7){
+            int b = readByte();
+            v |= (long)(b & 0x7F) << shift;
+            if((b & 0x80)==0)return v;
+        }
+        throw error("Wrong varint");
+    }
+
+    private long readLong() throws IOException {
+        if(limit-pos>=8){
+            long v = bb.getLong(pos);
+            pos += 8;
+            return v;
+        }
+        long v = 0;
+        for(int i=0;i<8;i++)v = (v<<8) | readByte();
+        return v;
+    }
+
+    private int readInt() throws IOException {
+        int v = 0;
+        for(int i=0;i<4;i++)v = (v<<8) | readByte();
+        return v;
+    }
+
+    private int readByte() throws IOException {
+        if(pos==limit && !fill())throw new EOFException("End of events file at "+(base+pos)+" path "+path);
+        return buf[pos++] & 0xFF;
+    }
+
+    private void readFully(byte[] b, int len) throws IOException {
+        int off = 0;
+        while(off<len){
+            if(pos==limit && !fill())throw new EOFException("End of events file at "+(base+pos)+" path "+path);
+            int n = Math.min(len-off, limit-pos);
+            System.arraycopy(buf, pos, b, off, n);
+            pos += n;
+            off += n;
+        }
+    }
+
+    /** moves to the file position. keeps buffered data if the position is inside the buffer */
+    private void seek(long position){
+        if(position>=base && position<=base+limit){
+            pos = (int)(position-base);
+        }else{
+            base = position;
+            pos = 0;
+            limit = 0;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        base += limit;
+        pos = 0;
+        limit = 0;
+        bb.clear();
+        int n;
+        do {
+            n = channel.read(bb, base + bb.position());
+        }while(n==0);
+        if(n<0)return false;
+        limit = bb.position();
+        return true;
+    }
+
+    private AcmeJsonException error(String message){
+        return new AcmeJsonException(message+" at "+(base+pos)+" path "+path);
+    }
+}
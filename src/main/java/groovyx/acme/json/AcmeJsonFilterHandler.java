@@ -3,14 +3,21 @@ package groovyx.acme.json;
 import groovy.lang.Closure;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.Writer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
 
 
 /**
  * provides easy way to build a sequence of closures to catch json reading events and manipulate values
  */
-public class AcmeJsonFilterHandler implements AcmeJsonHandler {
+public class AcmeJsonFilterHandler implements AcmeJsonRawHandler {
     protected int size=0; //number of filters
     protected ArrayList<Filter> filters = new ArrayList<>(); //map dedicated for values catchers
     protected AcmeJsonHandler delegate=null;
@@ -18,6 +25,19 @@ public class AcmeJsonFilterHandler implements AcmeJsonHandler {
     protected AcmeJsonBuildHandler builder = null; //used to build complex value if needed
     protected Filter filter4builder = null;   //used when started building complex value to know who is interested in result
 
+    protected Executor executor = null;       //not null in async mode
+    protected int maxInFlight = 0;            //max number of filter calls executed in parallel
+    private ArrayDeque<Pending> pending = null; //events waiting for the filter results to keep the original order
+    private int inFlight = 0;
+
+    private static final int E_OBJECT_START = 1;
+    private static final int E_OBJECT_END   = 2;
+    private static final int E_ARRAY_START  = 3;
+    private static final int E_ARRAY_END    = 4;
+    private static final int E_VALUE        = 5;
+    /** number of queued events allowed per each filter call in flight */
+    private static final int QUEUE_FACTOR   = 256;
+
     public AcmeJsonFilterHandler(){}
 
     /**
@@ -50,6 +70,21 @@ public class AcmeJsonFilterHandler implements AcmeJsonHandler {
         return this;
     }
 
+    /**
+     * switches handler to async mode: filter closures are executed by executor while parser continues reading,
+     * and the events are passed to delegate in the original order. closures must be thread safe.
+     * @param executor where to execute filter closures
+     * @param maxInFlight max number of filter calls in progress. when reached parsing waits for the oldest call.
+     * @return self
+     */
+    public AcmeJsonFilterHandler setAsync(Executor executor, int maxInFlight){
+        if(maxInFlight<1)throw new IllegalArgumentException("maxInFlight must be positive: "+maxInFlight);
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.pending = new ArrayDeque<>();
+        return this;
+    }
+
     private Filter findMatchingFilter(AbstractJsonPath jpath){
         for(Filter f: filters){
             if(f.matcher.matches(jpath))return f;
@@ -66,13 +101,13 @@ public class AcmeJsonFilterHandler implements AcmeJsonHandler {
             if(filter4builder!=null) {
                 if(filter4builder.matcher.endless()){
                     //just delegate
-                    delegate.onObjectStart(jpath);
+                    emit(E_OBJECT_START, jpath, null);
                 }else {
                     builder = new AcmeJsonBuildHandler();
                     builder.onObjectStart(jpath); //we are in state of building object
                 }
             }else {
-                delegate.onObjectStart(jpath);
+                emit(E_OBJECT_START, jpath, null);
             }
         }
     }
@@ -83,12 +118,11 @@ public class AcmeJsonFilterHandler implements AcmeJsonHandler {
             builder.onObjectEnd(jpath); //we are in state of building object
             if(builder.isDone()){
                 //if object built notify the filter
-                Object newValue = filter4builder.call(builder.getRoot(), jpath);
-                delegate.onValue(jpath, newValue);
+                callFilter(filter4builder, builder.getRoot(), jpath);
                 builder = null;
             }
         } else {
-            delegate.onObjectEnd(jpath);
+            emit(E_OBJECT_END, jpath, null);
         }
     }
 
@@ -101,13 +135,13 @@ public class AcmeJsonFilterHandler implements AcmeJsonHandler {
             if(filter4builder!=null) {
                 if(filter4builder.matcher.endless()){
                     //just delegate
-                    delegate.onArrayStart(jpath);
+                    emit(E_ARRAY_START, jpath, null);
                 }else {
                     builder = new AcmeJsonBuildHandler();
                     builder.onArrayStart(jpath); //we are in state of building object
                 }
             }else {
-                delegate.onArrayStart(jpath);
+                emit(E_ARRAY_START, jpath, null);
             }
         }
     }
@@ -118,12 +152,11 @@ public class AcmeJsonFilterHandler implements AcmeJsonHandler {
             builder.onArrayEnd(jpath); //we are in state of building object
             if(builder.isDone()){
                 //if object built notify the filter
-                Object newValue = filter4builder.call(builder.getRoot(), jpath);
-                delegate.onValue(jpath, newValue);
+                callFilter(filter4builder, builder.getRoot(), jpath);
                 builder = null;
             }
         } else {
-            delegate.onArrayEnd(jpath);
+            emit(E_ARRAY_END, jpath, null);
         }
     }
 
@@ -135,10 +168,9 @@ public class AcmeJsonFilterHandler implements AcmeJsonHandler {
             filter4builder = findMatchingFilter(jpath);
             if(filter4builder!=null) {
                 //notify the filter
-                Object newValue = filter4builder.call(value, jpath);
-                delegate.onValue(jpath, newValue);
+                callFilter(filter4builder, value, jpath);
             }else {
-                delegate.onValue(jpath, value);
+                emit(E_VALUE, jpath, value);
             }
         }
 
@@ -146,21 +178,199 @@ public class AcmeJsonFilterHandler implements AcmeJsonHandler {
 
     @Override
     public Object getRoot() {
+        try {
+            drain(true);
+        }catch (IOException e){
+            throw new AcmeJsonException(e.toString(), e);
+        }
+        for(Filter f: filters){
+            if(f.calls>0)f.record();
+        }
         return delegate.getRoot();
     }
 
+    /**
+     * calls filter and passes the result to delegate. in async mode the call is queued to executor.
+     */
+    private void callFilter(final Filter filter, final Object value, AbstractJsonPath jpath) throws IOException {
+        if(executor==null){
+            delegate.onValue(jpath, filter.call(value, jpath));
+            return;
+        }
+        final AbstractJsonPath path = new JsonPathSnapshot(jpath);
+        FutureTask<Object> task = new FutureTask<>(new Callable<Object>() {
+            @Override
+            public Object call() {
+                return filter.call(value, path);
+            }
+        });
+        inFlight++;
+        pending.addLast(new Pending(E_VALUE, path, null, task));
+        executor.execute(task);
+        applyBackpressure();
+    }
+
+    /**
+     * passes event to delegate directly or through the queue if there are filter results we are waiting for
+     */
+    private void emit(int event, AbstractJsonPath jpath, Object value) throws IOException {
+        if(pending!=null && !pending.isEmpty()){
+            drain(false);
+            if(!pending.isEmpty()){
+                pending.addLast(new Pending(event, new JsonPathSnapshot(jpath), value, null));
+                applyBackpressure();
+                return;
+            }
+        }
+        deliver(event, jpath, value);
+    }
+
+    /**
+     * waits for the oldest filter results while number of values in flight or queue size over the limits
+     */
+    private void applyBackpressure() throws IOException {
+        while(inFlight>maxInFlight || pending.size()>maxInFlight*QUEUE_FACTOR){
+            deliver(pending.removeFirst());
+        }
+    }
+
+    /**
+     * passes to delegate queued events in order while they are ready.
+     * @param block true to wait for all filter results
+     */
+    private void drain(boolean block) throws IOException {
+        if(pending==null)return;
+        while(!pending.isEmpty()){
+            Pending head = pending.peekFirst();
+            if(head.future!=null && !block && !head.future.isDone())return;
+            deliver(pending.removeFirst());
+        }
+    }
+
+    private void deliver(Pending p) throws IOException {
+        if(p.future==null){
+            deliver(p.event, p.path, p.value);
+            return;
+        }
+        Object newValue;
+        try {
+            newValue = p.future.get();
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for filter at "+p.path);
+        }catch (ExecutionException e){
+            Throwable t = e.getCause();
+            if(t instanceof RuntimeException) throw (RuntimeException) t;
+            if(t instanceof Error) throw (Error) t;
+            throw new AcmeJsonException("filter failed at "+p.path+": "+t, t);
+        }finally {
+            inFlight--;
+        }
+        delegate.onValue(p.path, newValue);
+    }
+
+    private void deliver(int event, AbstractJsonPath jpath, Object value) throws IOException {
+        switch (event){
+            case E_OBJECT_START: delegate.onObjectStart(jpath); break;
+            case E_OBJECT_END:   delegate.onObjectEnd(jpath); break;
+            case E_ARRAY_START:  delegate.onArrayStart(jpath); break;
+            case E_ARRAY_END:    delegate.onArrayEnd(jpath); break;
+            default:             delegate.onValue(jpath, value);
+        }
+    }
+
+    @Override
+    public boolean isRawCopy() {
+        return delegate instanceof AcmeJsonRawHandler && ((AcmeJsonRawHandler) delegate).isRawCopy();
+    }
+
+    @Override
+    public boolean isRawCompact() {
+        return delegate instanceof AcmeJsonRawHandler && ((AcmeJsonRawHandler) delegate).isRawCompact();
+    }
+
+    /**
+     * passes raw value to delegate only if there is no filter that could match the value or any of its children
+     */
+    @Override
+    public Writer onRawValue(AbstractJsonPath jpath) throws IOException {
+        if (builder != null) return null;
+        if (pending != null && !pending.isEmpty()) return null; //raw value could not wait in the queue
+        for(Filter f: filters){
+            if(f.matcher.mayMatch(jpath))return null;
+        }
+        return ((AcmeJsonRawHandler) delegate).onRawValue(jpath);
+    }
+
     public Builder builder(){
         return new Builder();
     }
 
+    /**
+     * creates filter handler defined by the closure with Builder as delegate. the default delegate is AcmeJsonNullHandler.
+     * @param builder the closure to define filters and delegate
+     * @return the new handler
+     */
+    static AcmeJsonFilterHandler fromClosure(Closure<?> builder){
+        AcmeJsonFilterHandler handler = new AcmeJsonFilterHandler();
+        Object helper = handler.builder();
+        //init handler through helper
+        builder.rehydrate(helper, builder.getOwner(), helper).call(helper);
+        //default delegate is null
+        if(handler.getDelegate()==null)handler.setDelegate(new AcmeJsonNullHandler());
+        return handler;
+    }
+
+    /** event waiting in the queue for async filter results */
+    final static class Pending{
+        final int event;
+        final AbstractJsonPath path;
+        final Object value;
+        final FutureTask<Object> future; //not null if value is a result of async filter
+        Pending(int event, AbstractJsonPath path, Object value, FutureTask<Object> future){
+            this.event=event;
+            this.path=path;
+            this.value=value;
+            this.future=future;
+        }
+    }
+
     final static class Filter{
+        final String path;
         final JsonPathMatcher matcher;
         final Closure closure;
+        //calls and time while flight recording is on
+        long calls = 0;
+        long nanos = 0;
         Filter(String p, Closure c){
+            this.path=p;
             this.matcher=new JsonPathMatcher(p);
             this.closure=c;
         }
         final Object call(Object value, AbstractJsonPath jpath){
+            if(AcmeJsonFlightRecorder.isRecording()){
+                long t = System.nanoTime();
+                try {
+                    return doCall(value, jpath);
+                }finally{
+                    t = System.nanoTime() - t;
+                    synchronized (this){ //async filters are called from many threads
+                        calls++;
+                        nanos += t;
+                    }
+                }
+            }
+            return doCall(value, jpath);
+        }
+
+        /** records calls to flight recorder */
+        final synchronized void record(){
+            AcmeJsonFlightRecorder.filter(path, calls, nanos);
+            calls = 0;
+            nanos = 0;
+        }
+
+        private Object doCall(Object value, AbstractJsonPath jpath){
             Object newValue = null;
             if(closure.getMaximumNumberOfParameters()==1){
                 newValue = closure.call( value );
@@ -186,11 +396,31 @@ public class AcmeJsonFilterHandler implements AcmeJsonHandler {
             addValueFilter(path,closure);
         }
 
+        /**
+         * execute filter closures in parallel in the common fork-join pool keeping the original order of values
+         * @param maxInFlight max number of filter calls in progress
+         */
+        public void async(int maxInFlight){
+            setAsync(ForkJoinPool.commonPool(), maxInFlight);
+        }
+
+        /**
+         * execute filter closures in parallel with executor keeping the original order of values
+         * @param executor where to execute filter closures. for example virtual thread per task executor.
+         * @param maxInFlight max number of filter calls in progress
+         */
+        public void async(Executor executor, int maxInFlight){
+            setAsync(executor, maxInFlight);
+        }
+
         /**
          * defines the delegate handler to be AcmeJsonBuildHandler that builds object in memory from json source
+         * @return the new build handler
          */
-        public void build(){
-            setDelegate( new AcmeJsonBuildHandler());
+        public AcmeJsonBuildHandler build(){
+            AcmeJsonBuildHandler h = new AcmeJsonBuildHandler();
+            setDelegate( h );
+            return h;
         }
 
         /**
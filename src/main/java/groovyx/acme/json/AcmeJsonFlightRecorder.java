@@ -0,0 +1,197 @@
+package groovyx.acme.json;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * JDK Flight Recorder events of parsing, filtering and writing:
+ * <ul>
+ *     <li>groovyx.acme.json.Parse - one per parse: source, chars, depth, tokens, failed, duration</li>
+ *     <li>groovyx.acme.json.Filter - one per filter path at the end of parse: path, count of calls, total time</li>
+ *     <li>groovyx.acme.json.Write - one per AcmeJsonOutput call: output, size in chars or bytes, duration</li>
+ * </ul>
+ * the library is compiled for java 8, so the event types are defined with jdk.jfr.EventFactory through reflection.
+ * they are created when the first recording starts. while there is no running recording the cost is one volatile read.
+ * on java 8 without jfr api the events are never recorded.
+ */
+final class AcmeJsonFlightRecorder {
+    private static final String CATEGORY = "AcmeJson";
+
+    private static volatile boolean recording = false;
+    private static volatile boolean failed = false;
+    private static Object parseFactory;
+    private static Object filterFactory;
+    private static Object writeFactory;
+    private static Method newEvent;
+    private static Method begin;
+    private static Method end;
+    private static Method set;
+    private static Method shouldCommit;
+    private static Method commit;
+
+    static {
+        try {
+            Class<?> recorder = Class.forName("jdk.jfr.FlightRecorder");
+            if((Boolean)recorder.getMethod("isAvailable").invoke(null)){
+                Class<?> listener = Class.forName("jdk.jfr.FlightRecorderListener");
+                Object proxy = Proxy.newProxyInstance(AcmeJsonFlightRecorder.class.getClassLoader(), new Class<?>[]{listener}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object p, Method m, Object[] args) {
+                        switch (m.getName()){
+                            case "recordingStateChanged": update(); return null;
+                            case "hashCode": return System.identityHashCode(p);
+                            case "equals": return p==args[0];
+                            case "toString": return "AcmeJsonFlightRecorder";
+                            default: return null;
+                        }
+                    }
+                });
+                recorder.getMethod("addListener", listener).invoke(null, proxy);
+                if((Boolean)recorder.getMethod("isInitialized").invoke(null))update();
+            }
+        }catch(Throwable t){
+            //no jfr api: java 8 or jfr is disabled
+        }
+    }
+
+    private AcmeJsonFlightRecorder(){}
+
+    /**
+     * @return true while there is a running recording
+     */
+    static boolean isRecording(){
+        return recording;
+    }
+
+    /**
+     * creates event and starts its timing if there is a running recording
+     * @return event or null
+     */
+    static Object beginParse(){
+        return recording ? begin(parseFactory) : null;
+    }
+
+    static void commitParse(Object event, String source, AcmeJsonParserMetrics.Snapshot metrics, boolean error){
+        if(metrics!=null) commit(event, source, metrics.chars, metrics.maxDepth, metrics.tokens, error);
+        else commit(event, source, -1L, -1L, -1L, error);
+    }
+
+    static Object beginWrite(){
+        return recording ? begin(writeFactory) : null;
+    }
+
+    static void commitWrite(Object event, String output, long size){
+        commit(event, output, size);
+    }
+
+    /**
+     * records aggregated calls of one filter
+     */
+    static void filter(String path, long count, long nanos){
+        if(recording){
+            Object event = begin(filterFactory);
+            commit(event, path, count, nanos);
+        }
+    }
+
+    private static Object begin(Object factory){
+        try {
+            Object event = newEvent.invoke(factory);
+            begin.invoke(event);
+            return event;
+        }catch(Exception e){
+            disable();
+            return null;
+        }
+    }
+
+    private static void commit(Object event, Object... values){
+        if(event==null)return;
+        try {
+            end.invoke(event);
+            if(!(Boolean)shouldCommit.invoke(event))return;
+            for(int i=0;i<values.length;i++)set.invoke(event, i, values[i]);
+            commit.invoke(event);
+        }catch(Exception e){
+            disable();
+        }
+    }
+
+    private static void disable(){
+        failed = true;
+        recording = false;
+    }
+
+    /** called when recording state changes: sets the flag and creates event types on the first recording */
+    private static synchronized void update(){
+        if(failed)return;
+        try {
+            Class<?> recorder = Class.forName("jdk.jfr.FlightRecorder");
+            Object r = recorder.getMethod("getFlightRecorder").invoke(null);
+            boolean running = false;
+            for(Object rec: (List<?>)recorder.getMethod("getRecordings").invoke(r)){
+                Object state = rec.getClass().getMethod("getState").invoke(rec);
+                if("RUNNING".equals(String.valueOf(state)))running = true;
+            }
+            if(running && parseFactory==null)createTypes();
+            recording = running;
+        }catch(Exception e){
+            disable();
+        }
+    }
+
+    private static void createTypes() throws Exception {
+        Class<?> event = Class.forName("jdk.jfr.Event");
+        newEvent = Class.forName("jdk.jfr.EventFactory").getMethod("newEvent");
+        begin = event.getMethod("begin");
+        end = event.getMethod("end");
+        set = event.getMethod("set", int.class, Object.class);
+        shouldCommit = event.getMethod("shouldCommit");
+        commit = event.getMethod("commit");
+        parseFactory = factory("Parse", "Json Parse", "parse of json document by AcmeJson parser",
+                field(String.class, "source", "Source", null),
+                field(long.class, "chars", "Chars", null),
+                field(long.class, "depth", "Max Depth", null),
+                field(long.class, "tokens", "Tokens", null),
+                field(boolean.class, "failed", "Failed", null));
+        filterFactory = factory("Filter", "Json Filter", "calls of AcmeJsonFilterHandler filter during one parse",
+                field(String.class, "path", "Path", null),
+                field(long.class, "count", "Count", null),
+                field(long.class, "totalTime", "Total Time", "NANOSECONDS"));
+        writeFactory = factory("Write", "Json Write", "write of json by AcmeJsonOutput",
+                field(String.class, "output", "Output", null),
+                field(long.class, "size", "Size", null));
+    }
+
+    private static Object factory(String name, String label, String description, Object... fields) throws Exception {
+        List<Object> annotations = new ArrayList<>();
+        annotations.add(annotation("jdk.jfr.Name", "groovyx.acme.json."+name));
+        annotations.add(annotation("jdk.jfr.Label", label));
+        annotations.add(annotation("jdk.jfr.Description", description));
+        annotations.add(annotation("jdk.jfr.Category", new String[]{CATEGORY}));
+        annotations.add(annotation("jdk.jfr.StackTrace", false));
+        Class<?> factory = Class.forName("jdk.jfr.EventFactory");
+        return factory.getMethod("create", List.class, List.class).invoke(null, annotations, Arrays.asList(fields));
+    }
+
+    private static Object field(Class<?> type, String name, String label, String timespan) throws Exception {
+        List<Object> annotations = new ArrayList<>();
+        annotations.add(annotation("jdk.jfr.Label", label));
+        if(timespan!=null)annotations.add(annotation("jdk.jfr.Timespan", timespan));
+        Constructor<?> c = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+        return c.newInstance(type, name, annotations);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object annotation(String type, Object value) throws Exception {
+        Class<? extends Annotation> a = (Class<? extends Annotation>)Class.forName(type);
+        Constructor<?> c = Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+        return c.newInstance(a, value);
+    }
+}
@@ -0,0 +1,502 @@
+package groovyx.acme.json;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * read-only lazy json document over memory-mapped file.
+ * the direct children of each object and array are located by structural scan on the first access to the container,
+ * small subtrees are parsed with AcmeJsonParser only when they are reached by Map.get / List.get,
+ * and large subtrees are returned as lazy views again. so the heap usage depends on what was touched and not on the file size.
+ * materialized subtrees are kept in bounded cache of soft references.
+ * only strict utf-8 json is supported.
+ * the document and its views are not thread-safe: scanning of containers and the cache are not synchronized,
+ * so the document must be confined to one thread or guarded by the caller.
+ */
+public class AcmeJsonLazyDocument {
+    static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int CHUNK_BITS = 30; //1GB mapped chunks
+
+    private final File file;
+    private final MappedByteBuffer[] chunks;
+    private final int chunkBits;
+    private final long chunkMask;
+    private final long size;
+    private final long rootStart;
+    private Object root = null;
+    private boolean rootDone = false;
+    private int threshold = 64*1024;
+    private int maxCached = 1024;
+
+    private final LinkedHashMap<Long,SoftReference<Object>> cache = new LinkedHashMap<Long,SoftReference<Object>>(64, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long,SoftReference<Object>> eldest) {
+            return size()>maxCached;
+        }
+    };
+
+    /**
+     * maps the file into memory. the file is not parsed.
+     * @param file json file
+     * @throws IOException if file could not be mapped
+     */
+    public AcmeJsonLazyDocument(File file) throws IOException {
+        this(file, CHUNK_BITS);
+    }
+
+    AcmeJsonLazyDocument(File file, int chunkBits) throws IOException {
+        this.file = file;
+        this.chunkBits = chunkBits;
+        this.chunkMask = (1L<<chunkBits)-1;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel ch = raf.getChannel();
+            size = ch.size();
+            int n = (int)((size+chunkMask)>>>chunkBits);
+            chunks = new MappedByteBuffer[n];
+            for(int i=0;i<n;i++){
+                long off = (long)i<<chunkBits;
+                chunks[i] = ch.map(FileChannel.MapMode.READ_ONLY, off, Math.min(1L<<chunkBits, size-off));
+            }
+        }finally {
+            raf.close();
+        }
+        long p = 0;
+        if(size>=3 && at(0)==(byte)0xEF && at(1)==(byte)0xBB && at(2)==(byte)0xBF)p = 3; //skip BOM
+        rootStart = skipWs(p);
+        if(rootStart>=size)throw new AcmeJsonException("Empty json document `"+file+"`");
+    }
+
+    /**
+     * subtrees smaller then threshold are parsed into regular Map/List on access, bigger ones are returned as lazy views. default 64KB.
+     * @param bytes the threshold size of subtree in bytes
+     * @return self
+     */
+    public AcmeJsonLazyDocument setMaterializeThreshold(int bytes){
+        this.threshold = bytes;
+        return this;
+    }
+
+    /**
+     * max number of subtrees kept in the cache. default 1024.
+     * @param maxCached max number of cached subtrees
+     * @return self
+     */
+    public AcmeJsonLazyDocument setMaxCached(int maxCached){
+        this.maxCached = maxCached;
+        return this;
+    }
+
+    /**
+     * returns size of the document in bytes
+     * @return size of the file
+     */
+    public long getSize(){
+        return size;
+    }
+
+    /**
+     * returns the root of the document: lazy Map or List, or plain value for scalar documents
+     * @return the root json element
+     */
+    public synchronized Object getRoot(){
+        if(rootDone)return root;
+        long end = skipValue(rootStart);
+        if(skipWs(end)<size)throw error("Unexpected data after json document", skipWs(end));
+        byte b = at(rootStart);
+        if(b=='{')root = new LazyMap(rootStart);
+        else if(b=='[')root = new LazyList(rootStart);
+        else root = value(rootStart, end);
+        rootDone = true;
+        return root;
+    }
+
+    //---------------- bytes access ----------------
+
+    private byte at(long pos){
+        return chunks[(int)(pos>>>chunkBits)].get((int)(pos & chunkMask));
+    }
+
+    private AcmeJsonException error(String msg, long pos){
+        return new AcmeJsonException(msg+" at offset "+pos+" in `"+file+"`");
+    }
+
+    private long skipWs(long p){
+        while(p<size){
+            byte b = at(p);
+            if(b!=' ' && b!='\n' && b!='\r' && b!='\t')break;
+            p++;
+        }
+        return p;
+    }
+
+    private long expect(long p, char c){
+        p = skipWs(p);
+        if(p>=size || at(p)!=c)throw error("Expected `"+c+"`", p);
+        return p+1;
+    }
+
+    /** returns position after the string that starts at p (p points to the quote) */
+    private long skipString(long p){
+        p++;
+        while(p<size){
+            byte b = at(p++);
+            if(b=='"')return p;
+            if(b=='\\')p++;
+        }
+        throw error("Unterminated string", p);
+    }
+
+    /** returns position after the value that starts at p */
+    private long skipValue(long p){
+        byte b = at(p);
+        if(b=='"')return skipString(p);
+        if(b=='{' || b=='['){
+            int depth = 0;
+            while(p<size){
+                b = at(p);
+                if(b=='"'){
+                    p = skipString(p);
+                    continue;
+                }
+                p++;
+                if(b=='{' || b=='[')depth++;
+                else if(b=='}' || b==']'){
+                    if(--depth==0)return p;
+                }
+            }
+            throw error("Unterminated container", p);
+        }
+        long s = p;
+        while(p<size){
+            b = at(p);
+            if(b==',' || b=='}' || b==']' || b==' ' || b=='\n' || b=='\r' || b=='\t')break;
+            p++;
+        }
+        if(p==s)throw error("Expected value", p);
+        return p;
+    }
+
+    //---------------- values decoding ----------------
+
+    /** decodes value between start and end. containers are parsed or returned as lazy views through the cache */
+    private Object value(long start, long end){
+        byte b = at(start);
+        if(b=='{' || b=='['){
+            Object v;
+            synchronized (cache){
+                SoftReference<Object> ref = cache.get(start);
+                if(ref!=null && (v=ref.get())!=null)return v;
+            }
+            if(end-start<=threshold){
+                try {
+                    v = new AcmeJsonParser().parse(new InputStreamReader(new MappedInputStream(start, end), UTF8));
+                }catch(AcmeJsonException e){
+                    throw error(e.getMessage(), start);
+                }
+            }else{
+                v = b=='{' ? new LazyMap(start) : new LazyList(start);
+            }
+            synchronized (cache){
+                cache.put(start, new SoftReference<Object>(v));
+            }
+            return v;
+        }
+        if(b=='"')return string(start, end);
+        int len = (int)(end-start);
+        if(b=='t' && len==4 && at(start+1)=='r' && at(start+2)=='u' && at(start+3)=='e')return Boolean.TRUE;
+        if(b=='f' && len==5 && at(start+1)=='a' && at(start+2)=='l' && at(start+3)=='s' && at(start+4)=='e')return Boolean.FALSE;
+        if(b=='n' && len==4 && at(start+1)=='u' && at(start+2)=='l' && at(start+3)=='l')return null;
+        return number(start, end);
+    }
+
+    /** decodes number the same way as AcmeJsonParser: Long for integers that fit, BigDecimal for others */
+    private Number number(long start, long end){
+        int len = (int)(end-start);
+        char[] c = new char[len];
+        boolean integer = len>0;
+        for(int i=0;i<len;i++){
+            byte b = at(start+i);
+            c[i] = (char)b;
+            if(b<'0' || b>'9'){
+                if(b!='-' || i>0)integer = false;
+                if(b!='-' && b!='+' && b!='.' && b!='e' && b!='E')throw error("Unexpected character `"+(char)(b&0xFF)+"`", start+i);
+            }
+        }
+        int digits = integer && c[0]=='-' ? len-1 : len;
+        //"-0" is not a long in AcmeJsonParser
+        if(integer && digits>0 && digits<=19 && !(digits==1 && c[0]=='-' && c[1]=='0')){
+            try {
+                return Long.parseLong(new String(c));
+            }catch(NumberFormatException overflow){
+                //19 digits above Long.MAX_VALUE
+            }
+        }
+        try {
+            return new BigDecimal(c);
+        }catch(NumberFormatException e){
+            throw error("Invalid number `"+new String(c)+"`", start);
+        }
+    }
+
+    /** decodes quoted string between start and end including quotes */
+    private String string(long start, long end){
+        int len = (int)(end-start-2);
+        byte[] bytes = new byte[len];
+        boolean escaped = false;
+        for(int i=0;i<len;i++){
+            byte b = at(start+1+i);
+            bytes[i] = b;
+            if(b=='\\')escaped = true;
+        }
+        String s = new String(bytes, UTF8);
+        if(!escaped)return s;
+        StringBuilder sb = new StringBuilder(s.length());
+        for(int i=0;i<s.length();i++){
+            char c = s.charAt(i);
+            if(c!='\\'){
+                sb.append(c);
+                continue;
+            }
+            c = s.charAt(++i);
+            switch (c){
+                case 'u':
+                    sb.append((char)Integer.parseInt(s.substring(i+1, i+5), 16));
+                    i += 4;
+                    break;
+                case 't': sb.append('\t'); break;
+                case 'b': sb.append('\b'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 'f': sb.append('\f'); break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /** stream of mapped bytes to parse subtrees with AcmeJsonParser */
+    private final class MappedInputStream extends InputStream {
+        long pos;
+        final long end;
+
+        MappedInputStream(long start, long end){
+            this.pos = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() {
+            return pos<end ? at(pos++) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if(pos>=end)return -1;
+            len = (int)Math.min(len, end-pos);
+            len = (int)Math.min(len, (1L<<chunkBits)-(pos & chunkMask));
+            ByteBuffer chunk = chunks[(int)(pos>>>chunkBits)].duplicate();
+            chunk.position((int)(pos & chunkMask));
+            chunk.get(b, off, len);
+            pos += len;
+            return len;
+        }
+    }
+
+    /**
+     * read-only view of json object. keys and value offsets are scanned on the first access, not thread-safe.
+     * duplicate keys keep the position of the first occurrence and the value of the last one, as in AcmeJsonBuildHandler.
+     */
+    final class LazyMap extends AbstractMap<String,Object> {
+        private final long start;
+        private String[] keys = null;
+        private long[] offsets = null; //start and end of each value
+
+        LazyMap(long start){
+            this.start = start;
+        }
+
+        private void scan(){
+            if(keys!=null)return;
+            String[] k = new String[8];
+            long[] o = new long[16];
+            HashMap<String,Integer> index = null; //for duplicate lookup in large objects
+            int n = 0;
+            long p = skipWs(start+1);
+            if(p<size && at(p)=='}'){
+                p = -1;
+            }
+            while(p>=0){
+                p = skipWs(p);
+                if(p>=size || at(p)!='"')throw error("Expected name", p);
+                long e = skipString(p);
+                String name = string(p, e);
+                int i = -1;
+                if(index!=null){
+                    Integer d = index.get(name);
+                    if(d!=null)i = d;
+                }else{
+                    for(int j=0;j<n;j++){
+                        if(k[j].equals(name)){ i = j; break; }
+                    }
+                }
+                if(i<0){
+                    if(n==k.length){
+                        k = Arrays.copyOf(k, n*2);
+                        o = Arrays.copyOf(o, n*4);
+                    }
+                    i = n++;
+                    k[i] = name;
+                    if(index==null && n>16){
+                        index = new HashMap<>();
+                        for(int j=0;j<n;j++)index.put(k[j], j);
+                    }else if(index!=null){
+                        index.put(name, i);
+                    }
+                }
+                p = skipWs(expect(e, ':'));
+                o[i*2] = p;
+                p = skipValue(p);
+                o[i*2+1] = p;
+                p = skipWs(p);
+                if(p>=size)throw error("Unterminated object", p);
+                byte b = at(p);
+                if(b=='}')break;
+                if(b!=',')throw error("Expected `,` or `}`", p);
+                p++;
+            }
+            offsets = Arrays.copyOf(o, n*2);
+            keys = Arrays.copyOf(k, n);
+        }
+
+        private int indexOf(Object key){
+            scan();
+            for(int i=0;i<keys.length;i++){
+                if(keys[i].equals(key))return i;
+            }
+            return -1;
+        }
+
+        @Override
+        public int size() {
+            scan();
+            return keys.length;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(key)>=0;
+        }
+
+        @Override
+        public Object get(Object key) {
+            int i = indexOf(key);
+            return i<0 ? null : value(offsets[i*2], offsets[i*2+1]);
+        }
+
+        @Override
+        public Set<Map.Entry<String,Object>> entrySet() {
+            scan();
+            return new AbstractSet<Map.Entry<String,Object>>() {
+                @Override
+                public Iterator<Map.Entry<String,Object>> iterator() {
+                    return new Iterator<Map.Entry<String,Object>>() {
+                        int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next<keys.length;
+                        }
+
+                        @Override
+                        public Map.Entry<String,Object> next() {
+                            if(next>=keys.length)throw new NoSuchElementException();
+                            int i = next++;
+                            return new SimpleImmutableEntry<>(keys[i], value(offsets[i*2], offsets[i*2+1]));
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException("read-only map");
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keys.length;
+                }
+            };
+        }
+    }
+
+    /**
+     * read-only view of json array. item offsets are scanned on the first access, not thread-safe.
+     */
+    final class LazyList extends AbstractList<Object> implements RandomAccess {
+        private final long start;
+        private long[] offsets = null; //start and end of each item
+
+        LazyList(long start){
+            this.start = start;
+        }
+
+        private long[] scan(){
+            if(offsets!=null)return offsets;
+            long[] o = new long[16];
+            int n = 0;
+            long p = skipWs(start+1);
+            if(p<size && at(p)==']'){
+                p = -1;
+            }
+            while(p>=0){
+                p = skipWs(p);
+                if(p>=size)throw error("Unterminated array", p);
+                if(n*2==o.length)o = Arrays.copyOf(o, n*4);
+                o[n*2] = p;
+                p = skipValue(p);
+                o[n*2+1] = p;
+                n++;
+                p = skipWs(p);
+                if(p>=size)throw error("Unterminated array", p);
+                byte b = at(p);
+                if(b==']')break;
+                if(b!=',')throw error("Expected `,` or `]`", p);
+                p++;
+            }
+            return offsets = Arrays.copyOf(o, n*2);
+        }
+
+        @Override
+        public int size() {
+            return scan().length/2;
+        }
+
+        @Override
+        public Object get(int i) {
+            long[] o = scan();
+            if(i<0 || i*2>=o.length)throw new IndexOutOfBoundsException("Index: "+i+", Size: "+o.length/2);
+            return value(o[i*2], o[i*2+1]);
+        }
+    }
+}
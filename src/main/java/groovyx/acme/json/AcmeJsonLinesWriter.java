@@ -0,0 +1,239 @@
+package groovyx.acme.json;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * writes records as newline delimited json (NDJSON, JSON Lines): one compact json value per line.
+ * the write handler and json path are reused for all records.
+ * by default output is flushed only when the buffers are full. flush policies trade throughput for latency:
+ * flush every N records, every N bytes, or when the oldest not flushed record is older than max latency.
+ * the latency is checked on each write, call {@link #flushIfDue()} periodically to bound it while there are no new records.
+ * the methods are synchronized, so the periodic flush could be called from another thread.
+ * <pre>{@code
+ *  def out = new AcmeJsonLinesWriter(socket.outputStream).setFlushEveryRecords(100).setMaxLatency(50)
+ *  out.writeAll( events.iterator() )
+ *  out.close()
+ * }</pre>
+ */
+public class AcmeJsonLinesWriter implements Closeable, Flushable {
+    private final AcmeJsonWriter writer;
+    private final Writer out;              //where records and newlines are written
+    private final AcmeJsonUtf8Writer utf8; //not null for utf-8 output to count bytes
+    private final CountingWriter counter;  //counts chars for other output
+
+    private int flushRecords = 0;
+    private long flushBytes = 0;
+    private long maxLatencyNanos = 0;
+
+    private long records = 0;
+    private int unflushedRecords = 0;
+    private long flushedPosition = 0;
+    private long firstUnflushed = 0; //nano time of the first record after the last flush
+
+    /**
+     * @param out where to write json lines
+     */
+    public AcmeJsonLinesWriter(Writer out){
+        this(new AcmeJsonWriteHandler(out));
+    }
+
+    /**
+     * writes json lines as utf-8 bytes without intermediate writer
+     * @param out where to write json lines
+     */
+    public AcmeJsonLinesWriter(OutputStream out){
+        this(new AcmeJsonUtf8WriteHandler(out, false));
+    }
+
+    /**
+     * writes json lines with the handler. pretty print of the handler is switched off.
+     * @param handler the write handler
+     */
+    public AcmeJsonLinesWriter(AcmeJsonWriteHandler handler){
+        handler.setPrettyPrint(false);
+        if(handler instanceof AcmeJsonUtf8WriteHandler){
+            utf8 = ((AcmeJsonUtf8WriteHandler)handler).getRoot();
+            counter = null;
+            out = utf8;
+        }else{
+            utf8 = null;
+            counter = new CountingWriter(handler.writer);
+            handler.writer = counter;
+            out = counter;
+        }
+        writer = new AcmeJsonWriter(handler);
+    }
+
+    /**
+     * flush output after each `n` records
+     * @param n number of records, zero to disable
+     * @return this object
+     */
+    public AcmeJsonLinesWriter setFlushEveryRecords(int n){
+        this.flushRecords = n;
+        return this;
+    }
+
+    /**
+     * flush output when at least `n` bytes were written since the last flush.
+     * for Writer output chars are counted.
+     * @param n number of bytes, zero to disable
+     * @return this object
+     */
+    public AcmeJsonLinesWriter setFlushEveryBytes(long n){
+        this.flushBytes = n;
+        return this;
+    }
+
+    /**
+     * flush output when the oldest not flushed record was written `millis` ago
+     * @param millis max latency in milliseconds, zero to disable
+     * @return this object
+     */
+    public AcmeJsonLinesWriter setMaxLatency(long millis){
+        this.maxLatencyNanos = millis*1000000L;
+        return this;
+    }
+
+    /**
+     * number of records written
+     * @return count of records
+     */
+    public synchronized long getRecordCount(){
+        return records;
+    }
+
+    /**
+     * writes record as one json line
+     * @param record the value to write: Map, List, plain value, or object supported by serializers
+     * @return this object
+     * @throws IOException if io error occurred
+     */
+    public synchronized AcmeJsonLinesWriter write(Object record) throws IOException {
+        writer.reset();
+        writer.printValue(record);
+        out.write('\n');
+        records++;
+        if(unflushedRecords++==0 && maxLatencyNanos>0)firstUnflushed = System.nanoTime();
+        if(flushRecords>0 && unflushedRecords>=flushRecords
+                || flushBytes>0 && position()-flushedPosition>=flushBytes
+                || maxLatencyNanos>0 && System.nanoTime()-firstUnflushed>=maxLatencyNanos){
+            flush();
+        }
+        return this;
+    }
+
+    /**
+     * writes all records of the iterator
+     * @param records the records
+     * @return this object
+     * @throws IOException if io error occurred
+     */
+    public AcmeJsonLinesWriter writeAll(Iterator<?> records) throws IOException {
+        while(records.hasNext())write(records.next());
+        return this;
+    }
+
+    /**
+     * writes all records
+     * @param records the records
+     * @return this object
+     * @throws IOException if io error occurred
+     */
+    public AcmeJsonLinesWriter writeAll(Iterable<?> records) throws IOException {
+        return writeAll(records.iterator());
+    }
+
+    /**
+     * writes all records of the stream in the encounter order
+     * @param records the records
+     * @return this object
+     * @throws IOException if io error occurred
+     */
+    public AcmeJsonLinesWriter writeAll(Stream<?> records) throws IOException {
+        return writeAll(records.iterator());
+    }
+
+    /**
+     * flushes output if there are records written earlier than max latency ago
+     * @return true if flushed
+     * @throws IOException if io error occurred
+     */
+    public synchronized boolean flushIfDue() throws IOException {
+        if(unflushedRecords>0 && maxLatencyNanos>0 && System.nanoTime()-firstUnflushed>=maxLatencyNanos){
+            flush();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        out.flush();
+        unflushedRecords = 0;
+        flushedPosition = position();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    private long position(){
+        return utf8!=null ? utf8.position() : counter.count;
+    }
+
+    /**
+     * counts written chars
+     */
+    static final class CountingWriter extends Writer {
+        private final Writer w;
+        long count = 0;
+
+        CountingWriter(Writer w){
+            this.w = w;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            w.write(c);
+            count++;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            w.write(cbuf, off, len);
+            count += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            w.write(str, off, len);
+            count += len;
+        }
+
+        @Override
+        public Writer append(CharSequence csq) throws IOException {
+            w.append(csq);
+            count += csq.length();
+            return this;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            w.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            w.close();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package groovyx.acme.json;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * fixed-size list of numbers backed by long[] array. elements are returned as Long.
+ * built by AcmeJsonBuildHandler in primitive arrays mode for json arrays of integer numbers.
+ */
+public class AcmeJsonLongList extends AbstractList<Number> implements RandomAccess {
+    final long[] values;
+
+    /**
+     * @param values the values of the list. array is not copied.
+     */
+    public AcmeJsonLongList(long[] values){
+        this.values = values;
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Number get(int i) {
+        return values[i];
+    }
+
+    /**
+     * returns element without boxing
+     * @param i index of the element
+     * @return the value
+     */
+    public long getLong(int i){
+        return values[i];
+    }
+
+    /**
+     * sets element. the value must be an integer number that fits into long.
+     */
+    @Override
+    public Number set(int i, Number value) {
+        if(!(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)){
+            throw new IllegalArgumentException("Long value expected but got: "+(value==null?null:value.getClass().getName()));
+        }
+        long old = values[i];
+        values[i] = value.longValue();
+        return old;
+    }
+
+    /**
+     * returns copy of the values
+     * @return array of values
+     */
+    public long[] toLongArray(){
+        return values.clone();
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 1;
+        for(long v: values)h = 31*h + Long.hashCode(v);
+        return h;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(o instanceof AcmeJsonLongList)return Arrays.equals(values, ((AcmeJsonLongList)o).values);
+        return super.equals(o);
+    }
+}
@@ -2,6 +2,7 @@ package groovyx.acme.json;
 
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.io.Writer;
 
@@ -15,8 +16,17 @@ public class AcmeJsonOutput {
      * @throws IOException if io error occurred
      */
     public static void writeJson(Object o, Writer w, boolean prettyPrint) throws IOException {
-        new AcmeJsonWriter(w, prettyPrint).printValue(o);
-        w.flush();
+        Object event = AcmeJsonFlightRecorder.beginWrite();
+        if(event==null){
+            new AcmeJsonWriter(w, prettyPrint).printValue(o);
+            w.flush();
+            return;
+        }
+        //chars are counted only while recording
+        AcmeJsonLinesWriter.CountingWriter cw = new AcmeJsonLinesWriter.CountingWriter(w);
+        new AcmeJsonWriter(cw, prettyPrint).printValue(o);
+        cw.flush();
+        AcmeJsonFlightRecorder.commitWrite(event, "Writer", cw.count);
     }
 
     /**
@@ -26,8 +36,22 @@ public class AcmeJsonOutput {
      * @throws IOException if io error occurred
      */
     public static void writeJson(Object o, Writer w) throws IOException {
-        new AcmeJsonWriter(w, false).printValue(o);
-        w.flush();
+        writeJson(o, w, false);
+    }
+
+    /**
+     * writes json as utf-8 bytes to output stream without intermediate writer. the stream is flushed but not closed.
+     * @param o object to write
+     * @param out stream where to write json
+     * @param prettyPrint should apply pretty printing or not
+     * @throws IOException if io error occurred
+     */
+    public static void writeJson(Object o, OutputStream out, boolean prettyPrint) throws IOException {
+        Object event = AcmeJsonFlightRecorder.beginWrite();
+        AcmeJsonUtf8WriteHandler h = new AcmeJsonUtf8WriteHandler(out, prettyPrint);
+        new AcmeJsonWriter(h).printValue(o);
+        h.getRoot().flush();
+        if(event!=null)AcmeJsonFlightRecorder.commitWrite(event, "OutputStream", h.getRoot().position());
     }
 
     /**
@@ -37,10 +61,106 @@ public class AcmeJsonOutput {
      * @return json
      */
     public static String toJson(Object o, boolean prettyPrint) {
+        Object event = AcmeJsonFlightRecorder.beginWrite();
+        AcmeJsonOutputContext c = AcmeJsonOutputContext.acquire();
+        try {
+            c.charWriter(prettyPrint).printValue(o);
+            String s = c.chars.toString();
+            if(event!=null)AcmeJsonFlightRecorder.commitWrite(event, "String", s.length());
+            return s;
+        } catch (IOException e) {
+            throw new RuntimeException(e.toString(),e);
+        } finally {
+            c.release();
+        }
+    }
+
+    /**
+     * converts input object to compact json as utf-8 bytes
+     * @param o to convert
+     * @return json bytes
+     */
+    public static byte[] toJsonBytes(Object o) {
+        return toJsonBytes(o, false);
+    }
+
+    /**
+     * converts input object to json as utf-8 bytes
+     * @param o to convert
+     * @param prettyPrint should we perform a pritty print
+     * @return json bytes
+     */
+    public static byte[] toJsonBytes(Object o, boolean prettyPrint) {
+        Object event = AcmeJsonFlightRecorder.beginWrite();
+        AcmeJsonOutputContext c = AcmeJsonOutputContext.acquire();
+        try {
+            c.byteWriter(prettyPrint).printValue(o);
+            byte[] b = c.bytes.toByteArray();
+            if(event!=null)AcmeJsonFlightRecorder.commitWrite(event, "bytes", b.length);
+            return b;
+        } catch (IOException e) {
+            throw new RuntimeException(e.toString(),e);
+        } finally {
+            c.release();
+        }
+    }
+
+    /**
+     * writes compact json as utf-8 bytes to the stream with single write call.
+     * unlike writeJson the json is built in reusable thread buffer, so it's suitable for small objects written at high rates.
+     * the stream is not flushed.
+     * @param o object to write
+     * @param out stream where to write json
+     * @throws IOException if io error occurred
+     */
+    public static void writeTo(Object o, OutputStream out) throws IOException {
+        Object event = AcmeJsonFlightRecorder.beginWrite();
+        AcmeJsonOutputContext c = AcmeJsonOutputContext.acquire();
+        try {
+            c.byteWriter(false).printValue(o);
+            c.bytes.writeTo(out);
+            if(event!=null)AcmeJsonFlightRecorder.commitWrite(event, "OutputStream", c.bytes.size());
+        } finally {
+            c.release();
+        }
+    }
+
+    /**
+     * writes compact json to the writer with single write call.
+     * unlike writeJson the json is built in reusable thread buffer, so it's suitable for small objects written at high rates.
+     * the writer is not flushed.
+     * @param o object to write
+     * @param w writer where to write json
+     * @throws IOException if io error occurred
+     */
+    public static void writeTo(Object o, Writer w) throws IOException {
+        Object event = AcmeJsonFlightRecorder.beginWrite();
+        AcmeJsonOutputContext c = AcmeJsonOutputContext.acquire();
+        try {
+            c.charWriter(false).printValue(o);
+            c.chars.writeTo(w);
+            if(event!=null)AcmeJsonFlightRecorder.commitWrite(event, "Writer", c.chars.size());
+        } finally {
+            c.release();
+        }
+    }
+
+    /**
+     * converts input object to json representation string writing large lists and arrays in parallel in the common fork-join pool.
+     * the result is the same as in sequential mode.
+     * @param o to convert
+     * @param prettyPrint should we perform a pritty print
+     * @param parallelThreshold min size of the list or array to write in parallel
+     * @return json
+     */
+    public static String toJson(Object o, boolean prettyPrint, int parallelThreshold) {
+        Object event = AcmeJsonFlightRecorder.beginWrite();
         try {
             StringWriter w = new StringWriter();
-            new AcmeJsonWriter(w, prettyPrint).printValue(o);
-            return w.toString();
+            new AcmeJsonWriter(w, prettyPrint).setParallel(parallelThreshold).printValue(o);
+            String s = w.toString();
+            if(event!=null)AcmeJsonFlightRecorder.commitWrite(event, "String", s.length());
+            return s;
         } catch (IOException e) {
             throw new RuntimeException(e.toString(),e);
         }
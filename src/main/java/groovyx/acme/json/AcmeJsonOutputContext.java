@@ -0,0 +1,174 @@
+package groovyx.acme.json;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * reusable state of AcmeJsonOutput: writers, handlers, json paths and growable char and byte buffers.
+ * platform threads keep one context in thread-local, virtual threads take contexts from a small shared pool,
+ * so writing of small objects at high rates does not allocate anything except the result.
+ * buffers larger than MAX_KEEP are dropped after use.
+ */
+final class AcmeJsonOutputContext {
+    private static final int MAX_KEEP = 64*1024;
+    private static final ThreadLocal<AcmeJsonOutputContext> LOCAL = new ThreadLocal<>();
+    private static final ArrayBlockingQueue<AcmeJsonOutputContext> POOL = new ArrayBlockingQueue<>(64);
+    private static final Method IS_VIRTUAL = isVirtualMethod();
+
+    final CharBuffer chars = new CharBuffer(1024);
+    final AcmeJsonWriter charWriter = new AcmeJsonWriter(new AcmeJsonWriteHandler(chars));
+    final AcmeJsonUtf8Writer bytes = new AcmeJsonUtf8Writer(1024);
+    final AcmeJsonWriter byteWriter = new AcmeJsonWriter(new AcmeJsonUtf8WriteHandler(bytes, false));
+    private boolean inUse = false;
+
+    private AcmeJsonOutputContext(){}
+
+    /**
+     * returns context of the current thread or pooled one. nested calls from serializers get a new context.
+     * @return context to use, must be released after use
+     */
+    static AcmeJsonOutputContext acquire(){
+        AcmeJsonOutputContext c;
+        if(isVirtual(Thread.currentThread())){
+            c = POOL.poll();
+        }else{
+            c = LOCAL.get();
+            if(c==null){
+                c = new AcmeJsonOutputContext();
+                LOCAL.set(c);
+            }else if(c.inUse){
+                c = null;
+            }
+        }
+        if(c==null)c = new AcmeJsonOutputContext();
+        c.inUse = true;
+        return c;
+    }
+
+    /**
+     * clears the context and returns it to the pool if it was taken from the pool
+     */
+    void release(){
+        chars.reset(MAX_KEEP);
+        bytes.reset(MAX_KEEP);
+        inUse = false;
+        if(LOCAL.get()!=this)POOL.offer(this);
+    }
+
+    /**
+     * returns writer ready to write into char buffer
+     * @param prettyPrint true if the json must be formatted
+     * @return the writer
+     */
+    AcmeJsonWriter charWriter(boolean prettyPrint){
+        charWriter.reset();
+        charWriter.writer.setPrettyPrint(prettyPrint);
+        return charWriter;
+    }
+
+    /**
+     * returns writer ready to write into byte buffer
+     * @param prettyPrint true if the json must be formatted
+     * @return the writer
+     */
+    AcmeJsonWriter byteWriter(boolean prettyPrint){
+        byteWriter.reset();
+        byteWriter.writer.setPrettyPrint(prettyPrint);
+        return byteWriter;
+    }
+
+    private static boolean isVirtual(Thread t){
+        if(IS_VIRTUAL==null)return false;
+        try {
+            return (Boolean)IS_VIRTUAL.invoke(t);
+        }catch(ReflectiveOperationException e){
+            return false;
+        }
+    }
+
+    /** Thread.isVirtual() exists since java 21 */
+    private static Method isVirtualMethod(){
+        try {
+            return Thread.class.getMethod("isVirtual");
+        }catch(NoSuchMethodException e){
+            return null;
+        }
+    }
+
+    /**
+     * unsynchronized growable char buffer
+     */
+    static final class CharBuffer extends Writer {
+        private char[] buf;
+        private int size = 0;
+
+        CharBuffer(int initialSize){
+            buf = new char[initialSize];
+        }
+
+        private void ensure(int n){
+            if(size+n>buf.length)buf = Arrays.copyOf(buf, Math.max(buf.length*2, size+n));
+        }
+
+        @Override
+        public void write(int c) {
+            if(size==buf.length)ensure(1);
+            buf[size++] = (char)c;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            ensure(len);
+            System.arraycopy(cbuf, off, buf, size, len);
+            size += len;
+        }
+
+        @Override
+        public void write(String s, int off, int len) {
+            ensure(len);
+            s.getChars(off, off+len, buf, size);
+            size += len;
+        }
+
+        @Override
+        public void write(String s) {
+            write(s, 0, s.length());
+        }
+
+        @Override
+        public Writer append(CharSequence csq) {
+            String s = String.valueOf(csq);
+            write(s, 0, s.length());
+            return this;
+        }
+
+        /** @return number of chars */
+        int size(){
+            return size;
+        }
+
+        /** writes the chars to the writer */
+        void writeTo(Writer w) throws IOException {
+            w.write(buf, 0, size);
+        }
+
+        void reset(int maxSize){
+            size = 0;
+            if(buf.length>maxSize)buf = new char[maxSize];
+        }
+
+        @Override
+        public String toString() {
+            return new String(buf, 0, size);
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    }
+}
@@ -16,8 +16,10 @@ package groovyx.acme.json;
 
 //import java.io.Closeable;
 import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.Writer;
 import java.math.BigDecimal;
 import java.util.Arrays;
 
@@ -123,6 +125,36 @@ public class AcmeJsonParser extends AbstractJsonParser{
     //private AcmeJsonHandler handler;
     private JsonPath path = new JsonPath();
 
+    /** not null if handler accepts raw values */
+    private AcmeJsonRawHandler rawHandler = null;
+    private boolean rawCompact = false;
+    /** container types by depth of the raw value being copied: true for object */
+    private boolean[] rawObjects = new boolean[32];
+    /** keyword or number of the raw value being copied */
+    private final StringBuilder rawToken = new StringBuilder();
+
+    /** cache to share equal strings. null if interning is off */
+    private AcmeJsonStringCache internCache = null;
+    /** values at these paths are interned. null in adaptive mode */
+    private JsonPathMatcher[] internPaths = null;
+    /** adaptive interning statistics by object key */
+    private InternStat[] internStats = null;
+    /** true if the last interned value was found in cache */
+    private boolean internHit = false;
+    private static final int INTERN_WINDOW = 256;  //number of values to evaluate hit rate of the key
+    private static final int INTERN_SKIP = 65536;  //number of values of the key not interned after low hit rate
+
+    //metrics of the last parse: plain fields updated mostly on slow paths, reported at the end of parse
+    private AcmeJsonParserMetrics metrics = null;
+    private long countChars = 0;
+    private long countTokens = 0;
+    private int countFills = 0;
+    private int countSlowStrings = 0;
+    private int countBigDecimals = 0;
+    private int maxDepth = 0; //max stack size including the document scope
+    private long parseNanos = 0;
+    private boolean parseFailed = false;
+
     /**
      * Creates a new instance that reads a JSON-encoded stream from reader.
      */
@@ -135,10 +167,127 @@ public class AcmeJsonParser extends AbstractJsonParser{
     @Override
     protected Object doParse(Reader reader) throws AcmeJsonException, IOException {
         this.in = reader;
-        this.read();
+        if(!lenient && handler instanceof AcmeJsonRawHandler && ((AcmeJsonRawHandler)handler).isRawCopy()){
+            rawHandler = (AcmeJsonRawHandler)handler;
+            rawCompact = rawHandler.isRawCompact();
+        }
+        countChars = countTokens = 0;
+        countFills = countSlowStrings = countBigDecimals = maxDepth = 0;
+        parseFailed = true;
+        long t = System.nanoTime();
+        try {
+            this.read();
+            parseFailed = false;
+        } finally {
+            parseNanos = System.nanoTime() - t;
+            if(metrics!=null)metrics.onParse(getParseMetrics());
+        }
         return handler.getRoot();
     }
 
+    /**
+     * sets metrics that receive counters of each parse
+     * @param metrics the metrics, could be shared between parsers and threads
+     * @return self
+     */
+    public AcmeJsonParser setMetrics(AcmeJsonParserMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * returns metrics of the last parse of this parser. available without {@link #setMetrics(AcmeJsonParserMetrics)}.
+     * @return the metrics
+     */
+    @Override
+    public AcmeJsonParserMetrics.Snapshot getParseMetrics() {
+        return new AcmeJsonParserMetrics.Snapshot(1, parseFailed ? 1 : 0, countChars, countTokens, countFills, countSlowStrings, countBigDecimals, Math.max(maxDepth - 1, 0), parseNanos);
+    }
+
+    /**
+     * prepares the parser for the next parse with a new handler keeping its settings: lenient mode, interning, metrics.
+     * the buffers are reused, so one parser could parse many small documents one after another.
+     * @param handler the handler of the next parse or null for the default AcmeJsonBuildHandler
+     * @return self
+     */
+    public AcmeJsonParser reset(AcmeJsonHandler handler) {
+        this.handler = handler;
+        in = null;
+        pos = limit = 0;
+        lineNumber = lineStart = 0;
+        peeked = PEEKED_NONE;
+        peekedString = null;
+        Arrays.fill(pathNames, null);
+        stackSize = 0;
+        stack[stackSize++] = JsonScope.EMPTY_DOCUMENT;
+        rawHandler = null;
+        rawCompact = false;
+        return this;
+    }
+
+
+    /**
+     * enables interning of string values at the json paths: equal strings share one instance from the cache.
+     * object keys are interned as well. use it for fields with few distinct values like `status` or `country`.
+     * @param cache the cache to use. could be shared between parsers and threads.
+     * @param paths json paths of the values to intern. see JsonPathMatcher for syntax.
+     * @return self
+     */
+    public AcmeJsonParser setIntern(AcmeJsonStringCache cache, String... paths) {
+        this.internCache = cache;
+        this.internStats = null;
+        this.internPaths = new JsonPathMatcher[paths.length];
+        for(int i=0;i<paths.length;i++)internPaths[i] = new JsonPathMatcher(paths[i]);
+        return this;
+    }
+
+    /**
+     * enables interning of string values at the json paths with default shared cache.
+     * @param paths json paths of the values to intern. see JsonPathMatcher for syntax.
+     * @return self
+     */
+    public AcmeJsonParser setIntern(String... paths) {
+        return setIntern(AcmeJsonStringCache.getDefault(), paths);
+    }
+
+    /**
+     * enables adaptive interning: short string values of object keys are interned while more than half of them are found in cache.
+     * keys with low hit rate are not interned for a while. object keys are always interned.
+     * @param cache the cache to use or null to disable interning
+     * @return self
+     */
+    public AcmeJsonParser setAdaptiveIntern(AcmeJsonStringCache cache) {
+        this.internCache = cache;
+        this.internPaths = null;
+        this.internStats = cache==null ? null : new InternStat[256];
+        return this;
+    }
+
+    /**
+     * enables adaptive interning with default shared cache
+     * @param intern true to enable adaptive interning
+     * @return self
+     */
+    public AcmeJsonParser setAdaptiveIntern(boolean intern) {
+        return setAdaptiveIntern(intern ? AcmeJsonStringCache.getDefault() : null);
+    }
+
+    /**
+     * returns lazy json document over memory-mapped file. objects and arrays are parsed only when accessed.
+     * the handler of this parser is not used: subtrees are built with AcmeJsonBuildHandler.
+     * see AcmeJsonLazyDocument for details.
+     * @param file utf-8 json file
+     * @return lazy Map or List
+     * @throws AcmeJsonException if file could not be mapped or has invalid structure
+     */
+    public Object parseLazy(File file) throws AcmeJsonException {
+        if(lenient)throw new IllegalStateException("Lazy parsing is not supported in lenient mode");
+        try {
+            return new AcmeJsonLazyDocument(file).getRoot();
+        } catch(IOException e) {
+            throw new AcmeJsonException("Failed to read file `"+file+"`: "+e.getMessage(), e);
+        }
+    }
 
     /**
      * Configure this parser to be liberal in what it accepts. By default,
@@ -263,6 +412,7 @@ public class AcmeJsonParser extends AbstractJsonParser{
         if (p == PEEKED_BEGIN_OBJECT) {
             handler.onObjectStart(path); //DM:
             push(JsonScope.EMPTY_OBJECT);
+            pathIndices[stackSize - 1] = 0;
             peeked = PEEKED_NONE;
         } else {
             throw new IllegalStateException("Expected BEGIN_OBJECT but was " + peekName() + locationString());
@@ -299,6 +449,16 @@ public class AcmeJsonParser extends AbstractJsonParser{
             if (p == PEEKED_NONE) {
                 p = doPeek();
             }
+            countTokens++;
+
+            if (rawHandler != null && p != PEEKED_END_OBJECT && p != PEEKED_END_ARRAY && p != PEEKED_EOF
+                    && p != PEEKED_DOUBLE_QUOTED_NAME && p != PEEKED_SINGLE_QUOTED_NAME && p != PEEKED_UNQUOTED_NAME) {
+                Writer out = rawHandler.onRawValue(path);
+                if (out != null) {
+                    this.copyRawValue(p, out);
+                    continue;
+                }
+            }
 
             switch (p) {
                 case PEEKED_BEGIN_OBJECT:
@@ -340,6 +500,7 @@ public class AcmeJsonParser extends AbstractJsonParser{
                     this.nextNumber();
                     break;
                 case PEEKED_EOF:
+                    countTokens--;
                     if(nest>0)throw syntaxError("Unexpected EOF");
                     break;
                 default:
@@ -636,6 +797,7 @@ public class AcmeJsonParser extends AbstractJsonParser{
         // We've read a complete number. Decide if it's a PEEKED_LONG or a PEEKED_NUMBER.
         if (last == NUMBER_CHAR_DIGIT && fitsInLong && (value != Long.MIN_VALUE || negative) && (value!=0 || false==negative)) {
             peekedLong = negative ? value : -value;
+            peekedNumberLength = i;
             pos += i;
             return peeked = PEEKED_LONG;
         } else if (last == NUMBER_CHAR_DIGIT || last == NUMBER_CHAR_FRACTION_DIGIT
@@ -685,9 +847,9 @@ public class AcmeJsonParser extends AbstractJsonParser{
         if (p == PEEKED_UNQUOTED_NAME) {
             result = nextUnquotedValue();
         } else if (p == PEEKED_SINGLE_QUOTED_NAME) {
-            result = nextQuotedValue('\'');
+            result = nextQuotedValue('\'', false);
         } else if (p == PEEKED_DOUBLE_QUOTED_NAME) {
-            result = nextQuotedValue('"');
+            result = nextQuotedValue('"', internCache!=null);
         } else {
             throw new IllegalStateException("Expected a name but was " + peekName() + locationString());
         }
@@ -710,9 +872,9 @@ public class AcmeJsonParser extends AbstractJsonParser{
         if (p == PEEKED_UNQUOTED) {
             result = nextUnquotedValue();
         } else if (p == PEEKED_SINGLE_QUOTED) {
-            result = nextQuotedValue('\'');
+            result = nextQuotedValue('\'', false);
         } else if (p == PEEKED_DOUBLE_QUOTED) {
-            result = nextQuotedValue('"');
+            result = internCache==null ? nextQuotedValue('"', false) : nextInternedValue();
         } else if (p == PEEKED_BUFFERED) {
             result = peekedString;
             peekedString = null;
@@ -744,6 +906,7 @@ public class AcmeJsonParser extends AbstractJsonParser{
         } else if (p == PEEKED_NUMBER) {
             result = new BigDecimal(buffer, pos, peekedNumberLength);
             pos += peekedNumberLength;
+            countBigDecimals++;
         } else {
             throw new IllegalStateException("Expected a string but was " + peekName() + locationString());
         }
@@ -805,12 +968,14 @@ public class AcmeJsonParser extends AbstractJsonParser{
      * not include it in the returned string.
      *
      * @param quote either ' or ".
+     * @param intern true to take the string from internCache
      * @throws NumberFormatException if any unicode escape sequences are malformed.
      */
-    private String nextQuotedValue(char quote) throws IOException {
+    private String nextQuotedValue(char quote, boolean intern) throws IOException {
         // Like nextNonWhitespace, this uses locals 'p' and 'l' to save inner-loop field access.
         char[] buffer = this.buffer;
         StringBuilder builder = null;
+        internHit = false;
         while (true) {
             int p = pos;
             int l = limit;
@@ -823,6 +988,7 @@ public class AcmeJsonParser extends AbstractJsonParser{
                     pos = p;
                     int len = p - start - 1;
                     if (builder == null) {
+                        if (intern) return internBuffer(start, len);
                         return new String(buffer, start, len);
                     } else {
                         builder.append(buffer, start, len);
@@ -834,6 +1000,7 @@ public class AcmeJsonParser extends AbstractJsonParser{
                     if (builder == null) {
                         int estimatedLength = (len + 1) * 2;
                         builder = new StringBuilder(Math.max(estimatedLength, 16));
+                        countSlowStrings++;
                     }
                     builder.append(buffer, start, len);
                     builder.append(readEscapeCharacter());
@@ -849,6 +1016,7 @@ public class AcmeJsonParser extends AbstractJsonParser{
             if (builder == null) {
                 int estimatedLength = (p - start) * 2;
                 builder = new StringBuilder(Math.max(estimatedLength, 16));
+                countSlowStrings++;
             }
             builder.append(buffer, start, p - start);
             pos = p;
@@ -858,6 +1026,68 @@ public class AcmeJsonParser extends AbstractJsonParser{
         }
     }
 
+    /**
+     * returns string from internCache for chars in buffer. sets internHit if string was cached.
+     */
+    private String internBuffer(int start, int len) {
+        AcmeJsonStringCache cache = internCache;
+        if (len > cache.getMaxLength()) return new String(buffer, start, len);
+        int h = AcmeJsonStringCache.hash(buffer, start, len);
+        String s = cache.lookup(buffer, start, len, h);
+        if (s != null) {
+            internHit = true;
+            return s;
+        }
+        return cache.add(buffer, start, len, h);
+    }
+
+    /**
+     * reads double quoted string value and interns it if it's at one of internPaths
+     * or if hit rate of the values of the current object key is high in adaptive mode.
+     */
+    private String nextInternedValue() throws IOException {
+        if (internPaths != null) {
+            for (JsonPathMatcher m : internPaths) {
+                if (m.matches(path)) return nextQuotedValue('"', true);
+            }
+            return nextQuotedValue('"', false);
+        }
+        if (path.size() == 0) return nextQuotedValue('"', false);
+        AbstractJsonPath.Element e = path.peek();
+        if (!e.isKey()) return nextQuotedValue('"', false);
+        String key = e.getKey();
+        int i = key.hashCode() & (internStats.length - 1);
+        InternStat stat = internStats[i];
+        if (stat == null || (stat.key != key && !stat.key.equals(key))) {
+            stat = internStats[i] = new InternStat(key);
+        }
+        if (stat.skip > 0) {
+            stat.skip--;
+            return nextQuotedValue('"', false);
+        }
+        String result = nextQuotedValue('"', true);
+        stat.attempts++;
+        if (internHit) stat.hits++;
+        if (stat.attempts == INTERN_WINDOW) {
+            if (stat.hits * 2 < stat.attempts) stat.skip = INTERN_SKIP;
+            stat.attempts = 0;
+            stat.hits = 0;
+        }
+        return result;
+    }
+
+    /** hit rate of interned values of one object key */
+    private static final class InternStat {
+        final String key;
+        int attempts = 0;
+        int hits = 0;
+        int skip = 0;
+
+        InternStat(String key) {
+            this.key = key;
+        }
+    }
+
     /**
      * Returns an unquoted value as a string.
      */
@@ -903,6 +1133,7 @@ public class AcmeJsonParser extends AbstractJsonParser{
             // use a StringBuilder when the value is too long. This is too long to be a number!
             if (builder == null) {
                 builder = new StringBuilder(Math.max(i,16));
+                countSlowStrings++;
             }
             builder.append(buffer, pos, i);
             pos += i;
@@ -917,6 +1148,282 @@ public class AcmeJsonParser extends AbstractJsonParser{
         return result;
     }
 
+    /**
+     * Copies the source text of the peeked value to the writer without decoding it.
+     * The text is validated as in strict parsing: structure of containers, escape sequences, numbers and keywords.
+     */
+    private void copyRawValue(int p, Writer out) throws IOException {
+        switch (p) {
+            case PEEKED_BEGIN_OBJECT:
+            case PEEKED_BEGIN_ARRAY:
+                copyRawContainer(out);
+                break;
+            case PEEKED_DOUBLE_QUOTED:
+                out.write('"');
+                copyRawString(out);
+                break;
+            case PEEKED_NUMBER:
+                out.write(buffer, pos, peekedNumberLength);
+                pos += peekedNumberLength;
+                break;
+            case PEEKED_LONG:
+                // already consumed
+                out.write(buffer, pos - peekedNumberLength, peekedNumberLength);
+                break;
+            case PEEKED_TRUE:
+            case PEEKED_NULL:
+                // already consumed
+                out.write(buffer, pos - 4, 4);
+                break;
+            case PEEKED_FALSE:
+                // already consumed
+                out.write(buffer, pos - 5, 5);
+                break;
+            default:
+                throw new IllegalStateException("Unexpected raw value " + peekName() + locationString());
+        }
+        peeked = PEEKED_NONE;
+        pathIndices[stackSize - 1]++;
+    }
+
+    /**
+     * Copies the rest of double quoted string including the closing quote. The opening quote should have already been read.
+     */
+    private void copyRawString(Writer out) throws IOException {
+        char[] buffer = this.buffer;
+        int escape = 0;
+        int p = pos;
+        int l = limit;
+        int start = p;
+        while (true) {
+            if (p == l) {
+                if (p > start) out.write(buffer, start, p - start);
+                pos = p;
+                if (!fillBuffer(1)) {
+                    throw syntaxError("Unterminated string");
+                }
+                p = pos;
+                l = limit;
+                start = p;
+            }
+            char c = buffer[p++];
+            if (escape != 0) {
+                pos = p;
+                escape = checkRawEscape(escape, c);
+            } else if (c == '\\') {
+                escape = -1;
+            } else if (c == '"') {
+                out.write(buffer, start, p - start);
+                pos = p;
+                return;
+            } else if (c == '\n') {
+                lineNumber++;
+                lineStart = p;
+            }
+        }
+    }
+
+    /**
+     * Validates the char of escape sequence in raw string
+     * @param escape -1 after backslash, 1..4 number of hex digits left in unicode escape
+     * @param c the char after backslash or the hex digit
+     * @return the escape state after the char: 0 when the escape sequence is complete
+     */
+    private int checkRawEscape(int escape, char c) throws IOException {
+        if (escape > 0) {
+            if ((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F')) return escape - 1;
+            throw syntaxError("Invalid unicode escape sequence");
+        }
+        switch (c) {
+            case 'u':
+                return 4;
+            case '\n':
+                lineNumber++;
+                lineStart = pos;
+                return 0;
+            case 't':
+            case 'b':
+            case 'n':
+            case 'r':
+            case 'f':
+            case '\'':
+            case '"':
+            case '\\':
+            case '/':
+                return 0;
+            default:
+                throw syntaxError("Invalid escape sequence");
+        }
+    }
+
+    private static final int RAW_VALUE = 0;          // value after `,` in array or after `:`
+    private static final int RAW_VALUE_OR_END = 1;   // value or `]` after `[`
+    private static final int RAW_NAME = 2;           // name after `,` in object
+    private static final int RAW_NAME_OR_END = 3;    // name or `}` after `{`
+    private static final int RAW_COLON = 4;          // `:` after name
+    private static final int RAW_COMMA_OR_END = 5;   // `,` or the end of container after value
+
+    /**
+     * Copies the object or array up to and including the closing bracket. The opening bracket should have already been read.
+     */
+    @SuppressWarnings("fallthrough")
+    private void copyRawContainer(Writer out) throws IOException {
+        char[] buffer = this.buffer;
+        boolean compact = rawCompact;
+        boolean inString = false;
+        boolean inToken = false;
+        int escape = 0;
+        boolean[] objects = rawObjects;
+        int depth = 1;
+        char first = buffer[pos - 1];
+        objects[0] = first == '{';
+        int state = first == '{' ? RAW_NAME_OR_END : RAW_VALUE_OR_END;
+        out.write(first);
+        int p = pos;
+        int l = limit;
+        int start = p;
+        while (true) {
+            if (p == l) {
+                if (p > start) out.write(buffer, start, p - start);
+                pos = p;
+                if (!fillBuffer(1)) {
+                    throw syntaxError("Unexpected EOF");
+                }
+                p = pos;
+                l = limit;
+                start = p;
+            }
+            char c = buffer[p++];
+            if (inString) {
+                if (escape != 0) {
+                    pos = p;
+                    escape = checkRawEscape(escape, c);
+                } else if (c == '\\') {
+                    escape = -1;
+                } else if (c == '"') {
+                    inString = false;
+                } else if (c == '\n') {
+                    lineNumber++;
+                    lineStart = p;
+                }
+                continue;
+            }
+            if (inToken) {
+                if (c != '"' && c != '/' && c != '\\' && c != ';' && c != '#' && c != '=' && isLiteral(c)) {
+                    rawToken.append(c);
+                    continue;
+                }
+                inToken = false;
+                pos = p - 1;
+                checkRawToken();
+            }
+            switch (c) {
+                case '"':
+                    if (state == RAW_VALUE || state == RAW_VALUE_OR_END) state = RAW_COMMA_OR_END;
+                    else if (state == RAW_NAME || state == RAW_NAME_OR_END) state = RAW_COLON;
+                    else throw rawError(p, c);
+                    inString = true;
+                    break;
+                case '{':
+                case '[':
+                    if (state != RAW_VALUE && state != RAW_VALUE_OR_END) throw rawError(p, c);
+                    if (depth == objects.length) objects = rawObjects = Arrays.copyOf(objects, depth * 2);
+                    objects[depth++] = c == '{';
+                    state = c == '{' ? RAW_NAME_OR_END : RAW_VALUE_OR_END;
+                    break;
+                case '}':
+                case ']':
+                    boolean object = c == '}';
+                    if (objects[depth - 1] != object
+                            || (state != RAW_COMMA_OR_END && state != (object ? RAW_NAME_OR_END : RAW_VALUE_OR_END))) {
+                        throw rawError(p, c);
+                    }
+                    if (--depth == 0) {
+                        out.write(buffer, start, p - start);
+                        pos = p;
+                        return;
+                    }
+                    state = RAW_COMMA_OR_END;
+                    break;
+                case ',':
+                    if (state != RAW_COMMA_OR_END) throw rawError(p, c);
+                    state = objects[depth - 1] ? RAW_NAME : RAW_VALUE;
+                    break;
+                case ':':
+                    if (state != RAW_COLON) throw rawError(p, c);
+                    state = RAW_VALUE;
+                    break;
+                case '\n':
+                    lineNumber++;
+                    lineStart = p;
+                    // fall-through
+                case ' ':
+                case '\r':
+                case '\t':
+                    if (compact) {
+                        if (p - 1 > start) out.write(buffer, start, p - 1 - start);
+                        start = p;
+                    }
+                    break;
+                default:
+                    if (state != RAW_VALUE && state != RAW_VALUE_OR_END) throw rawError(p, c);
+                    pos = p - 1;
+                    if (!isLiteral(c)) throw rawError(p, c);
+                    rawToken.setLength(0);
+                    rawToken.append(c);
+                    inToken = true;
+                    state = RAW_COMMA_OR_END;
+            }
+        }
+    }
+
+    private IOException rawError(int p, char c) throws IOException {
+        pos = p - 1;
+        throw syntaxError("Unexpected character `" + c + "`");
+    }
+
+    /** validates keyword or number of the raw value the same way as peekKeyword and peekNumber */
+    private void checkRawToken() throws IOException {
+        StringBuilder t = rawToken;
+        int n = t.length();
+        char c = t.charAt(0);
+        String keyword = c == 't' || c == 'T' ? "true" : c == 'f' || c == 'F' ? "false" : c == 'n' || c == 'N' ? "null" : null;
+        if (keyword != null) {
+            if (n == keyword.length()) {
+                int i = 1;
+                while (i < n && (t.charAt(i) == keyword.charAt(i) || t.charAt(i) == Character.toUpperCase(keyword.charAt(i)))) i++;
+                if (i == n) return;
+            }
+            throw syntaxError("Unexpected value `" + t + "`");
+        }
+        int last = NUMBER_CHAR_NONE;
+        boolean zero = false; // integer part starts with 0
+        for (int i = 0; i < n; i++) {
+            c = t.charAt(i);
+            if (c == '-' && last == NUMBER_CHAR_NONE) last = NUMBER_CHAR_SIGN;
+            else if ((c == '-' || c == '+') && last == NUMBER_CHAR_EXP_E) last = NUMBER_CHAR_EXP_SIGN;
+            else if ((c == 'e' || c == 'E') && (last == NUMBER_CHAR_DIGIT || last == NUMBER_CHAR_FRACTION_DIGIT)) last = NUMBER_CHAR_EXP_E;
+            else if (c == '.' && last == NUMBER_CHAR_DIGIT) last = NUMBER_CHAR_DECIMAL;
+            else if (c >= '0' && c <= '9') {
+                if (last == NUMBER_CHAR_NONE || last == NUMBER_CHAR_SIGN) {
+                    zero = c == '0';
+                    last = NUMBER_CHAR_DIGIT;
+                } else if (last == NUMBER_CHAR_DIGIT) {
+                    if (zero) break; // leading zero
+                } else if (last == NUMBER_CHAR_DECIMAL) {
+                    last = NUMBER_CHAR_FRACTION_DIGIT;
+                } else if (last == NUMBER_CHAR_EXP_E || last == NUMBER_CHAR_EXP_SIGN) {
+                    last = NUMBER_CHAR_EXP_DIGIT;
+                }
+            } else {
+                last = NUMBER_CHAR_NONE;
+                break;
+            }
+            if (i == n - 1 && (last == NUMBER_CHAR_DIGIT || last == NUMBER_CHAR_FRACTION_DIGIT || last == NUMBER_CHAR_EXP_DIGIT)) return;
+        }
+        throw syntaxError("Unexpected value `" + t + "`");
+    }
+
     private void push(int newTop) {
         if (stackSize == stack.length) {
             int newLength = stackSize * 2;
@@ -925,6 +1432,7 @@ public class AcmeJsonParser extends AbstractJsonParser{
             pathNames = Arrays.copyOf(pathNames, newLength);
         }
         stack[stackSize++] = newTop;
+        if (stackSize > maxDepth) maxDepth = stackSize;
     }
 
     /**
@@ -944,8 +1452,10 @@ public class AcmeJsonParser extends AbstractJsonParser{
 
         pos = 0;
         int total;
+        countFills++;
         while ((total = in.read(buffer, limit, buffer.length - limit)) != -1) {
             limit += total;
+            countChars += total;
 
             // if this is the first read, consume an optional byte order mark (BOM) if it exists
             if (lineNumber == 0 && lineStart == 0 && limit > 0 && buffer[0] == '\ufeff') {
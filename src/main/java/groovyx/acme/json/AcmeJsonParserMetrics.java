@@ -0,0 +1,203 @@
+package groovyx.acme.json;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * collects metrics of AcmeJsonParser: chars, tokens, buffer refills, max nesting depth, strings that needed
+ * the StringBuilder slow path (escapes or strings longer than the buffer), numbers parsed as BigDecimal, time and errors.
+ * the parser counts them in plain fields, mostly on slow paths, and reports once per parse to {@link #onParse(Snapshot)},
+ * so one instance could be shared by parsers of all threads. override onParse to log or sample single parses.
+ * the cumulative values are available with {@link #getSnapshot()} or through JMX after {@link #register(String)}.
+ * <pre>{@code
+ *  def metrics = new AcmeJsonParserMetrics().register('api')
+ *  def data = new AcmeJsonParser().setMetrics(metrics).parse(reader)
+ *  println metrics.snapshot.toMap()
+ * }</pre>
+ */
+public class AcmeJsonParserMetrics implements AcmeJsonParserMetricsMBean {
+    private final LongAdder parses = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder chars = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    private final LongAdder fills = new LongAdder();
+    private final LongAdder slowStrings = new LongAdder();
+    private final LongAdder bigDecimals = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final AtomicLong maxDepth = new AtomicLong();
+    private ObjectName objectName = null;
+
+    /**
+     * called by the parser at the end of each parse including failed ones
+     * @param parse metrics of one parse
+     */
+    public void onParse(Snapshot parse){
+        parses.increment();
+        if(parse.errors>0)errors.increment();
+        chars.add(parse.chars);
+        tokens.add(parse.tokens);
+        fills.add(parse.fills);
+        slowStrings.add(parse.slowStrings);
+        bigDecimals.add(parse.bigDecimals);
+        nanos.add(parse.nanos);
+        long d;
+        while((d = maxDepth.get())<parse.maxDepth && !maxDepth.compareAndSet(d, parse.maxDepth));
+    }
+
+    /**
+     * returns cumulative metrics of all parses since creation or reset
+     * @return the snapshot
+     */
+    public Snapshot getSnapshot(){
+        return new Snapshot(parses.sum(), errors.sum(), chars.sum(), tokens.sum(), fills.sum(), slowStrings.sum(), bigDecimals.sum(), maxDepth.get(), nanos.sum());
+    }
+
+    @Override
+    public void reset(){
+        parses.reset();
+        errors.reset();
+        chars.reset();
+        tokens.reset();
+        fills.reset();
+        slowStrings.reset();
+        bigDecimals.reset();
+        nanos.reset();
+        maxDepth.set(0);
+    }
+
+    /**
+     * registers this object in the platform MBean server as {@code groovyx.acme.json:type=AcmeJsonParserMetrics,name=<name>}
+     * @param name value of the name key
+     * @return self
+     * @throws IllegalStateException if registration failed, for example the name is already used
+     */
+    public synchronized AcmeJsonParserMetrics register(String name){
+        try {
+            ObjectName on = new ObjectName("groovyx.acme.json:type=AcmeJsonParserMetrics,name="+ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+            objectName = on;
+            return this;
+        }catch(JMException e){
+            throw new IllegalStateException("Failed to register parser metrics `"+name+"`: "+e, e);
+        }
+    }
+
+    /**
+     * removes this object from the platform MBean server if it was registered
+     */
+    public synchronized void unregister(){
+        if(objectName==null)return;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if(server.isRegistered(objectName))server.unregisterMBean(objectName);
+        }catch(JMException e){
+            throw new IllegalStateException("Failed to unregister parser metrics "+objectName+": "+e, e);
+        }finally{
+            objectName = null;
+        }
+    }
+
+    @Override public long getParseCount()      { return parses.sum(); }
+    @Override public long getErrorCount()      { return errors.sum(); }
+    @Override public long getChars()           { return chars.sum(); }
+    @Override public long getTokens()          { return tokens.sum(); }
+    @Override public long getBufferFills()     { return fills.sum(); }
+    @Override public long getSlowPathStrings() { return slowStrings.sum(); }
+    @Override public long getBigDecimals()     { return bigDecimals.sum(); }
+    @Override public long getMaxDepth()        { return maxDepth.get(); }
+    @Override public long getParseNanos()      { return nanos.sum(); }
+    @Override public double getCharsPerSecond(){ return getSnapshot().getCharsPerSecond(); }
+    @Override public double getTokensPerSecond(){ return getSnapshot().getTokensPerSecond(); }
+
+    @Override
+    public String toString(){
+        return getSnapshot().toString();
+    }
+
+    /**
+     * immutable metrics of one parse or cumulative metrics of many
+     */
+    public static final class Snapshot {
+        final long parses;
+        final long errors;
+        final long chars;
+        final long tokens;
+        final long fills;
+        final long slowStrings;
+        final long bigDecimals;
+        final long maxDepth;
+        final long nanos;
+
+        Snapshot(long parses, long errors, long chars, long tokens, long fills, long slowStrings, long bigDecimals, long maxDepth, long nanos){
+            this.parses = parses;
+            this.errors = errors;
+            this.chars = chars;
+            this.tokens = tokens;
+            this.fills = fills;
+            this.slowStrings = slowStrings;
+            this.bigDecimals = bigDecimals;
+            this.maxDepth = maxDepth;
+            this.nanos = nanos;
+        }
+
+        /** @return number of parses */
+        public long getParseCount()      { return parses; }
+        /** @return number of failed parses */
+        public long getErrorCount()      { return errors; }
+        /** @return chars read from the source */
+        public long getChars()           { return chars; }
+        /** @return json tokens: object and array starts and ends, names and values */
+        public long getTokens()          { return tokens; }
+        /** @return reads from the source into the parser buffer */
+        public long getBufferFills()     { return fills; }
+        /** @return strings and names built with StringBuilder because of escapes or buffer boundary */
+        public long getSlowPathStrings() { return slowStrings; }
+        /** @return numbers parsed as BigDecimal */
+        public long getBigDecimals()     { return bigDecimals; }
+        /** @return max nesting depth of objects and arrays */
+        public long getMaxDepth()        { return maxDepth; }
+        /** @return time of parsing including handler time in nanoseconds */
+        public long getParseNanos()      { return nanos; }
+
+        /** @return chars per second of parse time */
+        public double getCharsPerSecond(){
+            return nanos>0 ? chars*1e9/nanos : 0;
+        }
+
+        /** @return tokens per second of parse time */
+        public double getTokensPerSecond(){
+            return nanos>0 ? tokens*1e9/nanos : 0;
+        }
+
+        /**
+         * returns metrics as map
+         * @return map of metric name to value
+         */
+        public Map<String,Object> toMap(){
+            Map<String,Object> m = new LinkedHashMap<>();
+            m.put("parseCount", parses);
+            m.put("errorCount", errors);
+            m.put("chars", chars);
+            m.put("tokens", tokens);
+            m.put("bufferFills", fills);
+            m.put("slowPathStrings", slowStrings);
+            m.put("bigDecimals", bigDecimals);
+            m.put("maxDepth", maxDepth);
+            m.put("parseNanos", nanos);
+            m.put("charsPerSecond", (long)getCharsPerSecond());
+            m.put("tokensPerSecond", (long)getTokensPerSecond());
+            return m;
+        }
+
+        @Override
+        public String toString(){
+            return toMap().toString();
+        }
+    }
+}
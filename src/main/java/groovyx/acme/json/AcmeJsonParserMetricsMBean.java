@@ -0,0 +1,21 @@
+package groovyx.acme.json;
+
+/**
+ * JMX interface of AcmeJsonParserMetrics with cumulative values of all parses
+ */
+public interface AcmeJsonParserMetricsMBean {
+    long getParseCount();
+    long getErrorCount();
+    long getChars();
+    long getTokens();
+    long getBufferFills();
+    long getSlowPathStrings();
+    long getBigDecimals();
+    long getMaxDepth();
+    long getParseNanos();
+    double getCharsPerSecond();
+    double getTokensPerSecond();
+
+    /** sets all metrics to zero */
+    void reset();
+}
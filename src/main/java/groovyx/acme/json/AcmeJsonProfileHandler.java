@@ -0,0 +1,451 @@
+package groovyx.acme.json;
+
+import groovy.lang.Closure;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * handler wrapper that profiles the downstream handler by json path. it could be placed anywhere in a handler chain:
+ * before the filter handler to profile the whole pipeline, or as a delegate of the filter to profile only the builder or writer.
+ * for each normalized path (array indices replaced with [*]) it counts events, utf-8 bytes of string values,
+ * and nanoseconds spent in the delegate. paths are kept in a tree of nodes with primitive counters,
+ * so after the first record of a document the profiling does not allocate. each node remembers the key that
+ * followed it last time, so keys of repeated records are resolved with one string compare instead of a hash lookup.
+ * <br>to keep the overhead low for always-on profiling set the timing sample: only sampled events are timed and
+ * the time of each path is estimated from its sampled events. counts and bytes are always exact.
+ * raw values copied by the parser to a writer are counted as events without bytes and time.
+ * <br>counters are cumulative over all parses through this handler. the handler is not thread safe.
+ * <pre>{@code
+ *  new AcmeJsonParser().withFilter{
+ *      onValue('$..price'){ it*2 }
+ *      build()
+ *  }.withProfile{ report-> log.info(report.toString(10)) }.parse(reader)
+ * }</pre>
+ */
+public class AcmeJsonProfileHandler implements AcmeJsonRawHandler {
+    /** path element used for keys over the maxKeys limit */
+    public static final String OTHER_KEY = "<other>";
+
+    protected AcmeJsonHandler delegate;
+    protected Closure<?> onReport = null;
+    protected int maxKeys = 1000;
+    private int sampleMask = 0;
+    private int random = 0x2545F491;
+
+    private final Node root = new Node(null);
+    private Node[] stack = new Node[32]; //nodes of the current path prefixes
+    private Node[] prev = new Node[33];  //previous key node at each depth to predict the next key
+    private int top = 0;                 //last valid index in stack
+    private int keyCount = 0;
+
+    public AcmeJsonProfileHandler(AcmeJsonHandler delegate){
+        this.delegate = delegate;
+        stack[0] = root;
+    }
+
+    /**
+     * sets the handler to profile
+     * @param delegate the delegate handler
+     * @return self
+     */
+    public AcmeJsonProfileHandler setDelegate(AcmeJsonHandler delegate){
+        this.delegate = delegate;
+        return this;
+    }
+
+    public AcmeJsonHandler getDelegate(){
+        return delegate;
+    }
+
+    /**
+     * sets the closure called with Report at the end of each parse
+     * @param onReport one parameter closure
+     * @return self
+     */
+    public AcmeJsonProfileHandler setOnReport(Closure<?> onReport){
+        this.onReport = onReport;
+        return this;
+    }
+
+    /**
+     * sets how many events are timed: 1 - each event (default), 16 - one of 16 randomly chosen events.
+     * @param rate power of two
+     * @return self
+     */
+    public AcmeJsonProfileHandler setTimingSample(int rate){
+        if(rate<1 || Integer.bitCount(rate)!=1)throw new IllegalArgumentException("timing sample rate must be power of two: "+rate);
+        this.sampleMask = rate-1;
+        return this;
+    }
+
+    /**
+     * sets max number of distinct object keys in all paths. keys over the limit are counted as {@link #OTHER_KEY}.
+     * it protects memory when documents use ids or other data as object keys.
+     * @param maxKeys max number of keys, default 1000
+     * @return self
+     */
+    public AcmeJsonProfileHandler setMaxKeys(int maxKeys){
+        this.maxKeys = maxKeys;
+        return this;
+    }
+
+    @Override
+    public void onObjectStart(AbstractJsonPath jpath) throws IOException {
+        Node n = push(jpath);
+        if(sampled()){
+            long t = System.nanoTime();
+            delegate.onObjectStart(jpath);
+            n.timed(System.nanoTime()-t);
+        }else{
+            delegate.onObjectStart(jpath);
+        }
+        n.events++;
+    }
+
+    @Override
+    public void onObjectEnd(AbstractJsonPath jpath) throws IOException {
+        Node n = pop(jpath);
+        if(sampled()){
+            long t = System.nanoTime();
+            delegate.onObjectEnd(jpath);
+            n.timed(System.nanoTime()-t);
+        }else{
+            delegate.onObjectEnd(jpath);
+        }
+        n.events++;
+    }
+
+    @Override
+    public void onArrayStart(AbstractJsonPath jpath) throws IOException {
+        Node n = push(jpath);
+        if(sampled()){
+            long t = System.nanoTime();
+            delegate.onArrayStart(jpath);
+            n.timed(System.nanoTime()-t);
+        }else{
+            delegate.onArrayStart(jpath);
+        }
+        n.events++;
+    }
+
+    @Override
+    public void onArrayEnd(AbstractJsonPath jpath) throws IOException {
+        Node n = pop(jpath);
+        if(sampled()){
+            long t = System.nanoTime();
+            delegate.onArrayEnd(jpath);
+            n.timed(System.nanoTime()-t);
+        }else{
+            delegate.onArrayEnd(jpath);
+        }
+        n.events++;
+    }
+
+    @Override
+    public void onValue(AbstractJsonPath jpath, Object value) throws IOException {
+        Node n = node(jpath);
+        if(sampled()){
+            long t = System.nanoTime();
+            delegate.onValue(jpath, value);
+            n.timed(System.nanoTime()-t);
+        }else{
+            delegate.onValue(jpath, value);
+        }
+        n.events++;
+        if(value instanceof String)n.bytes += utf8Length((String)value);
+    }
+
+    /**
+     * calls report closure if defined
+     */
+    @Override
+    public Object getRoot() {
+        Object r = delegate.getRoot();
+        top = 0;
+        if(onReport!=null)onReport.call(getReport());
+        return r;
+    }
+
+    @Override
+    public boolean isRawCopy() {
+        return delegate instanceof AcmeJsonRawHandler && ((AcmeJsonRawHandler) delegate).isRawCopy();
+    }
+
+    @Override
+    public boolean isRawCompact() {
+        return delegate instanceof AcmeJsonRawHandler && ((AcmeJsonRawHandler) delegate).isRawCompact();
+    }
+
+    @Override
+    public Writer onRawValue(AbstractJsonPath jpath) throws IOException {
+        Writer w = ((AcmeJsonRawHandler) delegate).onRawValue(jpath);
+        if(w!=null)node(jpath).events++;
+        return w;
+    }
+
+    /**
+     * returns profile of all paths sorted by time descending
+     * @return the report
+     */
+    public Report getReport(){
+        ArrayList<PathProfile> paths = new ArrayList<>();
+        collect(root, new StringBuilder("$"), paths);
+        Collections.sort(paths, new Comparator<PathProfile>() {
+            @Override
+            public int compare(PathProfile a, PathProfile b) {
+                int c = Long.compare(b.nanos, a.nanos);
+                return c!=0 ? c : Long.compare(b.events, a.events);
+            }
+        });
+        return new Report(paths);
+    }
+
+    /** sets all counters to zero and drops collected paths */
+    public void reset(){
+        root.clear();
+        Arrays.fill(prev, null);
+        keyCount = 0;
+        top = 0;
+    }
+
+    private boolean sampled(){
+        if(sampleMask==0)return true;
+        int x = random; //xorshift
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        random = x;
+        return (x & sampleMask)==0;
+    }
+
+    /** node of the value at the path */
+    private Node node(AbstractJsonPath jpath){
+        int size = jpath.size();
+        if(size==0)return root;
+        if(size-1>top)walk(jpath, size-1);
+        AbstractJsonPath.Element e = jpath.peek();
+        if(!e.isKey())return any(stack[size-1]);
+        //predict the key by order of keys in the previous record
+        Node p = prev[size];
+        Node n = p==null ? stack[size-1].first : p.next;
+        String key = e.getKey();
+        if(n==null || !key.equals(n.key)){
+            n = child(stack[size-1], key);
+            if(p==null)stack[size-1].first = n;
+            else p.next = n;
+        }
+        prev[size] = n;
+        return n;
+    }
+
+    /** node of the started container, stored in the stack for its children */
+    private Node push(AbstractJsonPath jpath){
+        Node n = node(jpath);
+        int size = jpath.size();
+        grow(size);
+        stack[size] = n;
+        prev[size+1] = null;
+        top = size;
+        return n;
+    }
+
+    private Node pop(AbstractJsonPath jpath){
+        int size = jpath.size();
+        Node n = size<=top ? stack[size] : node(jpath);
+        top = size>0 ? size-1 : 0;
+        return n;
+    }
+
+    /** rebuilds stack up to the size from the path elements when the handler did not see the container starts */
+    private void walk(AbstractJsonPath jpath, int size){
+        grow(size);
+        Node n = root;
+        for(int i=0;i<size;i++){
+            AbstractJsonPath.Element e = jpath.get(i);
+            n = e.isKey() ? child(n, e.getKey()) : any(n);
+            stack[i+1] = n;
+            prev[i+2] = null;
+        }
+        top = size;
+    }
+
+    private void grow(int size){
+        if(size+1>=stack.length){
+            int len = Math.max(stack.length*2, size+2);
+            Node[] s = new Node[len];
+            System.arraycopy(stack, 0, s, 0, stack.length);
+            stack = s;
+            s = new Node[len+1];
+            System.arraycopy(prev, 0, s, 0, prev.length);
+            prev = s;
+        }
+    }
+
+    private static Node any(Node parent){
+        if(parent.any==null)parent.any = new Node(null);
+        return parent.any;
+    }
+
+    private Node child(Node parent, String key){
+        if(parent.keys==null)parent.keys = new HashMap<>();
+        Node n = parent.keys.get(key);
+        if(n==null){
+            if(keyCount>=maxKeys)key = OTHER_KEY;
+            n = parent.keys.get(key);
+            if(n==null){
+                n = new Node(key);
+                parent.keys.put(key, n);
+                keyCount++;
+            }
+        }
+        return n;
+    }
+
+    private static void collect(Node n, StringBuilder path, List<PathProfile> paths){
+        if(n.events>0)paths.add(new PathProfile(path.toString(), n.events, n.bytes, n.estimatedNanos()));
+        int len = path.length();
+        if(n.any!=null){
+            collect(n.any, path.append("[*]"), paths);
+            path.setLength(len);
+        }
+        if(n.keys!=null){
+            for(Node c: n.keys.values()){
+                collect(c, path.append('.').append(c.key), paths);
+                path.setLength(len);
+            }
+        }
+    }
+
+    static int utf8Length(String s){
+        int len = s.length();
+        int n = len;
+        for(int i=0;i<len;i++){
+            char c = s.charAt(i);
+            if(c>=0x80){
+                if(c<0x800) n++;
+                else if(Character.isHighSurrogate(c) && i+1<len && Character.isLowSurrogate(s.charAt(i+1))){
+                    n += 2; //4 bytes for 2 chars
+                    i++;
+                }else n += 2;
+            }
+        }
+        return n;
+    }
+
+    /** interned normalized path with its counters */
+    static final class Node {
+        final String key; //null for array element
+        HashMap<String,Node> keys = null;
+        Node any = null;
+        Node first = null; //predicted first key of object
+        Node next = null;  //predicted next key in the same object
+        long events = 0;
+        long bytes = 0;
+        long nanos = 0;
+        long timed = 0;
+
+        Node(String key){
+            this.key = key;
+        }
+
+        void timed(long t){
+            nanos += t;
+            timed++;
+        }
+
+        long estimatedNanos(){
+            return timed==0 || timed==events ? nanos : (long)((double)nanos*events/timed);
+        }
+
+        void clear(){
+            keys = null;
+            any = null;
+            first = null;
+            events = bytes = nanos = timed = 0;
+        }
+    }
+
+    /**
+     * counters of one normalized path
+     */
+    public static final class PathProfile {
+        final String path;
+        final long events;
+        final long bytes;
+        final long nanos;
+
+        PathProfile(String path, long events, long bytes, long nanos){
+            this.path = path;
+            this.events = events;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        /** @return normalized path like {@code $.items[*].name} */
+        public String getPath()       { return path; }
+        /** @return number of events: values, object and array starts and ends */
+        public long getEvents()       { return events; }
+        /** @return utf-8 bytes of string values */
+        public long getStringBytes()  { return bytes; }
+        /** @return nanoseconds spent in the delegate handler, estimated when timing is sampled */
+        public long getNanos()        { return nanos; }
+
+        @Override
+        public String toString(){
+            return path+" events="+events+" bytes="+bytes+" nanos="+nanos;
+        }
+    }
+
+    /**
+     * profile of paths sorted by time descending
+     */
+    public static final class Report {
+        final List<PathProfile> paths;
+
+        Report(List<PathProfile> paths){
+            this.paths = Collections.unmodifiableList(paths);
+        }
+
+        /** @return all paths, the hottest first */
+        public List<PathProfile> getPaths(){
+            return paths;
+        }
+
+        /** @return total nanoseconds in the delegate handler */
+        public long getTotalNanos(){
+            long t = 0;
+            for(PathProfile p: paths)t += p.nanos;
+            return t;
+        }
+
+        /**
+         * formats the hottest paths as a table
+         * @param limit max number of paths
+         * @return the table
+         */
+        public String toString(int limit){
+            long total = getTotalNanos();
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%-50s %12s %12s %12s %6s%n", "path", "events", "bytes", "micros", "time%"));
+            for(int i=0;i<paths.size() && i<limit;i++){
+                PathProfile p = paths.get(i);
+                sb.append(String.format("%-50s %12d %12d %12d %5.1f%%%n", p.path, p.events, p.bytes, p.nanos/1000,
+                        total>0 ? p.nanos*100.0/total : 0.0));
+            }
+            if(paths.size()>limit)sb.append("... ").append(paths.size()-limit).append(" more paths").append(String.format("%n"));
+            return sb.toString();
+        }
+
+        @Override
+        public String toString(){
+            return toString(20);
+        }
+    }
+}
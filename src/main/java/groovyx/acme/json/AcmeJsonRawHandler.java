@@ -0,0 +1,32 @@
+package groovyx.acme.json;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * json handler that is able to receive unmodified json values as raw text copied directly from the parser source.
+ * used by parser only in strict (not lenient) mode.
+ */
+public interface AcmeJsonRawHandler extends AcmeJsonHandler {
+    /**
+     * returns true if handler accepts raw values. called by parser once before parsing.
+     * @return true if parser should call onRawValue before each value
+     */
+    boolean isRawCopy();
+
+    /**
+     * returns true if whitespaces between tokens of the raw value should be dropped while copying.
+     * @return true to normalize whitespaces, false to keep the source text as is
+     */
+    boolean isRawCompact();
+
+    /**
+     * called by parser before reading object, array or plain value at jpath.
+     * if handler returns a writer then parser copies the source text of the value to it,
+     * and no other events will be triggered for this value and its children.
+     * @param jpath path to the value
+     * @return writer where to copy raw value text or null to receive regular events for this value
+     * @throws IOException if io error occurred
+     */
+    Writer onRawValue(AbstractJsonPath jpath) throws IOException;
+}
@@ -0,0 +1,21 @@
+package groovyx.acme.json;
+
+import java.io.IOException;
+
+/**
+ * custom serializer of objects of some class registered in AcmeJsonSerializers.
+ * <pre>{@code
+ *  AcmeJsonSerializers.getDefault().register(Date){ Date d, AcmeJsonWriter w-> w.value(d.format('yyyy-MM-dd')) }
+ * }</pre>
+ * @param <T> the type of the objects
+ */
+public interface AcmeJsonSerializer<T> {
+    /**
+     * writes the value to json writer as a single json value: plain value, object, or array.
+     * use {@code w.value(...)}, {@code w.object{...}}, {@code w.array{...}} and other AcmeJsonWriter methods.
+     * @param value the object to write
+     * @param w the writer positioned at the place of the value
+     * @throws IOException if io error occurred
+     */
+    void write(T value, AcmeJsonWriter w) throws IOException;
+}
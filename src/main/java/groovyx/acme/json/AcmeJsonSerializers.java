@@ -0,0 +1,231 @@
+package groovyx.acme.json;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * registry of serializers used by AcmeJsonWriter and AcmeJsonWriteHandler to write objects that are not Map, Iterable, or plain values.
+ * custom serializers could be registered for a class or interface. other objects are written as strings (toString).
+ * with {@link #setDerive(boolean)} serializer of user classes is derived automatically:
+ * record components, bean and groovy properties (getters) and public fields are written as json object.
+ * accessors of each class are resolved once and called through MethodHandles.
+ * classes without readable properties, classes from `java.`, `javax.`, `groovy.`, and `org.codehaus.groovy.` packages,
+ * and enums are still written as strings. cyclic references between derived objects throw AcmeJsonException.
+ */
+public class AcmeJsonSerializers {
+    private static final AcmeJsonSerializers DEFAULT = new AcmeJsonSerializers();
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    /** marks classes without serializer in the cache */
+    private static final AcmeJsonSerializer<Object> NONE = new AcmeJsonSerializer<Object>() {
+        @Override
+        public void write(Object value, AcmeJsonWriter w) {
+            throw new IllegalStateException();
+        }
+    };
+
+    private final Map<Class<?>,AcmeJsonSerializer<?>> custom = new LinkedHashMap<>();
+    private final ConcurrentHashMap<Class<?>,AcmeJsonSerializer<?>> resolved = new ConcurrentHashMap<>();
+    private volatile boolean derive = false;
+
+    /**
+     * returns registry used by default in all writers
+     * @return default registry
+     */
+    public static AcmeJsonSerializers getDefault(){
+        return DEFAULT;
+    }
+
+    /**
+     * registers custom serializer for the class and its subclasses (or implementations of interface)
+     * @param type the class or interface
+     * @param serializer the serializer
+     * @param <T> the type
+     * @return self
+     */
+    public synchronized <T> AcmeJsonSerializers register(Class<T> type, AcmeJsonSerializer<? super T> serializer){
+        custom.put(type, serializer);
+        resolved.clear();
+        return this;
+    }
+
+    /**
+     * enables or disables automatically derived serializers for user classes. disabled by default.
+     * @param derive false to write objects without custom serializer as strings
+     * @return self
+     */
+    public AcmeJsonSerializers setDerive(boolean derive){
+        this.derive = derive;
+        resolved.clear();
+        return this;
+    }
+
+    /**
+     * returns serializer for the class or null if objects of this class should be written as plain values
+     * @param type the class of the object to write
+     * @return serializer or null
+     */
+    @SuppressWarnings("unchecked")
+    public AcmeJsonSerializer<Object> get(Class<?> type){
+        AcmeJsonSerializer<?> s = resolved.get(type);
+        if(s==null){
+            s = resolve(type);
+            if(s==null)s = NONE;
+            resolved.put(type, s);
+        }
+        return s==NONE ? null : (AcmeJsonSerializer<Object>)s;
+    }
+
+    private synchronized AcmeJsonSerializer<?> resolve(Class<?> type){
+        //the nearest registered superclass, then interfaces
+        for(Class<?> c=type; c!=null; c=c.getSuperclass()){
+            AcmeJsonSerializer<?> s = custom.get(c);
+            if(s!=null)return s;
+        }
+        for(Map.Entry<Class<?>,AcmeJsonSerializer<?>> e: custom.entrySet()){
+            if(e.getKey().isAssignableFrom(type))return e.getValue();
+        }
+        if(!derive || !derivable(type))return null;
+        BeanSerializer s = new BeanSerializer(type);
+        return s.names.length==0 ? null : s; //toString for classes without readable properties
+    }
+
+    static boolean derivable(Class<?> type){
+        if(type.isArray() || type.isEnum() || type.isPrimitive() || type.isSynthetic() || Map.class.isAssignableFrom(type)
+                || Iterable.class.isAssignableFrom(type) || Iterator.class.isAssignableFrom(type)
+                || CharSequence.class.isAssignableFrom(type) || Number.class.isAssignableFrom(type))return false;
+        String n = type.getName();
+        if(n.startsWith("java.") || n.startsWith("javax.") || n.startsWith("groovy.") || n.startsWith("org.codehaus.groovy."))return false;
+        //enum constants with body
+        Class<?> sup = type.getSuperclass();
+        return sup==null || !sup.isEnum();
+    }
+
+    /** returns names of record components or null if class is not a record (java 16+) */
+    static String[] recordComponents(Class<?> cls){
+        Class<?> sup = cls.getSuperclass();
+        if(sup==null || !sup.getName().equals("java.lang.Record"))return null;
+        try {
+            Object[] rc = (Object[])Class.class.getMethod("getRecordComponents").invoke(cls);
+            String[] names = new String[rc.length];
+            for(int i=0;i<rc.length;i++)names[i] = (String)rc[i].getClass().getMethod("getName").invoke(rc[i]);
+            return names;
+        }catch(ReflectiveOperationException e){
+            return null;
+        }
+    }
+
+    /**
+     * writes object properties as json object. properties ordered as declared in the class (superclass first),
+     * other getters sorted by name.
+     */
+    static final class BeanSerializer implements AcmeJsonSerializer<Object> {
+        final String[] names;
+        final MethodHandle[] getters; //(Object)Object
+
+        BeanSerializer(Class<?> type){
+            Map<String,MethodHandle> props = new LinkedHashMap<>();
+            try {
+                String[] components = recordComponents(type);
+                if(components!=null){
+                    for(String c: components){
+                        props.put(c, LOOKUP.unreflect(accessible(type.getMethod(c))).asType(MethodType.methodType(Object.class, Object.class)));
+                    }
+                }else{
+                    TreeMap<String,Method> getters = new TreeMap<>();
+                    for(Method m: type.getMethods()){
+                        String p = property(m);
+                        if(p!=null && !getters.containsKey(p))getters.put(p, m);
+                    }
+                    //order of declared fields first
+                    List<Class<?>> hierarchy = new ArrayList<>();
+                    for(Class<?> c=type; c!=null && c!=Object.class; c=c.getSuperclass())hierarchy.add(0, c);
+                    for(Class<?> c: hierarchy){
+                        for(Field f: c.getDeclaredFields()){
+                            int mod = f.getModifiers();
+                            String name = f.getName();
+                            if(Modifier.isStatic(mod) || f.isSynthetic() || name.indexOf('$')>=0 || props.containsKey(name))continue;
+                            Method g = getters.remove(name);
+                            if(g!=null){
+                                props.put(name, handle(g));
+                            }else if(Modifier.isPublic(mod) && Modifier.isPublic(c.getModifiers()) && !Modifier.isTransient(mod)){
+                                props.put(name, LOOKUP.unreflectGetter(f).asType(MethodType.methodType(Object.class, Object.class)));
+                            }
+                        }
+                    }
+                    for(Map.Entry<String,Method> e: getters.entrySet()){
+                        props.put(e.getKey(), handle(e.getValue()));
+                    }
+                }
+            }catch(ReflectiveOperationException e){
+                throw new AcmeJsonException("Cannot build serializer for "+type.getName()+": "+e, e);
+            }
+            names = props.keySet().toArray(new String[0]);
+            getters = props.values().toArray(new MethodHandle[0]);
+        }
+
+        @Override
+        public void write(Object value, AcmeJsonWriter w) throws IOException {
+            AcmeJsonWriter.JsonPath jpath = w.jpath;
+            if(w.serializing==null)w.serializing = new IdentityHashMap<>();
+            if(w.serializing.put(value, value)!=null){
+                throw new AcmeJsonException("Cyclic reference to "+value.getClass().getName()+" at `"+jpath+"`");
+            }
+            try {
+                w.writer.onObjectStart(jpath);
+                for(int i=0;i<names.length;i++){
+                    Object v;
+                    try {
+                        v = (Object)getters[i].invokeExact(value);
+                    }catch(IOException|RuntimeException|Error e){
+                        throw e;
+                    }catch(Throwable t){
+                        throw new AcmeJsonException("Failed to get `"+names[i]+"` of "+value.getClass().getName()+": "+t, t);
+                    }
+                    jpath.push(i, names[i], true);
+                    w.printValue(v);
+                    jpath.pop(true);
+                }
+                w.writer.onObjectEnd(jpath);
+            }finally{
+                w.serializing.remove(value);
+            }
+        }
+
+        private static MethodHandle handle(Method m) throws IllegalAccessException {
+            return LOOKUP.unreflect(accessible(m)).asType(MethodType.methodType(Object.class, Object.class));
+        }
+
+        /** returns property name for public getter or null */
+        private static String property(Method m){
+            if(m.getParameterCount()!=0 || Modifier.isStatic(m.getModifiers()) || m.isBridge() || m.getReturnType()==void.class)return null;
+            String n = m.getName();
+            String p;
+            if(n.startsWith("get") && n.length()>3) p = n.substring(3);
+            else if(n.startsWith("is") && n.length()>2 && m.getReturnType()==boolean.class) p = n.substring(2);
+            else return null;
+            if(n.equals("getClass") || n.equals("getMetaClass"))return null;
+            if(p.length()>1 && Character.isUpperCase(p.charAt(0)) && Character.isUpperCase(p.charAt(1)))return p;
+            return Character.toLowerCase(p.charAt(0))+p.substring(1);
+        }
+
+        /** public methods of non-public classes require access check suppression */
+        private static Method accessible(Method m){
+            if(!Modifier.isPublic(m.getDeclaringClass().getModifiers()))m.setAccessible(true);
+            return m;
+        }
+
+    }
+}
@@ -0,0 +1,142 @@
+package groovyx.acme.json;
+
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * the sequence of keys shared by json objects with the same layout (hidden class).
+ * shapes form a tree where each child shape extends its parent with one more key.
+ * the tree could be shared between build handlers and threads.
+ */
+public final class AcmeJsonShape {
+    /** max number of keys in one shape. objects with more keys are built as regular maps */
+    public static final int MAX_KEYS = 64;
+    private static final int LINEAR_MAX = 8;
+
+    private final String[] keys;
+    private final HashMap<String,Integer> index; //for shapes with many keys
+    private final AcmeJsonShape root;
+    private final AtomicInteger shapes;   //number of shapes in the tree. used only in root
+    private final int maxShapes;          //used only in root
+
+    private volatile AcmeJsonShape lastChild = null; //most recent transition
+    private volatile ConcurrentHashMap<String,AcmeJsonShape> children = null;
+
+    /**
+     * creates the root (empty) shape of a new shape tree
+     * @param maxShapes max number of shapes in the tree. objects with new layouts over this limit are built as regular maps
+     */
+    public AcmeJsonShape(int maxShapes){
+        this.keys = new String[0];
+        this.index = null;
+        this.root = this;
+        this.shapes = new AtomicInteger(1);
+        this.maxShapes = maxShapes;
+    }
+
+    /**
+     * creates the root (empty) shape of a new shape tree with the limit of 10000 shapes
+     */
+    public AcmeJsonShape(){
+        this(10000);
+    }
+
+    private AcmeJsonShape(AcmeJsonShape parent, String key){
+        int n = parent.keys.length;
+        this.keys = new String[n+1];
+        System.arraycopy(parent.keys, 0, this.keys, 0, n);
+        this.keys[n] = key;
+        this.root = parent.root;
+        this.shapes = null;
+        this.maxShapes = 0;
+        if(keys.length>LINEAR_MAX){
+            index = new HashMap<>(keys.length*2);
+            for(int i=0;i<keys.length;i++)index.put(keys[i], i);
+        }else{
+            index = null;
+        }
+    }
+
+    /**
+     * number of keys in this shape
+     * @return number of keys
+     */
+    public int size(){
+        return keys.length;
+    }
+
+    /**
+     * returns key at position
+     * @param i position of the key
+     * @return the key
+     */
+    public String getKey(int i){
+        return keys[i];
+    }
+
+    /**
+     * returns position of the key in this shape or -1 if key not found
+     * @param key the key to find
+     * @return position of the key or -1
+     */
+    public int indexOf(Object key){
+        if(index!=null){
+            Integer i = index.get(key);
+            return i==null ? -1 : i;
+        }
+        String[] keys = this.keys;
+        for(int i=0;i<keys.length;i++){
+            if(keys[i].equals(key))return i;
+        }
+        return -1;
+    }
+
+    /**
+     * returns the shape that extends this one with the key
+     * @param key the next key
+     * @return child shape or null if the limits of the shape tree reached
+     */
+    public AcmeJsonShape next(String key){
+        AcmeJsonShape c = lastChild;
+        if(c!=null && c.keys[keys.length].equals(key))return c;
+        ConcurrentHashMap<String,AcmeJsonShape> map = children;
+        if(map!=null){
+            c = map.get(key);
+            if(c!=null){
+                lastChild = c;
+                return c;
+            }
+        }
+        if(keys.length>=MAX_KEYS)return null;
+        synchronized (this){
+            if(children==null)children = new ConcurrentHashMap<>();
+            c = children.get(key);
+            if(c==null){
+                if(root.shapes.get()>=root.maxShapes)return null;
+                c = new AcmeJsonShape(this, key);
+                children.put(key, c);
+                root.shapes.incrementAndGet();
+            }
+        }
+        lastChild = c;
+        return c;
+    }
+
+    /**
+     * number of shapes in the tree this shape belongs to
+     * @return number of shapes
+     */
+    public int getShapeCount(){
+        return root.shapes.get();
+    }
+
+    public String toString(){
+        StringBuilder sb = new StringBuilder("shape[");
+        for(int i=0;i<keys.length;i++){
+            if(i>0)sb.append(',');
+            sb.append(keys[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
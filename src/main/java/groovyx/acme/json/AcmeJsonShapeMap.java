@@ -0,0 +1,84 @@
+package groovyx.acme.json;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * read-only map that keeps only values of json object. the keys are shared with other objects through AcmeJsonShape.
+ */
+public class AcmeJsonShapeMap extends AbstractMap<String,Object> {
+    private final AcmeJsonShape shape;
+    private final Object[] values;
+
+    /**
+     * @param shape the keys of the map
+     * @param values the values in the order of shape keys. array is not copied.
+     */
+    public AcmeJsonShapeMap(AcmeJsonShape shape, Object[] values){
+        if(shape.size()!=values.length)throw new IllegalArgumentException("shape size "+shape.size()+" does not match values length "+values.length);
+        this.shape = shape;
+        this.values = values;
+    }
+
+    /**
+     * returns the shape (keys) of this map
+     * @return the shape
+     */
+    public AcmeJsonShape getShape(){
+        return shape;
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return shape.indexOf(key)>=0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int i = shape.indexOf(key);
+        return i<0 ? null : values[i];
+    }
+
+    @Override
+    public Set<Map.Entry<String,Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String,Object>>() {
+            @Override
+            public Iterator<Map.Entry<String,Object>> iterator() {
+                return new Iterator<Map.Entry<String,Object>>() {
+                    int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next<values.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String,Object> next() {
+                        if(next>=values.length)throw new NoSuchElementException();
+                        int i = next++;
+                        return new SimpleImmutableEntry<>(shape.getKey(i), values[i]);
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException("read-only map");
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return values.length;
+            }
+        };
+    }
+}
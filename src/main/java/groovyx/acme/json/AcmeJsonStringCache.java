@@ -0,0 +1,121 @@
+package groovyx.acme.json;
+
+/**
+ * bounded cache of short strings used by AcmeJsonParser to share equal string values between parsed documents.
+ * the cache has fixed number of slots, new strings replace old ones in the same slot.
+ * lookup is done directly from parser buffer, so cache hit does not allocate.
+ * the cache is lock-free and could be shared between threads: slots are plain references to immutable strings,
+ * so concurrent updates could only cause a miss.
+ */
+public final class AcmeJsonStringCache {
+    private static final AcmeJsonStringCache DEFAULT = new AcmeJsonStringCache(4096, 32);
+
+    private final String[] slots;
+    private final int mask;
+    private final int maxLength;
+
+    /**
+     * @param slots number of cached strings. rounded up to the power of two.
+     * @param maxLength max length of the string to cache
+     */
+    public AcmeJsonStringCache(int slots, int maxLength){
+        int n = Integer.highestOneBit(Math.max(slots, 2) - 1) << 1;
+        this.slots = new String[n];
+        this.mask = n - 1;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * returns shared cache with 4096 slots for strings up to 32 chars
+     * @return the default cache
+     */
+    public static AcmeJsonStringCache getDefault(){
+        return DEFAULT;
+    }
+
+    /**
+     * max length of the string that could be cached
+     * @return max string length
+     */
+    public int getMaxLength(){
+        return maxLength;
+    }
+
+    /**
+     * returns cached string equal to the chars or creates and caches the new one
+     * @param buf source chars
+     * @param off offset of the string in buffer
+     * @param len length of the string
+     * @return the string
+     */
+    public String get(char[] buf, int off, int len){
+        if(len>maxLength)return new String(buf, off, len);
+        int h = hash(buf, off, len);
+        String s = lookup(buf, off, len, h);
+        return s!=null ? s : add(buf, off, len, h);
+    }
+
+    /**
+     * returns cached string equal to the argument or caches the argument
+     * @param s the string to intern
+     * @return the cached string
+     */
+    public String intern(String s){
+        int len = s.length();
+        if(len>maxLength)return s;
+        int h = s.hashCode();
+        int i = index(h);
+        String c = slots[i];
+        if(s.equals(c))return c;
+        int j = (i+1) & mask;
+        c = slots[j];
+        if(s.equals(c))return c;
+        slots[slots[i]==null ? i : j] = s;
+        return s;
+    }
+
+    /**
+     * removes all strings from the cache
+     */
+    public void clear(){
+        for(int i=0;i<slots.length;i++)slots[i] = null;
+    }
+
+    static int hash(char[] buf, int off, int len){
+        int h = 0;
+        for(int i=off, end=off+len;i<end;i++)h = 31*h + buf[i];
+        return h;
+    }
+
+    /** returns cached string or null */
+    String lookup(char[] buf, int off, int len, int h){
+        int i = index(h);
+        String s = slots[i];
+        if(s!=null && equals(s, h, buf, off, len))return s;
+        s = slots[(i+1) & mask];
+        if(s!=null && equals(s, h, buf, off, len))return s;
+        return null;
+    }
+
+    /** creates and caches new string */
+    String add(char[] buf, int off, int len, int h){
+        String s = new String(buf, off, len);
+        int i = index(h);
+        //two slots per hash: use empty one, otherwise replace the second to keep the older string in the first one
+        if(slots[i]!=null) i = (i+1) & mask;
+        slots[i] = s;
+        return s;
+    }
+
+    private int index(int h){
+        return (h ^ (h>>>16)) & mask;
+    }
+
+    private static boolean equals(String s, int h, char[] buf, int off, int len){
+        if(s.length()!=len || s.hashCode()!=h)return false;
+        for(int i=0;i<len;i++){
+            if(s.charAt(i)!=buf[off+i])return false;
+        }
+        return true;
+    }
+}
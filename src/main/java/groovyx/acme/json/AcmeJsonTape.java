@@ -0,0 +1,379 @@
+package groovyx.acme.json;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * flat binary representation of json: array of structural entries (tape) and buffer of strings.
+ * each tape entry is a long with type tag in the highest byte and payload in other bytes.
+ * objects and arrays keep the index of the next sibling entry, so skipping of the whole container is O(1).
+ * the json values are accessible through read-only Map/List views that decode values on access.
+ * use AcmeJsonTapeHandler to build the tape while parsing.
+ */
+public class AcmeJsonTape {
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static final int T_OBJECT     = 1; //payload: index after the last child; next entry: number of members
+    static final int T_ARRAY      = 2; //payload: index after the last child; next entry: number of items
+    static final int T_KEY        = 3; //payload: string offset
+    static final int T_STRING     = 4; //payload: string offset
+    static final int T_SMALL_LONG = 5; //payload: signed 56 bit value
+    static final int T_LONG       = 6; //next entry: value
+    static final int T_DOUBLE     = 7; //next entry: double bits
+    static final int T_DECIMAL    = 8; //payload: string offset of the decimal text
+    static final int T_TRUE       = 9;
+    static final int T_FALSE      = 10;
+    static final int T_NULL       = 11;
+
+    private static final long PAYLOAD = 0x00FFFFFFFFFFFFFFL;
+
+    //on-heap storage
+    private long[] tape = new long[64];
+    private byte[] strings = new byte[256];
+    //off-heap storage: tape longs followed by strings bytes
+    private ByteBuffer direct = null;
+    private int tapeSize = 0;
+    private int stringsSize = 0;
+
+    AcmeJsonTape(){}
+
+    /**
+     * returns root json element: Map, List, or plain value
+     * @return root json element
+     */
+    public Object getRoot(){
+        if(tapeSize==0)return null;
+        return value(0);
+    }
+
+    /**
+     * true if the tape is stored in direct (off-heap) byte buffer
+     * @return true if tape is off-heap
+     */
+    public boolean isDirect(){
+        return direct!=null;
+    }
+
+    /**
+     * returns memory used by the tape data
+     * @return size in bytes
+     */
+    public long getSizeInBytes(){
+        if(direct!=null)return direct.capacity();
+        return tape.length*8L + strings.length;
+    }
+
+    //---------------- building ----------------
+
+    int size(){
+        return tapeSize;
+    }
+
+    int append(long entry){
+        if(tapeSize==tape.length)tape = Arrays.copyOf(tape, tapeSize*2);
+        tape[tapeSize] = entry;
+        return tapeSize++;
+    }
+
+    int append(int tag, long payload){
+        return append( ((long)tag<<56) | (payload & PAYLOAD) );
+    }
+
+    void set(int i, long entry){
+        tape[i] = entry;
+    }
+
+    /** appends string (varint length + utf-8 bytes) and returns its offset */
+    int appendString(String s){
+        byte[] b = s.getBytes(UTF8);
+        int off = stringsSize;
+        int need = stringsSize + 5 + b.length;
+        if(need>strings.length)strings = Arrays.copyOf(strings, Math.max(need, strings.length*2));
+        int len = b.length;
+        while((len & ~0x7F)!=0){
+            strings[stringsSize++] = (byte)((len & 0x7F) | 0x80);
+            len >>>= 7;
+        }
+        strings[stringsSize++] = (byte)len;
+        System.arraycopy(b, 0, strings, stringsSize, b.length);
+        stringsSize += b.length;
+        return off;
+    }
+
+    /** trims on-heap storage to the used size */
+    void trim(){
+        if(tape.length!=tapeSize)tape = Arrays.copyOf(tape, tapeSize);
+        if(strings.length!=stringsSize)strings = Arrays.copyOf(strings, stringsSize);
+    }
+
+    /** moves the data into direct byte buffer */
+    void toDirect(){
+        ByteBuffer b = ByteBuffer.allocateDirect(tapeSize*8 + stringsSize).order(ByteOrder.nativeOrder());
+        for(int i=0;i<tapeSize;i++)b.putLong(tape[i]);
+        b.put(strings, 0, stringsSize);
+        direct = b;
+        tape = null;
+        strings = null;
+    }
+
+    //---------------- reading ----------------
+
+    long entry(int i){
+        if(direct!=null)return direct.getLong(i<<3);
+        return tape[i];
+    }
+
+    static int tag(long entry){
+        return (int)(entry>>>56);
+    }
+
+    static long payload(long entry){
+        return entry & PAYLOAD;
+    }
+
+    private byte stringByte(int off){
+        if(direct!=null)return direct.get(tapeSize*8 + off);
+        return strings[off];
+    }
+
+    /** index of the entry after the value at i */
+    int next(int i){
+        long e = entry(i);
+        switch (tag(e)){
+            case T_OBJECT:
+            case T_ARRAY:
+                return (int)payload(e);
+            case T_LONG:
+            case T_DOUBLE:
+                return i+2;
+            default:
+                return i+1;
+        }
+    }
+
+    String string(int off){
+        int len = 0;
+        int shift = 0;
+        byte b;
+        do{
+            b = stringByte(off++);
+            len |= (b & 0x7F) << shift;
+            shift += 7;
+        }while((b & 0x80)!=0);
+        if(direct==null)return new String(strings, off, len, UTF8);
+        byte[] bytes = new byte[len];
+        ByteBuffer d = direct.duplicate();
+        d.position(tapeSize*8 + off);
+        d.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /** compares string at offset with the key without decoding for ascii keys */
+    boolean stringEquals(int off, String key){
+        int start = off;
+        int len = 0;
+        int shift = 0;
+        byte b;
+        do{
+            b = stringByte(off++);
+            len |= (b & 0x7F) << shift;
+            shift += 7;
+        }while((b & 0x80)!=0);
+        int n = key.length();
+        if(len==n){
+            for(int i=0;i<n;i++){
+                char c = key.charAt(i);
+                if(c>=0x80)return string(start).equals(key);
+                if(stringByte(off+i)!=(byte)c)return false;
+            }
+            return true;
+        }
+        if(len<n)return false; //utf-8 could not be shorter than utf-16 sequence
+        for(int i=0;i<n;i++){
+            if(key.charAt(i)>=0x80)return string(start).equals(key);
+        }
+        return false;
+    }
+
+    /** decodes value at index i. containers returned as lazy views */
+    Object value(int i){
+        long e = entry(i);
+        switch (tag(e)){
+            case T_OBJECT:       return new TapeMap(i);
+            case T_ARRAY:        return new TapeList(i);
+            case T_STRING:       return string((int)payload(e));
+            case T_SMALL_LONG:   return (e<<8)>>8;
+            case T_LONG:         return entry(i+1);
+            case T_DOUBLE:       return Double.longBitsToDouble(entry(i+1));
+            case T_DECIMAL:      return new BigDecimal(string((int)payload(e)));
+            case T_TRUE:         return Boolean.TRUE;
+            case T_FALSE:        return Boolean.FALSE;
+            case T_NULL:         return null;
+            default: throw new IllegalStateException("unexpected tape entry "+tag(e)+" at "+i);
+        }
+    }
+
+    /**
+     * read-only view of json object on the tape.
+     * duplicate keys keep the position of the first occurrence and the value of the last one, as in AcmeJsonBuildHandler.
+     */
+    final class TapeMap extends AbstractMap<String,Object> {
+        private final int start;
+        private String[] keys = null; //unique keys, built on the first iteration
+        private int[] values = null; //value index of the last occurrence of each key
+
+        TapeMap(int start){
+            this.start = start;
+        }
+
+        @Override
+        public int size() {
+            int n = (int)entry(start+1);
+            if(n<2)return n;
+            index();
+            return keys.length;
+        }
+
+        private void index(){
+            if(keys!=null)return;
+            LinkedHashMap<String,Integer> m = new LinkedHashMap<>();
+            int end = (int)payload(entry(start));
+            for(int i=start+2;i<end;i=next(i+1)){
+                m.put(string((int)payload(entry(i))), i+1);
+            }
+            int[] v = new int[m.size()];
+            int j = 0;
+            for(Integer i: m.values())v[j++] = i;
+            values = v;
+            keys = m.keySet().toArray(new String[0]);
+        }
+
+        /** returns index of the value for the key (the last occurrence) or -1 */
+        private int find(Object key){
+            if(!(key instanceof String))return -1;
+            String k = (String)key;
+            int end = (int)payload(entry(start));
+            int found = -1;
+            for(int i=start+2;i<end;i=next(i+1)){
+                if(stringEquals((int)payload(entry(i)), k))found = i+1;
+            }
+            return found;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return find(key)>=0;
+        }
+
+        @Override
+        public Object get(Object key) {
+            int i = find(key);
+            return i<0 ? null : value(i);
+        }
+
+        @Override
+        public Set<Map.Entry<String,Object>> entrySet() {
+            return new AbstractSet<Map.Entry<String,Object>>() {
+                @Override
+                public Iterator<Map.Entry<String,Object>> iterator() {
+                    index();
+                    return new Iterator<Map.Entry<String,Object>>() {
+                        int i = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return i<keys.length;
+                        }
+
+                        @Override
+                        public Map.Entry<String,Object> next() {
+                            if(i>=keys.length)throw new NoSuchElementException();
+                            Map.Entry<String,Object> e = new SimpleImmutableEntry<>(keys[i], value(values[i]));
+                            i++;
+                            return e;
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException("read-only map");
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return TapeMap.this.size();
+                }
+            };
+        }
+    }
+
+    /**
+     * read-only view of json array on the tape. random access index is built on the first access by index.
+     */
+    final class TapeList extends AbstractList<Object> implements RandomAccess {
+        private final int start;
+        private int[] index = null;
+
+        TapeList(int start){
+            this.start = start;
+        }
+
+        @Override
+        public int size() {
+            return (int)entry(start+1);
+        }
+
+        @Override
+        public Object get(int i) {
+            int size = size();
+            if(i<0 || i>=size)throw new IndexOutOfBoundsException("Index: "+i+", Size: "+size);
+            if(index==null){
+                int[] idx = new int[size];
+                int end = (int)payload(entry(start));
+                int n = 0;
+                for(int k=start+2;k<end;k=next(k))idx[n++] = k;
+                index = idx;
+            }
+            return value(index[i]);
+        }
+
+        @Override
+        public Iterator<Object> iterator() {
+            final int end = (int)payload(entry(start));
+            return new Iterator<Object>() {
+                int i = start+2;
+
+                @Override
+                public boolean hasNext() {
+                    return i<end;
+                }
+
+                @Override
+                public Object next() {
+                    if(i>=end)throw new NoSuchElementException();
+                    Object v = value(i);
+                    i = AcmeJsonTape.this.next(i);
+                    return v;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("read-only list");
+                }
+            };
+        }
+    }
+}
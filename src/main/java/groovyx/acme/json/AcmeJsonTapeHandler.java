@@ -0,0 +1,144 @@
+package groovyx.acme.json;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * json handler that builds flat binary AcmeJsonTape instead of objects graph.
+ * the root returned after parsing is a read-only lazy Map/List view over the tape.
+ * <pre>{@code
+ *  def data = new AcmeJsonParser(new AcmeJsonTapeHandler()).parseText('{"a":[1,2,{"b":"c"}]}')
+ *  assert data.a[2].b == 'c'
+ * }</pre>
+ */
+public class AcmeJsonTapeHandler implements AcmeJsonHandler {
+    AcmeJsonTape tape = new AcmeJsonTape();
+    int[] starts = new int[32]; //tape index of the started containers
+    int[] counts = new int[32]; //number of children of the started containers
+    int depth = 0;
+    boolean direct = false;
+    boolean done = false;
+    HashMap<String,Integer> keys = new HashMap<>(); //offsets of the keys to store each key only once
+
+    public AcmeJsonTapeHandler(){}
+
+    /**
+     * stores the tape after parsing in direct (off-heap) byte buffer
+     * @param direct true to move tape off-heap
+     * @return self
+     */
+    public AcmeJsonTapeHandler setDirect(boolean direct){
+        this.direct = direct;
+        return this;
+    }
+
+    /**
+     * returns the tape built by this handler
+     * @return the tape
+     */
+    public AcmeJsonTape getTape(){
+        finish();
+        return tape;
+    }
+
+    @Override
+    public void onObjectStart(AbstractJsonPath jpath) {
+        member(jpath);
+        start(tape.append(AcmeJsonTape.T_OBJECT, 0));
+        tape.append(0L);
+    }
+
+    @Override
+    public void onObjectEnd(AbstractJsonPath jpath) {
+        end(AcmeJsonTape.T_OBJECT);
+    }
+
+    @Override
+    public void onArrayStart(AbstractJsonPath jpath) {
+        member(jpath);
+        start(tape.append(AcmeJsonTape.T_ARRAY, 0));
+        tape.append(0L);
+    }
+
+    @Override
+    public void onArrayEnd(AbstractJsonPath jpath) {
+        end(AcmeJsonTape.T_ARRAY);
+    }
+
+    @Override
+    public void onValue(AbstractJsonPath jpath, Object value) {
+        member(jpath);
+        if(value==null){
+            tape.append(AcmeJsonTape.T_NULL, 0);
+        }else if(value instanceof String){
+            tape.append(AcmeJsonTape.T_STRING, tape.appendString((String)value));
+        }else if(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte){
+            long v = ((Number)value).longValue();
+            if(v == (v<<8)>>8){
+                tape.append(AcmeJsonTape.T_SMALL_LONG, v);
+            }else{
+                tape.append(AcmeJsonTape.T_LONG, 0);
+                tape.append(v);
+            }
+        }else if(value instanceof BigDecimal){
+            tape.append(AcmeJsonTape.T_DECIMAL, tape.appendString(value.toString()));
+        }else if(value instanceof Double || value instanceof Float){
+            tape.append(AcmeJsonTape.T_DOUBLE, 0);
+            tape.append(Double.doubleToRawLongBits(((Number)value).doubleValue()));
+        }else if(value instanceof Number){
+            tape.append(AcmeJsonTape.T_DECIMAL, tape.appendString(value.toString()));
+        }else if(value instanceof Boolean){
+            tape.append((Boolean)value ? AcmeJsonTape.T_TRUE : AcmeJsonTape.T_FALSE, 0);
+        }else{
+            tape.append(AcmeJsonTape.T_STRING, tape.appendString(value.toString()));
+        }
+    }
+
+    @Override
+    public Object getRoot() {
+        finish();
+        return tape.getRoot();
+    }
+
+    private void finish(){
+        if(done || depth>0 || tape.size()==0)return;
+        done = true;
+        keys = null;
+        if(direct) tape.toDirect();
+        else tape.trim();
+    }
+
+    /** counts the member of the current container and writes the key for object members */
+    private void member(AbstractJsonPath jpath){
+        if(depth==0)return;
+        counts[depth-1]++;
+        AbstractJsonPath.Element e = jpath.peek();
+        if(e.isKey()){
+            String k = e.getKey();
+            Integer off = keys.get(k);
+            if(off==null){
+                off = tape.appendString(k);
+                keys.put(k, off);
+            }
+            tape.append(AcmeJsonTape.T_KEY, off);
+        }
+    }
+
+    private void start(int index){
+        if(depth==starts.length){
+            starts = Arrays.copyOf(starts, depth*2);
+            counts = Arrays.copyOf(counts, depth*2);
+        }
+        starts[depth] = index;
+        counts[depth] = 0;
+        depth++;
+    }
+
+    private void end(int tag){
+        depth--;
+        int s = starts[depth];
+        tape.set(s, ((long)tag<<56) | tape.size());
+        tape.set(s+1, counts[depth]);
+    }
+}
@@ -0,0 +1,251 @@
+package groovyx.acme.json;
+
+import groovy.lang.Closure;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * json handler that passes events of one parse to many handlers (branches), so one tokenizing pass serves all of them.
+ * each branch could have its own filter chain. the root returned after parsing is a map of branch name to its root.
+ * a branch stops receiving events after the value at its `until` path or after {@link #stop(String)}:
+ * the branch receives end events for its open objects and arrays and then it's skipped, so its result stays well formed.
+ * <pre>{@code
+ *  def w = new StringWriter()
+ *  def r = new AcmeJsonParser().withTee{
+ *      branch('dom'){ build() }
+ *      branch('redacted'){
+ *          onValue('$..password'){ '***' }
+ *          write(w)
+ *      }
+ *      branch('stats', new AcmeJsonAggregateHandler().with{ addAggregate('count', '$.users[*]'); it })
+ *      branch('header'){ build() }.until('$.header')
+ *  }.parse(reader)
+ *  assert r.header.header.version==2
+ * }</pre>
+ */
+public class AcmeJsonTeeHandler implements AcmeJsonHandler {
+    protected ArrayList<Branch> branches = new ArrayList<>();
+    private Branch[] active = new Branch[0]; //branches receiving events
+    private boolean stopRequested = false;
+
+    public AcmeJsonTeeHandler(){}
+
+    /**
+     * adds handler as a new branch
+     * @param name the name of branch result in root map
+     * @param handler the handler to receive events
+     * @return the new branch to be configured
+     */
+    public Branch addBranch(String name, AcmeJsonHandler handler){
+        for(Branch b: branches){
+            if(b.name.equals(name))throw new IllegalArgumentException("Branch `"+name+"` already exists");
+        }
+        Branch b = new Branch(name, handler);
+        branches.add(b);
+        updateActive();
+        return b;
+    }
+
+    /**
+     * stops the branch. it could be called from a filter closure of any branch during parsing.
+     * the branch receives end events of its open containers after the current event.
+     * @param name the name of the branch
+     */
+    public void stop(String name){
+        for(Branch b: branches){
+            if(b.name.equals(name)){
+                if(!b.stopped)b.stopRequested = true;
+                stopRequested = true;
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Branch `"+name+"` not found");
+    }
+
+    @Override
+    public void onObjectStart(AbstractJsonPath jpath) throws IOException {
+        Branch[] a = active;
+        for(int i=0;i<a.length;i++){
+            a[i].handler.onObjectStart(jpath);
+        }
+        if(stopRequested)closeRequested(jpath, 1);
+    }
+
+    @Override
+    public void onObjectEnd(AbstractJsonPath jpath) throws IOException {
+        Branch[] a = active;
+        for(int i=0;i<a.length;i++){
+            Branch b = a[i];
+            b.handler.onObjectEnd(jpath);
+            if(b.until!=null && b.until.matches(jpath))b.stopRequested = stopRequested = true;
+        }
+        if(stopRequested)closeRequested(jpath, 0);
+    }
+
+    @Override
+    public void onArrayStart(AbstractJsonPath jpath) throws IOException {
+        Branch[] a = active;
+        for(int i=0;i<a.length;i++){
+            a[i].handler.onArrayStart(jpath);
+        }
+        if(stopRequested)closeRequested(jpath, -1);
+    }
+
+    @Override
+    public void onArrayEnd(AbstractJsonPath jpath) throws IOException {
+        Branch[] a = active;
+        for(int i=0;i<a.length;i++){
+            Branch b = a[i];
+            b.handler.onArrayEnd(jpath);
+            if(b.until!=null && b.until.matches(jpath))b.stopRequested = stopRequested = true;
+        }
+        if(stopRequested)closeRequested(jpath, 0);
+    }
+
+    @Override
+    public void onValue(AbstractJsonPath jpath, Object value) throws IOException {
+        Branch[] a = active;
+        for(int i=0;i<a.length;i++){
+            Branch b = a[i];
+            b.handler.onValue(jpath, value);
+            if(b.until!=null && b.until.matches(jpath))b.stopRequested = stopRequested = true;
+        }
+        if(stopRequested)closeRequested(jpath, 0);
+    }
+
+    /**
+     * returns map of branch name to the root of its handler
+     * @return results of all branches
+     */
+    @Override
+    public Map<String,Object> getRoot() {
+        LinkedHashMap<String,Object> result = new LinkedHashMap<>();
+        for(Branch b: branches){
+            result.put(b.name, b.handler.getRoot());
+        }
+        return result;
+    }
+
+    public Builder builder(){
+        return new Builder();
+    }
+
+    /**
+     * sends end events of the open containers to the branches requested to stop and removes them from active
+     * @param jpath path of the current event
+     * @param started 1 if the current event started an object, -1 if it started an array, 0 otherwise
+     */
+    private void closeRequested(AbstractJsonPath jpath, int started) throws IOException {
+        stopRequested = false;
+        JsonPathStack path = null;
+        for(Branch b: active){
+            if(!b.stopRequested)continue;
+            if(path==null){
+                path = new JsonPathStack();
+                for(int i=0;i<jpath.size();i++){
+                    AbstractJsonPath.Element e = jpath.get(i);
+                    path.push(e.getIndex(), e.getKey(), e.isKey());
+                }
+            }
+            JsonPathStack p = new JsonPathStack();
+            p.copyFrom(path);
+            if(started>0)b.handler.onObjectEnd(p);
+            else if(started<0)b.handler.onArrayEnd(p);
+            while(p.size>0){
+                boolean object = p.bKeys[p.size-1];
+                p.pop();
+                if(object)b.handler.onObjectEnd(p);
+                else b.handler.onArrayEnd(p);
+            }
+            b.stopped = true;
+        }
+        updateActive();
+    }
+
+    private void updateActive(){
+        ArrayList<Branch> a = new ArrayList<>(branches.size());
+        for(Branch b: branches){
+            if(!b.stopped)a.add(b);
+        }
+        active = a.toArray(new Branch[0]);
+    }
+
+    /**
+     * one handler receiving events of the tee
+     */
+    public final class Branch {
+        final String name;
+        final AcmeJsonHandler handler;
+        JsonPathMatcher until = null;
+        boolean stopRequested = false;
+        boolean stopped = false;
+
+        Branch(String name, AcmeJsonHandler handler){
+            this.name = name;
+            this.handler = handler;
+        }
+
+        /**
+         * stops the branch after the value at the path: after the end of object or array or after plain value.
+         * @param path json path see: JsonPathMatcher
+         * @return self
+         */
+        public Branch until(String path){
+            this.until = new JsonPathMatcher(path);
+            return this;
+        }
+
+        public String getName(){
+            return name;
+        }
+
+        public AcmeJsonHandler getHandler(){
+            return handler;
+        }
+
+        /**
+         * @return true if the branch does not receive events anymore
+         */
+        public boolean isStopped(){
+            return stopped;
+        }
+    }
+
+    /**
+     * helper class to support building
+     */
+    public final class Builder {
+        /**
+         * adds branch with its own filter chain defined as in AbstractJsonParser.withFilter.
+         * without filters the events go directly to the handler defined by build() or write(w).
+         * @param name the name of branch result in root map
+         * @param filter closure to define filters and the target handler. see AcmeJsonFilterHandler.Builder
+         * @return the new branch
+         */
+        public Branch branch(String name, Closure<?> filter){
+            AcmeJsonFilterHandler f = AcmeJsonFilterHandler.fromClosure(filter);
+            return addBranch(name, f.filters.isEmpty() ? f.getDelegate() : f);
+        }
+
+        /**
+         * adds handler as a new branch
+         * @param name the name of branch result in root map
+         * @param handler the handler to receive events
+         * @return the new branch
+         */
+        public Branch branch(String name, AcmeJsonHandler handler){
+            return addBranch(name, handler);
+        }
+
+        /**
+         * stops the branch, could be called from filter closures
+         * @param name the name of the branch
+         */
+        public void stop(String name){
+            AcmeJsonTeeHandler.this.stop(name);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package groovyx.acme.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * json handler that writes json events as utf-8 bytes to OutputStream, ByteBuffer, or WritableByteChannel
+ * without intermediate OutputStreamWriter. strings are escaped and encoded directly into the byte buffer.
+ * call {@code getRoot().flush()} or {@code AcmeJsonWriter.getWriter()} after writing to flush buffered bytes.
+ */
+public class AcmeJsonUtf8WriteHandler extends AcmeJsonWriteHandler {
+    private final AcmeJsonUtf8Writer out;
+
+    /**
+     * @param out where to write json
+     * @param prettyPrint true if we need to format output json
+     */
+    public AcmeJsonUtf8WriteHandler(OutputStream out, boolean prettyPrint){
+        this(new AcmeJsonUtf8Writer(out), prettyPrint);
+    }
+
+    /**
+     * @param channel where to write json
+     * @param prettyPrint true if we need to format output json
+     */
+    public AcmeJsonUtf8WriteHandler(WritableByteChannel channel, boolean prettyPrint){
+        this(new AcmeJsonUtf8Writer(channel), prettyPrint);
+    }
+
+    /**
+     * @param target where to put json bytes
+     * @param prettyPrint true if we need to format output json
+     */
+    public AcmeJsonUtf8WriteHandler(ByteBuffer target, boolean prettyPrint){
+        this(new AcmeJsonUtf8Writer(target), prettyPrint);
+    }
+
+    /**
+     * @param out where to write json
+     * @param prettyPrint true if we need to format output json
+     */
+    public AcmeJsonUtf8WriteHandler(AcmeJsonUtf8Writer out, boolean prettyPrint){
+        super(out, prettyPrint);
+        this.out = out;
+    }
+
+    /** copies parameters of the other handler and writes into `out` */
+    AcmeJsonUtf8WriteHandler(AcmeJsonWriteHandler other, AcmeJsonUtf8Writer out){
+        super(other);
+        this.writer = out;
+        this.out = out;
+    }
+
+    @Override
+    protected void printString(String o) throws IOException {
+        out.writeJsonString(o, asciiOnly);
+    }
+
+    @Override
+    public AcmeJsonUtf8Writer getRoot() {
+        return out;
+    }
+}
@@ -0,0 +1,322 @@
+package groovyx.acme.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * writer that encodes chars to utf-8 directly into internal byte buffer and flushes bytes to OutputStream, ByteBuffer, or WritableByteChannel.
+ * used by AcmeJsonUtf8WriteHandler that also writes escaped json strings directly as bytes.
+ * the writer is not thread-safe.
+ */
+public class AcmeJsonUtf8Writer extends Writer {
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+    /** escape table for ascii chars: 0 - write as is, 'u' - write as \\u00XX, other - write as backslash and this char */
+    private static final byte[] ESCAPE = new byte[128];
+    static {
+        for(int i=0;i<' ';i++)ESCAPE[i] = 'u';
+        ESCAPE['\t'] = 't';
+        ESCAPE['\r'] = 'r';
+        ESCAPE['\n'] = 'n';
+        ESCAPE['\b'] = 'b';
+        ESCAPE['\f'] = 'f';
+        //same as AcmeJsonWriteHandler does
+        ESCAPE['"'] = 'u';
+        ESCAPE['\\'] = 'u';
+    }
+
+    private byte[] buf;
+    private int pos = 0;
+    private long flushed = 0; //bytes passed to the target
+    private int highSurrogate = -1; //pending high surrogate from the previous write
+
+    private final OutputStream out;
+    private final WritableByteChannel channel;
+    private final ByteBuffer target;
+    private ByteBuffer channelBuf = null;
+
+    private AcmeJsonUtf8Writer(OutputStream out, WritableByteChannel channel, ByteBuffer target, int bufferSize){
+        this.out = out;
+        this.channel = channel;
+        this.target = target;
+        this.buf = new byte[Math.max(bufferSize, 16)];
+    }
+
+    /** collects bytes in the internal buffer that grows as needed */
+    AcmeJsonUtf8Writer(int initialSize){
+        this(null, null, null, initialSize);
+    }
+
+    /**
+     * @param out where to write bytes
+     */
+    public AcmeJsonUtf8Writer(OutputStream out){
+        this(out, null, null, 8192);
+    }
+
+    /**
+     * @param out where to write bytes
+     * @param bufferSize size of internal byte buffer
+     */
+    public AcmeJsonUtf8Writer(OutputStream out, int bufferSize){
+        this(out, null, null, bufferSize);
+    }
+
+    /**
+     * @param channel where to write bytes
+     */
+    public AcmeJsonUtf8Writer(WritableByteChannel channel){
+        this(null, channel, null, 8192);
+    }
+
+    /**
+     * @param target where to put bytes. IOException thrown on flush if the target has not enough space.
+     */
+    public AcmeJsonUtf8Writer(ByteBuffer target){
+        this(null, null, target, 8192);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if(c<0x80 && highSurrogate<0){
+            if(pos==buf.length)flushBuffer();
+            buf[pos++] = (byte)c;
+        }else{
+            writeChar((char)c);
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for(int i=off, end=off+len;i<end;i++){
+            char c = cbuf[i];
+            if(c<0x80 && highSurrogate<0){
+                if(pos==buf.length)flushBuffer();
+                buf[pos++] = (byte)c;
+            }else{
+                writeChar(c);
+            }
+        }
+    }
+
+    @Override
+    public void write(String s, int off, int len) throws IOException {
+        for(int i=off, end=off+len;i<end;i++){
+            char c = s.charAt(i);
+            if(c<0x80 && highSurrogate<0){
+                if(pos==buf.length)flushBuffer();
+                buf[pos++] = (byte)c;
+            }else{
+                writeChar(c);
+            }
+        }
+    }
+
+    @Override
+    public void write(String s) throws IOException {
+        write(s, 0, s.length());
+    }
+
+    /**
+     * writes quoted json string with escaping
+     * @param s the string to write
+     * @param asciiOnly true to escape all non-ascii chars as \\uXXXX
+     * @throws IOException if io error occurred
+     */
+    public void writeJsonString(CharSequence s, boolean asciiOnly) throws IOException {
+        byte[] esc = ESCAPE;
+        if(pos==buf.length)flushBuffer();
+        buf[pos++] = '"';
+        for(int i=0, n=s.length();i<n;i++){
+            char c = s.charAt(i);
+            if(c<0x80){
+                byte e = esc[c];
+                if(e==0){
+                    if(pos==buf.length)flushBuffer();
+                    buf[pos++] = (byte)c;
+                }else if(e=='u'){
+                    writeUnicodeEscape(c);
+                }else{
+                    if(pos+2>buf.length)flushBuffer();
+                    buf[pos++] = '\\';
+                    buf[pos++] = e;
+                }
+            }else if(asciiOnly){
+                writeUnicodeEscape(c);
+            }else if(c<0x800){
+                if(pos+2>buf.length)flushBuffer();
+                buf[pos++] = (byte)(0xC0 | (c>>6));
+                buf[pos++] = (byte)(0x80 | (c & 0x3F));
+            }else if(Character.isSurrogate(c)){
+                if(Character.isHighSurrogate(c) && i+1<n && Character.isLowSurrogate(s.charAt(i+1))){
+                    writeCodePoint(Character.toCodePoint(c, s.charAt(++i)));
+                }else{
+                    writeRaw('?'); //unpaired surrogate like java encoder does
+                }
+            }else{
+                if(pos+3>buf.length)flushBuffer();
+                buf[pos++] = (byte)(0xE0 | (c>>12));
+                buf[pos++] = (byte)(0x80 | ((c>>6) & 0x3F));
+                buf[pos++] = (byte)(0x80 | (c & 0x3F));
+            }
+        }
+        if(pos==buf.length)flushBuffer();
+        buf[pos++] = '"';
+    }
+
+    private void writeUnicodeEscape(char c) throws IOException {
+        if(pos+6>buf.length)flushBuffer();
+        byte[] b = buf;
+        b[pos++] = '\\';
+        b[pos++] = 'u';
+        b[pos++] = HEX[(c>>12) & 0xF];
+        b[pos++] = HEX[(c>> 8) & 0xF];
+        b[pos++] = HEX[(c>> 4) & 0xF];
+        b[pos++] = HEX[ c      & 0xF];
+    }
+
+    private void writeRaw(int b) throws IOException {
+        if(pos==buf.length)flushBuffer();
+        buf[pos++] = (byte)b;
+    }
+
+    /** encodes non-ascii char or char after pending high surrogate */
+    private void writeChar(char c) throws IOException {
+        if(pos+4>buf.length)flushBuffer();
+        byte[] b = buf;
+        if(highSurrogate>=0){
+            int h = highSurrogate;
+            highSurrogate = -1;
+            if(Character.isLowSurrogate(c)){
+                writeCodePoint(Character.toCodePoint((char)h, c));
+                return;
+            }
+            b[pos++] = '?'; //unpaired surrogate like java encoder does
+        }
+        if(c<0x80){
+            b[pos++] = (byte)c;
+        }else if(c<0x800){
+            b[pos++] = (byte)(0xC0 | (c>>6));
+            b[pos++] = (byte)(0x80 | (c & 0x3F));
+        }else if(Character.isHighSurrogate(c)){
+            highSurrogate = c;
+        }else if(Character.isLowSurrogate(c)){
+            b[pos++] = '?';
+        }else{
+            b[pos++] = (byte)(0xE0 | (c>>12));
+            b[pos++] = (byte)(0x80 | ((c>>6) & 0x3F));
+            b[pos++] = (byte)(0x80 | (c & 0x3F));
+        }
+    }
+
+    private void writeCodePoint(int cp) throws IOException {
+        if(pos+4>buf.length)flushBuffer();
+        byte[] b = buf;
+        b[pos++] = (byte)(0xF0 | (cp>>18));
+        b[pos++] = (byte)(0x80 | ((cp>>12) & 0x3F));
+        b[pos++] = (byte)(0x80 | ((cp>>6) & 0x3F));
+        b[pos++] = (byte)(0x80 | (cp & 0x3F));
+    }
+
+    /** copies already encoded utf-8 bytes */
+    void writeBytes(byte[] b, int off, int len) throws IOException {
+        if(highSurrogate>=0){
+            highSurrogate = -1;
+            writeRaw('?');
+        }
+        while(len>0){
+            if(pos==buf.length)flushBuffer();
+            int n = Math.min(len, buf.length-pos);
+            System.arraycopy(b, off, buf, pos, n);
+            pos += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** growable byte buffer that could be copied into utf-8 writer */
+    static final class Bytes extends ByteArrayOutputStream {
+        Bytes(int size){
+            super(size);
+        }
+
+        void writeTo(AcmeJsonUtf8Writer w) throws IOException {
+            w.writeBytes(buf, 0, count);
+        }
+    }
+
+    /** true if there is no target and all bytes are kept in the buffer */
+    private boolean isGrowable(){
+        return out==null && channel==null && target==null;
+    }
+
+    /** total number of bytes written including buffered ones */
+    long position(){
+        return flushed + pos;
+    }
+
+    /** number of bytes in the growable buffer */
+    int size(){
+        return pos;
+    }
+
+    /** copy of the bytes in the growable buffer */
+    byte[] toByteArray(){
+        return Arrays.copyOf(buf, pos);
+    }
+
+    /** writes the bytes of the growable buffer to the stream */
+    void writeTo(OutputStream os) throws IOException {
+        os.write(buf, 0, pos);
+    }
+
+    /** clears the growable buffer. drops the buffer if it is larger than maxSize */
+    void reset(int maxSize){
+        pos = 0;
+        highSurrogate = -1;
+        if(buf.length>maxSize)buf = new byte[maxSize];
+    }
+
+    /** writes buffered bytes to the target without flushing the target */
+    private void flushBuffer() throws IOException {
+        if(pos==0)return;
+        if(isGrowable()){
+            buf = Arrays.copyOf(buf, buf.length*2);
+            return;
+        }
+        if(out!=null){
+            out.write(buf, 0, pos);
+        }else if(target!=null){
+            if(target.remaining()<pos)throw new IOException("Not enough space in target ByteBuffer: "+target.remaining()+" < "+pos);
+            target.put(buf, 0, pos);
+        }else{
+            if(channelBuf==null)channelBuf = ByteBuffer.wrap(buf);
+            channelBuf.clear().limit(pos);
+            while(channelBuf.hasRemaining())channel.write(channelBuf);
+        }
+        flushed += pos;
+        pos = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if(isGrowable())return;
+        flushBuffer();
+        if(out!=null)out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(highSurrogate>=0){
+            highSurrogate = -1;
+            writeRaw('?');
+        }
+        flushBuffer();
+        if(out!=null)out.close();
+        else if(channel!=null)channel.close();
+    }
+}
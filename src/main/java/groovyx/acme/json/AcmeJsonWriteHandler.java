@@ -8,12 +8,19 @@ import java.util.Map;
 /**
  * json handler that writes json events to output writer
  */
-public class AcmeJsonWriteHandler implements AcmeJsonHandler{
+public class AcmeJsonWriteHandler implements AcmeJsonRawHandler{
 
     Writer writer;
     boolean space=false;  //without indent by default
     int indent = 0;
     CharSequence indentChars = "  ";
+    boolean raw = false;        //accept raw values from parser
+    boolean rawCompact = false; //remove whitespaces from raw values
+    boolean asciiOnly = false;  //escape non-ascii chars in strings
+    AcmeJsonSerializers serializers = AcmeJsonSerializers.getDefault();
+    private final char[] digits = new char[20]; //to print longs without boxing
+    private static final double MAX_EXACT_LONG = 1L<<53; //max integer that could be stored in double exactly
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
 
     //private char [] buf = new char[512]; //to bufferize writing to writer
     //private int bufpos = 0;
@@ -31,6 +38,10 @@ public class AcmeJsonWriteHandler implements AcmeJsonHandler{
         this.indent=other.indent;
         this.indentChars=other.indentChars;
         this.space=other.space;
+        this.raw=other.raw;
+        this.rawCompact=other.rawCompact;
+        this.asciiOnly=other.asciiOnly;
+        this.serializers=other.serializers;
     }
 
     /**
@@ -64,6 +75,67 @@ public class AcmeJsonWriteHandler implements AcmeJsonHandler{
         return this;
     }
 
+    /**
+     * enables copying of the values not modified by filters directly from the parser source without decoding and encoding them.
+     * the raw values keep original formatting of numbers, strings and whitespaces even if prettyPrint is set.
+     * @param rawCopy true to accept raw values from parser
+     * @return this object
+     */
+    public AcmeJsonWriteHandler setRawCopy(boolean rawCopy){
+        this.raw = rawCopy;
+        return this;
+    }
+
+    /**
+     * enables copying of the values not modified by filters directly from the parser source without decoding and encoding them.
+     * @param rawCopy true to accept raw values from parser
+     * @param compact true to drop whitespaces between tokens of raw values
+     * @return this object
+     */
+    public AcmeJsonWriteHandler setRawCopy(boolean rawCopy, boolean compact){
+        this.raw = rawCopy;
+        this.rawCompact = compact;
+        return this;
+    }
+
+    /**
+     * escape all non-ascii chars in strings and keys as \\uXXXX, so the output could be transferred in any ascii compatible encoding.
+     * raw values copied from parser are not escaped.
+     * @param asciiOnly true to escape non-ascii chars
+     * @return this object
+     */
+    public AcmeJsonWriteHandler setAsciiOnly(boolean asciiOnly){
+        this.asciiOnly = asciiOnly;
+        return this;
+    }
+
+    /**
+     * sets registry of serializers for objects that are not Map, Iterable, Iterator, or plain values.
+     * @param serializers the registry or null to write such objects as strings
+     * @return this object
+     */
+    public AcmeJsonWriteHandler setSerializers(AcmeJsonSerializers serializers){
+        this.serializers = serializers;
+        return this;
+    }
+
+    @Override
+    public boolean isRawCopy() {
+        return raw;
+    }
+
+    @Override
+    public boolean isRawCompact() {
+        return rawCompact;
+    }
+
+    @Override
+    public Writer onRawValue(AbstractJsonPath jpath) throws IOException {
+        if(!raw) return null;
+        printValuePrefix(jpath);
+        return writer;
+    }
+
     @Override
     public void onObjectStart(AbstractJsonPath jpath) throws IOException {
         if(jpath.size()>0) {
@@ -114,52 +186,160 @@ public class AcmeJsonWriteHandler implements AcmeJsonHandler{
 
     @Override
     public void onValue(AbstractJsonPath jpath, Object value) throws IOException {
-        if(jpath.size()>0) {
-            if (jpath.peek().getIndex() > 0) writer.write(',');
-            if(space)printIndent();
-            if(jpath.peek().isKey()) printName(jpath.peek().getKey());
-        }
+        printValuePrefix(jpath);
         printValue(value);
         //if(jpath.size()==0)flush();
     }
 
+    /**
+     * writes json array of numbers without boxing. called by AcmeJsonWriter for AcmeJsonLongList.
+     * @param jpath path of the array
+     * @param values the numbers to write
+     * @throws IOException if io error occurred
+     */
+    public void onLongArray(AbstractJsonPath jpath, long[] values) throws IOException {
+        onArrayStart(jpath);
+        for(int i=0;i<values.length;i++){
+            if(i>0) writer.write(',');
+            if(space) printIndent();
+            printLong(values[i]);
+        }
+        onArrayEnd(jpath);
+    }
+
+    /**
+     * writes json array of numbers without boxing. called by AcmeJsonWriter for double[].
+     * whole values are written as integers, others as Double.toString.
+     * @param jpath path of the array
+     * @param values the numbers to write
+     * @throws IOException if io error occurred
+     */
+    public void onDoubleArray(AbstractJsonPath jpath, double[] values) throws IOException {
+        onDoubleArray(jpath, values, null);
+    }
+
+    /**
+     * writes json array of numbers without boxing. called by AcmeJsonWriter for AcmeJsonDoubleList.
+     * the numbers with scale are written the same way as BigDecimal they were parsed from.
+     * @param jpath path of the array
+     * @param values the numbers to write
+     * @param scales scales of the numbers (see AcmeJsonDoubleList) or null to write all of them as plain doubles
+     * @throws IOException if io error occurred
+     */
+    void onDoubleArray(AbstractJsonPath jpath, double[] values, byte[] scales) throws IOException {
+        onArrayStart(jpath);
+        for(int i=0;i<values.length;i++){
+            if(i>0) writer.write(',');
+            if(space) printIndent();
+            double v = values[i];
+            byte scale = scales==null ? AcmeJsonDoubleList.PLAIN : scales[i];
+            if(scale!=AcmeJsonDoubleList.INTEGER && scale!=AcmeJsonDoubleList.PLAIN) printDecimal(v, scale);
+            else if(v==(long)v && v>-MAX_EXACT_LONG && v<MAX_EXACT_LONG) printLong((long)v);
+            else writer.write(Double.toString(v));
+        }
+        onArrayEnd(jpath);
+    }
+
+    /** prints double parsed from decimal with up to 15 digits as BigDecimal.toString of that decimal, without boxing in plain notation */
+    private void printDecimal(double v, int scale) throws IOException {
+        if(scale>=0 && scale<POW10.length){
+            long u = Math.round(v*POW10[scale]); //exact for up to 15 digits
+            long a = Math.abs(u);
+            int n = 1; //number of digits
+            for(long t=a; t>=10; t/=10) n++;
+            if(n<=15 && n-1-scale>=-6){
+                char[] d = digits;
+                int p = d.length;
+                for(int k=0;k<scale;k++){
+                    d[--p] = (char)('0' + (int)(a%10));
+                    a /= 10;
+                }
+                if(scale>0) d[--p] = '.';
+                do{
+                    d[--p] = (char)('0' + (int)(a%10));
+                    a /= 10;
+                }while(a!=0);
+                if(u<0) d[--p] = '-';
+                writer.write(d, p, d.length-p);
+                return;
+            }
+        }
+        //exponent notation
+        writer.write(AcmeJsonDoubleList.box(v, (byte)scale).toString());
+    }
+
     @Override
     public Writer getRoot() {
         return writer;
     }
 
+    /**prints separator, indent, and key if needed before the plain value*/
+    private void printValuePrefix(AbstractJsonPath jpath) throws IOException {
+        if(jpath.size()>0) {
+            if (jpath.peek().getIndex() > 0) writer.write(',');
+            if(space)printIndent();
+            if(jpath.peek().isKey()) printName(jpath.peek().getKey());
+        }
+    }
+
     /**prints the simple value: null, boolean, string, number*/
     private void printValue(Object o) throws IOException {
         if(o==null){
             writer.write("null");
+        }else if(o instanceof Long || o instanceof Integer){
+            printLong(((Number)o).longValue());
         }else if(o instanceof Number){
             writer.write(o.toString());
         }else if(o instanceof Boolean){
             writer.write(o.toString());
         }else if(o instanceof CharSequence){
-            printString(o.toString(),writer);
+            printString(o.toString());
         }else if(o instanceof Map || o instanceof Iterator || o instanceof Iterable){
             AcmeJsonWriter w = new AcmeJsonWriter(this);
             w.printValue(o);
+        }else if(o.getClass().isArray() || serializers!=null && serializers.get(o.getClass())!=null){
+            AcmeJsonWriter w = new AcmeJsonWriter(this);
+            w.printValue(o);
         }else{
-            printString(o.toString(),writer);
+            printString(o.toString());
         }
     }
+    private void printLong(long v) throws IOException {
+        if(v==Long.MIN_VALUE){
+            writer.write("-9223372036854775808");
+            return;
+        }
+        char[] d = digits;
+        int p = d.length;
+        boolean negative = v<0;
+        if(negative) v = -v;
+        do{
+            d[--p] = (char)('0' + (int)(v%10));
+            v /= 10;
+        }while(v!=0);
+        if(negative) d[--p] = '-';
+        writer.write(d, p, d.length-p);
+    }
     private void printName(String n) throws IOException {
-        printString(n,writer);
+        printString(n);
         writer.write(':');
         if(space)writer.write(' ');
     }
     private static final char[] hex = "0123456789ABCDEF".toCharArray();
-    //prints json-escaped string ignoring unicode escaping
-    private static void printString(String o, Writer w) throws IOException {
+    /**
+     * prints quoted json-escaped string. non-ascii chars are escaped only in asciiOnly mode.
+     * @param o the string to print
+     * @throws IOException if io error occurred
+     */
+    protected void printString(String o) throws IOException {
+        Writer w = writer;
         int size = o.length();
         int i = 0; //iterator position
         int z = 0; //char that should be written
         w.write('"');
         for(;i<size;i++){
             int c = o.charAt(i);
-            if(c<' ' || c=='"' || c=='\\'){
+            if(c<' ' || c=='"' || c=='\\' || (asciiOnly && c>0x7F)){
                 if(i-z>0)w.write(o, z, i-z);
                 z=i+1;
                 switch (c){
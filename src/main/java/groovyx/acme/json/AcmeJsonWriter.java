@@ -3,10 +3,16 @@ package groovyx.acme.json;
 import groovy.lang.Closure;
 import groovy.lang.Writable;
 
+import java.io.CharArrayWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * streaming json writer that could be used to write large json objects dynamically directly to output writer.
@@ -21,6 +27,9 @@ import java.util.*;
 public class AcmeJsonWriter {
     AcmeJsonWriteHandler writer;
     JsonPath jpath  = new JsonPath();
+    ForkJoinPool pool = null;   //parallel mode is off when null
+    int parallelThreshold = 0;  //min size of list or array to write in parallel
+    IdentityHashMap<Object,Object> serializing = null; //objects written by derived serializers to detect cycles
 
     /**
      * creates json writer
@@ -32,6 +41,15 @@ public class AcmeJsonWriter {
         writer.setPrettyPrint(prettyPrint);
     }
 
+    /**
+     * creates json writer that encodes json directly to utf-8 bytes. call {@code getWriter()} at the end to flush the bytes.
+     * @param out where to write output
+     * @param prettyPrint true if the json must be formatted
+     */
+    public AcmeJsonWriter(OutputStream out, boolean prettyPrint){
+        writer = new AcmeJsonUtf8WriteHandler(out, prettyPrint);
+    }
+
     /**
      * initialize with external (delegated) write handler
      * @param w the json write handler
@@ -40,6 +58,44 @@ public class AcmeJsonWriter {
         writer = w;
     }
 
+    /**
+     * sets registry of serializers for objects that are not Map, Iterable, Iterator, or plain values.
+     * the registry is set to the underlying write handler.
+     * @param serializers the registry or null to write such objects as strings
+     * @return this object
+     */
+    public AcmeJsonWriter setSerializers(AcmeJsonSerializers serializers){
+        writer.setSerializers(serializers);
+        return this;
+    }
+
+    /**
+     * enables parallel writing of large lists and arrays in the common fork-join pool.
+     * see {@link #setParallel(ForkJoinPool, int)}
+     * @param threshold min size of the list or array to write in parallel. zero or negative to disable parallel mode.
+     * @return this object
+     */
+    public AcmeJsonWriter setParallel(int threshold){
+        return setParallel(ForkJoinPool.commonPool(), threshold);
+    }
+
+    /**
+     * enables parallel writing of large lists and arrays.
+     * RandomAccess lists and object arrays with at least `threshold` items are split into chunks,
+     * each chunk is written into its own buffer in the pool, and buffers are copied into output in order,
+     * so the output is the same as in sequential mode.
+     * only the standard write handlers are forked: writer with custom handler stays sequential.
+     * values of the list must not be modified while writing.
+     * @param pool where to write chunks
+     * @param threshold min size of the list or array to write in parallel. zero or negative to disable parallel mode.
+     * @return this object
+     */
+    public AcmeJsonWriter setParallel(ForkJoinPool pool, int threshold){
+        this.pool = threshold>0 ? pool : null;
+        this.parallelThreshold = threshold;
+        return this;
+    }
+
     /**
      * returns writer used to write json. the writer flushed just before return.
      * @return writer
@@ -190,64 +246,158 @@ public class AcmeJsonWriter {
     }
 
     /**
-     * internal method to print plain value, json object, or json array to writer. possible to intercept this method to customize and extend supported object types
-     * @param value object to print
+     * internal method to print java array to json writer.
+     * @param arr array of objects or primitives
      * @throws IOException if error occurred
      */
-    @SuppressWarnings("unchecked")
-    protected void printValue(Object value) throws IOException {
-        if (value instanceof Map) printMap((Map<Object, Object>) value);
-        else if (value instanceof Iterable) printIterator( ((Iterable) value).iterator() );
-        else if (value instanceof Iterator) printIterator( (Iterator)value);
-        else writer.onValue(jpath, value);
+    protected void printArray(Object arr) throws IOException {
+        if(arr instanceof long[]){
+            writer.onLongArray(jpath, (long[])arr);
+            return;
+        }
+        if(arr instanceof double[]){
+            writer.onDoubleArray(jpath, (double[])arr);
+            return;
+        }
+        if(pool!=null && arr instanceof Object[] && ((Object[])arr).length>=parallelThreshold && canFork()){
+            printParallel(null, (Object[])arr);
+            return;
+        }
+        writer.onArrayStart(jpath);
+        Object[] objects = arr instanceof Object[] ? (Object[])arr : null;
+        int n = java.lang.reflect.Array.getLength(arr);
+        for(int i=0;i<n;i++) {
+            jpath.push(i, null, false);
+            printValue(objects!=null ? objects[i] : java.lang.reflect.Array.get(arr, i));
+            jpath.pop(false);
+        }
+        writer.onArrayEnd(jpath);
     }
 
-    class JsonPath extends AbstractJsonPath{
-        private String[]    keys = new String[32];
-        private int[]    indices = new int[32];
-        private boolean[] bKeys  = new boolean[32];
-        private int size = 0;
-        private final String NEXT_KEY = "<NEXT_KEY>";
+    /** clears the path and the indent after previous write, so the writer could be reused */
+    void reset(){
+        jpath.size = 0;
+        writer.indent = 0;
+        serializing = null;
+    }
 
-        Element e = new Element();
+    /** true if the write handler could be copied to write chunks into buffers */
+    private boolean canFork(){
+        Class<?> c = writer.getClass();
+        return c==AcmeJsonWriteHandler.class || c==AcmeJsonUtf8WriteHandler.class;
+    }
 
-        @Override
-        public int size(){
-            return size;
+    /**
+     * writes list or array by chunks in the fork-join pool. chunks are copied to output in order as soon as they are ready,
+     * number of chunks in progress is limited to keep memory bounded.
+     */
+    private void printParallel(List<Object> list, Object[] arr) throws IOException {
+        int size = list!=null ? list.size() : arr.length;
+        writer.onArrayStart(jpath);
+        int parallelism = pool.getParallelism();
+        int chunk = Math.max(256, size/(parallelism*8));
+        int window = parallelism*2;
+        boolean inPool = ForkJoinTask.getPool()==pool;
+        ArrayDeque<Chunk> pending = new ArrayDeque<>();
+        int from = 0;
+        while(from<size || !pending.isEmpty()){
+            while(from<size && pending.size()<window){
+                Chunk c = new Chunk(list, arr, from, Math.min(from+chunk, size));
+                if(inPool)c.fork();
+                else pool.execute(c);
+                pending.add(c);
+                from = c.to;
+            }
+            Chunk c = pending.poll();
+            try {
+                c.join();
+            }catch(UncheckedIOException e){
+                for(Chunk p: pending)p.cancel(false);
+                throw e.getCause();
+            }catch(RuntimeException|Error e){
+                for(Chunk p: pending)p.cancel(false);
+                throw e;
+            }
+            if(c.bytes!=null)c.bytes.writeTo(((AcmeJsonUtf8WriteHandler)writer).getRoot());
+            else c.chars.writeTo(writer.writer);
         }
+        writer.onArrayEnd(jpath);
+    }
 
-        @Override
-        public Element get(int i){
-            if(i<0 || i>=size)throw new IllegalStateException("wrong json path position to get: "+i+"; size = "+size);
-            e.init(indices[i], keys[i], bKeys[i]);
-            return e;
+    /** writes range of items into chars or utf-8 bytes buffer with forked writer that continues the current path and indent */
+    private class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        final List<Object> list;
+        final Object[] arr;
+        final int from;
+        final int to;
+        final CharArrayWriter chars;
+        final AcmeJsonUtf8Writer.Bytes bytes;
+        final AcmeJsonWriter w;
+
+        Chunk(List<Object> list, Object[] arr, int from, int to){
+            this.list = list;
+            this.arr = arr;
+            this.from = from;
+            this.to = to;
+            AcmeJsonWriteHandler h;
+            if(writer instanceof AcmeJsonUtf8WriteHandler){
+                chars = null;
+                bytes = new AcmeJsonUtf8Writer.Bytes(8192);
+                h = new AcmeJsonUtf8WriteHandler(writer, new AcmeJsonUtf8Writer(bytes));
+            }else{
+                chars = new CharArrayWriter(8192);
+                bytes = null;
+                h = new AcmeJsonWriteHandler(writer);
+                h.writer = chars;
+            }
+            w = new AcmeJsonWriter(h).setParallel(pool, parallelThreshold);
+            w.jpath.copyFrom(jpath);
+            if(serializing!=null)w.serializing = new IdentityHashMap<>(serializing);
         }
 
-        //removes lats path element
-        void pop(){
-            if(size<=0)throw new IllegalStateException("got empty json path when expecting something");
-            size--;
+        @Override
+        protected void compute() {
+            try {
+                for(int i=from;i<to;i++) {
+                    w.jpath.push(i, null, false);
+                    w.printValue(list!=null ? list.get(i) : arr[i]);
+                    w.jpath.pop(false);
+                }
+                w.writer.getRoot().flush();
+            }catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
         }
+    }
 
-        //removes lats path element with type object/array check
-        void pop(boolean isKey){
-            if(size<=0)throw new IllegalStateException("got empty json path when expecting something");
-            if(bKeys[size-1]!=isKey)throw new IllegalStateException("expecting to pop "+(isKey?"object":"array")+" but got: "+this.toString());
-            size--;
+    /**
+     * internal method to print plain value, json object, or json array to writer. possible to intercept this method to customize and extend supported object types
+     * @param value object to print
+     * @throws IOException if error occurred
+     */
+    @SuppressWarnings("unchecked")
+    protected void printValue(Object value) throws IOException {
+        if (value instanceof Map) printMap((Map<Object, Object>) value);
+        else if (value instanceof AcmeJsonLongList) writer.onLongArray(jpath, ((AcmeJsonLongList) value).values);
+        else if (value instanceof AcmeJsonDoubleList) writer.onDoubleArray(jpath, ((AcmeJsonDoubleList) value).values, ((AcmeJsonDoubleList) value).scales);
+        else if (pool != null && value instanceof RandomAccess && value instanceof List
+                && ((List) value).size() >= parallelThreshold && canFork()) printParallel((List<Object>) value, null);
+        else if (value instanceof Iterable) printIterator( ((Iterable) value).iterator() );
+        else if (value instanceof Iterator) printIterator( (Iterator)value);
+        else if (value == null || value instanceof String || value instanceof Long
+                || value instanceof Integer || value instanceof Boolean) writer.onValue(jpath, value);
+        else if (value.getClass().isArray()) printArray(value);
+        else if (writer.serializers == null) writer.onValue(jpath, value);
+        else {
+            AcmeJsonSerializer<Object> s = writer.serializers.get(value.getClass());
+            if (s == null) writer.onValue(jpath, value);
+            else s.write(value, this);
         }
+    }
 
-        void push(int index, String key, boolean isKey){
-            if (size == indices.length) {
-                int newLength = size * 2;
-                indices = Arrays.copyOf(indices, newLength);
-                keys = Arrays.copyOf(keys, newLength);
-                bKeys = Arrays.copyOf(bKeys, newLength);
-            }
-            indices[size]=index;
-            keys[size]=key;
-            bKeys[size]=isKey;
-            size++;
-        }
+    class JsonPath extends JsonPathStack{
+        private final String NEXT_KEY = "<NEXT_KEY>";
 
         //validates if current path is ready for value
         void assertReadyForValue(){
@@ -280,30 +430,6 @@ public class AcmeJsonWriter {
             keys[i]=bKeys[i]?NEXT_KEY:null;
             indices[i]=indices[i]+1;
         }
-
-        //actually returns next to the last element. because we need to read current token and then trigger handler
-        // so this method returns content of currently read object
-        @Override
-        public Element peek(){
-            return get(size-1);
-        }
-
-        @Override
-        public String toString() {
-            StringBuilder sb = new StringBuilder(size*17+3);
-            sb.append('$');
-            for (int i=0; i<size; i++) {
-                if(bKeys[i]){
-                    sb.append('.');
-                    sb.append(keys[i]);
-                }else{
-                    sb.append('[');
-                    sb.append(indices[i]);
-                    sb.append(']');
-                }
-            }
-            return sb.toString();
-        }
     }
 
 }
@@ -187,6 +187,40 @@ public class JsonPathMatcher {
         return (pi==plen && ti==tlen);
     }
 
+    /**
+     * checks if this matcher could match the path or any of its descendants.
+     * used to detect json subtrees that could be passed through without checking of each element.
+     * @param path the json path to check
+     * @return false if neither path nor any of its descendants could be matched
+     */
+    public boolean mayMatch(AbstractJsonPath path){
+        int pi=0, plen=path.size();
+        int ti=0, tlen=tokens.size();
+
+        while(pi<plen && ti<tlen){
+            JPToken t = tokens.get(ti);
+            if(t==T_ANY){
+                ti++;
+                pi++;
+            }else if(t==T_DEEP){
+                return true; //anything below could match deep token
+            }else{
+                AbstractJsonPath.Element p = path.get(pi);
+                if(t.key instanceof Integer){
+                    if(p.isKey())return false;
+                    if( ((Integer)t.key).intValue()!=p.getIndex())return false;
+                }else{
+                    if(!p.isKey())return false;
+                    if(!t.key.equals(p.getKey()))return false;
+                }
+                ti++;
+                pi++;
+            }
+        }
+        //path fully matched and the rest of tokens could match descendants
+        return pi==plen;
+    }
+
     public boolean endless(){
         return tokens.size()>0 && tokens.get(tokens.size()-1)==T_DEEP;
     }
@@ -0,0 +1,43 @@
+package groovyx.acme.json;
+
+/**
+ * immutable copy of the json path. used when json path must be kept after the event handler returns.
+ */
+class JsonPathSnapshot extends AbstractJsonPath {
+    private final Element[] elements;
+
+    JsonPathSnapshot(AbstractJsonPath path){
+        int size = path.size();
+        elements = new Element[size];
+        for(int i=0;i<size;i++){
+            Element e = path.get(i);
+            elements[i] = new Element(e.getIndex(), e.getKey(), e.isKey());
+        }
+    }
+
+    @Override
+    public int size() {
+        return elements.length;
+    }
+
+    @Override
+    public Element get(int i) {
+        if(i<0) return null; //means root
+        return elements[i];
+    }
+
+    @Override
+    public Element peek() {
+        return get(elements.length-1);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(elements.length*17+3);
+        sb.append('$');
+        for(Element e: elements){
+            e.appendTo(sb);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,90 @@
+package groovyx.acme.json;
+
+import java.util.Arrays;
+
+/**
+ * json path kept as stack of elements. used by writers and binary parsers that maintain the path themselves.
+ */
+class JsonPathStack extends AbstractJsonPath{
+    String[]    keys = new String[32];
+    int[]    indices = new int[32];
+    boolean[] bKeys  = new boolean[32];
+    int size = 0;
+
+    private final Element e = new Element();
+
+    @Override
+    public int size(){
+        return size;
+    }
+
+    @Override
+    public Element get(int i){
+        if(i<0 || i>=size)throw new IllegalStateException("wrong json path position to get: "+i+"; size = "+size);
+        e.init(indices[i], keys[i], bKeys[i]);
+        return e;
+    }
+
+    //replaces content with the copy of other path
+    void copyFrom(JsonPathStack other){
+        if(other.size>indices.length){
+            indices = new int[other.indices.length];
+            keys = new String[other.indices.length];
+            bKeys = new boolean[other.indices.length];
+        }
+        System.arraycopy(other.indices, 0, indices, 0, other.size);
+        System.arraycopy(other.keys, 0, keys, 0, other.size);
+        System.arraycopy(other.bKeys, 0, bKeys, 0, other.size);
+        size = other.size;
+    }
+
+    //removes lats path element
+    void pop(){
+        if(size<=0)throw new IllegalStateException("got empty json path when expecting something");
+        size--;
+    }
+
+    //removes lats path element with type object/array check
+    void pop(boolean isKey){
+        if(size<=0)throw new IllegalStateException("got empty json path when expecting something");
+        if(bKeys[size-1]!=isKey)throw new IllegalStateException("expecting to pop "+(isKey?"object":"array")+" but got: "+this.toString());
+        size--;
+    }
+
+    void push(int index, String key, boolean isKey){
+        if (size == indices.length) {
+            int newLength = size * 2;
+            indices = Arrays.copyOf(indices, newLength);
+            keys = Arrays.copyOf(keys, newLength);
+            bKeys = Arrays.copyOf(bKeys, newLength);
+        }
+        indices[size]=index;
+        keys[size]=key;
+        bKeys[size]=isKey;
+        size++;
+    }
+
+    //actually returns next to the last element. because we need to read current token and then trigger handler
+    // so this method returns content of currently read object
+    @Override
+    public Element peek(){
+        return get(size-1);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(size*17+3);
+        sb.append('$');
+        for (int i=0; i<size; i++) {
+            if(bKeys[i]){
+                sb.append('.');
+                sb.append(keys[i]);
+            }else{
+                sb.append('[');
+                sb.append(indices[i]);
+                sb.append(']');
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -226,6 +226,956 @@ public class AcmeJsonTest extends groovy.util.GroovyTestCase {
         assert json == '{"event":{"name":"test","message":"ipsum lorem"},"array":[1,2,3,4,5]}'
     }
 
+    public void testFilterAndWriteRaw(){
+        def src = '{"a" : [1.50E+3, "x\\u0041y", {"b" : TRUE}], "c":{"d":1, "e":2.0E1}, "f":"\\u0041"}'
+        def w = new StringWriter()
+        new AcmeJsonParser().withFilter{
+            onValue('$.c.d'){v-> v+1}
+            write(w).setRawCopy(true)
+        }.parseText(src)
+        assert w.toString()=='{"a":[1.50E+3, "x\\u0041y", {"b" : TRUE}],"c":{"d":2,"e":2.0E1},"f":"\\u0041"}'
+
+        w = new StringWriter()
+        new AcmeJsonParser().withFilter{
+            onValue('$.a[2].b'){v-> false}
+            write(w).setRawCopy(true,true)
+        }.parseText(src)
+        assert w.toString()=='{"a":[1.50E+3,"x\\u0041y",{"b":false}],"c":{"d":1,"e":2.0E1},"f":"\\u0041"}'
+
+        //raw values are validated as in strict parsing
+        ['{"a":[1,,2]}', '{"a":[1,2}]}', '{"a":["\\x"]}', '{"a":"\\u00G1"}', '{"a":{"b" 1}}', '{"a":[yes]}', '{"a":[01]}',
+         '{"a":[1.]}', '{"a":{"b":1,}}', '{"a":[truex]}', '{"a":[1 2]}', '{"a":{1:2}}', '{"a":[-]}'].each{ bad->
+            shouldFail{ new AcmeJsonParser().parseText(bad) }
+            shouldFail(AcmeJsonException){
+                new AcmeJsonParser().withFilter{
+                    onValue('$.x'){v-> v}
+                    write(new StringWriter()).setRawCopy(true)
+                }.parseText(bad)
+            }
+        }
+        def good = '{"a":[-0, 0.5e-3, 1E+2, "\\u00e9\\n\\"", null, False, {"b":[[]], "c":{}}], "d":"\\/"}'
+        w = new StringWriter()
+        new AcmeJsonParser().withFilter{
+            onValue('$.x'){v-> v}
+            write(w).setRawCopy(true)
+        }.parseText(good)
+        assert new AcmeJsonParser().parseText(w.toString())==new AcmeJsonParser().parseText(good)
+    }
+
+    public void testPathMatcherMayMatch(){
+        def m = new JsonPathMatcher('$.aa[*].cc')
+        assert m.mayMatch(new TestJsonPath())
+        assert m.mayMatch(new TestJsonPath().push(0,'aa'))
+        assert m.mayMatch(new TestJsonPath().push(0,'aa').push(5,null).push(0,'cc'))
+        assert !m.mayMatch(new TestJsonPath().push(0,'bb'))
+        assert !m.mayMatch(new TestJsonPath().push(0,'aa').push(5,null).push(0,'cc').push(0,'dd'))
+        assert new JsonPathMatcher('$.aa..cc').mayMatch(new TestJsonPath().push(0,'aa').push(0,'bb').push(0,'dd'))
+    }
+    public void testAggregate(){
+        def orders = '''{"orders":[
+            {"region":"EU", "amount":10, "id":"a"},
+            {"amount":20.5, "region":"US", "id":"b"},
+            {"amount":5, "id":"c", "region":"EU"},
+            {"region":"US", "amount":-1, "id":"a"}
+        ]}'''
+        def stats = new AcmeJsonParser().withAggregate{
+            count('$.orders[*]')
+            sum('$.orders[*].amount').by('region').named('byRegion')
+            min('$..amount')
+            max('$..amount')
+            distinct('$.orders[*].id').named('ids')
+            quantiles('$.orders[*].amount', 0.5).named('median')
+        }.parseText(orders)
+
+        assert stats['count($.orders[*])']==4
+        assert stats.byRegion==[EU:15L, US:19.5]
+        assert stats['min($..amount)']==-1
+        assert stats['max($..amount)']==20.5
+        assert stats.ids==3
+        assert stats.median[0.5d]>=5 && stats.median[0.5d]<=10
+    }
+
+    public void testAggregateLarge(){
+        def json = new StringBuilder('[')
+        for(int i=0;i<100000;i++){
+            if(i>0)json.append(',')
+            json.append('{"v":').append(i).append(',"k":"').append(i%1000).append('"}')
+        }
+        json.append(']')
+        def stats = new AcmeJsonParser().withAggregate{
+            distinct('$[*].k').named('keys')
+            quantiles('$[*].v', 0.1, 0.5, 0.9).named('q')
+            sum('$[*].v').named('sum')
+        }.parseText(json.toString())
+        assert Math.abs(stats.keys-1000)<50
+        assert Math.abs(stats.q[0.5d]-50000)<1000
+        assert Math.abs(stats.q[0.9d]-90000)<1000
+        assert stats.sum==4999950000L
+    }
+
+    public void testFilterAsync(){
+        def src = new StringBuilder('[')
+        for(int i=0;i<2000;i++){
+            if(i>0)src.append(',')
+            src.append('{"id":').append(i).append(',"name":"n').append(i).append('","tags":[1,2]}')
+        }
+        src.append(']')
+        def reverse = {v->
+            Thread.sleep( v.length()%3 )
+            v.reverse()
+        }
+        def expected = new StringWriter()
+        new AcmeJsonParser().withFilter{
+            onValue('$[*].name', reverse)
+            onValue('$[*].tags'){v-> v.sum() }
+            write(expected)
+        }.parseText(src.toString())
+
+        def pool = java.util.concurrent.Executors.newFixedThreadPool(4)
+        try {
+            def w = new StringWriter()
+            new AcmeJsonParser().withFilter{
+                onValue('$[*].name', reverse)
+                onValue('$[*].tags'){v-> v.sum() }
+                async(pool, 16)
+                write(w)
+            }.parseText(src.toString())
+            assert w.toString()==expected.toString()
+            assert w.toString().startsWith('[{"id":0,"name":"0n","tags":3},{"id":1,"name":"1n"')
+        } finally {
+            pool.shutdown()
+        }
+    }
+
+    public void testBuildCompact(){
+        def src = "[\""+("abcdefgh1234567890"*200)+"\","+json+"]"
+        def o = new AcmeJsonParser(new AcmeJsonBuildHandler().setCompact(true)).parseText(src)
+        assert o[1] instanceof AcmeJsonCompactMap
+        assert o[1].i1==12345
+        assert o[1].a1[4].yyy==22
+        assert o == new AcmeJsonParser().parseText(src)
+        assert AcmeJsonOutput.toJson(o) == AcmeJsonOutput.toJson(new AcmeJsonParser().parseText(src))
+
+        def f = new AcmeJsonParser().withFilter{
+            onValue('$[1].i1'){v-> v+1}
+            build().setCompact(true)
+        }.parseText(src)
+        assert f[1].i1==12346
+    }
+
+    public void testCompactMap(){
+        def m = new AcmeJsonCompactMap()
+        (1..20).each{ m["k$it".toString()] = it }
+        assert m.size()==20
+        assert m.k7==7 && m.k17==17
+        assert m.keySet().toList()==(1..20).collect{"k$it".toString()}
+        m.remove('k3')
+        m.k17 = 'x'
+        assert m.size()==19 && m.k3==null && m.k17=='x' && m.k20==20
+        m.keySet().removeAll( (1..15).collect{"k$it".toString()} )
+        assert m==[k16:16, k17:'x', k18:18, k19:19, k20:20]
+    }
+
+    public void testBuildShapes(){
+        def src = "[\""+("abcdefgh1234567890"*200)+"\","+json+"]"
+        def o = new AcmeJsonParser(new AcmeJsonBuildHandler().setShapes(true)).parseText(src)
+        assert o[1] instanceof AcmeJsonShapeMap
+        assert o[1].i1==12345
+        assert o[1].a1[4].yyy==22
+        assert o == new AcmeJsonParser().parseText(src)
+        assert AcmeJsonOutput.toJson(o) == AcmeJsonOutput.toJson(new AcmeJsonParser().parseText(src))
+
+        def root = new AcmeJsonShape()
+        def r = new AcmeJsonParser(new AcmeJsonBuildHandler().setShapes(root)).parseText('[{"a":1,"b":2},{"a":3,"b":4},{"a":5,"a":6},{"b":7,"a":8}]')
+        assert r==[[a:1,b:2],[a:3,b:4],[a:6],[b:7,a:8]]
+        assert r[0].shape.is(r[1].shape)
+        assert root.shapeCount==5
+        shouldFail(UnsupportedOperationException){ r[0].a = 2 }
+
+        def wide = '{'+(1..100).collect{'"k'+it+'":'+it}.join(',')+'}'
+        def w = new AcmeJsonParser(new AcmeJsonBuildHandler().setShapes(true)).parseText(wide)
+        assert !(w instanceof AcmeJsonShapeMap)
+        assert w.k100==100 && w.size()==100
+    }
+
+    public void testTape(){
+        def src = "[\""+("abcdefgh1234567890"*200)+"\","+json+",{\"big\":12345678901234567890,\"long\":9007199254740993,\"\u0420\":\"\u0420x\"}]"
+        def expected = new AcmeJsonParser().parseText(src)
+        [false, true].each{direct->
+            def h = new AcmeJsonTapeHandler().setDirect(direct)
+            def o = new AcmeJsonParser(h).parseText(src)
+            assert h.tape.direct==direct
+            assert o[1].i1==12345
+            assert o[1].d4==-0.123
+            assert o[1].a1[4].yyy==22
+            assert o[1].zzz==null
+            assert o[2].long==9007199254740993L
+            assert o[2]['\u0420']=='\u0420x'
+            assert o==expected
+            assert AcmeJsonOutput.toJson(o)==AcmeJsonOutput.toJson(expected)
+        }
+        //duplicate keys: the last value wins as with the default handler
+        def dup = '{"a":1,"b":{"x":1},"a":[2],"c":3,"a":4}'
+        def m = new AcmeJsonParser(new AcmeJsonTapeHandler()).parseText(dup)
+        assert m.a==4
+        assert m.size()==3
+        assert m.keySet().toList()==['a', 'b', 'c']
+        assert m==new AcmeJsonParser().parseText(dup)
+        assert AcmeJsonOutput.toJson(m)==AcmeJsonOutput.toJson(new AcmeJsonParser().parseText(dup))
+    }
+
+    public void testLazyDocument(){
+        def src = "[\"\\u0041\\n\u0420\","+json+",{\"big\":12345678901234567890,\"over\":9999999999999999999,\"min\":-9223372036854775808,\"neg\":-0,\"e\":1e3,\"empty\":{},\"list\":[]}]"
+        def expected = new AcmeJsonParser().parseText(src)
+        def f = File.createTempFile("lazy", ".json")
+        try {
+            f.setText(" \n"+src+"\n ", "UTF-8")
+            //small chunks and threshold to cross chunk borders and to get lazy views on all levels
+            def doc = new AcmeJsonLazyDocument(f, 3).setMaterializeThreshold(8).setMaxCached(2)
+            def o = doc.getRoot()
+            assert o instanceof AcmeJsonLazyDocument.LazyList
+            assert o[0]=='A\n\u0420'
+            assert o[1].a1[4].yyy==22
+            assert o[1].a1[4] instanceof AcmeJsonLazyDocument.LazyMap
+            assert o[1].i1==12345
+            assert o[1].d4==-0.123
+            assert o[2].empty instanceof LinkedHashMap
+            assert o[2].over==new BigDecimal('9999999999999999999')
+            assert o[2].min==Long.MIN_VALUE && o[2].min instanceof Long
+            assert expected[2].min instanceof Long
+            assert o==expected
+            assert AcmeJsonOutput.toJson(o)==AcmeJsonOutput.toJson(expected)
+            assert new AcmeJsonParser().parseLazy(f)==expected
+            //duplicate keys: the last value wins as with the default handler, in small and large objects
+            def big = (0..<20).collect{ "\"k$it\":$it" }.join(',')+',"k3":"x","k18":[18]'
+            def dup = '{"small":{"a":1,"b":{"x":1},"a":[2],"c":3,"a":4},"big":{'+big+'},"small":{"a":1,"a":{"y":2},"b":3}}'
+            f.setText(dup, "UTF-8")
+            o = new AcmeJsonLazyDocument(f, 3).setMaterializeThreshold(8).getRoot()
+            assert o instanceof AcmeJsonLazyDocument.LazyMap
+            assert o.size()==2
+            assert o.small.a==[y:2]
+            assert o.small.keySet().toList()==['a', 'b']
+            assert o.big.k3=='x' && o.big.k18==[18]
+            assert o.big.size()==20
+            assert o==new AcmeJsonParser().parseText(dup)
+            assert AcmeJsonOutput.toJson(o)==AcmeJsonOutput.toJson(new AcmeJsonParser().parseText(dup))
+            f.setText('{"a":1}}', "UTF-8")
+            shouldFail(AcmeJsonException){ new AcmeJsonParser().parseLazy(f) }
+        }finally{
+            f.delete()
+        }
+    }
+
+    public void testBind(){
+        def src = '''{"name":"Joe","age":42,"score":1.5,"kind":"B","unknown":{"x":[1,{"y":2}]},
+            "tags":["a","b","a"],"ids":[1,2,3],"attrs":{"k":10},"big":12345678901234567890,
+            "children":[{"name":"Ann","age":7,"children":[]},{"name":"Bob","kind":null}],"any":{"z":[1,"2"]}}'''
+        BindPerson p = new AcmeJsonParser(new AcmeJsonBindHandler(BindPerson)).parseText(src)
+        assert p.name=="Joe"
+        assert p.age==42
+        assert p.score==1.5d
+        assert p.kind==BindKind.B
+        assert p.tags==["a","b"] as LinkedHashSet
+        assert p.ids==[1,2,3] as long[]
+        assert p.attrs==[k:10]
+        assert p.attrs.k instanceof Integer
+        assert p.big==12345678901234567890G
+        assert p.children*.name==["Ann","Bob"]
+        assert p.children[0].children==[]
+        assert p.children[1].kind==null
+        assert p.any==[z:[1,"2"]]
+
+        def list = new AcmeJsonParser(new AcmeJsonBindHandler(BindPerson[])).parseText('[{"name":"x"},{"name":"y"}]')
+        assert list*.name==["x","y"]
+
+        def msg = shouldFail(AcmeJsonException){
+            new AcmeJsonParser(new AcmeJsonBindHandler(BindPerson)).parseText('{"age":1.5}')
+        }
+        assert msg.startsWith('Failed to bind value at `$.age`: ')
+        shouldFail(AcmeJsonException){
+            new AcmeJsonParser(new AcmeJsonBindHandler(BindPerson)).parseText('{"kind":"X"}')
+        }
+    }
+
+    public void testBuildPrimitiveArrays(){
+        def src = '''{"l":[1,-2,9223372036854775807,-9223372036854775808,0],"d":[1.5,2.75,-325.5,0.001],"big":[1.5,9007199254740993],
+            "prec":[0.1234567890123456789],"mix":[1,"x",2],"nested":[[1,2],[3.5]],"empty":[],"obj":[{"a":[7]}],
+            "ints":[1,2.5,3],"exp":[1e10,-2.5E-30],"zeros":[1.50,21.0,0.00,-0.0],"small":[0.0001,1e-7,12345678.123],"bigfirst":[9007199254740993,1.5]}'''
+        def expected = new AcmeJsonParser().parseText(src)
+        def o = new AcmeJsonParser(new AcmeJsonBuildHandler().setPrimitiveArrays(true)).parseText(src)
+        assert o.l instanceof AcmeJsonLongList
+        assert o.l==expected.l
+        assert o.l.hashCode()==expected.l.hashCode()
+        assert o.l[2] instanceof Long
+        assert o.d instanceof AcmeJsonDoubleList
+        assert o.d==[1.5d, 2.75d, -325.5d, 0.001d]
+        assert o.big instanceof ArrayList
+        assert o.big==expected.big
+        assert o.prec==expected.prec
+        assert o.mix==expected.mix
+        assert o.nested[0] instanceof AcmeJsonLongList
+        assert o.nested[1] instanceof AcmeJsonDoubleList
+        assert o.empty==[]
+        assert o.obj[0].a instanceof AcmeJsonLongList
+        assert AcmeJsonOutput.toJson(o.l)=='[1,-2,9223372036854775807,-9223372036854775808,0]'
+        assert AcmeJsonOutput.toJson(o.d)=='[1.5,2.75,-325.5,0.001]'
+        //integers are widened to doubles, scales are kept to write numbers as they were parsed
+        ['ints', 'exp', 'zeros', 'small'].each{ assert o[it] instanceof AcmeJsonDoubleList && o[it]==expected[it] }
+        assert AcmeJsonOutput.toJson(o.ints)=='[1,2.5,3]'
+        assert AcmeJsonOutput.toJson(o.zeros)=='[1.50,21.0,0.00,0.0]'
+        assert AcmeJsonOutput.toJson(o)==AcmeJsonOutput.toJson(expected)
+        assert AcmeJsonOutput.toJson(o, true)==AcmeJsonOutput.toJson(expected, true)
+        assert o.bigfirst instanceof ArrayList && o.bigfirst==expected.bigfirst && o.bigfirst[0] instanceof Long
+        //boxed again when the array gets a value that is not a number
+        def mixed = new AcmeJsonParser(new AcmeJsonBuildHandler().setPrimitiveArrays(true)).parseText('[1,1.50,"x"]')
+        assert mixed instanceof ArrayList && mixed[0] instanceof Long && mixed[1]==new BigDecimal('1.50') && mixed[1].scale()==2
+        assert AcmeJsonOutput.toJson([1d, 2.5d, -3d, 1e20d] as double[])=='[1,2.5,-3,1.0E20]'
+        assert AcmeJsonOutput.toJson([a:o.nested], true)==AcmeJsonOutput.toJson([a:[[1,2],[3.5d]]], true)
+        o.l[0] = 5
+        assert o.l[0]==5
+    }
+
+    public void testIntern(){
+        def src = '[' + (0..<2000).collect{ '{"id":"id'+it+'","status":"'+(it%2?'on':'off')+'","s":"\\u0041"}' }.join(',') + ']'
+        def cache = new AcmeJsonStringCache(64, 16)
+        def o = new AcmeJsonParser().setIntern(cache, '$[*].status').parseText(src)
+        assert o[0].status.is(o[2].status)
+        assert o[1].status.is(o[3].status)
+        assert !o[0].id.is(new AcmeJsonParser().setIntern(cache, '$[*].status').parseText(src)[0].id)
+        assert o == new AcmeJsonParser().parseText(src)
+        //keys are interned too and cache is shared between parsers
+        def o2 = new AcmeJsonParser().setIntern(cache, '$[*].status').parseText(src)
+        assert o2[5].status.is(o[5].status)
+        assert o2[5].keySet()[1].is(o[5].keySet()[1])
+
+        cache = new AcmeJsonStringCache(64, 16)
+        def parser = new AcmeJsonParser().setAdaptiveIntern(cache)
+        o = parser.parseText(src)
+        assert o[1000].status.is(o[1002].status)
+        assert o == new AcmeJsonParser().parseText(src)
+        //ids have low hit rate and not interned after the first window
+        assert parser.internStats.find{it?.key=='id'}.skip > 0
+        assert parser.internStats.find{it?.key=='status'}.skip == 0
+    }
+
+    public void testUtf8Write(){
+        def o = new AcmeJsonParser().parseText(json)
+        o.u = "\u0420\u00e9\ud83d\ude00\"\\/\u0001" + ("x\u0420"*5000)
+        [false, true].each{pretty->
+            def expected = AcmeJsonOutput.toJson(o, pretty)
+            def bytes = new ByteArrayOutputStream()
+            AcmeJsonOutput.writeJson(o, bytes, pretty)
+            assert bytes.toString("UTF-8")==expected
+
+            def buf = java.nio.ByteBuffer.allocate(100000)
+            new AcmeJsonWriter(new AcmeJsonUtf8WriteHandler(buf, pretty)).value(o).getWriter()
+            assert new String(buf.array(), 0, buf.position(), "UTF-8")==expected
+
+            bytes = new ByteArrayOutputStream()
+            def ch = java.nio.channels.Channels.newChannel(bytes)
+            new AcmeJsonParser(new AcmeJsonUtf8WriteHandler(ch, pretty).setPrettyPrint(pretty)).parseText(expected).flush()
+            assert bytes.toString("UTF-8")==expected
+        }
+        def ascii = AcmeJsonOutput.toJson(o)
+        def sw = new StringWriter()
+        new AcmeJsonWriter(new AcmeJsonWriteHandler(sw).setAsciiOnly(true)).value(o)
+        def bytes = new ByteArrayOutputStream()
+        new AcmeJsonWriter(new AcmeJsonUtf8WriteHandler(bytes, false).setAsciiOnly(true)).value(o).getWriter()
+        assert bytes.toString("US-ASCII")==sw.toString()
+        assert sw.toString().every{ it < '\u0080' }
+        assert new AcmeJsonParser().parseText(sw.toString())==new AcmeJsonParser().parseText(ascii)
+    }
+
+    public void testSerializers(){
+        def src = '''{"name":"Joe","age":42,"score":1.5,"kind":"B","tags":["a"],"ids":[1,2],"attrs":{"k":10},"big":1,
+            "children":[{"name":"Ann","age":7,"score":0.0,"kind":null,"tags":null,"ids":null,"attrs":null,"big":null,"children":[],"any":null}],"any":{"z":[1,"2"]}}'''
+        BindPerson p = new AcmeJsonParser(new AcmeJsonBindHandler(BindPerson)).parseText(src)
+        //derived serializers are disabled by default: objects written as strings
+        assert AcmeJsonOutput.toJson([m:new SerMoney(150, 'EUR')])=='{"m":"1.50 EUR"}'
+        assert AcmeJsonOutput.toJson([p:p])=='{"p":"'+p.toString()+'"}'
+        AcmeJsonSerializers.getDefault().setDerive(true)
+        try {
+            //properties written in declaration order
+            assert AcmeJsonOutput.toJson(p)==AcmeJsonOutput.toJson(new AcmeJsonParser().parseText(src))
+            assert new AcmeJsonParser().parseText(AcmeJsonOutput.toJson(p, true))==new AcmeJsonParser().parseText(src)
+            //class without readable properties written with toString
+            assert AcmeJsonOutput.toJson([m:new SerMoney(150, 'EUR')])=='{"m":"1.50 EUR"}'
+            //cyclic reference fails with the path
+            def root = new SerNode(name:'root')
+            root.children << new SerNode(name:'child', parent:root)
+            try {
+                AcmeJsonOutput.toJson([tree:root])
+                assert false
+            }catch(AcmeJsonException e){
+                assert e.message=='Cyclic reference to groovyx.acme.json.SerNode at `$.tree.children[0].parent`'
+            }
+            //the thread context is reused after the failed write
+            root.children[0].parent = null
+            assert AcmeJsonOutput.toJson(root)=='{"name":"root","parent":null,"children":[{"name":"child","parent":null,"children":[]}]}'
+            //the same object could be written twice if it's not a cycle
+            def leaf = new SerNode(name:'leaf')
+            assert AcmeJsonOutput.toJson([leaf, leaf])=='[{"name":"leaf","parent":null,"children":[]},{"name":"leaf","parent":null,"children":[]}]'
+
+            //filter could put objects into the write handler
+            def sw = new StringWriter()
+            new AcmeJsonParser().withFilter{
+                onValue('$.p'){ p }
+                write(sw)
+            }.parseText('{"x":1,"p":2}')
+            assert new AcmeJsonParser().parseText(sw.toString()).p.name=='Joe'
+        }finally{
+            AcmeJsonSerializers.getDefault().setDerive(false)
+        }
+
+        def reg = new AcmeJsonSerializers()
+        reg.register(BindKind, { k, w-> w.value(k.ordinal()) } as AcmeJsonSerializer)
+        reg.register(Date, { d, w-> w.object{ key('time').value(d.time) } } as AcmeJsonSerializer)
+        def sw = new StringWriter()
+        new AcmeJsonWriter(sw, false).setSerializers(reg).value([kind:BindKind.B, date:new Date(5), list:[BindKind.A]])
+        assert sw.toString()=='{"kind":1,"date":{"time":5},"list":[0]}'
+
+        //derived serializers enabled for one writer
+        sw = new StringWriter()
+        new AcmeJsonWriter(sw, false).setSerializers(new AcmeJsonSerializers().setDerive(true)).value([p:p])
+        assert new AcmeJsonParser().parseText(sw.toString()).p.name=='Joe'
+
+        //without derived serializers objects are written as strings
+        assert new AcmeJsonWriter(new StringWriter(), false).setSerializers(new AcmeJsonSerializers().setDerive(false)).value([p:new Object(){ String toString(){ 'obj' } }]).writer.toString()=='{"p":"obj"}'
+    }
+
+    public void testOutputContext(){
+        def o = [a:1, b:[true, null, 'Р\n'], c:[d:1.5, e:-7L]]
+        def expected = '{"a":1,"b":[true,null,"Р\\n"],"c":{"d":1.5,"e":-7}}'
+        assert AcmeJsonOutput.toJson(o)==expected
+        assert new String(AcmeJsonOutput.toJsonBytes(o), "UTF-8")==expected
+        assert new String(AcmeJsonOutput.toJsonBytes(o, true), "UTF-8")==AcmeJsonOutput.toJson(o, true)
+        def bytes = new ByteArrayOutputStream()
+        AcmeJsonOutput.writeTo(o, bytes)
+        AcmeJsonOutput.writeTo(o, bytes)
+        assert bytes.toString("UTF-8")==expected*2
+        def sw = new StringWriter()
+        AcmeJsonOutput.writeTo(o, sw)
+        assert sw.toString()==expected
+        //context state is reset after failure and after large output
+        try {
+            AcmeJsonOutput.toJson([[x:[y:[hasNext:{ true }, next:{ throw new IllegalStateException("x") }] as Iterator]]], true)
+            assert false
+        }catch(IllegalStateException e){ }
+        assert AcmeJsonOutput.toJson((0..100000).toList()).length()>500000
+        assert AcmeJsonOutput.toJson(o)==expected
+        //nested calls from serializer use own context
+        def nested = new AcmeJsonSerializers().register(Date, { d, w-> w.value(AcmeJsonOutput.toJson([t:d.time])) } as AcmeJsonSerializer)
+        sw = new StringWriter()
+        new AcmeJsonWriter(sw, false).setSerializers(nested).value([d:new Date(3)])
+        assert sw.toString()=='{"d":"{\\u0022t\\u0022:3}"}'
+        //each thread has own context
+        def results = Collections.synchronizedList([])
+        def threads = (0..<8).collect{ i-> Thread.start{ 100.times{ results << AcmeJsonOutput.toJson([i:i]) } } }
+        threads*.join()
+        assert results.unique().sort()==(0..<8).collect{ '{"i":'+it+'}' }.sort()
+        assert results.size()==8
+    }
+
+    /** slow channel stand-in: consumes up to 4K bytes per write after delay */
+    static class SlowChannel implements java.nio.channels.AsynchronousByteChannel {
+        def exec = java.util.concurrent.Executors.newSingleThreadScheduledExecutor()
+        def bytes = new ByteArrayOutputStream()
+        long failAfter = Long.MAX_VALUE
+        boolean open = true
+        boolean paused = false
+        List<Runnable> held = []
+        synchronized void resume(){
+            paused = false
+            held.each{ exec.execute(it) }
+        }
+        synchronized public <A> void write(java.nio.ByteBuffer src, A att, java.nio.channels.CompletionHandler<Integer, ? super A> handler){
+            if(paused){
+                held << { write(src, att, handler) }
+                return
+            }
+            exec.schedule({
+                if(bytes.size()>=failAfter){
+                    handler.failed(new IOException("disk full"), att)
+                    return
+                }
+                byte[] b = new byte[Math.min(src.remaining(), 4096)]
+                src.get(b)
+                bytes.write(b)
+                handler.completed(b.length, att)
+            } as Runnable, 1, java.util.concurrent.TimeUnit.MILLISECONDS)
+        }
+        java.util.concurrent.Future<Integer> write(java.nio.ByteBuffer src){ throw new UnsupportedOperationException() }
+        public <A> void read(java.nio.ByteBuffer dst, A att, java.nio.channels.CompletionHandler<Integer, ? super A> handler){ throw new UnsupportedOperationException() }
+        java.util.concurrent.Future<Integer> read(java.nio.ByteBuffer dst){ throw new UnsupportedOperationException() }
+        boolean isOpen(){ open }
+        void close(){ open = false; exec.shutdown() }
+    }
+
+    public void testAsyncWriter(){
+        def data = (0..<2000).collect{ [id:it, name:"name \u0420 $it", tags:['a','b']] }
+        def ch = new SlowChannel(paused:true)
+        def w = new AcmeJsonAsyncWriter(ch, true, 8192, 32768)
+        long maxPending = 0
+        w.arrayStart()
+        int i = 0
+        //writes do not block until the writer is not ready
+        while(w.isReady())w.value(data[i++])
+        def ready = w.ready()
+        assert !ready.isDone()
+        assert w.getPendingBytes()>=32768
+        ch.resume()
+        ready.get()
+        for(;i<data.size();i++){
+            maxPending = Math.max(maxPending, w.getPendingBytes())
+            w.value(data[i])
+        }
+        w.arrayEnd()
+        w.flushAsync().get()
+        assert w.getPendingBytes()==0
+        w.close()
+        assert !ch.isOpen()
+        assert maxPending<=32768+8192
+        assert ch.bytes.toString("UTF-8")==AcmeJsonOutput.toJson(data, true)
+
+        //file channel
+        def f = File.createTempFile("async", ".json")
+        f.deleteOnExit()
+        def fc = java.nio.channels.AsynchronousFileChannel.open(f.toPath(), java.nio.file.StandardOpenOption.WRITE)
+        new AcmeJsonAsyncWriter(fc, 0, false).value(data).close()
+        assert f.getText("UTF-8")==AcmeJsonOutput.toJson(data)
+        //future write continues at the advanced position
+        fc = java.nio.channels.AsynchronousFileChannel.open(f.toPath(), java.nio.file.StandardOpenOption.WRITE)
+        def fca = new AcmeJsonAsyncWriter.FileChannelAdapter(fc, 2)
+        assert fca.write(java.nio.ByteBuffer.wrap('ab'.getBytes("UTF-8"))).get()==2
+        assert fca.write(java.nio.ByteBuffer.wrap('cd'.getBytes("UTF-8"))).get()==2
+        fca.close()
+        assert f.getText("UTF-8").substring(2, 6)=='abcd'
+
+        //channel failure is thrown to the producer
+        ch = new SlowChannel(failAfter:8192)
+        w = new AcmeJsonAsyncWriter(ch, false, 4096, 8192)
+        try {
+            data.each{ w.value(it) }
+            w.close()
+            assert false
+        }catch(IOException e){
+            assert e.message.contains('disk full')
+        }
+        assert w.ready().isCompletedExceptionally()
+    }
+
+    public void testLinesWriter(){
+        def records = (0..<10).collect{ [id:it, name:"n\n$it"] }
+        def expected = records.collect{ AcmeJsonOutput.toJson(it)+'\n' }.join()
+        int flushes = 0
+        def sw = new StringWriter(){
+            void flush(){ flushes++ }
+        }
+        def w = new AcmeJsonLinesWriter(sw).setFlushEveryRecords(3)
+        w.writeAll(records)
+        assert flushes==3
+        w.close()
+        assert sw.toString()==expected
+        assert w.recordCount==10
+        assert sw.toString().readLines().collect{ new AcmeJsonParser().parseText(it) }==records
+
+        //utf-8 bytes, stream source, and flush by size
+        flushes = 0
+        def bytes = new ByteArrayOutputStream(){
+            void flush(){ flushes++ }
+        }
+        w = new AcmeJsonLinesWriter(bytes).setFlushEveryBytes(50)
+        w.writeAll(records.stream())
+        assert flushes==3 //23 bytes per line
+        w.flush()
+        assert bytes.toString("UTF-8")==expected
+
+        //flush by latency
+        sw = new StringWriter()
+        w = new AcmeJsonLinesWriter(new AcmeJsonWriteHandler(sw, true)).setMaxLatency(20)
+        w.write(records[0])
+        assert !w.flushIfDue()
+        Thread.sleep(30)
+        assert w.flushIfDue()
+        assert !w.flushIfDue()
+        assert sw.toString()==expected.readLines()[0]+'\n'
+    }
+
+    public void testCbor(){
+        def hex = { String h-> h.decodeHex() }
+        def cbor = { Object v-> def b = new ByteArrayOutputStream(); new AcmeCborWriteHandler(b).write(v); b.toByteArray().encodeHex().toString() }
+        //rfc 8949 appendix A
+        assert new AcmeCborParser().parse(hex('1818'))==24
+        assert new AcmeCborParser().parse(hex('20'))==-1
+        assert new AcmeCborParser().parse(hex('c249010000000000000000'))==new BigDecimal('18446744073709551616')
+        assert new AcmeCborParser().parse(hex('3bffffffffffffffff'))==new BigDecimal('-18446744073709551616')
+        assert new AcmeCborParser().parse(hex('f93e00'))==1.5d
+        assert new AcmeCborParser().parse(hex('f97c00'))==Double.POSITIVE_INFINITY
+        assert new AcmeCborParser().parse(hex('fb3ff199999999999a'))==1.1d
+        assert new AcmeCborParser().parse(hex('c48221196ab3'))==new BigDecimal('273.15')
+        assert new AcmeCborParser().parse(hex('8301820203820405'))==[1,[2,3],[4,5]]
+        assert new AcmeCborParser().parse(hex('9f018202039f0405ffff'))==[1,[2,3],[4,5]]
+        assert new AcmeCborParser().parse(hex('bf6346756ef563416d7421ff'))==[Fun:true, Amt:-2]
+        assert new AcmeCborParser().parse(hex('a201020304'))==['1':2, '3':4]
+        assert new AcmeCborParser().parse(hex('7f657374726561646d696e67ff'))=='streaming'
+        assert new AcmeCborParser().parse(hex('4401020304'))=='AQIDBA'
+        assert cbor(1000000)=='1a000f4240'
+        assert cbor(-1000L)=='3903e7'
+        assert cbor(new BigInteger('18446744073709551616'))=='c249010000000000000000'
+        assert cbor(new BigDecimal('273.15'))=='c48221196ab3'
+        assert cbor([a:1, b:[2,3]])=='a26161016162820203'
+        assert cbor(1.5d)=='fa3fc00000'
+        assert cbor(1.1d)=='fb3ff199999999999a'
+
+        //json -> cbor -> json in streaming passes
+        def json = '{"id":123,"name":"Р\\n","big":123456789012345678901234567890,"dec":-0.125,"list":[true,false,null,{"x":[]}],"e":{}}'
+        def bytes = new ByteArrayOutputStream()
+        new AcmeJsonParser(new AcmeCborWriteHandler(bytes)).parseText(json)
+        assert new AcmeCborParser().parse(bytes.toByteArray())==new AcmeJsonParser().parseText(json)
+        def sw = new StringWriter()
+        new AcmeCborParser(new AcmeJsonWriteHandler(sw)).parse(new ByteArrayInputStream(bytes.toByteArray()))
+        assert sw.toString()==AcmeJsonOutput.toJson(new AcmeJsonParser().parseText(json))
+
+        //filter works on cbor
+        def r = new AcmeCborParser().withFilter{
+            onValue('$.list[*]'){ it==null ? 'none' : it }
+            build()
+        }.parse(new ByteArrayInputStream(bytes.toByteArray()))
+        assert r.list==[true, false, 'none', [x:[]]]
+        try {
+            new AcmeCborParser().parse(hex('8301'))
+            assert false
+        }catch(AcmeJsonException e){
+            assert e.message.contains('End of CBOR input')
+        }
+        //length of string is not trusted
+        try {
+            new AcmeCborParser().parse(hex('5a7fffffff'))
+            assert false
+        }catch(AcmeJsonException e){
+            assert e.message.contains('End of CBOR input')
+        }
+        //deep nesting and trailing data fail
+        byte[] deep = new byte[200000]
+        Arrays.fill(deep, (byte)0x81)
+        try {
+            new AcmeCborParser().parse(deep)
+            assert false
+        }catch(AcmeJsonException e){
+            assert e.message.startsWith('Too deep nesting: 1001')
+        }
+        assert new AcmeCborParser().setMaxDepth(3).parse(hex('818101'))==[[1]]
+        shouldFail(AcmeJsonException){ new AcmeCborParser().setMaxDepth(3).parse(hex('81818101')) }
+        try {
+            new AcmeCborParser().parse(hex('0102'))
+            assert false
+        }catch(AcmeJsonException e){
+            assert e.message.startsWith('Unexpected data after the end of CBOR item')
+        }
+        //chunks of indefinite length strings must be definite length strings of the same type
+        assert new AcmeCborParser().parse(hex('5f42010243030405ff'))=='AQIDBAU'
+        ['5f5f5f5f42010243030405ffffffff', '5f6161ff', '7f7f7f7f6161ffffffff', '7f4161ff'].each{ h->
+            try {
+                new AcmeCborParser().parse(hex(h))
+                assert false
+            }catch(AcmeJsonException e){
+                assert e.message.startsWith('Wrong chunk of')
+            }
+        }
+        byte[] chunks = new byte[200000]
+        Arrays.fill(chunks, (byte)0x5f)
+        shouldFail(AcmeJsonException){ new AcmeCborParser().parse(chunks) }
+        Arrays.fill(chunks, (byte)0x7f)
+        shouldFail(AcmeJsonException){ new AcmeCborParser().parse(chunks) }
+        //byte string keys as base64url
+        assert new AcmeCborParser().parse(hex('a1420102f5'))==['AQI':true]
+    }
+
+    public void testEventLog(){
+        def json = '{"id":123,"name":"Р\\n","big":123456789012345678901234567890,"dec":-0.125,"d":1.5e300,"skip":{"a":[1,2]},"list":[true,false,null,{"x":[]}],"e":{}}'
+        def f = File.createTempFile("events", ".bin")
+        f.deleteOnExit()
+        assert new AcmeJsonParser(new AcmeJsonEventRecorder(f)).parseText(json)==f
+        //replay to build and write handlers
+        assert new AcmeJsonEventReplayer().parse(f)==new AcmeJsonParser().parseText(json)
+        def sw = new StringWriter()
+        new AcmeJsonEventReplayer(new AcmeJsonWriteHandler(sw)).parse(f)
+        assert sw.toString()==AcmeJsonOutput.toJson(new AcmeJsonParser().parseText(json))
+        //skipped containers and values keep commas right
+        sw = new StringWriter()
+        new AcmeJsonEventReplayer(new AcmeJsonWriteHandler(sw)).setSkipPaths('$.id', '$.skip', '$.list[0]', '$..x').parse(f)
+        assert sw.toString()=='{"name":"Р\\n","big":123456789012345678901234567890,"dec":-0.125,"d":1.5E+300,"list":[false,null,{}],"e":{}}'
+        //filter over replay
+        def r = new AcmeJsonEventReplayer().withFilter{
+            onValue('$.list[*]'){ it==null ? 'none' : it }
+            build()
+        }.parse(f)
+        assert r.list==[true, false, 'none', [x:[]]]
+        //values substituted by filter are recorded
+        new AcmeJsonParser(new AcmeJsonFilterHandler().addValueFilter('$.list[2]'){ [a:[1,[b:2.5]]] }.setDelegate(new AcmeJsonEventRecorder(f))).parseText(json)
+        assert new AcmeJsonEventReplayer().parse(f).list[2]==[a:[1,[b:2.5]]]
+        //containers larger than the buffer
+        def big = [items:(0..<20000).collect{ [n:it, s:'value '+it] }, tail:[1]]
+        new AcmeJsonParser(new AcmeJsonEventRecorder(f)).parseText(AcmeJsonOutput.toJson(big))
+        assert f.length()>64*1024
+        assert new AcmeJsonEventReplayer().parse(f)==big
+        assert new AcmeJsonEventReplayer().setSkipPaths('$.items').parse(f)==[tail:[1]]
+        //root value
+        new AcmeJsonParser(new AcmeJsonEventRecorder(f)).parseText('"x"')
+        assert new AcmeJsonEventReplayer().parse(f)=='x'
+        try {
+            new AcmeJsonEventReplayer().parseText('{}')
+            assert false
+        }catch(AcmeJsonException e){
+            assert e.message.contains('requires file')
+        }
+    }
+
+    public void testCorpus(){
+        for(String shape: TestJsonCorpus.SHAPES){
+            def doc = TestJsonCorpus.generate(shape, TestJsonCorpus.SEED, 20000)
+            assert doc.length()>=20000 && doc.length()<40000
+            assert doc==TestJsonCorpus.generate(shape, TestJsonCorpus.SEED, 20000)
+            assert doc!=TestJsonCorpus.generate(shape, 1L, 20000)
+            def docs = shape=='ndjson' ? doc.readLines() : [doc]
+            for(String d: docs){
+                def data = new AcmeJsonParser().parseText(d)
+                assert data==new TestGsonParser().parseText(d)
+                assert new AcmeJsonParser().parseText(AcmeJsonOutput.toJson(data))==data
+            }
+        }
+        assert TestJsonCorpus.parseSize('64K')==65536 && TestJsonCorpus.parseSize('1M')==1048576
+    }
+
+    public void testParserMetrics(){
+        def metrics = new AcmeJsonParserMetrics()
+        def p = new AcmeJsonParser().setMetrics(metrics)
+        def text = '{"a":[1,2.5,{"b":"x\\ny"}],"c":"'+('z'*3000)+'","d":[[[]]]}'
+        p.parseText(text)
+        def m = p.parseMetrics
+        assert m.parseCount==1 && m.errorCount==0
+        assert m.chars==text.length()
+        assert m.tokens==20
+        assert m.maxDepth==4
+        assert m.bigDecimals==1
+        assert m.slowPathStrings==2  //escape and string longer than buffer
+        assert m.bufferFills>=3
+        assert m.parseNanos>0
+        new AcmeJsonParser(new AcmeJsonNullHandler()).setMetrics(metrics).parseText('[1]')
+        try {
+            new AcmeJsonParser().setMetrics(metrics).parseText('[1,')
+            assert false
+        }catch(AcmeJsonException e){}
+        def total = metrics.snapshot
+        assert total.parseCount==3 && total.errorCount==1
+        assert total.tokens==20+3+2  //failed parse counts tokens before the error
+        assert total.maxDepth==4
+        assert total.toMap().chars==text.length()+3+3
+        //jmx
+        metrics.register('test')
+        def server = java.lang.management.ManagementFactory.platformMBeanServer
+        def name = new javax.management.ObjectName('groovyx.acme.json:type=AcmeJsonParserMetrics,name="test"')
+        assert server.getAttribute(name, 'ParseCount')==3
+        server.invoke(name, 'reset', null, null)
+        assert metrics.parseCount==0
+        metrics.unregister()
+        assert !server.isRegistered(name)
+    }
+
+    public void testFlightRecorder(){
+        try {
+            Class.forName('jdk.jfr.Recording')
+        }catch(ClassNotFoundException e){
+            return //java 8 without jfr api
+        }
+        def file = File.createTempFile('acmejson', '.jfr')
+        def rec = Class.forName('jdk.jfr.Recording').newInstance()
+        try {
+            ['Parse','Filter','Write'].each{ rec.enable("groovyx.acme.json.$it") }
+            rec.start()
+            def o = new AcmeJsonParser().withFilter{
+                onValue('$.a[*]'){v-> v+1 }
+                build()
+            }.parseText('{"a":[1,2,3],"b":{"c":[]}}')
+            assert o==[a:[2,3,4],b:[c:[]]]
+            try {
+                new AcmeJsonParser().parseText('[1,')
+                assert false
+            }catch(AcmeJsonException e){}
+            assert AcmeJsonOutput.toJson(o)=='{"a":[2,3,4],"b":{"c":[]}}'
+            assert AcmeJsonOutput.toJson(o, false, 2)=='{"a":[2,3,4],"b":{"c":[]}}'
+            AcmeJsonOutput.writeJson(o, new StringWriter(), true)
+            rec.stop()
+            rec.dump(file.toPath())
+            def events = Class.forName('jdk.jfr.consumer.RecordingFile').readAllEvents(file.toPath())
+            def byName = events.groupBy{ it.eventType.name }
+            def parses = byName['groovyx.acme.json.Parse']
+            assert parses.size()==2
+            assert parses[0].getString('source')=='String'
+            assert parses[0].getLong('chars')==26 && parses[0].getLong('depth')==3 && parses[0].getLong('tokens')==14
+            assert !parses[0].getBoolean('failed') && parses[1].getBoolean('failed')
+            def filter = byName['groovyx.acme.json.Filter']
+            assert filter.size()==1 && filter[0].getString('path')=='$.a[*]' && filter[0].getLong('count')==3
+            def write = byName['groovyx.acme.json.Write']
+            assert write.size()==3 && write[0].getString('output')=='String' && write[0].getLong('size')==26
+            assert write[1].getString('output')=='String' && write[1].getLong('size')==26
+            assert write[2].getString('output')=='Writer' && write[2].getLong('size')==AcmeJsonOutput.toJson(o, true).length()
+            //no events without recording
+            assert !AcmeJsonFlightRecorder.isRecording()
+        }finally{
+            rec.close()
+            file.delete()
+        }
+    }
+
+    public void testProfileHandler(){
+        def text = '{"items":[{"id":1,"name":"a\u00e9"},{"id":2,"name":"bb","tags":["x"]}],"total":2}'
+        def report = null
+        def o = new AcmeJsonParser().withFilter{
+            onValue('$.items[*].id'){ Thread.sleep(5); it*10 }
+            build()
+        }.withProfile{ report = it }.parseText(text)
+        assert o.items*.id==[10,20]
+        def paths = report.paths.collectEntries{ [it.path, it] }
+        assert paths.keySet()==['$','$.items','$.items[*]','$.items[*].id','$.items[*].name','$.items[*].tags','$.items[*].tags[*]','$.total'] as Set
+        assert report.paths[0].path=='$.items[*].id'  //the slow filter is the hottest path
+        assert report.paths[0].nanos>=10000000
+        assert paths['$.items[*]'].events==4          //two starts and two ends
+        assert paths['$.items[*].id'].events==2
+        assert paths['$.items[*].name'].stringBytes==3+2
+        assert report.toString(3).readLines().size()==5
+        //profile only the writer, behind the filter, with sampled timing and limited keys
+        def w = new StringWriter()
+        def profile = new AcmeJsonProfileHandler(new AcmeJsonWriteHandler(w)).setTimingSample(4).setMaxKeys(2)
+        def filter = new AcmeJsonFilterHandler().addValueFilter('$.total'){ it+1 }.setDelegate(profile)
+        new AcmeJsonParser(filter).parseText(text)
+        assert w.toString()==text.replace('"total":2','"total":3')
+        paths = profile.report.paths.collectEntries{ [it.path, it] }
+        assert paths['$.items[*].<other>'].events==4  //name and tags over the limit of two keys: items and id
+        assert paths['$.items[*].id'].events==2 && paths['$.<other>'].events==1
+        profile.reset()
+        assert profile.report.paths.isEmpty()
+        assert AcmeJsonProfileHandler.utf8Length('a\u00e9\u4e2d\ud83d\ude00')==1+2+3+4
+    }
+
+    public void testAsyncParser(){
+        def dir = File.createTempDir()
+        try {
+            def files = (0..<200).collect{ i-> def f = new File(dir, "f${i}.json"); f.setText('{"id":'+i+',"name":"n\u00e9'+i+'","list":['+('1,'*i)+'0]}', 'UTF-8'); f }
+            def paths = files*.toPath()
+            def lenient = new AcmeJsonAsyncParser().setParserFactory{ new AcmeJsonParser().setLenient(true) }
+            def all = lenient.parseAll(paths).get()
+            assert all.keySet().toList()==paths
+            all.eachWithIndex{ p, o, i-> assert o.id==i && o.name=="n\u00e9$i" && o.list.size()==i+1 }
+            //bounded concurrency on custom executor with handler factory
+            def pool = java.util.concurrent.Executors.newFixedThreadPool(8)
+            def running = new java.util.concurrent.atomic.AtomicInteger()
+            def maxRunning = new java.util.concurrent.atomic.AtomicInteger()
+            try {
+                def p = new AcmeJsonAsyncParser().setExecutor(pool, 3)
+                def sums = p.parseAll(paths){
+                    int r = running.incrementAndGet()
+                    maxRunning.accumulateAndGet(r, Math.&max as java.util.function.IntBinaryOperator)
+                    Thread.sleep(1)
+                    running.decrementAndGet()
+                    new AcmeJsonAggregateHandler().with{ addAggregate('sum', '$.list[*]').named('s'); it }
+                }.get()
+                assert sums[paths[5]].s==5 && maxRunning.get()<=3
+                assert p.parseAsync(new ByteArrayInputStream('[1,2]'.bytes)).get()==[1,2]
+                //errors complete the future exceptionally with the file name
+                def bad = new File(dir, 'bad.json'); bad.text = '{"a":'
+                try {
+                    p.parseAsync(bad).get()
+                    assert false
+                }catch(java.util.concurrent.ExecutionException e){
+                    assert e.cause instanceof AcmeJsonException && e.cause.message.contains('bad.json')
+                }
+                assert p.parseAsync(files[1]).get().id==1  //the reused parser is not broken
+                try {
+                    p.parseAll([paths[0], bad.toPath()]).join()
+                    assert false
+                }catch(java.util.concurrent.CompletionException e){}
+            }finally{
+                pool.shutdown()
+            }
+            lenient.close()
+            try {
+                lenient.parseAsync(files[0]).join()
+                assert false
+            }catch(java.util.concurrent.CompletionException e){
+                assert e.cause instanceof java.util.concurrent.RejectedExecutionException
+            }
+        }finally{
+            dir.deleteDir()
+        }
+    }
+
+    public void testTeeHandler(){
+        def text = '{"header":{"version":2,"tags":["a","b"]},"users":[{"name":"u1","password":"p1"},{"name":"u2","password":"p2"}],"tail":true}'
+        def w = new StringWriter()
+        def r = new AcmeJsonParser().withTee{
+            branch('dom'){ build() }
+            branch('redacted'){
+                onValue('$..password'){ '***' }
+                write(w)
+            }
+            branch('stats', new AcmeJsonAggregateHandler().with{ addAggregate('count', '$.users[*]').named('users'); it })
+            branch('header'){ build() }.until('$.header')
+            branch('first'){
+                onValue('$.users[0]'){ v-> stop('first'); v }
+                build()
+            }
+        }.parseText(text)
+        assert r.keySet().toList()==['dom','redacted','stats','header','first']
+        assert r.dom==new groovy.json.JsonSlurper().parseText(text)
+        assert w.toString()==text.replace('"p1"','"***"').replace('"p2"','"***"')
+        assert r.stats.users==2
+        assert r.header==[header:[version:2,tags:['a','b']]]
+        assert r.first==[header:[version:2,tags:['a','b']],users:[[name:'u1',password:'p1']]]
+        //stopped in the middle of nested arrays: the written branch stays well formed
+        def tee = new AcmeJsonTeeHandler()
+        def sw = new StringWriter()
+        def b = tee.addBranch('w', new AcmeJsonWriteHandler(sw)).until('$.a[1][0]')
+        tee.addBranch('all', new AcmeJsonBuildHandler())
+        assert new AcmeJsonParser(tee).parseText('{"a":[[1],[2,3],[4]],"b":5}').all.b==5
+        assert sw.toString()=='{"a":[[1],[2]]}' && b.isStopped()
+        try {
+            tee.addBranch('all', new AcmeJsonNullHandler())
+            assert false
+        }catch(IllegalArgumentException e){}
+    }
+
+    public void testParallelWrite(){
+        def pool = new java.util.concurrent.ForkJoinPool(4)
+        try {
+            def data = [
+                head: 'x',
+                list: (0..<3000).collect{ [id:it, name:"n$it", tags:(0..<(it%5)).collect{ "t$it" }, nested:(0..<(it%2==0 ? 300 : 1)).toList()] },
+                arr : (0..<1000).collect{ "s\u0420$it" } as Object[],
+                empty: [],
+            ]
+            [false, true].each{ pretty->
+                def seq = AcmeJsonOutput.toJson(data, pretty)
+                def sw = new StringWriter()
+                new AcmeJsonWriter(sw, pretty).setParallel(pool, 100).value(data)
+                assert sw.toString()==seq
+                def bytes = new ByteArrayOutputStream()
+                new AcmeJsonWriter(bytes, pretty).setParallel(pool, 100).value(data).getWriter()
+                assert bytes.toString("UTF-8")==seq
+            }
+            assert AcmeJsonOutput.toJson(data, false, 100)==AcmeJsonOutput.toJson(data)
+            //io errors of chunks are thrown to the caller
+            def reg = new AcmeJsonSerializers().register(Date, { d, w-> throw new IOException("failed") } as AcmeJsonSerializer)
+            try {
+                new AcmeJsonWriter(new StringWriter(), false).setSerializers(reg).setParallel(pool, 100).value(data.list+[new Date()])
+                assert false
+            }catch(IOException e){
+                assert e.message=='failed'
+            }
+        }finally{
+            pool.shutdown()
+        }
+    }
 
     /*
     public void testJsonWrite(){
@@ -291,3 +1241,31 @@ public class AcmeJsonTest extends groovy.util.GroovyTestCase {
     }
     */
 }
+
+enum BindKind { A, B }
+
+class SerMoney {
+    private long cents
+    private String currency
+    SerMoney(long cents, String currency){ this.cents = cents; this.currency = currency }
+    String toString(){ String.format('%d.%02d %s', cents.intdiv(100), cents%100, currency) }
+}
+
+class SerNode {
+    String name
+    SerNode parent
+    List<SerNode> children = []
+}
+
+class BindPerson {
+    String name
+    int age
+    double score
+    BindKind kind
+    Set<String> tags
+    long[] ids
+    Map<String,Integer> attrs
+    BigInteger big
+    List<BindPerson> children
+    Object any
+}
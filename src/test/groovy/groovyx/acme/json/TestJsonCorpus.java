@@ -0,0 +1,247 @@
+package groovyx.acme.json;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * deterministic generator of json documents shaped like real workloads, for tests and benchmarks.
+ * the same shape, seed, and size always give the same document.
+ * <ul>
+ *     <li>wide - array of flat records with many fields of all types</li>
+ *     <li>deep - randomly branched objects and arrays nested up to 64 levels</li>
+ *     <li>numeric - series with large arrays of integers and doubles</li>
+ *     <li>unicode - records with non-ascii, surrogate pair, and escape heavy strings</li>
+ *     <li>ndjson - log records, one json object per line</li>
+ * </ul>
+ * usage: {@code java groovyx.acme.json.TestJsonCorpus <dir> [size] [seed]} writes one file per shape.
+ */
+public class TestJsonCorpus {
+    public static final String[] SHAPES = {"wide", "deep", "numeric", "unicode", "ndjson"};
+    public static final long SEED = 20181017L;
+
+    private static final String[] WORDS = {"alpha", "beta", "gamma", "delta", "order", "customer", "item", "price", "status",
+            "shipped", "pending", "warehouse", "region", "north", "south", "value", "total", "error", "request", "session"};
+    private static final String[] LEVELS = {"TRACE", "DEBUG", "INFO", "INFO", "INFO", "WARN", "ERROR"};
+    private static final String[] UNICODE = {"\u041f\u0440\u0438\u0432\u0435\u0442", "\u4f60\u597d\u4e16\u754c", "\u00e9t\u00e9",
+            "\ud83d\ude00\ud83d\ude80", "\u05e9\u05dc\u05d5\u05dd", "\u0645\u0631\u062d\u0628\u0627", "na\u00efve caf\u00e9"};
+    private static final String[] ESCAPES = {"\\n", "\\t", "\\r", "\\\"", "\\\\", "\\/", "\\u0001", "\\u00e9", "\\u4e2d", "\\ud83d\\ude00"};
+
+    private final Random r;
+    private final StringBuilder sb;
+
+    private TestJsonCorpus(long seed, int size){
+        this.r = new Random(seed);
+        this.sb = new StringBuilder(size+1024);
+    }
+
+    /**
+     * generates document of the shape
+     * @param shape one of {@link #SHAPES}
+     * @param seed random seed
+     * @param size approximate size of the document in chars, the document is slightly larger
+     * @return json text, or json lines for ndjson shape
+     */
+    public static String generate(String shape, long seed, int size){
+        TestJsonCorpus g = new TestJsonCorpus(seed, size);
+        switch (shape){
+            case "wide":    g.wide(size); break;
+            case "deep":    g.deep(size); break;
+            case "numeric": g.numeric(size); break;
+            case "unicode": g.unicode(size); break;
+            case "ndjson":  g.ndjson(size); break;
+            default: throw new IllegalArgumentException("unknown shape: "+shape);
+        }
+        return g.sb.toString();
+    }
+
+    /**
+     * parses size with optional K or M suffix: 64K, 1M, 1000
+     * @param size the size string
+     * @return size in chars
+     */
+    public static int parseSize(String size){
+        char c = Character.toUpperCase(size.charAt(size.length()-1));
+        if(c=='K')return Integer.parseInt(size.substring(0, size.length()-1))*1024;
+        if(c=='M')return Integer.parseInt(size.substring(0, size.length()-1))*1024*1024;
+        return Integer.parseInt(size);
+    }
+
+    public static void main(String[] args) throws IOException {
+        File dir = new File(args.length>0 ? args[0] : ".");
+        int size = parseSize(args.length>1 ? args[1] : "1M");
+        long seed = args.length>2 ? Long.parseLong(args[2]) : SEED;
+        dir.mkdirs();
+        for(String shape: SHAPES){
+            File f = new File(dir, shape+(shape.equals("ndjson") ? ".ndjson" : ".json"));
+            OutputStream out = new FileOutputStream(f);
+            try {
+                out.write(generate(shape, seed, size).getBytes(Charset.forName("UTF-8")));
+            }finally{
+                out.close();
+            }
+            System.out.println(f+" "+f.length());
+        }
+    }
+
+    private void wide(int size){
+        sb.append('[');
+        for(int n=0; sb.length()<size; n++){
+            if(n>0)sb.append(',');
+            sb.append('{');
+            for(int i=0;i<40;i++){
+                if(i>0)sb.append(',');
+                sb.append("\"field").append(i).append("\":");
+                switch (i%8){
+                    case 0: sb.append(n*40+i); break;
+                    case 1: str(WORDS[r.nextInt(WORDS.length)]); break;
+                    case 2: sb.append(r.nextInt(1000000)/100.0); break;
+                    case 3: sb.append(r.nextBoolean()); break;
+                    case 4: sb.append(r.nextInt(10)==0 ? "null" : Long.toString(r.nextLong())); break;
+                    case 5: str(timestamp()); break;
+                    case 6: str(sentence(3+r.nextInt(8))); break;
+                    default: sb.append(r.nextInt(100)-50);
+                }
+            }
+            sb.append('}');
+        }
+        sb.append(']');
+    }
+
+    private void deep(int size){
+        sb.append('[');
+        for(int n=0; sb.length()<size; n++){
+            if(n>0)sb.append(',');
+            deepValue(0, 8+r.nextInt(57));
+        }
+        sb.append(']');
+    }
+
+    private void deepValue(int depth, int maxDepth){
+        if(depth>=maxDepth){
+            sb.append(r.nextInt(1000));
+            return;
+        }
+        int width = depth<2 ? 1+r.nextInt(3) : 1+r.nextInt(2);
+        if(r.nextBoolean()){
+            sb.append('{');
+            for(int i=0;i<width;i++){
+                if(i>0)sb.append(',');
+                str(WORDS[r.nextInt(WORDS.length)]+i);
+                sb.append(':');
+                if(i==0) deepValue(depth+1, maxDepth);
+                else str(WORDS[r.nextInt(WORDS.length)]);
+            }
+            sb.append('}');
+        }else{
+            sb.append('[');
+            for(int i=0;i<width;i++){
+                if(i>0)sb.append(',');
+                if(i==0) deepValue(depth+1, maxDepth);
+                else sb.append(r.nextBoolean());
+            }
+            sb.append(']');
+        }
+    }
+
+    private void numeric(int size){
+        sb.append("{\"series\":[");
+        for(int n=0; sb.length()<size; n++){
+            if(n>0)sb.append(',');
+            sb.append("{\"sensor\":").append(n).append(",\"start\":").append(1500000000000L+n*60000L);
+            sb.append(",\"t\":[");
+            for(int i=0;i<500;i++){
+                if(i>0)sb.append(',');
+                sb.append(i*1000+r.nextInt(50));
+            }
+            sb.append("],\"v\":[");
+            double v = r.nextDouble()*100;
+            for(int i=0;i<500;i++){
+                if(i>0)sb.append(',');
+                v += r.nextGaussian();
+                if(i%50==0) sb.append(v*1e-9); //exponent
+                else sb.append(Math.round(v*1000)/1000.0);
+            }
+            sb.append("]}");
+        }
+        sb.append("]}");
+    }
+
+    private void unicode(int size){
+        sb.append('[');
+        for(int n=0; sb.length()<size; n++){
+            if(n>0)sb.append(',');
+            sb.append("{\"id\":").append(n).append(",\"title\":");
+            mixed(2+r.nextInt(6));
+            sb.append(",\"body\":");
+            mixed(10+r.nextInt(40));
+            sb.append(",\"tags\":[");
+            for(int i=r.nextInt(4);i>=0;i--){
+                str(UNICODE[r.nextInt(UNICODE.length)]);
+                if(i>0)sb.append(',');
+            }
+            sb.append("]}");
+        }
+        sb.append(']');
+    }
+
+    private void ndjson(int size){
+        while(sb.length()<size){
+            sb.append("{\"ts\":");
+            str(timestamp());
+            sb.append(",\"level\":");
+            str(LEVELS[r.nextInt(LEVELS.length)]);
+            sb.append(",\"logger\":");
+            str("com.acme."+WORDS[r.nextInt(WORDS.length)]+"."+WORDS[r.nextInt(WORDS.length)]+"Service");
+            sb.append(",\"thread\":");
+            str("worker-"+r.nextInt(32));
+            sb.append(",\"msg\":");
+            str(sentence(4+r.nextInt(12)));
+            sb.append(",\"ctx\":{\"requestId\":");
+            str(Long.toHexString(r.nextLong()));
+            sb.append(",\"latencyMs\":").append(r.nextInt(5000)/10.0);
+            sb.append(",\"status\":").append(r.nextInt(8)==0 ? 500 : 200);
+            if(r.nextInt(10)==0){
+                sb.append(",\"stack\":\"java.lang.IllegalStateException: ").append(WORDS[r.nextInt(WORDS.length)]);
+                for(int i=r.nextInt(6)+2;i>0;i--)sb.append("\\n\\tat com.acme.").append(WORDS[r.nextInt(WORDS.length)]).append(".run(Main.java:").append(r.nextInt(500)).append(')');
+                sb.append('"');
+            }
+            sb.append("}}\n");
+        }
+    }
+
+    /** json string of words, non-ascii chars, and escapes */
+    private void mixed(int parts){
+        sb.append('"');
+        for(int i=0;i<parts;i++){
+            if(i>0)sb.append(' ');
+            switch (r.nextInt(3)){
+                case 0: sb.append(WORDS[r.nextInt(WORDS.length)]); break;
+                case 1: sb.append(UNICODE[r.nextInt(UNICODE.length)]); break;
+                default: sb.append(ESCAPES[r.nextInt(ESCAPES.length)]);
+            }
+        }
+        sb.append('"');
+    }
+
+    private String sentence(int words){
+        StringBuilder s = new StringBuilder();
+        for(int i=0;i<words;i++){
+            if(i>0)s.append(' ');
+            s.append(WORDS[r.nextInt(WORDS.length)]);
+        }
+        return s.toString();
+    }
+
+    private String timestamp(){
+        return String.format("2018-%02d-%02dT%02d:%02d:%02d.%03dZ", 1+r.nextInt(12), 1+r.nextInt(28), r.nextInt(24), r.nextInt(60), r.nextInt(60), r.nextInt(1000));
+    }
+
+    /** appends plain string without chars to escape */
+    private void str(String s){
+        sb.append('"').append(s).append('"');
+    }
+}